@@ -20,22 +20,51 @@ package org.sentrysoftware.maven.skin;
  * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
  */
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.velocity.tools.config.DefaultKey;
 import org.apache.velocity.tools.generic.SafeConfig;
+import org.apache.velocity.tools.generic.ValueParser;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
@@ -45,6 +74,23 @@ import org.jsoup.select.Elements;
  * It converts HTML documentation pages to Markdown format with YAML frontmatter,
  * making them suitable for AI consumption and processing.
  * </p>
+ * <p>
+ * It also maintains llms.txt files. Each update is merged into its file immediately, unless the
+ * {@code deferredWrites} tool property is set in <code>tools.xml</code>: the updates are then
+ * kept in memory while the site is generated, and merged into the files all at once with
+ * {@link #flush()}, which must be called at the end of the build. Updates are thread-safe, and
+ * the files are locked while they are merged, so that several threads, modules or JVMs can share
+ * the same llms.txt file without losing entries.
+ * </p>
+ * <p>
+ * With {@code deferredWrites}, the Markdown of the converted pages is also concatenated in an
+ * llms-full.txt file at the root of the site, in the order of the llms.txt file found there, when
+ * the llms.txt files are flushed.
+ * </p>
+ * <p>
+ * The Markdown version and the llms.txt files of a site that has already been generated can also
+ * be regenerated all at once with {@link #convertSiteToMarkdown(String, String, Date, String, String, String)}.
+ * </p>
  */
 @DefaultKey("aiIndexTool")
 public class AIIndexTool extends SafeConfig {
@@ -70,6 +116,81 @@ public class AIIndexTool extends SafeConfig {
 		INIT_ERROR = error;
 	}
 
+	/**
+	 * Updates of the llms.txt files made with updateLlmsTxt() and not written yet, per normalized
+	 * absolute path (each entry is guarded by the lock of its path)
+	 */
+	private static final ConcurrentMap<Path, LlmsTxtContent> PENDING_LLMS_TXT_UPDATES = new ConcurrentHashMap<>();
+
+	/**
+	 * Number of locks that guard the pending llms.txt updates
+	 */
+	private static final int LLMS_TXT_LOCK_COUNT = 64;
+
+	/**
+	 * Locks that guard the pending llms.txt updates, striped by path
+	 */
+	private static final Object[] LLMS_TXT_LOCKS = new Object[LLMS_TXT_LOCK_COUNT];
+
+	static {
+		for (int i = 0; i < LLMS_TXT_LOCK_COUNT; i++) {
+			LLMS_TXT_LOCKS[i] = new Object();
+		}
+	}
+
+	/**
+	 * Delay before trying again to lock an llms.txt file that is locked by another thread of
+	 * this JVM, in milliseconds
+	 */
+	private static final long FILE_LOCK_RETRY_DELAY = 10;
+
+	/**
+	 * Name of the file with the Markdown of all pages of the site
+	 */
+	static final String LLMS_FULL_TXT = "llms-full.txt";
+
+	/**
+	 * Name of the llms.txt file at the root of the site, which gives the order of the pages in
+	 * llms-full.txt
+	 */
+	static final String LLMS_TXT = "llms.txt";
+
+	/**
+	 * Markdown of the pages converted with convertToMarkdown(), per normalized absolute path of
+	 * the root directory of the site
+	 */
+	private static final ConcurrentMap<Path, MarkdownSpool> MARKDOWN_SPOOLS = new ConcurrentHashMap<>();
+
+	/**
+	 * Hashes of the HTML pages converted with convertToMarkdown(), to skip the pages that haven't
+	 * changed since the previous build, per normalized absolute path of the root directory of the
+	 * site (stored next to llms-full.txt)
+	 */
+	private static final ConcurrentMap<Path, IndexManifest> MARKDOWN_MANIFESTS = new ConcurrentHashMap<>();
+
+	/**
+	 * Whether the shutdown hook that writes the llms.txt and llms-full.txt files has been registered
+	 */
+	private static final AtomicBoolean SHUTDOWN_HOOK_REGISTERED = new AtomicBoolean();
+
+	/**
+	 * Version of the conversion of the pages to Markdown, part of the hash of the pages recorded
+	 * to skip the unchanged ones: to be incremented whenever HtmlToMarkdownConverter produces
+	 * different Markdown, so that all pages are converted again
+	 */
+	static final int MARKDOWN_CONVERSION_VERSION = 1;
+
+	/**
+	 * Name of the tool property that keeps the llms.txt updates in memory until {@link #flush()}
+	 */
+	static final String DEFERRED_WRITES_KEY = "deferredWrites";
+
+	/**
+	 * Whether the llms.txt updates are kept in memory until {@link #flush()}, instead of being
+	 * merged into the files immediately
+	 */
+	private boolean deferredWrites;
+
 	/**
 	 * Creates a new instance
 	 */
@@ -80,6 +201,30 @@ public class AIIndexTool extends SafeConfig {
 		}
 	}
 
+	/**
+	 * Configures the tool with the properties specified in <code>tools.xml</code>.
+	 * <p>
+	 * {@code deferredWrites="true"} keeps the updates of the llms.txt files in memory, instead of
+	 * merging each of them into its file immediately, so that each file is written once per build.
+	 * The updates are then written only by {@link #flush()}, which must be called once all the
+	 * pages have been generated (a shutdown hook writes them as a last resort if it isn't).
+	 * </p>
+	 *
+	 * @param values the tool properties
+	 * @see SafeConfig#configure(ValueParser)
+	 */
+	@Override
+	protected void configure(final ValueParser values) {
+		deferredWrites = values.getBoolean(DEFERRED_WRITES_KEY, false);
+	}
+
+	/**
+	 * @return whether the llms.txt updates are kept in memory until {@link #flush()}
+	 */
+	boolean isDeferredWrites() {
+		return deferredWrites;
+	}
+
 	/**
 	 * Converts an HTML document to a Markdown file.
 	 * <p>
@@ -89,6 +234,18 @@ public class AIIndexTool extends SafeConfig {
 	 * <li>YAML frontmatter with meta tags extracted from HTML header</li>
 	 * <li>The body content converted from HTML to Markdown</li>
 	 * </ul>
+	 * <p>
+	 * Pages that haven't changed since the previous build (as recorded next to llms-full.txt,
+	 * whether the {@code deferredWrites} tool property is set or not) are not converted again,
+	 * unless custom element converters are registered (see
+	 * {@link HtmlToMarkdownConverter#registerElementConverter(String, HtmlToMarkdownConverter.ElementConverter)}),
+	 * and the Markdown file is written only if its content changes, so that its time of last
+	 * modification is preserved.
+	 * </p>
+	 * <p>
+	 * With the {@code deferredWrites} tool property, the Markdown is also kept for the
+	 * llms-full.txt file of the site, which is written with {@link #flush()}.
+	 * </p>
 	 *
 	 * @param outputDirectory Actual root directory of the site on the file system
 	 * @param docPath Logical path to the document relative to outputDirectory
@@ -110,6 +267,32 @@ public class AIIndexTool extends SafeConfig {
 			final Element bodyElement,
 			final Date publishDate,
 			final String projectUrl) {
+		return convertToMarkdown(outputDirectory, docPath, headElement, bodyElement, publishDate, projectUrl, deferredWrites);
+	}
+
+	/**
+	 * Converts an HTML document to a Markdown file, and optionally keeps its Markdown for
+	 * llms-full.txt.
+	 *
+	 * @param outputDirectory Actual root directory of the site on the file system
+	 * @param docPath Logical path to the document relative to outputDirectory
+	 * @param headElement The HTML head element (containing meta tags)
+	 * @param bodyElement The HTML body element
+	 * @param publishDate The publication date for the document
+	 * @param projectUrl The base URL of the project site (used to build canonical_url)
+	 * @param spool Whether to keep the Markdown for the llms-full.txt file written by {@link #flush()}
+	 * @return An HTML link element for the alternate Markdown version, or an empty string if
+	 *         conversion fails
+	 * @see #convertToMarkdown(String, String, Element, Element, Date, String)
+	 */
+	private String convertToMarkdown(
+			final String outputDirectory,
+			final String docPath,
+			final Element headElement,
+			final Element bodyElement,
+			final Date publishDate,
+			final String projectUrl,
+			final boolean spool) {
 
 		if (outputDirectory == null || outputDirectory.isEmpty() || docPath == null || docPath.isEmpty()) {
 			return "";
@@ -127,9 +310,6 @@ public class AIIndexTool extends SafeConfig {
 			}
 			String mdFilename = fileNamePath.toString();
 
-			// Build the Markdown content
-			StringBuilder markdownContent = new StringBuilder();
-
 			// Extract frontmatter from meta tags
 			String metaFrontmatter = extractFrontmatter(headElement);
 
@@ -151,24 +331,45 @@ public class AIIndexTool extends SafeConfig {
 			String combinedFrontmatter = metaFrontmatter + additionalFrontmatter.toString();
 
 			// Build the YAML frontmatter block if we have any frontmatter
-			if (!combinedFrontmatter.isEmpty()) {
-				markdownContent.append("---\n");
-				markdownContent.append(combinedFrontmatter);
-				markdownContent.append("---\n\n");
-			}
+			String frontmatterBlock = combinedFrontmatter.isEmpty() ? "" : "---\n" + combinedFrontmatter + "---\n\n";
+
+			// Skip the conversion if the page hasn't changed since the previous build
+			// (always convert with custom element converters, which may have changed)
+			Path siteDirectory = Paths.get(outputDirectory).toAbsolutePath().normalize();
+			String mdKey = mdRelativePath.replace('\\', '/');
+			IndexManifest manifest = getMarkdownManifest(siteDirectory);
+			boolean customConversion = HtmlToMarkdownConverter.hasElementConverters();
+			String inputHash = IndexManifest.hash(
+					frontmatterBlock,
+					getMarkdownConversionKey(customConversion),
+					bodyElement == null ? null : bodyElement.outerHtml());
+			byte[] frontmatterBytes = Helper.toSystemLineSeparators(frontmatterBlock).getBytes(UTF8_CHARSET);
+			boolean changed = manifest.update(mdKey, inputHash);
+			boolean upToDate = !changed && !customConversion && startsWith(markdownPath, frontmatterBytes);
+
+			try {
+				if (!upToDate) {
+					writeMarkdown(markdownPath, frontmatterBlock, bodyElement);
+				}
 
-			// Convert body HTML to Markdown and append
-			String bodyMarkdown = HtmlToMarkdownConverter.convert(bodyElement);
-			markdownContent.append(bodyMarkdown);
+				// Remember the converted page for the next build
+				if (changed) {
+					manifest.append(siteDirectory.resolve(LLMS_FULL_TXT), mdKey);
+				}
 
-			// Ensure parent directories exist
-			Path parentDir = markdownPath.getParent();
-			if (parentDir != null) {
-				Files.createDirectories(parentDir);
-			}
+				// Keep the Markdown for llms-full.txt
+				if (spool) {
+					getMarkdownSpool(siteDirectory).append(mdKey, markdownPath, frontmatterBytes.length);
+					if (deferredWrites) {
+						registerShutdownHook();
+					}
+				}
 
-			// Write the Markdown file
-			Helper.writeText(markdownPath.toFile(), markdownContent.toString(), UTF8_CHARSET);
+			} catch (IOException | RuntimeException e) {
+				// Convert the page again next time
+				manifest.forget(mdKey);
+				throw e;
+			}
 
 			// Return the link element for the HTML header (relative href, just the filename)
 			return "<link rel=\"alternate\" type=\"text/markdown\" href=\"" + mdFilename + "\">";
@@ -282,6 +483,11 @@ public class AIIndexTool extends SafeConfig {
 	 * links to documentation pages. This method is typically called for each generated
 	 * HTML file during site generation.
 	 * </p>
+	 * <p>
+	 * The update is merged into the llms.txt file immediately, or kept in memory until
+	 * {@link #flush()} if the {@code deferredWrites} tool property is set (see
+	 * {@link #configure(ValueParser)}). This method is thread-safe.
+	 * </p>
 	 *
 	 * @param llmsTxtPath Path to the llms.txt file
 	 * @param docPath Path relative to the root of the site (e.g., "subdir/page.html")
@@ -307,70 +513,643 @@ public class AIIndexTool extends SafeConfig {
 		}
 
 		try {
-			Path path = Paths.get(llmsTxtPath);
-
-			// Parse existing content or create new structure
-			LlmsTxtContent content;
-			if (Files.exists(path)) {
-				String existingContent = Files.readString(path, UTF8_CHARSET);
-				content = parseLlmsTxt(existingContent);
-				// Update project info if provided (don't overwrite with null/empty)
-				if (projectName != null && !projectName.isEmpty()) {
-					content.setProjectName(projectName);
-				}
-				if (projectDescription != null && !projectDescription.isEmpty()) {
-					content.setProjectDescription(projectDescription);
-				}
+			Path path = queueLlmsTxtUpdate(
+					llmsTxtPath,
+					docPath,
+					docTitle,
+					projectName,
+					projectDescription,
+					section,
+					projectUrl);
+
+			if (deferredWrites) {
+				// Make sure the llms.txt files will be written eventually, even without flush()
+				registerShutdownHook();
 			} else {
-				content = new LlmsTxtContent();
-				content.setProjectName(projectName != null ? projectName : "");
-				content.setProjectDescription(projectDescription != null ? projectDescription : "");
+				flushLlmsTxt(path);
 			}
 
-			// Determine target section
-			String targetSection = (section == null || section.isEmpty()) ? DEFAULT_SECTION : section;
+		} catch (Exception e) {
+			// Log error but don't interrupt the site generation
+			getLog().error("AIIndexTool: Failed to update llms.txt at {}: {}", llmsTxtPath, e.getMessage());
+		}
+	}
 
-			// Get or create the section
-			List<LinkEntry> sectionEntries = content.getSections().computeIfAbsent(targetSection, k -> new ArrayList<>());
+	/**
+	 * Records an update of an llms.txt file, to be merged into the file when it is flushed
+	 *
+	 * @param llmsTxtPath Path to the llms.txt file
+	 * @param docPath Path relative to the root of the site (e.g., "subdir/page.html")
+	 * @param docTitle Title of the document
+	 * @param projectName Name of the project (used in the H1 header)
+	 * @param projectDescription Description of the project (used in the blockquote)
+	 * @param section Name of the section where this entry should be placed
+	 * @param projectUrl The base URL of the project site
+	 * @return the normalized absolute path to the llms.txt file
+	 */
+	private static Path queueLlmsTxtUpdate(
+			final String llmsTxtPath,
+			final String docPath,
+			final String docTitle,
+			final String projectName,
+			final String projectDescription,
+			final String section,
+			final String projectUrl) {
 
-			// Convert docPath to .html.md for the link (per llmstxt.org convention)
-			String mdDocPath = docPath.replaceFirst("\\.html$", ".html.md");
+		Path path = Paths.get(llmsTxtPath).toAbsolutePath().normalize();
 
-			// Build absolute URL if projectUrl is provided
-			String linkPath;
-			if (projectUrl != null && !projectUrl.isEmpty()) {
-				String baseUrl = projectUrl.endsWith("/") ? projectUrl : projectUrl + "/";
-				linkPath = baseUrl + mdDocPath.replace("\\", "/");
-			} else {
-				linkPath = mdDocPath;
+		// Determine target section
+		String targetSection = (section == null || section.isEmpty()) ? DEFAULT_SECTION : section;
+
+		String linkPath = getLlmsTxtLink(docPath, projectUrl);
+		String title = docTitle != null ? docTitle : docPath;
+
+		synchronized (getLlmsTxtLock(path)) {
+
+			// Record the update, to be merged into the file when flushed
+			LlmsTxtContent updates = PENDING_LLMS_TXT_UPDATES.computeIfAbsent(path, k -> new LlmsTxtContent());
+
+			// Update project info if provided (don't overwrite with null/empty)
+			if (projectName != null && !projectName.isEmpty()) {
+				updates.setProjectName(projectName);
+			}
+			if (projectDescription != null && !projectDescription.isEmpty()) {
+				updates.setProjectDescription(projectDescription);
 			}
 
 			// Update or add the entry
-			String title = docTitle != null ? docTitle : docPath;
-			boolean found = false;
-			for (LinkEntry entry : sectionEntries) {
-				if (entry.getPath().equals(linkPath)) {
-					entry.setTitle(title);
-					found = true;
-					break;
+			updates.putEntry(targetSection, title, linkPath);
+		}
+
+		return path;
+	}
+
+	/**
+	 * Builds the link to the Markdown version of a page, as listed in llms.txt
+	 *
+	 * @param docPath Path relative to the root of the site (e.g., "subdir/page.html")
+	 * @param projectUrl The base URL of the project site; if null or empty, the link is relative
+	 * @return the link to the .html.md file (per llmstxt.org convention)
+	 */
+	private static String getLlmsTxtLink(final String docPath, final String projectUrl) {
+		String mdDocPath = docPath.replaceFirst("\\.html$", ".html.md");
+		if (projectUrl != null && !projectUrl.isEmpty()) {
+			String baseUrl = projectUrl.endsWith("/") ? projectUrl : projectUrl + "/";
+			return baseUrl + mdDocPath.replace("\\", "/");
+		}
+		return mdDocPath;
+	}
+
+	/**
+	 * Media type of the Markdown alternate link of the pages
+	 */
+	private static final String MARKDOWN_MEDIA_TYPE = "text/markdown";
+
+	/**
+	 * Converts all the pages of an already generated site to Markdown, and writes its llms.txt and
+	 * llms-full.txt files, without generating the site again.
+	 * <p>
+	 * The pages converted are the HTML files of the site that link to their Markdown version (as
+	 * returned by {@link #convertToMarkdown(String, String, Element, Element, Date, String)}),
+	 * so that other HTML files, like Javadoc pages, are left alone. They are parsed and converted
+	 * in parallel, and listed with their title in the llms.txt file at the root of the site, in
+	 * the section where they are already listed, or in the "Other" section. The llms.txt and
+	 * llms-full.txt files are then written with {@link #flush()}, before this method returns.
+	 * </p>
+	 *
+	 * @param outputDirectory Root directory of the generated site
+	 * @param contentSelector CSS selector of the element of the pages to convert (e.g. "#bodyColumn");
+	 *        if null or empty, or if no element matches, the whole body is converted
+	 * @param publishDate The publication date of the documents (see
+	 *        {@link #convertToMarkdown(String, String, Element, Element, Date, String)})
+	 * @param projectName Name of the project (used in the H1 header of llms.txt)
+	 * @param projectDescription Description of the project (used in the blockquote of llms.txt)
+	 * @param projectUrl The base URL of the project site (used to build canonical_url and
+	 *        the links of llms.txt); if null or empty, relative paths are used
+	 * @return the number of pages converted
+	 * @throws IOException when the site cannot be read, or the llms.txt or llms-full.txt files
+	 *         cannot be written
+	 */
+	public int convertSiteToMarkdown(
+			final String outputDirectory,
+			final String contentSelector,
+			final Date publishDate,
+			final String projectName,
+			final String projectDescription,
+			final String projectUrl) throws IOException {
+
+		Path siteDirectory = Paths.get(outputDirectory).toAbsolutePath().normalize();
+		List<Path> pages;
+		try (Stream<Path> files = Files.walk(siteDirectory)) {
+			pages = files
+					.filter(file -> file.getFileName().toString().endsWith(".html") && Files.isRegularFile(file))
+					.collect(Collectors.toList());
+		}
+
+		// Keep the pages in the sections where they are already listed
+		Path llmsTxtPath = siteDirectory.resolve(LLMS_TXT);
+		Map<String, String> sections = new HashMap<>();
+		for (Map.Entry<String, List<LinkEntry>> section : readLlmsTxt(llmsTxtPath).getSections().entrySet()) {
+			for (LinkEntry entry : section.getValue()) {
+				sections.putIfAbsent(entry.getPath(), section.getKey());
+			}
+		}
+
+		// Parse and convert the pages on the common fork-join pool
+		AtomicInteger converted = new AtomicInteger();
+		pages.parallelStream().forEach(page -> {
+			String docPath = siteDirectory.relativize(page).toString().replace('\\', '/');
+			try {
+				// Don't parse the pages that cannot link to their Markdown version
+				String html = new String(Files.readAllBytes(page), UTF8_CHARSET);
+				if (!html.contains(MARKDOWN_MEDIA_TYPE)) {
+					return;
+				}
+				Document document = Jsoup.parse(html);
+				if (document.head().selectFirst("link[rel=alternate][type=" + MARKDOWN_MEDIA_TYPE + "]") == null) {
+					return;
+				}
+
+				Element content = null;
+				if (contentSelector != null && !contentSelector.isEmpty()) {
+					content = document.selectFirst(contentSelector);
+				}
+				if (content == null) {
+					content = document.body();
+				}
+				String link = convertToMarkdown(
+						siteDirectory.toString(),
+						docPath,
+						document.head(),
+						content,
+						publishDate,
+						projectUrl,
+						true);
+				if (link.isEmpty()) {
+					return;
+				}
+
+				// Whatever the deferredWrites property, llms.txt is written once, by flush() below
+				String title = document.title();
+				queueLlmsTxtUpdate(
+						llmsTxtPath.toString(),
+						docPath,
+						title.isEmpty() ? null : title,
+						projectName,
+						projectDescription,
+						sections.get(getLlmsTxtLink(docPath, projectUrl)),
+						projectUrl);
+				converted.incrementAndGet();
+
+			} catch (IOException e) {
+				getLog().error("AIIndexTool: Failed to read {}: {}", page, e.getMessage());
+			}
+		});
+
+		flush();
+		return converted.get();
+	}
+
+	/**
+	 * Merges the updates made with
+	 * {@link #updateLlmsTxt(String, String, String, String, String, String, String)}
+	 * that are not written yet into the llms.txt files.
+	 * <p>
+	 * With the {@code deferredWrites} tool property, this method must be called at the end of the
+	 * build, once all the pages of the site have been generated.
+	 * </p>
+	 * <p>
+	 * Each llms.txt file is locked, read again and written with the updates, so that the entries
+	 * written by other JVMs sharing the same file in the meantime are preserved.
+	 * </p>
+	 * <p>
+	 * The llms-full.txt files of the sites with pages converted since the previous flush (with the
+	 * {@code deferredWrites} tool property, or by
+	 * {@link #convertSiteToMarkdown(String, String, Date, String, String, String)}) are then
+	 * written, with the Markdown of the pages in the order of their llms.txt file, and the hashes
+	 * of the pages that no longer exist are removed from the manifest of the site, so that the
+	 * next build starts from the manifest file.
+	 * </p>
+	 * <p>
+	 * This method is thread-safe.
+	 * </p>
+	 *
+	 * @throws IOException when one of the llms.txt or llms-full.txt files cannot be written
+	 *         (the other files are written anyway)
+	 */
+	public void flush() throws IOException {
+		IOException firstError = null;
+		Map<Path, LlmsTxtContent> mergedContents = new HashMap<>();
+		for (Path path : PENDING_LLMS_TXT_UPDATES.keySet()) {
+			try {
+				LlmsTxtContent content = flushLlmsTxt(path);
+				if (content != null) {
+					mergedContents.put(path, content);
+				}
+			} catch (IOException e) {
+				getLog().error("AIIndexTool: Failed to write llms.txt at {}: {}", path, e.getMessage());
+				if (firstError == null) {
+					firstError = e;
 				}
 			}
-			if (!found) {
-				sectionEntries.add(new LinkEntry(title, linkPath));
+		}
+
+		for (Map.Entry<Path, MarkdownSpool> spoolEntry : MARKDOWN_SPOOLS.entrySet()) {
+			MarkdownSpool spool = spoolEntry.getValue();
+			Path llmsFullTxtPath = spoolEntry.getKey().resolve(LLMS_FULL_TXT);
+			synchronized (spool) {
+				if (!spool.takeModified()) {
+					continue;
+				}
+				try {
+					if (!Files.isDirectory(spoolEntry.getKey())) {
+						// The site has been deleted in the meantime
+						MARKDOWN_SPOOLS.remove(spoolEntry.getKey(), spool);
+						MARKDOWN_MANIFESTS.remove(spoolEntry.getKey());
+						spool.close();
+						continue;
+					}
+					Path llmsTxtPath = spoolEntry.getKey().resolve(LLMS_TXT);
+					LlmsTxtContent content = mergedContents.get(llmsTxtPath);
+					if (content == null) {
+						content = readLlmsTxt(llmsTxtPath);
+					}
+					writeLlmsFullTxt(llmsFullTxtPath, content, spool);
+
+					// Forget the pages that no longer exist
+					IndexManifest manifest = MARKDOWN_MANIFESTS.get(spoolEntry.getKey());
+					if (manifest != null) {
+						manifest.removeUnseen();
+						manifest.write(llmsFullTxtPath);
+						MARKDOWN_MANIFESTS.remove(spoolEntry.getKey(), manifest);
+					}
+
+					// Drop the previous versions of the pages converted again
+					spool.compact();
+				} catch (IOException e) {
+					getLog().error("AIIndexTool: Failed to write llms-full.txt at {}: {}", llmsFullTxtPath, e.getMessage());
+					if (firstError == null) {
+						firstError = e;
+					}
+				}
 			}
+		}
 
-			// Ensure parent directories exist
-			Path parentDir = path.getParent();
-			if (parentDir != null) {
-				Files.createDirectories(parentDir);
+		if (firstError != null) {
+			throw firstError;
+		}
+	}
+
+	/**
+	 * Merges the pending updates of the specified llms.txt file into the file.
+	 * <p>
+	 * The updates are discarded only once they have been written, so that they are written again
+	 * with the next update or flush if the file cannot be written.
+	 * </p>
+	 *
+	 * @param path Normalized absolute path to the llms.txt file
+	 * @return the merged content, or null if there was no pending update (e.g. already flushed by
+	 *         another thread)
+	 * @throws IOException when the file cannot be read or written
+	 */
+	private LlmsTxtContent flushLlmsTxt(final Path path) throws IOException {
+		synchronized (getLlmsTxtLock(path)) {
+			LlmsTxtContent updates = PENDING_LLMS_TXT_UPDATES.get(path);
+			if (updates == null) {
+				return null;
 			}
+			LlmsTxtContent content = mergeLlmsTxt(path, updates);
+			PENDING_LLMS_TXT_UPDATES.remove(path, updates);
+			return content;
+		}
+	}
 
-			// Write the updated content
-			Helper.writeText(path.toFile(), buildLlmsTxt(content), UTF8_CHARSET);
+	/**
+	 * Makes sure that the llms.txt and llms-full.txt files will be written when the JVM shuts down
+	 */
+	private void registerShutdownHook() {
+		if (SHUTDOWN_HOOK_REGISTERED.compareAndSet(false, true)) {
+			Runtime.getRuntime().addShutdownHook(new Thread(this::flushQuietly, "AIIndexTool-flush"));
+		}
+	}
 
-		} catch (Exception e) {
-			// Log error but don't interrupt the site generation
-			getLog().error("AIIndexTool: Failed to update llms.txt at {}: {}", llmsTxtPath, e.getMessage());
+	/**
+	 * Converts an HTML element to a Markdown file, unless the file already has this content, so
+	 * that its time of last modification is kept.
+	 * <p>
+	 * The Markdown is written as it is produced, with the system line separator, to a temporary
+	 * file, which then replaces the Markdown file if they differ.
+	 * </p>
+	 *
+	 * @param markdownPath Path to the Markdown file
+	 * @param frontmatterBlock Frontmatter block at the beginning of the file
+	 * @param bodyElement The HTML element to convert
+	 * @return whether the Markdown file has been written
+	 * @throws IOException when the Markdown file cannot be written
+	 */
+	private static boolean writeMarkdown(
+			final Path markdownPath,
+			final String frontmatterBlock,
+			final Element bodyElement) throws IOException {
+
+		// Ensure parent directories exist
+		Path parentDir = markdownPath.toAbsolutePath().getParent();
+		Files.createDirectories(parentDir);
+
+		Path tempPath = Files.createTempFile(parentDir, markdownPath.getFileName() + "-", ".tmp");
+		try {
+			try (Writer writer = new LineSeparatorWriter(Files.newBufferedWriter(tempPath, UTF8_CHARSET))) {
+				writer.write(frontmatterBlock);
+				HtmlToMarkdownConverter.convert(bodyElement, writer);
+			}
+
+			if (Files.isRegularFile(markdownPath) && Files.mismatch(markdownPath, tempPath) == -1) {
+				return false;
+			}
+			try {
+				Files.move(tempPath, markdownPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempPath, markdownPath, StandardCopyOption.REPLACE_EXISTING);
+			}
+			return true;
+		} finally {
+			Files.deleteIfExists(tempPath);
+		}
+	}
+
+	/**
+	 * @param file Path to a file
+	 * @param prefix Expected first bytes of the file
+	 * @return whether the specified file exists and starts with the specified bytes
+	 * @throws IOException when the file cannot be read
+	 */
+	private static boolean startsWith(final Path file, final byte[] prefix) throws IOException {
+		if (!Files.isRegularFile(file)) {
+			return false;
+		}
+		try (InputStream in = Files.newInputStream(file)) {
+			return Arrays.equals(in.readNBytes(prefix.length), prefix);
+		}
+	}
+
+	/**
+	 * @param customConversion Whether custom element converters are registered
+	 * @return what identifies the conversion to Markdown in the hash of the pages, so that the
+	 *         pages are converted again when it changes
+	 */
+	static String getMarkdownConversionKey(final boolean customConversion) {
+		return "markdown " + MARKDOWN_CONVERSION_VERSION + (customConversion ? " custom" : "");
+	}
+
+	/**
+	 * @param siteDirectory Normalized absolute path of the root directory of the site
+	 * @return the hashes of the pages of the specified site that have been converted to Markdown
+	 *         (previous builds included)
+	 * @throws IOException when the manifest file cannot be read
+	 */
+	private static IndexManifest getMarkdownManifest(final Path siteDirectory) throws IOException {
+		IndexManifest manifest = MARKDOWN_MANIFESTS.get(siteDirectory);
+		if (manifest == null) {
+			synchronized (MARKDOWN_MANIFESTS) {
+				manifest = MARKDOWN_MANIFESTS.get(siteDirectory);
+				if (manifest == null) {
+					// Each Markdown file is checked before being skipped, even without llms-full.txt
+					manifest = IndexManifest.loadIgnoringIndex(siteDirectory.resolve(LLMS_FULL_TXT), null);
+					MARKDOWN_MANIFESTS.put(siteDirectory, manifest);
+				}
+			}
+		}
+		return manifest;
+	}
+
+	/**
+	 * @param outputDirectory Root directory of the site
+	 * @return the spool with the Markdown of the pages of the specified site
+	 * @throws IOException when the spool cannot be created
+	 */
+	private static MarkdownSpool getMarkdownSpool(final Path outputDirectory) throws IOException {
+		Path key = outputDirectory.toAbsolutePath().normalize();
+		MarkdownSpool spool = MARKDOWN_SPOOLS.get(key);
+		if (spool == null) {
+			synchronized (MARKDOWN_SPOOLS) {
+				spool = MARKDOWN_SPOOLS.get(key);
+				if (spool == null) {
+					spool = new MarkdownSpool();
+					MARKDOWN_SPOOLS.put(key, spool);
+				}
+			}
+		}
+		return spool;
+	}
+
+	/**
+	 * Writes the llms.txt files and logs errors instead of throwing them (for the shutdown hook)
+	 */
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (IOException e) {
+			// Already logged
+		}
+	}
+
+	/**
+	 * @param path Normalized absolute path to an llms.txt file
+	 * @return the lock that guards the pending updates of the specified llms.txt file
+	 */
+	private static Object getLlmsTxtLock(final Path path) {
+		return LLMS_TXT_LOCKS[Math.floorMod(path.hashCode(), LLMS_TXT_LOCK_COUNT)];
+	}
+
+	/**
+	 * Merges the specified updates into the specified llms.txt file (which is created if needed),
+	 * while holding an exclusive lock on the file.
+	 *
+	 * @param path Path to the llms.txt file
+	 * @param updates Updates to merge into the file
+	 * @return the merged content
+	 * @throws IOException when the file cannot be read or written
+	 */
+	private LlmsTxtContent mergeLlmsTxt(final Path path, final LlmsTxtContent updates) throws IOException {
+
+		// Ensure parent directories exist
+		Path parentDir = path.getParent();
+		if (parentDir != null) {
+			Files.createDirectories(parentDir);
+		}
+
+		try (FileChannel channel = FileChannel.open(
+				path,
+				StandardOpenOption.CREATE,
+				StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+
+			// The lock is released when the channel is closed
+			lockLlmsTxt(channel, path, false);
+
+			// Read the current content, which may have been updated by another JVM
+			LlmsTxtContent content = readLlmsTxt(channel);
+
+			// Apply the updates
+			if (!updates.getProjectName().isEmpty()) {
+				content.setProjectName(updates.getProjectName());
+			}
+			if (!updates.getProjectDescription().isEmpty()) {
+				content.setProjectDescription(updates.getProjectDescription());
+			}
+			for (Map.Entry<String, List<LinkEntry>> section : updates.getSections().entrySet()) {
+				for (LinkEntry entry : section.getValue()) {
+					content.putEntry(section.getKey(), entry.getTitle(), entry.getPath());
+				}
+			}
+
+			// Write the result using system line separator (like Helper.writeText())
+			channel.truncate(0);
+			channel.position(0);
+			BufferedWriter writer = new BufferedWriter(Channels.newWriter(channel, UTF8_CHARSET.newEncoder(), -1));
+			try (BufferedReader reader = new BufferedReader(new StringReader(buildLlmsTxt(content)))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					writer.write(line);
+					writer.newLine();
+				}
+			}
+			writer.flush();
+
+			return content;
+		}
+	}
+
+	/**
+	 * Reads and parses the specified llms.txt file, while holding a shared lock on it
+	 *
+	 * @param path Path to the llms.txt file
+	 * @return Parsed content structure, empty if the file doesn't exist
+	 * @throws IOException when the file cannot be read
+	 */
+	private LlmsTxtContent readLlmsTxt(final Path path) throws IOException {
+		if (!Files.exists(path)) {
+			return new LlmsTxtContent();
+		}
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			lockLlmsTxt(channel, path, true);
+			return readLlmsTxt(channel);
+		}
+	}
+
+	/**
+	 * Reads and parses an llms.txt file from the beginning of the specified channel
+	 *
+	 * @param channel Channel opened for reading on the llms.txt file
+	 * @return Parsed content structure
+	 * @throws IOException when the file cannot be read
+	 */
+	private LlmsTxtContent readLlmsTxt(final FileChannel channel) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+		while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {
+			// Keep reading
+		}
+		buffer.flip();
+		return parseLlmsTxt(UTF8_CHARSET.decode(buffer).toString());
+	}
+
+	/**
+	 * Writes the llms-full.txt file of a site, with the Markdown of its pages in the order of
+	 * its llms.txt file. The pages that are not listed in llms.txt are added to the
+	 * default section.
+	 *
+	 * @param path Path to the llms-full.txt file
+	 * @param content Content of the llms.txt file of the site
+	 * @param spool Markdown of the pages of the site
+	 * @throws IOException when the file cannot be written
+	 */
+	private void writeLlmsFullTxt(final Path path, final LlmsTxtContent content, final MarkdownSpool spool)
+			throws IOException {
+
+		// Source link of each page, per section, in the order of llms.txt
+		Map<String, Map<String, String>> pagesPerSection = new LinkedHashMap<>();
+		Set<String> listedPages = new HashSet<>();
+		for (Map.Entry<String, List<LinkEntry>> section : content.getSections().entrySet()) {
+			Map<String, String> sectionPages = new LinkedHashMap<>();
+			for (LinkEntry entry : section.getValue()) {
+				String page = spool.resolve(entry.getPath());
+				if (page != null && listedPages.add(page)) {
+					sectionPages.put(page, entry.getPath());
+				}
+			}
+			pagesPerSection.put(section.getKey(), sectionPages);
+		}
+		for (String page : spool.getPaths()) {
+			if (!listedPages.contains(page)) {
+				pagesPerSection.computeIfAbsent(DEFAULT_SECTION, k -> new LinkedHashMap<>()).put(page, page);
+			}
+		}
+
+		// Same header as llms.txt
+		LlmsTxtContent header = new LlmsTxtContent();
+		header.setProjectName(content.getProjectName());
+		header.setProjectDescription(content.getProjectDescription());
+
+		try (FileChannel channel = FileChannel.open(
+				path,
+				StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+
+			writeString(channel, buildLlmsTxt(header));
+			for (Map.Entry<String, Map<String, String>> section : pagesPerSection.entrySet()) {
+				if (section.getValue().isEmpty()) {
+					continue;
+				}
+				writeString(channel, "\n## " + section.getKey() + "\n");
+				for (Map.Entry<String, String> page : section.getValue().entrySet()) {
+					writeString(channel, "\nSource: " + page.getValue() + "\n\n");
+					spool.transferTo(page.getKey(), channel);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes a string to the specified channel, in UTF-8 and with the system line separator
+	 *
+	 * @param channel Channel to write to
+	 * @param text Text to write
+	 * @throws IOException when the channel cannot be written
+	 */
+	private static void writeString(final FileChannel channel, final String text) throws IOException {
+		ByteBuffer buffer = UTF8_CHARSET.encode(Helper.toSystemLineSeparators(text));
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * Acquires a lock on the specified llms.txt file, waiting for other JVMs, and other
+	 * class loaders of this JVM, to release it.
+	 *
+	 * @param channel Channel opened on the llms.txt file (for writing if the lock is exclusive,
+	 *        for reading if it is shared)
+	 * @param path Path to the llms.txt file (for error messages)
+	 * @param shared Whether to acquire a shared lock, instead of an exclusive one
+	 * @return the lock
+	 * @throws IOException when the file cannot be locked
+	 */
+	private static FileLock lockLlmsTxt(final FileChannel channel, final Path path, final boolean shared)
+			throws IOException {
+		while (true) {
+			try {
+				return channel.lock(0L, Long.MAX_VALUE, shared);
+			} catch (OverlappingFileLockException e) {
+				// Already locked within this JVM (by a copy of this class loaded by another class
+				// loader), channel.lock() doesn't wait in this case
+				try {
+					Thread.sleep(FILE_LOCK_RETRY_DELAY);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for the lock on " + path);
+				}
+			}
 		}
 	}
 
@@ -472,6 +1251,44 @@ public class AIIndexTool extends SafeConfig {
 		private String projectDescription = "";
 		private Map<String, List<LinkEntry>> sections = new LinkedHashMap<>();
 
+		/**
+		 * Entries of each section, per link path, built when the section is first updated with
+		 * putEntry()
+		 */
+		private Map<String, Map<String, LinkEntry>> entryIndex = new HashMap<>();
+
+		/**
+		 * Updates the title of the entry with the specified path in the specified section, or
+		 * adds a new entry at the end of the section (which is created if needed).
+		 *
+		 * @param section Name of the section
+		 * @param title Title of the entry
+		 * @param path Path of the entry
+		 */
+		void putEntry(final String section, final String title, final String path) {
+			Map<String, LinkEntry> sectionIndex = entryIndex.computeIfAbsent(section, this::indexSection);
+			LinkEntry entry = sectionIndex.get(path);
+			if (entry != null) {
+				entry.setTitle(title);
+			} else {
+				entry = new LinkEntry(title, path);
+				sections.computeIfAbsent(section, k -> new ArrayList<>()).add(entry);
+				sectionIndex.put(path, entry);
+			}
+		}
+
+		/**
+		 * @param section Name of the section
+		 * @return the entries of the section, per path (the first one if a path is duplicated)
+		 */
+		private Map<String, LinkEntry> indexSection(final String section) {
+			Map<String, LinkEntry> sectionIndex = new HashMap<>();
+			for (LinkEntry entry : sections.getOrDefault(section, Collections.emptyList())) {
+				sectionIndex.putIfAbsent(entry.getPath(), entry);
+			}
+			return sectionIndex;
+		}
+
 		String getProjectName() {
 			return projectName;
 		}
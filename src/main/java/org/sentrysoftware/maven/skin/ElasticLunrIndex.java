@@ -0,0 +1,1224 @@
+package org.sentrysoftware.maven.skin;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Sentry Maven Skin Tools
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2017 - 2026 Sentry Software
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Pure Java implementation of an elasticlunr.js 0.9.5 index (document store and inverted
+ * indexes), which is serialized to the same JSON as {@code JSON.stringify(index)} in
+ * Javascript.
+ * <p>
+ * This avoids running elasticlunr.js in GraalVM's Javascript interpreter. The resulting JSON is
+ * loaded in the browser with {@code elasticlunr.Index.load(indexJson)}, as usual.
+ * </p>
+ * <p>
+ * Javascript objects are represented with {@link LinkedHashMap} instances, and serialized with
+ * the property order of Javascript: integer-like keys first in ascending order, then the other
+ * keys in insertion order.
+ * </p>
+ */
+final class ElasticLunrIndex implements SearchIndex {
+
+	/**
+	 * Version of elasticlunr.js whose serialization format is implemented here
+	 */
+	static final String VERSION = "0.9.5";
+
+	/**
+	 * Fields of the indexes created by IndexTool (same as in build-index.js)
+	 */
+	private static final List<String> DEFAULT_FIELDS = Collections
+			.unmodifiableList(Arrays.asList("title", "body", "keywords"));
+
+	/**
+	 * Reference field of the indexes created by IndexTool
+	 */
+	private static final String DEFAULT_REF = "id";
+
+	/**
+	 * Largest array index in Javascript (2^32 - 2)
+	 */
+	private static final long MAX_ARRAY_INDEX = 4294967294L;
+
+	/**
+	 * Number of significant digits that is always enough to represent a double exactly
+	 */
+	private static final int MAX_DOUBLE_DIGITS = 17;
+
+	/**
+	 * Numbers greater than this are serialized with an exponent in Javascript
+	 */
+	private static final double MAX_PLAIN_NUMBER = 1e21;
+
+	private final List<String> fields;
+	private final String ref;
+	private final ElasticLunrPipeline pipeline;
+	private final Map<String, Object> docs;
+	private final Map<String, Map<String, Object>> docInfo;
+	private int length;
+	private final Object save;
+	private final Map<String, Node> index;
+
+	/**
+	 * Normalized absolute path of the index file this index has been loaded from (or written
+	 * to), null if none
+	 */
+	private Path sourcePath;
+
+	/**
+	 * Names of the external documents and shard files listed in the index file at sourcePath,
+	 * to delete the ones that are no longer needed when it is written again
+	 */
+	private final Set<String> siblingFileNames = new LinkedHashSet<>();
+
+	/**
+	 * Creates an index with the specified structure
+	 *
+	 * @param fields Indexed fields
+	 * @param ref Reference field
+	 * @param pipeline Pipeline functions
+	 * @param save Whether the documents are stored in the index (normally a Boolean)
+	 */
+	private ElasticLunrIndex(
+			final List<String> fields,
+			final String ref,
+			final ElasticLunrPipeline pipeline,
+			final Object save) {
+		this.fields = fields;
+		this.ref = ref;
+		this.pipeline = pipeline;
+		this.save = save;
+		this.docs = new LinkedHashMap<>();
+		this.docInfo = new LinkedHashMap<>();
+		this.index = new LinkedHashMap<>();
+	}
+
+	/**
+	 * Creates an empty index with the same settings as build-index.js: "title", "body" and
+	 * "keywords" fields, "id" reference, and documents saved in the index.
+	 *
+	 * @return a new empty index
+	 */
+	static ElasticLunrIndex create() {
+		ElasticLunrIndex newIndex = new ElasticLunrIndex(
+				DEFAULT_FIELDS,
+				DEFAULT_REF,
+				new ElasticLunrPipeline(ElasticLunrPipeline.DEFAULT_PIPELINE),
+				Boolean.TRUE);
+		for (String field : DEFAULT_FIELDS) {
+			newIndex.index.put(field, new Node());
+		}
+		return newIndex;
+	}
+
+	/**
+	 * Loads the specified index file, like {@code elasticlunr.Index.load(JSON.parse(indexJson))}.
+	 * <p>
+	 * The external documents and shard files of an index written with a non-default
+	 * {@link IndexFormat} are loaded as well.
+	 * </p>
+	 *
+	 * @param indexPath Path to the JSON-serialized index
+	 * @return the loaded index, or a new empty index if the file doesn't exist or is empty
+	 * @throws IOException when the files cannot be read or are not a valid elasticlunr.js index
+	 */
+	static ElasticLunrIndex load(final Path indexPath) throws IOException {
+		if (!Files.exists(indexPath)) {
+			return create();
+		}
+		return load(readString(indexPath), indexPath);
+	}
+
+	/**
+	 * Loads the specified JSON-serialized index, like
+	 * {@code elasticlunr.Index.load(JSON.parse(indexJson))}
+	 *
+	 * @param indexJson JSON-serialized index
+	 * @return the loaded index, or a new empty index if indexJson is null or empty
+	 * @throws IOException when the JSON is not a valid elasticlunr.js index
+	 */
+	static ElasticLunrIndex load(final String indexJson) throws IOException {
+		return load(indexJson, null);
+	}
+
+	/**
+	 * Loads the specified JSON-serialized index, and its external documents and shard files
+	 *
+	 * @param indexJson JSON-serialized index
+	 * @param indexPath Path to the index file, to locate its external documents and shard files
+	 *        (null if there is no file)
+	 * @return the loaded index, or a new empty index if indexJson is null or empty
+	 * @throws IOException when the JSON is not a valid elasticlunr.js index
+	 */
+	@SuppressWarnings("unchecked")
+	private static ElasticLunrIndex load(final String indexJson, final Path indexPath) throws IOException {
+		if (indexJson == null || indexJson.isEmpty()) {
+			return create();
+		}
+		try {
+			Map<String, Object> json = (Map<String, Object>) new JsonReader(indexJson).readDocument();
+			Map<String, Object> documentStore = (Map<String, Object>) json.get("documentStore");
+			String documentsFileName = (String) json.get("documents");
+			Map<String, Object> shardFileNames = (Map<String, Object>) json.get("shards");
+			if ((documentsFileName != null || shardFileNames != null) && indexPath == null) {
+				throw new IOException("Index with external files can only be loaded from a file");
+			}
+
+			// With external documents, the documents are saved, but not in the main index file
+			ElasticLunrIndex loadedIndex = new ElasticLunrIndex(
+					new ArrayList<>((List<String>) json.get("fields")),
+					(String) json.get("ref"),
+					new ElasticLunrPipeline((List<String>) json.get("pipeline")),
+					documentsFileName != null ? Boolean.TRUE : documentStore.get("save"));
+			if (indexPath != null) {
+				loadedIndex.sourcePath = indexPath.toAbsolutePath().normalize();
+			}
+
+			loadedIndex.docs.putAll((Map<String, Object>) documentStore.get("docs"));
+			if (documentsFileName != null) {
+				loadedIndex.docs.putAll((Map<String, Object>) readJson(indexPath.resolveSibling(documentsFileName)));
+				loadedIndex.siblingFileNames.add(documentsFileName);
+			}
+			for (Map.Entry<String, Object> info : ((Map<String, Object>) documentStore.get("docInfo")).entrySet()) {
+				loadedIndex.docInfo.put(info.getKey(), (Map<String, Object>) info.getValue());
+			}
+			loadedIndex.length = ((Number) documentStore.get("length")).intValue();
+
+			for (Map.Entry<String, Object> field : ((Map<String, Object>) json.get("index")).entrySet()) {
+				Map<String, Object> invertedIndex = (Map<String, Object>) field.getValue();
+				loadedIndex.index.put(field.getKey(), Node.load((Map<String, Object>) invertedIndex.get("root")));
+			}
+
+			// Attach the subtree of each first character, in each field
+			if (shardFileNames != null) {
+				for (Map.Entry<String, Object> shardFileName : shardFileNames.entrySet()) {
+					char firstCharacter = shardFileName.getKey().charAt(0);
+					Map<String, Object> shard = (Map<String, Object>) readJson(
+							indexPath.resolveSibling((String) shardFileName.getValue()));
+					loadedIndex.siblingFileNames.add((String) shardFileName.getValue());
+					for (Map.Entry<String, Object> field : shard.entrySet()) {
+						loadedIndex.index
+								.computeIfAbsent(field.getKey(), k -> new Node()).children
+								.put(firstCharacter, Node.load((Map<String, Object>) field.getValue()));
+					}
+				}
+			}
+
+			return loadedIndex;
+
+		} catch (ClassCastException | NullPointerException | IllegalArgumentException e) {
+			throw new IOException("Invalid elasticlunr.js index: " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void updateDocument(final String id, final String title, final String keywords, final String body) {
+		Map<String, Object> doc = new LinkedHashMap<>();
+		doc.put("id", id);
+		doc.put("title", title);
+		doc.put("keywords", keywords);
+		doc.put("body", body);
+		updateDoc(doc);
+	}
+
+	@Override
+	public void removeDocument(final String id) {
+		removeDocByRef(toJsString(id));
+	}
+
+	/**
+	 * elasticlunr.Index.prototype.updateDoc: removes the document with the same reference, if
+	 * any, and adds the specified document
+	 *
+	 * @param doc The document to add
+	 */
+	void updateDoc(final Map<String, Object> doc) {
+		removeDocByRef(toJsString(doc.get(ref)));
+		addDoc(doc);
+	}
+
+	/**
+	 * elasticlunr.Index.prototype.addDoc
+	 *
+	 * @param doc The document to add
+	 */
+	private void addDoc(final Map<String, Object> doc) {
+		String docRef = toJsString(doc.get(ref));
+
+		// Document store
+		if (!docs.containsKey(docRef)) {
+			length++;
+		}
+		docs.put(docRef, Boolean.TRUE.equals(save) ? new LinkedHashMap<>(doc) : null);
+
+		for (String field : fields) {
+			List<String> tokens = pipeline.run(tokenize(doc.get(field)));
+			docInfo.computeIfAbsent(docRef, k -> new LinkedHashMap<>()).put(field, tokens.size());
+
+			// Term frequencies, in the order in which a Javascript object would enumerate them
+			Map<String, Integer> termCounts = new LinkedHashMap<>();
+			for (String token : tokens) {
+				termCounts.merge(token, 1, Integer::sum);
+			}
+			Node root = index.computeIfAbsent(field, k -> new Node());
+			for (String token : jsKeyOrder(termCounts.keySet())) {
+				root.addToken(token, docRef, Math.sqrt(termCounts.get(token)));
+			}
+		}
+	}
+
+	/**
+	 * elasticlunr.Index.prototype.removeDocByRef
+	 *
+	 * @param docRef Reference of the document to remove
+	 */
+	void removeDocByRef(final String docRef) {
+		if (docRef.isEmpty() || Boolean.FALSE.equals(save) || !docs.containsKey(docRef)) {
+			return;
+		}
+		Object storedDoc = docs.get(docRef);
+		if (!(storedDoc instanceof Map)) {
+			return;
+		}
+		Map<?, ?> doc = (Map<?, ?>) storedDoc;
+
+		docs.remove(docRef);
+		docInfo.remove(docRef);
+		length--;
+
+		for (String field : fields) {
+			Node root = index.get(field);
+			if (root == null) {
+				continue;
+			}
+			for (String token : pipeline.run(tokenize(doc.get(field)))) {
+				root.removeToken(token, docRef);
+			}
+		}
+	}
+
+	/**
+	 * Adds all the documents of the specified index to this index, replacing the documents with
+	 * the same reference, as if they had been added with updateDoc() after the documents of this
+	 * index. Both indexes must use the same pipeline.
+	 * <p>
+	 * This is how the partial indexes built in parallel are combined, without running the
+	 * documents through the pipeline again.
+	 * </p>
+	 *
+	 * @param other Index whose documents are added (it must not be modified afterwards)
+	 */
+	void merge(final ElasticLunrIndex other) {
+		for (String docRef : other.docs.keySet()) {
+			removeDocByRef(docRef);
+		}
+
+		// Document store
+		for (Map.Entry<String, Object> doc : other.docs.entrySet()) {
+			if (!docs.containsKey(doc.getKey())) {
+				length++;
+			}
+			docs.put(doc.getKey(), doc.getValue());
+		}
+		docInfo.putAll(other.docInfo);
+
+		// Inverted indexes
+		for (Map.Entry<String, Node> field : other.index.entrySet()) {
+			index.computeIfAbsent(field.getKey(), k -> new Node()).merge(field.getValue());
+		}
+	}
+
+	/**
+	 * @return the number of documents in the index
+	 */
+	int getLength() {
+		return length;
+	}
+
+	/**
+	 * @param file Path to a JSON file
+	 * @return the content of the file
+	 * @throws IOException when the file cannot be read
+	 */
+	private static String readString(final Path file) throws IOException {
+		return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param file Path to a JSON file
+	 * @return the parsed content of the file
+	 * @throws IOException when the file cannot be read or parsed
+	 */
+	private static Object readJson(final Path file) throws IOException {
+		return new JsonReader(readString(file)).readDocument();
+	}
+
+	@Override
+	public void write(final Path indexPath, final IndexFormat format) throws IOException {
+
+		// Documents
+		final String documentsFileName;
+		if (format.isExternalDocuments()) {
+			documentsFileName = IndexFormat.getDocumentsFileName(indexPath);
+			writeFile(indexPath.resolveSibling(documentsFileName), format, out -> writeValue(docs, out));
+		} else {
+			documentsFileName = null;
+		}
+
+		// Shards, per first character of the terms
+		final Map<String, Object> shardFileNames;
+		if (format.isSharded()) {
+			shardFileNames = new LinkedHashMap<>();
+			for (Node root : index.values()) {
+				for (Character firstCharacter : root.children.keySet()) {
+					shardFileNames
+							.computeIfAbsent(
+									String.valueOf(firstCharacter),
+									k -> IndexFormat.getShardFileName(indexPath, firstCharacter));
+				}
+			}
+			for (Map.Entry<String, Object> shardFileName : shardFileNames.entrySet()) {
+				char firstCharacter = shardFileName.getKey().charAt(0);
+				writeFile(
+						indexPath.resolveSibling((String) shardFileName.getValue()),
+						format,
+						out -> writeShardJson(firstCharacter, out));
+			}
+		} else {
+			shardFileNames = null;
+		}
+
+		// Main index file
+		writeFile(indexPath, format, out -> writeJson(out, documentsFileName, shardFileNames));
+
+		// Delete the files that the main index file no longer lists, once it no longer lists them
+		Set<String> writtenFileNames = new LinkedHashSet<>();
+		if (documentsFileName != null) {
+			writtenFileNames.add(documentsFileName);
+		}
+		if (shardFileNames != null) {
+			for (Object shardFileName : shardFileNames.values()) {
+				writtenFileNames.add((String) shardFileName);
+			}
+		}
+		Path normalizedIndexPath = indexPath.toAbsolutePath().normalize();
+		if (normalizedIndexPath.equals(sourcePath)) {
+			for (String siblingFileName : siblingFileNames) {
+				if (!writtenFileNames.contains(siblingFileName)) {
+					Files.deleteIfExists(indexPath.resolveSibling(siblingFileName));
+					Files.deleteIfExists(indexPath.resolveSibling(siblingFileName + IndexFormat.GZIP_EXTENSION));
+				}
+			}
+		}
+		if (!format.isGzip()) {
+			Files.deleteIfExists(indexPath.resolveSibling(indexPath.getFileName() + IndexFormat.GZIP_EXTENSION));
+			for (String writtenFileName : writtenFileNames) {
+				Files.deleteIfExists(indexPath.resolveSibling(writtenFileName + IndexFormat.GZIP_EXTENSION));
+			}
+		}
+		sourcePath = normalizedIndexPath;
+		siblingFileNames.clear();
+		siblingFileNames.addAll(writtenFileNames);
+	}
+
+	/**
+	 * Writes the specified JSON content to the specified file, and its compressed sibling if
+	 * required by the format
+	 *
+	 * @param file Path to the file to write
+	 * @param format Format of the index
+	 * @param content Writes the JSON content
+	 * @throws IOException when the file cannot be written
+	 */
+	private static void writeFile(final Path file, final IndexFormat format, final JsonContent content)
+			throws IOException {
+		try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			content.writeTo(writer);
+		}
+		if (format.isGzip()) {
+			IndexFormat.writeGzipSibling(file);
+		}
+	}
+
+	/**
+	 * @return the JSON-serialized index, identical to {@code JSON.stringify(index)} in Javascript
+	 */
+	String toJson() {
+		StringBuilder json = new StringBuilder();
+		try {
+			writeJson(json);
+		} catch (IOException e) {
+			// Cannot happen with a StringBuilder
+			throw new IllegalStateException(e);
+		}
+		return json.toString();
+	}
+
+	/**
+	 * Writes the JSON-serialized index (elasticlunr.Index.prototype.toJSON)
+	 *
+	 * @param out Where to write the JSON
+	 * @throws IOException when writing fails
+	 */
+	void writeJson(final Appendable out) throws IOException {
+		writeJson(out, null, null);
+	}
+
+	/**
+	 * Writes the JSON-serialized index, possibly without its documents and the subtrees of the
+	 * inverted indexes, which are then written to separate files
+	 *
+	 * @param out Where to write the JSON
+	 * @param documentsFileName Name of the file with the documents, or null to include the
+	 *        documents in the index
+	 * @param shardFileNames Name of the shard file, per first character of the terms, or null to
+	 *        include the complete inverted indexes
+	 * @throws IOException when writing fails
+	 */
+	private void writeJson(final Appendable out, final String documentsFileName, final Map<String, Object> shardFileNames)
+			throws IOException {
+		out.append("{\"version\":");
+		writeString(VERSION, out);
+		out.append(",\"fields\":");
+		writeValue(fields, out);
+		out.append(",\"ref\":");
+		writeValue(ref, out);
+
+		// External documents are replaced with null, as with saveDocument(false)
+		out.append(",\"documentStore\":{\"docs\":");
+		if (documentsFileName == null) {
+			writeValue(docs, out);
+		} else {
+			Map<String, Object> docRefs = new LinkedHashMap<>();
+			for (String docRef : docs.keySet()) {
+				docRefs.put(docRef, null);
+			}
+			writeValue(docRefs, out);
+		}
+		out.append(",\"docInfo\":");
+		writeValue(docInfo, out);
+		out.append(",\"length\":");
+		writeNumber(length, out);
+		out.append(",\"save\":");
+		writeValue(documentsFileName == null ? save : Boolean.FALSE, out);
+
+		out.append("},\"index\":{");
+		boolean first = true;
+		for (String field : jsKeyOrder(fields)) {
+			if (!first) {
+				out.append(',');
+			}
+			first = false;
+			writeString(field, out);
+			out.append(":{\"root\":");
+			index.computeIfAbsent(field, k -> new Node()).writeJson(out, shardFileNames == null);
+			out.append('}');
+		}
+		out.append("},\"pipeline\":");
+		writeValue(pipeline.getLabels(), out);
+
+		// Our own properties, ignored by elasticlunr.Index.load()
+		if (documentsFileName != null) {
+			out.append(",\"documents\":");
+			writeString(documentsFileName, out);
+		}
+		if (shardFileNames != null) {
+			out.append(",\"shards\":");
+			writeValue(shardFileNames, out);
+		}
+		out.append('}');
+	}
+
+	/**
+	 * Writes the shard of the specified first character: a JSON object with the subtree of this
+	 * character in the inverted index of each field
+	 *
+	 * @param firstCharacter First character of the terms in the shard
+	 * @param out Where to write the JSON
+	 * @throws IOException when writing fails
+	 */
+	private void writeShardJson(final char firstCharacter, final Appendable out) throws IOException {
+		out.append('{');
+		boolean first = true;
+		for (String field : jsKeyOrder(fields)) {
+			Node root = index.get(field);
+			Node subtree = root == null ? null : root.children.get(firstCharacter);
+			if (subtree != null) {
+				if (!first) {
+					out.append(',');
+				}
+				first = false;
+				writeString(field, out);
+				out.append(':');
+				subtree.writeJson(out, true);
+			}
+		}
+		out.append('}');
+	}
+
+	/**
+	 * elasticlunr.tokenizer, for any value of a document field
+	 *
+	 * @param value Value of the field
+	 * @return the tokens
+	 */
+	private static List<String> tokenize(final Object value) {
+		if (value instanceof List) {
+			List<String> values = new ArrayList<>();
+			for (Object item : (List<?>) value) {
+				values.add(item == null ? null : toJsString(item));
+			}
+			return ElasticLunrPipeline.tokenize(values);
+		}
+		return ElasticLunrPipeline.tokenize(value == null ? null : toJsString(value));
+	}
+
+	/**
+	 * @param value A value parsed from JSON
+	 * @return the value converted to a String, like {@code value.toString()} in Javascript
+	 */
+	private static String toJsString(final Object value) {
+		if (value instanceof Double) {
+			return formatNumber((Double) value);
+		}
+		if (value instanceof Map) {
+			return "[object Object]";
+		}
+		if (value instanceof List) {
+			List<?> items = (List<?>) value;
+			StringBuilder joined = new StringBuilder();
+			for (int i = 0; i < items.size(); i++) {
+				if (i > 0) {
+					joined.append(',');
+				}
+				joined.append(items.get(i) == null ? "" : toJsString(items.get(i)));
+			}
+			return joined.toString();
+		}
+		return String.valueOf(value);
+	}
+
+	/**
+	 * @param key Property name
+	 * @return whether the specified property name is an array index in Javascript (such
+	 *         properties are enumerated first, in ascending order)
+	 */
+	static boolean isArrayIndex(final String key) {
+		int keyLength = key.length();
+		if (keyLength == 0 || keyLength > 10 || keyLength > 1 && key.charAt(0) == '0') {
+			return false;
+		}
+		for (int i = 0; i < keyLength; i++) {
+			char c = key.charAt(i);
+			if (c < '0' || c > '9') {
+				return false;
+			}
+		}
+		return Long.parseLong(key) <= MAX_ARRAY_INDEX;
+	}
+
+	/**
+	 * @param keys Property names, in insertion order
+	 * @return the property names in the order a Javascript object enumerates them
+	 */
+	static List<String> jsKeyOrder(final Collection<String> keys) {
+		List<String> arrayIndexes = null;
+		List<String> ordered = new ArrayList<>(keys.size());
+		for (String key : keys) {
+			if (isArrayIndex(key)) {
+				if (arrayIndexes == null) {
+					arrayIndexes = new ArrayList<>();
+				}
+				arrayIndexes.add(key);
+			} else {
+				ordered.add(key);
+			}
+		}
+		if (arrayIndexes == null) {
+			return ordered;
+		}
+		arrayIndexes.sort((a, b) -> Long.compare(Long.parseLong(a), Long.parseLong(b)));
+		arrayIndexes.addAll(ordered);
+		return arrayIndexes;
+	}
+
+	/**
+	 * Writes the specified value as JSON, like {@code JSON.stringify()} in Javascript
+	 *
+	 * @param value String, Number, Boolean, List, Map or null
+	 * @param out Where to write the JSON
+	 * @throws IOException when writing fails
+	 */
+	private static void writeValue(final Object value, final Appendable out) throws IOException {
+		if (value == null) {
+			out.append("null");
+		} else if (value instanceof String) {
+			writeString((String) value, out);
+		} else if (value instanceof Number) {
+			writeNumber((Number) value, out);
+		} else if (value instanceof Boolean) {
+			out.append(value.toString());
+		} else if (value instanceof Map) {
+			Map<?, ?> map = (Map<?, ?>) value;
+			List<String> keys = new ArrayList<>(map.size());
+			for (Object key : map.keySet()) {
+				keys.add((String) key);
+			}
+			out.append('{');
+			boolean first = true;
+			for (String key : jsKeyOrder(keys)) {
+				if (!first) {
+					out.append(',');
+				}
+				first = false;
+				writeString(key, out);
+				out.append(':');
+				writeValue(map.get(key), out);
+			}
+			out.append('}');
+		} else if (value instanceof List) {
+			out.append('[');
+			boolean first = true;
+			for (Object item : (List<?>) value) {
+				if (!first) {
+					out.append(',');
+				}
+				first = false;
+				writeValue(item, out);
+			}
+			out.append(']');
+		} else {
+			writeString(value.toString(), out);
+		}
+	}
+
+	/**
+	 * Writes the specified number as JSON, like {@code JSON.stringify()} in Javascript
+	 *
+	 * @param value The number
+	 * @param out Where to write the JSON
+	 * @throws IOException when writing fails
+	 */
+	private static void writeNumber(final Number value, final Appendable out) throws IOException {
+		if (value instanceof Integer || value instanceof Long) {
+			out.append(value.toString());
+		} else if (Double.isNaN(value.doubleValue()) || Double.isInfinite(value.doubleValue())) {
+			out.append("null");
+		} else {
+			out.append(formatNumber(value.doubleValue()));
+		}
+	}
+
+	/**
+	 * Formats the specified number like {@code Number.prototype.toString()} in Javascript, i.e.
+	 * with the shortest representation that converts back to the same double
+	 *
+	 * @param value The number (finite)
+	 * @return the formatted number
+	 */
+	static String formatNumber(final double value) {
+		if (value == 0) {
+			return "0";
+		}
+		if (value == Math.rint(value) && Math.abs(value) < MAX_PLAIN_NUMBER) {
+			return new BigDecimal(value).toBigInteger().toString();
+		}
+
+		// Shortest decimal representation that round-trips
+		BigDecimal exact = new BigDecimal(value);
+		BigDecimal shortest = exact;
+		for (int precision = 1; precision <= MAX_DOUBLE_DIGITS; precision++) {
+			BigDecimal candidate = exact.round(new MathContext(precision, RoundingMode.HALF_EVEN));
+			if (candidate.doubleValue() == value) {
+				shortest = candidate;
+				break;
+			}
+		}
+		shortest = shortest.stripTrailingZeros();
+
+		StringBuilder out = new StringBuilder();
+		if (value < 0) {
+			out.append('-');
+		}
+		String digits = shortest.unscaledValue().abs().toString();
+		int k = digits.length();
+		int n = k - shortest.scale();
+
+		if (k <= n && n <= 21) {
+			out.append(digits);
+			for (int i = 0; i < n - k; i++) {
+				out.append('0');
+			}
+		} else if (0 < n && n <= 21) {
+			out.append(digits, 0, n).append('.').append(digits, n, k);
+		} else if (-6 < n && n <= 0) {
+			out.append("0.");
+			for (int i = 0; i < -n; i++) {
+				out.append('0');
+			}
+			out.append(digits);
+		} else {
+			out.append(digits.charAt(0));
+			if (k > 1) {
+				out.append('.').append(digits, 1, k);
+			}
+			out.append('e').append(n - 1 >= 0 ? "+" : "-").append(Math.abs(n - 1));
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Writes the specified string as JSON, like {@code JSON.stringify()} in Javascript
+	 *
+	 * @param value The string
+	 * @param out Where to write the JSON
+	 * @throws IOException when writing fails
+	 */
+	static void writeString(final String value, final Appendable out) throws IOException {
+		out.append('"');
+		int valueLength = value.length();
+		for (int i = 0; i < valueLength; i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				out.append("\\\"");
+				break;
+			case '\\':
+				out.append("\\\\");
+				break;
+			case '\b':
+				out.append("\\b");
+				break;
+			case '\f':
+				out.append("\\f");
+				break;
+			case '\n':
+				out.append("\\n");
+				break;
+			case '\r':
+				out.append("\\r");
+				break;
+			case '\t':
+				out.append("\\t");
+				break;
+			default:
+				if (c < ' ' || isLoneSurrogate(value, i)) {
+					out.append(String.format("\\u%04x", (int) c));
+				} else {
+					out.append(c);
+				}
+				break;
+			}
+		}
+		out.append('"');
+	}
+
+	/**
+	 * @param value A string
+	 * @param i Index of a character in the string
+	 * @return whether the character is a surrogate that is not part of a valid pair
+	 */
+	private static boolean isLoneSurrogate(final String value, final int i) {
+		char c = value.charAt(i);
+		if (Character.isHighSurrogate(c)) {
+			return i + 1 >= value.length() || !Character.isLowSurrogate(value.charAt(i + 1));
+		}
+		if (Character.isLowSurrogate(c)) {
+			return i == 0 || !Character.isHighSurrogate(value.charAt(i - 1));
+		}
+		return false;
+	}
+
+	/**
+	 * Writes JSON content (like a Consumer that can throw IOException)
+	 */
+	@FunctionalInterface
+	private interface JsonContent {
+
+		/**
+		 * @param out Where to write the JSON content
+		 * @throws IOException when writing fails
+		 */
+		void writeTo(Appendable out) throws IOException;
+	}
+
+	/**
+	 * A node of the inverted index (elasticlunr.InvertedIndex), i.e. a trie of the indexed
+	 * tokens, with one child node per character.
+	 */
+	static final class Node {
+
+		/** Term frequency for each document reference that contains the token of this node */
+		private final Map<String, Double> docs = new LinkedHashMap<>();
+
+		/** Number of documents that contain the token of this node */
+		private int df;
+
+		/** Child nodes, per character */
+		private final Map<Character, Node> children = new LinkedHashMap<>();
+
+		/**
+		 * Loads a node from its JSON representation
+		 *
+		 * @param json The parsed JSON object of the node
+		 * @return the loaded node
+		 */
+		@SuppressWarnings("unchecked")
+		static Node load(final Map<String, Object> json) {
+			Node node = new Node();
+			for (Map.Entry<String, Object> entry : json.entrySet()) {
+				String key = entry.getKey();
+				if ("docs".equals(key)) {
+					for (Map.Entry<String, Object> doc : ((Map<String, Object>) entry.getValue()).entrySet()) {
+						Number tf = (Number) ((Map<String, Object>) doc.getValue()).get("tf");
+						node.docs.put(doc.getKey(), tf.doubleValue());
+					}
+				} else if ("df".equals(key)) {
+					node.df = ((Number) entry.getValue()).intValue();
+				} else if (key.length() == 1) {
+					node.children.put(key.charAt(0), load((Map<String, Object>) entry.getValue()));
+				} else {
+					throw new IllegalArgumentException("Unexpected key in inverted index: " + key);
+				}
+			}
+			return node;
+		}
+
+		/**
+		 * elasticlunr.InvertedIndex.prototype.addToken
+		 *
+		 * @param token The token
+		 * @param docRef Reference of the document that contains the token
+		 * @param tf Term frequency
+		 */
+		void addToken(final String token, final String docRef, final double tf) {
+			Node node = this;
+			int tokenLength = token.length();
+			for (int i = 0; i < tokenLength; i++) {
+				node = node.children.computeIfAbsent(token.charAt(i), k -> new Node());
+			}
+			if (node.docs.put(docRef, tf) == null) {
+				node.df++;
+			}
+		}
+
+		/**
+		 * elasticlunr.InvertedIndex.prototype.removeToken
+		 *
+		 * @param token The token
+		 * @param docRef Reference of the document to remove from the token's node
+		 */
+		void removeToken(final String token, final String docRef) {
+			Node node = this;
+			int tokenLength = token.length();
+			for (int i = 0; i < tokenLength && node != null; i++) {
+				node = node.children.get(token.charAt(i));
+			}
+			if (node != null && node.docs.remove(docRef) != null) {
+				node.df--;
+			}
+		}
+
+		/**
+		 * Adds the term frequencies of the specified node and its children to this node
+		 *
+		 * @param other The node to merge into this one
+		 */
+		void merge(final Node other) {
+			for (Map.Entry<String, Double> doc : other.docs.entrySet()) {
+				if (docs.put(doc.getKey(), doc.getValue()) == null) {
+					df++;
+				}
+			}
+			for (Map.Entry<Character, Node> child : other.children.entrySet()) {
+				children.computeIfAbsent(child.getKey(), k -> new Node()).merge(child.getValue());
+			}
+		}
+
+		/**
+		 * Writes the node as JSON, with the properties in the same order as Javascript: digit
+		 * children first, then "docs", "df", and the other children in insertion order
+		 *
+		 * @param out Where to write the JSON
+		 * @param withChildren Whether the child nodes are written as well
+		 * @throws IOException when writing fails
+		 */
+		void writeJson(final Appendable out, final boolean withChildren) throws IOException {
+			out.append('{');
+			for (char digit = '0'; digit <= '9' && withChildren; digit++) {
+				Node child = children.get(digit);
+				if (child != null) {
+					out.append('"').append(digit).append("\":");
+					child.writeJson(out, true);
+					out.append(',');
+				}
+			}
+
+			out.append("\"docs\":{");
+			boolean first = true;
+			for (String docRef : jsKeyOrder(docs.keySet())) {
+				if (!first) {
+					out.append(',');
+				}
+				first = false;
+				writeString(docRef, out);
+				out.append(":{\"tf\":");
+				out.append(formatNumber(docs.get(docRef)));
+				out.append('}');
+			}
+			out.append("},\"df\":").append(String.valueOf(df));
+
+			for (Map.Entry<Character, Node> child : children.entrySet()) {
+				char c = child.getKey();
+				if (withChildren && (c < '0' || c > '9')) {
+					out.append(',');
+					writeString(String.valueOf(c), out);
+					out.append(':');
+					child.getValue().writeJson(out, true);
+				}
+			}
+			out.append('}');
+		}
+	}
+
+	/**
+	 * Minimal JSON parser producing LinkedHashMap, ArrayList, String, Double, Boolean and null
+	 * values, in order to load existing index files.
+	 */
+	private static final class JsonReader {
+
+		private final String json;
+		private int position;
+
+		/**
+		 * @param json The JSON text to parse
+		 */
+		JsonReader(final String json) {
+			this.json = json;
+		}
+
+		/**
+		 * @return the parsed JSON value
+		 * @throws IOException when the JSON is invalid
+		 */
+		Object readDocument() throws IOException {
+			Object value = readValue();
+			skipWhitespace();
+			if (position < json.length()) {
+				throw error("Unexpected trailing content");
+			}
+			return value;
+		}
+
+		private Object readValue() throws IOException {
+			skipWhitespace();
+			if (position >= json.length()) {
+				throw error("Unexpected end of JSON");
+			}
+			char c = json.charAt(position);
+			switch (c) {
+			case '{':
+				return readObject();
+			case '[':
+				return readArray();
+			case '"':
+				return readString();
+			case 't':
+				return readLiteral("true", Boolean.TRUE);
+			case 'f':
+				return readLiteral("false", Boolean.FALSE);
+			case 'n':
+				return readLiteral("null", null);
+			default:
+				return readNumber();
+			}
+		}
+
+		private Map<String, Object> readObject() throws IOException {
+			Map<String, Object> object = new LinkedHashMap<>();
+			position++;
+			skipWhitespace();
+			if (peek() == '}') {
+				position++;
+				return object;
+			}
+			while (true) {
+				skipWhitespace();
+				if (peek() != '"') {
+					throw error("Expected property name");
+				}
+				String key = readString();
+				skipWhitespace();
+				expect(':');
+				object.put(key, readValue());
+				skipWhitespace();
+				char c = next();
+				if (c == '}') {
+					return object;
+				}
+				if (c != ',') {
+					throw error("Expected ',' or '}'");
+				}
+			}
+		}
+
+		private List<Object> readArray() throws IOException {
+			List<Object> array = new ArrayList<>();
+			position++;
+			skipWhitespace();
+			if (peek() == ']') {
+				position++;
+				return array;
+			}
+			while (true) {
+				array.add(readValue());
+				skipWhitespace();
+				char c = next();
+				if (c == ']') {
+					return array;
+				}
+				if (c != ',') {
+					throw error("Expected ',' or ']'");
+				}
+			}
+		}
+
+		private String readString() throws IOException {
+			expect('"');
+			StringBuilder value = new StringBuilder();
+			while (true) {
+				char c = next();
+				if (c == '"') {
+					return value.toString();
+				}
+				if (c != '\\') {
+					value.append(c);
+					continue;
+				}
+				char escaped = next();
+				switch (escaped) {
+				case 'b':
+					value.append('\b');
+					break;
+				case 'f':
+					value.append('\f');
+					break;
+				case 'n':
+					value.append('\n');
+					break;
+				case 'r':
+					value.append('\r');
+					break;
+				case 't':
+					value.append('\t');
+					break;
+				case 'u':
+					if (position + 4 > json.length()) {
+						throw error("Invalid unicode escape");
+					}
+					try {
+						value.append((char) Integer.parseInt(json.substring(position, position + 4), 16));
+					} catch (NumberFormatException e) {
+						throw error("Invalid unicode escape");
+					}
+					position += 4;
+					break;
+				default:
+					value.append(escaped);
+					break;
+				}
+			}
+		}
+
+		private Double readNumber() throws IOException {
+			int start = position;
+			while (position < json.length() && "+-0123456789.eE".indexOf(json.charAt(position)) >= 0) {
+				position++;
+			}
+			try {
+				return Double.valueOf(json.substring(start, position));
+			} catch (NumberFormatException e) {
+				position = start;
+				throw error("Invalid value");
+			}
+		}
+
+		private Object readLiteral(final String literal, final Object value) throws IOException {
+			if (!json.startsWith(literal, position)) {
+				throw error("Invalid value");
+			}
+			position += literal.length();
+			return value;
+		}
+
+		private void skipWhitespace() {
+			while (position < json.length()) {
+				char c = json.charAt(position);
+				if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+					return;
+				}
+				position++;
+			}
+		}
+
+		private char peek() throws IOException {
+			if (position >= json.length()) {
+				throw error("Unexpected end of JSON");
+			}
+			return json.charAt(position);
+		}
+
+		private char next() throws IOException {
+			char c = peek();
+			position++;
+			return c;
+		}
+
+		private void expect(final char expected) throws IOException {
+			if (next() != expected) {
+				position--;
+				throw error("Expected '" + expected + "'");
+			}
+		}
+
+		private IOException error(final String message) {
+			return new IOException(message + " at position " + position);
+		}
+	}
+
+}
@@ -0,0 +1,525 @@
+package org.sentrysoftware.maven.skin;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Sentry Maven Skin Tools
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2017 - 2026 Sentry Software
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Java implementation of the text processing of elasticlunr.js 0.9.5: the tokenizer and the
+ * "trimmer", "stopWordFilter" and "stemmer" pipeline functions.
+ * <p>
+ * The behavior mimics the Javascript implementation, so that the tokens indexed by
+ * {@link ElasticLunrIndex} are the same as the ones elasticlunr.js computes when searching
+ * the index in the browser.
+ * </p>
+ */
+final class ElasticLunrPipeline {
+
+	/**
+	 * Default pipeline of an elasticlunr index, as serialized in the index JSON
+	 */
+	static final List<String> DEFAULT_PIPELINE = Collections
+			.unmodifiableList(Arrays.asList("trimmer", "stopWordFilter", "stemmer"));
+
+	/**
+	 * elasticlunr.defaultStopWords
+	 */
+	private static final Set<String> STOP_WORDS = new HashSet<>(
+			Arrays
+					.asList(
+							"", "a", "able", "about", "across", "after", "all", "almost", "also", "am", "among", "an", "and",
+							"any", "are", "as", "at", "be", "because", "been", "but", "by", "can", "cannot", "could", "dear",
+							"did", "do", "does", "either", "else", "ever", "every", "for", "from", "get", "got", "had", "has",
+							"have", "he", "her", "hers", "him", "his", "how", "however", "i", "if", "in", "into", "is", "it",
+							"its", "just", "least", "let", "like", "likely", "may", "me", "might", "most", "must", "my",
+							"neither", "no", "nor", "not", "of", "off", "often", "on", "only", "or", "other", "our", "own",
+							"rather", "said", "say", "says", "she", "should", "since", "so", "some", "than", "that", "the",
+							"their", "them", "then", "there", "these", "they", "this", "tis", "to", "too", "twas", "us",
+							"wants", "was", "we", "were", "what", "when", "where", "which", "while", "who", "whom", "why",
+							"will", "with", "would", "yet", "you", "your"));
+
+	/**
+	 * Registered pipeline functions, by label. A function returns null to drop the token.
+	 */
+	private static final Map<String, UnaryOperator<String>> REGISTERED_FUNCTIONS = new HashMap<>();
+	static {
+		REGISTERED_FUNCTIONS.put("trimmer", ElasticLunrPipeline::trim);
+		REGISTERED_FUNCTIONS.put("stopWordFilter", ElasticLunrPipeline::filterStopWord);
+		REGISTERED_FUNCTIONS.put("stemmer", ElasticLunrPipeline::stem);
+	}
+
+	/**
+	 * Labels of the functions of this pipeline
+	 */
+	private final List<String> labels;
+
+	/**
+	 * Functions of this pipeline
+	 */
+	private final List<UnaryOperator<String>> functions;
+
+	/**
+	 * Creates the pipeline with the specified functions (like elasticlunr.Pipeline.load())
+	 *
+	 * @param labels Labels of the registered functions ("trimmer", "stopWordFilter", "stemmer")
+	 * @throws IllegalArgumentException when one of the functions is not registered
+	 */
+	ElasticLunrPipeline(final List<String> labels) {
+		this.labels = Collections.unmodifiableList(new ArrayList<>(labels));
+		this.functions = new ArrayList<>(labels.size());
+		for (String label : labels) {
+			UnaryOperator<String> function = REGISTERED_FUNCTIONS.get(label);
+			if (function == null) {
+				throw new IllegalArgumentException("Cannot load un-registered function: " + label);
+			}
+			functions.add(function);
+		}
+	}
+
+	/**
+	 * @return the labels of the functions of this pipeline
+	 */
+	List<String> getLabels() {
+		return labels;
+	}
+
+	/**
+	 * Runs the specified tokens through the pipeline (like elasticlunr.Pipeline.run())
+	 *
+	 * @param tokens Tokens to process
+	 * @return the processed tokens, without the ones that have been dropped
+	 */
+	List<String> run(final List<String> tokens) {
+		List<String> result = new ArrayList<>(tokens.size());
+		for (String token : tokens) {
+			String processed = token;
+			for (UnaryOperator<String> function : functions) {
+				processed = function.apply(processed);
+				if (processed == null) {
+					break;
+				}
+			}
+			if (processed != null) {
+				result.add(processed);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Splits the specified text into lower case tokens (like elasticlunr.tokenizer())
+	 *
+	 * @param text The text to tokenize
+	 * @return the list of tokens (empty if text is null)
+	 */
+	static List<String> tokenize(final String text) {
+		List<String> tokens = new ArrayList<>();
+		if (text != null) {
+			split(jsTrim(text).toLowerCase(Locale.ROOT), tokens);
+		}
+		return tokens;
+	}
+
+	/**
+	 * Splits the specified values into lower case tokens, like elasticlunr.tokenizer() does
+	 * with arrays (values are not trimmed, and null values are ignored)
+	 *
+	 * @param values The values to tokenize
+	 * @return the list of tokens
+	 */
+	static List<String> tokenize(final List<String> values) {
+		List<String> tokens = new ArrayList<>();
+		for (String value : values) {
+			if (value != null) {
+				split(value.toLowerCase(Locale.ROOT), tokens);
+			}
+		}
+		return tokens;
+	}
+
+	/**
+	 * Splits the specified text on /[\s\-]+/, keeping leading and trailing empty tokens like
+	 * String.prototype.split() in Javascript
+	 *
+	 * @param text The text to split
+	 * @param tokens The list to add the tokens to
+	 */
+	private static void split(final String text, final List<String> tokens) {
+		int start = 0;
+		int i = 0;
+		int length = text.length();
+		while (i < length) {
+			if (isSeparator(text.charAt(i))) {
+				tokens.add(text.substring(start, i));
+				while (i < length && isSeparator(text.charAt(i))) {
+					i++;
+				}
+				start = i;
+			} else {
+				i++;
+			}
+		}
+		tokens.add(text.substring(start));
+	}
+
+	/**
+	 * @param c Character to test
+	 * @return whether the character matches /[\s\-]/ in Javascript
+	 */
+	private static boolean isSeparator(final char c) {
+		return c == '-' || isJsWhitespace(c);
+	}
+
+	/**
+	 * @param c Character to test
+	 * @return whether the character is a white space or line terminator in Javascript
+	 *         (i.e. matches /\s/)
+	 */
+	static boolean isJsWhitespace(final char c) {
+		switch (c) {
+		case '\t':
+		case '\n':
+		case '\u000B':
+		case '\f':
+		case '\r':
+		case ' ':
+		case '\u00A0':
+		case '\u1680':
+		case '\u2028':
+		case '\u2029':
+		case '\u202F':
+		case '\u205F':
+		case '\u3000':
+		case '\uFEFF':
+			return true;
+		default:
+			return c >= '\u2000' && c <= '\u200A';
+		}
+	}
+
+	/**
+	 * @param text Text to trim
+	 * @return the text without leading and trailing white spaces, like String.prototype.trim()
+	 *         in Javascript
+	 */
+	private static String jsTrim(final String text) {
+		int start = 0;
+		int end = text.length();
+		while (start < end && isJsWhitespace(text.charAt(start))) {
+			start++;
+		}
+		while (end > start && isJsWhitespace(text.charAt(end - 1))) {
+			end--;
+		}
+		return text.substring(start, end);
+	}
+
+	/**
+	 * @param c Character to test
+	 * @return whether the character matches /\w/ in Javascript (ASCII letters, digits and underscore)
+	 */
+	private static boolean isWordCharacter(final char c) {
+		return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_';
+	}
+
+	/**
+	 * elasticlunr.trimmer: removes the leading and trailing non-word characters
+	 *
+	 * @param token Token to trim
+	 * @return the trimmed token
+	 */
+	static String trim(final String token) {
+		int start = 0;
+		int end = token.length();
+		while (start < end && !isWordCharacter(token.charAt(start))) {
+			start++;
+		}
+		while (end > start && !isWordCharacter(token.charAt(end - 1))) {
+			end--;
+		}
+		return token.substring(start, end);
+	}
+
+	/**
+	 * elasticlunr.stopWordFilter: drops empty tokens and English stop words
+	 *
+	 * @param token Token to filter
+	 * @return the token, or null if it must be dropped
+	 */
+	static String filterStopWord(final String token) {
+		if (token.isEmpty() || STOP_WORDS.contains(token)) {
+			return null;
+		}
+		return token;
+	}
+
+	/*
+	 * Porter stemmer, as implemented in elasticlunr.js (which is itself based on
+	 * the implementation of http://tartarus.org/~martin/PorterStemmer/js.txt).
+	 * UNIX_LINES makes '.' and '$' behave like in Javascript regular expressions,
+	 * as tokens never contain '\n'.
+	 */
+
+	/** Consonant */
+	private static final String C = "[^aeiou]";
+
+	/** Vowel */
+	private static final String V = "[aeiouy]";
+
+	/** Consonant sequence */
+	private static final String CS = C + "[^aeiouy]*";
+
+	/** Vowel sequence */
+	private static final String VS = V + "[aeiou]*";
+
+	/** [C]VC... is m&gt;0 */
+	private static final Pattern MGR0 = compile("^(" + CS + ")?" + VS + CS);
+
+	/** [C]VC[V] is m=1 */
+	private static final Pattern MEQ1 = compile("^(" + CS + ")?" + VS + CS + "(" + VS + ")?$");
+
+	/** [C]VCVC... is m&gt;1 */
+	private static final Pattern MGR1 = compile("^(" + CS + ")?" + VS + CS + VS + CS);
+
+	/** Vowel in stem */
+	private static final Pattern S_V = compile("^(" + CS + ")?" + V);
+
+	/** Step 1a: -sses, -ies */
+	private static final Pattern STEP1A_1 = compile("^(.+?)(ss|i)es$");
+	/** Step 1a: -s */
+	private static final Pattern STEP1A_2 = compile("^(.+?)([^s])s$");
+	/** Step 1b: -eed */
+	private static final Pattern STEP1B_1 = compile("^(.+?)eed$");
+	/** Step 1b: -ed, -ing */
+	private static final Pattern STEP1B_2 = compile("^(.+?)(ed|ing)$");
+	/** Step 1b: -at, -bl, -iz */
+	private static final Pattern STEP1B_3 = compile("(at|bl|iz)$");
+	/** Step 1b: double consonant */
+	private static final Pattern STEP1B_4 = compile("([^aeiouylsz])\\1$");
+	/** Consonant-vowel-consonant ending (not w, x or y) */
+	private static final Pattern CVC = compile("^" + CS + V + "[^aeiouwxy]$");
+	/** Step 1c: -y */
+	private static final Pattern STEP1C = compile("^(.+?[^aeiou])y$");
+	/** Step 2 suffixes */
+	private static final Pattern STEP2 = compile(
+			"^(.+?)(ational|tional|enci|anci|izer|bli|alli|entli|eli|ousli|ization|ation|ator|alism|iveness|fulness"
+					+ "|ousness|aliti|iviti|biliti|logi)$");
+	/** Step 3 suffixes */
+	private static final Pattern STEP3 = compile("^(.+?)(icate|ative|alize|iciti|ical|ful|ness)$");
+	/** Step 4 suffixes */
+	private static final Pattern STEP4_1 = compile(
+			"^(.+?)(al|ance|ence|er|ic|able|ible|ant|ement|ment|ent|ou|ism|ate|iti|ous|ive|ize)$");
+	/** Step 4: -sion, -tion */
+	private static final Pattern STEP4_2 = compile("^(.+?)(s|t)(ion)$");
+	/** Step 5: -e */
+	private static final Pattern STEP5_1 = compile("^(.+?)e$");
+	/** Step 5: -ll */
+	private static final Pattern STEP5_2 = compile("ll$");
+
+	/** Step 2 replacements */
+	private static final Map<String, String> STEP2_LIST = new HashMap<>();
+	static {
+		STEP2_LIST.put("ational", "ate");
+		STEP2_LIST.put("tional", "tion");
+		STEP2_LIST.put("enci", "ence");
+		STEP2_LIST.put("anci", "ance");
+		STEP2_LIST.put("izer", "ize");
+		STEP2_LIST.put("bli", "ble");
+		STEP2_LIST.put("alli", "al");
+		STEP2_LIST.put("entli", "ent");
+		STEP2_LIST.put("eli", "e");
+		STEP2_LIST.put("ousli", "ous");
+		STEP2_LIST.put("ization", "ize");
+		STEP2_LIST.put("ation", "ate");
+		STEP2_LIST.put("ator", "ate");
+		STEP2_LIST.put("alism", "al");
+		STEP2_LIST.put("iveness", "ive");
+		STEP2_LIST.put("fulness", "ful");
+		STEP2_LIST.put("ousness", "ous");
+		STEP2_LIST.put("aliti", "al");
+		STEP2_LIST.put("iviti", "ive");
+		STEP2_LIST.put("biliti", "ble");
+		STEP2_LIST.put("logi", "log");
+	}
+
+	/** Step 3 replacements */
+	private static final Map<String, String> STEP3_LIST = new HashMap<>();
+	static {
+		STEP3_LIST.put("icate", "ic");
+		STEP3_LIST.put("ative", "");
+		STEP3_LIST.put("alize", "al");
+		STEP3_LIST.put("iciti", "ic");
+		STEP3_LIST.put("ical", "ic");
+		STEP3_LIST.put("ful", "");
+		STEP3_LIST.put("ness", "");
+	}
+
+	/**
+	 * @param regex Regular expression
+	 * @return the compiled Pattern, with Javascript semantics for '.' and '$'
+	 */
+	private static Pattern compile(final String regex) {
+		return Pattern.compile(regex, Pattern.UNIX_LINES);
+	}
+
+	/**
+	 * @param pattern Pattern to find
+	 * @param text Text to search in
+	 * @return whether the pattern is found in the text (like RegExp.prototype.test())
+	 */
+	private static boolean test(final Pattern pattern, final String text) {
+		return pattern.matcher(text).find();
+	}
+
+	/**
+	 * @param text Text
+	 * @return the text without its last character (like text.replace(/.$/, "") in Javascript)
+	 */
+	private static String removeLastCharacter(final String text) {
+		return text.substring(0, text.length() - 1);
+	}
+
+	/**
+	 * elasticlunr.stemmer: reduces the token to its stem with the Porter stemming algorithm
+	 *
+	 * @param token Token to stem
+	 * @return the stem
+	 */
+	static String stem(final String token) {
+
+		if (token.length() < 3) {
+			return token;
+		}
+
+		String w = token;
+		char firstCharacter = w.charAt(0);
+		if (firstCharacter == 'y') {
+			w = "Y" + w.substring(1);
+		}
+
+		// Step 1a
+		Matcher matcher = STEP1A_1.matcher(w);
+		if (matcher.find()) {
+			w = matcher.group(1) + matcher.group(2);
+		} else {
+			matcher = STEP1A_2.matcher(w);
+			if (matcher.find()) {
+				w = matcher.group(1) + matcher.group(2);
+			}
+		}
+
+		// Step 1b
+		matcher = STEP1B_1.matcher(w);
+		if (matcher.find()) {
+			if (test(MGR0, matcher.group(1))) {
+				w = removeLastCharacter(w);
+			}
+		} else {
+			matcher = STEP1B_2.matcher(w);
+			if (matcher.find()) {
+				String stem = matcher.group(1);
+				if (test(S_V, stem)) {
+					w = stem;
+					if (test(STEP1B_3, w)) {
+						w = w + "e";
+					} else if (test(STEP1B_4, w)) {
+						w = removeLastCharacter(w);
+					} else if (test(CVC, w)) {
+						w = w + "e";
+					}
+				}
+			}
+		}
+
+		// Step 1c
+		matcher = STEP1C.matcher(w);
+		if (matcher.find()) {
+			w = matcher.group(1) + "i";
+		}
+
+		// Step 2
+		matcher = STEP2.matcher(w);
+		if (matcher.find()) {
+			String stem = matcher.group(1);
+			if (test(MGR0, stem)) {
+				w = stem + STEP2_LIST.get(matcher.group(2));
+			}
+		}
+
+		// Step 3
+		matcher = STEP3.matcher(w);
+		if (matcher.find()) {
+			String stem = matcher.group(1);
+			if (test(MGR0, stem)) {
+				w = stem + STEP3_LIST.get(matcher.group(2));
+			}
+		}
+
+		// Step 4
+		matcher = STEP4_1.matcher(w);
+		if (matcher.find()) {
+			String stem = matcher.group(1);
+			if (test(MGR1, stem)) {
+				w = stem;
+			}
+		} else {
+			matcher = STEP4_2.matcher(w);
+			if (matcher.find()) {
+				String stem = matcher.group(1) + matcher.group(2);
+				if (test(MGR1, stem)) {
+					w = stem;
+				}
+			}
+		}
+
+		// Step 5
+		matcher = STEP5_1.matcher(w);
+		if (matcher.find()) {
+			String stem = matcher.group(1);
+			if (test(MGR1, stem) || test(MEQ1, stem) && !test(CVC, stem)) {
+				w = stem;
+			}
+		}
+
+		if (test(STEP5_2, w) && test(MGR1, w)) {
+			w = removeLastCharacter(w);
+		}
+
+		// And turn initial Y back to y
+		if (firstCharacter == 'y') {
+			w = "y" + w.substring(1);
+		}
+
+		return w;
+	}
+
+}
@@ -66,6 +66,36 @@ public final class Helper {
 		}
 	}
 
+	/**
+	 * Converts the line separators of a text to System.lineSeparator(), as done
+	 * by {@link #writeText(File, String, Charset)}
+	 *
+	 * @param text The text to convert
+	 * @return the text, with each line terminated by System.lineSeparator()
+	 */
+	public static String toSystemLineSeparators(final CharSequence text) {
+
+		// Nothing to convert (without copying the text again)
+		int length = text.length();
+		if ("\n".equals(System.lineSeparator())
+				&& (length == 0 || text.charAt(length - 1) == '\n')
+				&& text.chars().noneMatch(c -> c == '\r')) {
+			return text.toString();
+		}
+
+		StringBuilder result = new StringBuilder(length + 16);
+		try (BufferedReader reader = new BufferedReader(new StringReader(text.toString()))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				result.append(line).append(System.lineSeparator());
+			}
+		} catch (IOException e) {
+			// Cannot happen with a StringReader
+			throw new IllegalStateException(e);
+		}
+		return result.toString();
+	}
+
 	/**
 	 * Returns the time of last modification of specified Path in milliseconds since
 	 * EPOCH.
@@ -20,20 +20,31 @@ package org.sentrysoftware.maven.skin;
  * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
  */
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.jsoup.Jsoup;
+import org.jsoup.nodes.CDataNode;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.nodes.Node;
 import org.jsoup.nodes.TextNode;
+import org.jsoup.select.NodeFilter;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
 
 /**
  * A simple HTML to Markdown converter using JSoup.
@@ -48,6 +59,41 @@ public final class HtmlToMarkdownConverter {
 			.compile(
 					"([\\p{Alnum}_.:-]+=)([\\u2018\\u2019\\u201c\\u201d])([^\\u2018\\u2019\\u201c\\u201d]*)([\\u2018\\u2019\\u201c\\u201d])");
 
+	/**
+	 * Flag of {@link #classFlags(Element)}: the element is only visible when printed
+	 */
+	private static final int PRINT_ONLY_CLASS = 1;
+
+	/**
+	 * Flag of {@link #classFlags(Element)}: the element is a callout
+	 */
+	private static final int CALLOUT_CLASS = 2;
+
+	/**
+	 * Minimum width of the columns of a table (the width of the "---" separator of its header)
+	 */
+	private static final int MIN_COLUMN_WIDTH = 3;
+
+	/**
+	 * Maximum width up to which the cells of a table column are padded to align them
+	 */
+	private static final int MAX_ALIGNED_COLUMN_WIDTH = 40;
+
+	/**
+	 * Maximum number of columns spanned by a table cell (as in HTML)
+	 */
+	private static final int MAX_COLSPAN = 1000;
+
+	/**
+	 * Built-in conversions of the HTML tags, by normalized tag name
+	 */
+	private static final Map<String, TagHandler> TAG_HANDLERS = buildTagHandlers();
+
+	/**
+	 * Custom conversions of the HTML tags, by normalized tag name
+	 */
+	private static final ConcurrentMap<String, ElementConverter> ELEMENT_CONVERTERS = new ConcurrentHashMap<>();
+
 	/**
 	 * Private constructor to prevent instantiation.
 	 */
@@ -86,24 +132,56 @@ public final class HtmlToMarkdownConverter {
 		}
 
 		StringBuilder result = new StringBuilder();
-		processElement(element, result, new ConversionState(element));
-		return result.toString().trim();
+		processElement(element, MarkdownWriter.trimming(result), new ConversionState(element));
+		return result.toString();
+	}
+
+	/**
+	 * Converts an HTML element to Markdown format, and writes the result to the specified
+	 * {@link Appendable} as it is produced (e.g. a {@link java.io.Writer}), instead of building
+	 * the whole document in memory.
+	 *
+	 * @param element HTML element to convert
+	 * @param out Where the Markdown representation of the HTML element is written
+	 * @throws IOException when the Markdown cannot be written
+	 */
+	public static void convert(final Element element, final Appendable out) throws IOException {
+		if (element == null) {
+			return;
+		}
+
+		try {
+			processElement(element, MarkdownWriter.trimming(out), new ConversionState(element));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
 	}
 
 	/**
 	 * Processes an element and its children, converting to Markdown.
 	 *
 	 * @param element The element to process
-	 * @param result The StringBuilder to append Markdown to
+	 * @param result Where the Markdown is written
 	 * @param state The current conversion state
 	 */
-	private static void processElement(final Element element, final StringBuilder result, final ConversionState state) {
+	private static void processElement(final Element element, final MarkdownWriter result, final ConversionState state) {
 		for (Node child : element.childNodes()) {
-			if (child instanceof TextNode) {
-				processTextNode((TextNode) child, result, state);
-			} else if (child instanceof Element) {
-				processHtmlElement((Element) child, result, state);
-			}
+			processNode(child, result, state);
+		}
+	}
+
+	/**
+	 * Processes a node (text or element), converting to Markdown.
+	 *
+	 * @param node The node to process
+	 * @param result Where the Markdown is written
+	 * @param state The current conversion state
+	 */
+	private static void processNode(final Node node, final MarkdownWriter result, final ConversionState state) {
+		if (node instanceof TextNode) {
+			processTextNode((TextNode) node, result, state);
+		} else if (node instanceof Element) {
+			processHtmlElement((Element) node, result, state);
 		}
 	}
 
@@ -111,12 +189,12 @@ public final class HtmlToMarkdownConverter {
 	 * Processes a text node.
 	 *
 	 * @param textNode The text node to process
-	 * @param result The StringBuilder to append text to
+	 * @param result Where the Markdown is written
 	 * @param state The current conversion state
 	 */
 	private static void processTextNode(
 			final TextNode textNode,
-			final StringBuilder result,
+			final MarkdownWriter result,
 			final ConversionState state) {
 		String text = textNode.getWholeText();
 
@@ -126,141 +204,237 @@ public final class HtmlToMarkdownConverter {
 			return;
 		}
 
-		// Collapse whitespace for normal text
-		text = text.replaceAll("\\s+", " ");
+		appendCollapsingWhitespace(text, result);
+	}
 
-		// Don't add leading space at start of line
-		if (result.length() > 0 && result.charAt(result.length() - 1) == '\n' && text.startsWith(" ")) {
-			text = text.stripLeading();
+	/**
+	 * Writes normal text, with each sequence of whitespace collapsed into a single space (like
+	 * {@code text.replaceAll("\\s+", " ")}), without leading whitespace at the start of a line
+	 * or after a space.
+	 * <p>
+	 * The text is written directly, range by range, without regular expression and without
+	 * building the collapsed text.
+	 * </p>
+	 *
+	 * @param text Text to write
+	 * @param result Where the Markdown is written
+	 */
+	static void appendCollapsingWhitespace(final String text, final MarkdownWriter result) {
+		int length = text.length();
+		int start = 0;
+
+		// Don't add leading space at start of line, or after a space
+		if (length > 0
+				&& isCollapsibleWhitespace(text.charAt(0))
+				&& !result.isEmpty()
+				&& (result.getLastChar() == '\n' || result.getLastChar() == ' ')) {
+			while (start < length && Character.isWhitespace(text.charAt(start))) {
+				start++;
+			}
 		}
-		if (result.length() > 0 && result.charAt(result.length() - 1) == ' ' && text.startsWith(" ")) {
-			text = text.stripLeading();
+
+		// Ranges without whitespace to collapse are written as is
+		int rangeStart = start;
+		int i = start;
+		while (i < length) {
+			char c = text.charAt(i);
+			if (!isCollapsibleWhitespace(c)) {
+				i++;
+				continue;
+			}
+			int whitespaceEnd = i + 1;
+			while (whitespaceEnd < length && isCollapsibleWhitespace(text.charAt(whitespaceEnd))) {
+				whitespaceEnd++;
+			}
+			if (c != ' ' || whitespaceEnd - i > 1) {
+				result.append(text, rangeStart, i).append(' ');
+				rangeStart = whitespaceEnd;
+			}
+			i = whitespaceEnd;
 		}
+		result.append(text, rangeStart, length);
+	}
 
-		result.append(text);
+	/**
+	 * @param c Character
+	 * @return whether the character is matched by {@code \s} in a regular expression
+	 */
+	private static boolean isCollapsibleWhitespace(final char c) {
+		return c == ' ' || c == '\n' || c == '\t' || c == '\r' || c == '\f' || c == '\u000B';
 	}
 
 	/**
 	 * Processes an HTML element and converts it to Markdown.
 	 *
 	 * @param element The HTML element to process
-	 * @param result The StringBuilder to append Markdown to
+	 * @param result Where the Markdown is written
 	 * @param state The current conversion state
 	 */
 	private static void processHtmlElement(
 			final Element element,
-			final StringBuilder result,
+			final MarkdownWriter result,
 			final ConversionState state) {
-		String tagName = element.tagName().toLowerCase();
-
-		if (element.hasClass("visible-print-inline") || element.hasClass("sentry-print-tab-heading")) {
+		int classFlags = classFlags(element);
+		if ((classFlags & PRINT_ONLY_CLASS) != 0) {
 			return;
 		}
 
-		if (element.hasClass("callout")) {
+		if ((classFlags & CALLOUT_CLASS) != 0) {
 			processCallout(element, result, state);
 			return;
 		}
 
-		switch (tagName) {
-		case "h1":
-			processHeading(element, result, state, 1);
-			break;
-		case "h2":
-			processHeading(element, result, state, 2);
-			break;
-		case "h3":
-			processHeading(element, result, state, 3);
-			break;
-		case "h4":
-			processHeading(element, result, state, 4);
-			break;
-		case "h5":
-			processHeading(element, result, state, 5);
-			break;
-		case "h6":
-			processHeading(element, result, state, 6);
-			break;
-		case "p":
-			processParagraph(element, result, state);
-			break;
-		case "br":
-			result.append("  \n");
-			break;
-		case "hr":
-			ensureBlankLine(result);
-			result.append("---\n\n");
-			break;
-		case "strong":
-		case "b":
-			processEmphasis(element, result, state, "**");
-			break;
-		case "em":
-		case "i":
-			processEmphasis(element, result, state, "*");
-			break;
-		case "code":
-			if (!state.isInPreformatted()) {
-				StringBuilder code = new StringBuilder();
-				processElement(element, code, state);
-				result.append("`").append(normalizeTypographicQuotes(code.toString())).append("`");
-			} else {
-				processElement(element, result, state);
-			}
-			break;
-		case "pre":
-			processPreformatted(element, result);
-			break;
-		case "a":
-			processLink(element, result, state);
-			break;
-		case "img":
-			processImage(element, result);
-			break;
-		case "ul":
-			processList(element, result, state, false);
-			break;
-		case "ol":
-			processList(element, result, state, true);
-			break;
-		case "li":
-			// List items are handled by processList
-			processElement(element, result, state);
-			break;
-		case "blockquote":
-			processBlockquote(element, result, state);
-			break;
-		case "table":
-			processTable(element, result, state);
-			break;
-		case "uib-tab-heading":
-			processTabHeading(element, result);
-			break;
-		case "div":
-		case "section":
-		case "article":
-		case "main":
-		case "header":
-		case "footer":
-		case "nav":
-		case "aside":
-			// Block-level containers - just process children
-			processElement(element, result, state);
-			break;
-		case "span":
-			// Inline container - just process children
+		String tagName = element.normalName();
+		if (!ELEMENT_CONVERTERS.isEmpty()) {
+			ElementConverter converter = ELEMENT_CONVERTERS.get(tagName);
+			if (converter != null) {
+				converter.convert(element, new Output(result, state));
+				return;
+			}
+		}
+
+		TagHandler handler = TAG_HANDLERS.get(tagName);
+		if (handler == null) {
+			// For unknown elements and containers, just process children
 			processElement(element, result, state);
-			break;
-		case "script":
-		case "style":
-		case "noscript":
-			// Skip these elements entirely
-			break;
-		default:
-			// For unknown elements, just process children
+		} else {
+			handler.process(element, result, state);
+		}
+	}
+
+	/**
+	 * Builds the table of the conversions of the HTML tags (other tags are converted as their
+	 * children).
+	 *
+	 * @return tag name → handler
+	 */
+	private static Map<String, TagHandler> buildTagHandlers() {
+		Map<String, TagHandler> handlers = new HashMap<>();
+		for (int level = 1; level <= 6; level++) {
+			int headingLevel = level;
+			handlers.put("h" + level, (element, result, state) -> processHeading(element, result, state, headingLevel));
+		}
+		handlers.put("p", HtmlToMarkdownConverter::processParagraph);
+		handlers.put("br", (element, result, state) -> result.append("  \n"));
+		handlers.put("hr", (element, result, state) -> {
+			result.ensureBlankLine();
+			result.append("---\n\n");
+		});
+		handlers.put("strong", (element, result, state) -> processEmphasis(element, result, state, "**"));
+		handlers.put("b", handlers.get("strong"));
+		handlers.put("em", (element, result, state) -> processEmphasis(element, result, state, "*"));
+		handlers.put("i", handlers.get("em"));
+		handlers.put("code", HtmlToMarkdownConverter::processCode);
+		handlers.put("pre", (element, result, state) -> processPreformatted(element, result));
+		handlers.put("a", HtmlToMarkdownConverter::processLink);
+		handlers.put("img", (element, result, state) -> processImage(element, result));
+		handlers.put("ul", (element, result, state) -> processList(element, result, state, false));
+		handlers.put("ol", (element, result, state) -> processList(element, result, state, true));
+		handlers.put("blockquote", HtmlToMarkdownConverter::processBlockquote);
+		handlers.put("table", HtmlToMarkdownConverter::processTable);
+		handlers.put("uib-tab-heading", (element, result, state) -> processTabHeading(element, result));
+
+		// Skip these elements entirely
+		TagHandler skip = (element, result, state) -> {
+			// Nothing to convert
+		};
+		handlers.put("script", skip);
+		handlers.put("style", skip);
+		handlers.put("noscript", skip);
+
+		return handlers;
+	}
+
+	/**
+	 * Registers a custom conversion of an HTML tag, which replaces the built-in one (elements
+	 * with the print-only classes are still skipped, and callouts are still converted as
+	 * blockquotes, whatever their tag).
+	 * <p>
+	 * As the result of a custom conversion cannot be compared from one build to the next,
+	 * {@link AIIndexTool#convertToMarkdown(String, String, Element, Element, java.util.Date, String)}
+	 * converts all the pages again, instead of skipping the unchanged ones, while custom
+	 * conversions are registered.
+	 * </p>
+	 *
+	 * @param tagName Name of the HTML tag (case-insensitive)
+	 * @param converter How the elements with this tag are converted
+	 */
+	public static void registerElementConverter(final String tagName, final ElementConverter converter) {
+		ELEMENT_CONVERTERS.put(tagName.toLowerCase(Locale.ROOT), converter);
+	}
+
+	/**
+	 * Removes the custom conversion of an HTML tag, to restore the built-in one
+	 *
+	 * @param tagName Name of the HTML tag (case-insensitive)
+	 */
+	public static void unregisterElementConverter(final String tagName) {
+		ELEMENT_CONVERTERS.remove(tagName.toLowerCase(Locale.ROOT));
+	}
+
+	/**
+	 * @return whether custom conversions are registered with
+	 *         {@link #registerElementConverter(String, ElementConverter)}
+	 */
+	static boolean hasElementConverters() {
+		return !ELEMENT_CONVERTERS.isEmpty();
+	}
+
+	/**
+	 * Returns the classes of the element that matter to the conversion, by scanning its class
+	 * attribute once (instead of one {@link Element#hasClass(String)} per class).
+	 *
+	 * @param element Element
+	 * @return a combination of {@link #PRINT_ONLY_CLASS} and {@link #CALLOUT_CLASS}
+	 */
+	private static int classFlags(final Element element) {
+		String classAttribute = element.attr("class");
+		int length = classAttribute.length();
+		int flags = 0;
+		int start = 0;
+		while (start < length) {
+			while (start < length && Character.isWhitespace(classAttribute.charAt(start))) {
+				start++;
+			}
+			int end = start;
+			while (end < length && !Character.isWhitespace(classAttribute.charAt(end))) {
+				end++;
+			}
+			if (isClass(classAttribute, start, end, "visible-print-inline")
+					|| isClass(classAttribute, start, end, "sentry-print-tab-heading")) {
+				flags |= PRINT_ONLY_CLASS;
+			} else if (isClass(classAttribute, start, end, "callout")) {
+				flags |= CALLOUT_CLASS;
+			}
+			start = end;
+		}
+		return flags;
+	}
+
+	/**
+	 * @param classAttribute Class attribute
+	 * @param start Index of the first character of a class name in the attribute
+	 * @param end Index after the last character of the class name
+	 * @param className Class name to compare to (case-insensitive, like
+	 *        {@link Element#hasClass(String)})
+	 * @return whether the class name is the specified one
+	 */
+	private static boolean isClass(final String classAttribute, final int start, final int end, final String className) {
+		return end - start == className.length() && classAttribute.regionMatches(true, start, className, 0, end - start);
+	}
+
+	/**
+	 * Processes an inline code element.
+	 */
+	private static void processCode(final Element element, final MarkdownWriter result, final ConversionState state) {
+		if (state.isInPreformatted()) {
 			processElement(element, result, state);
-			break;
+			return;
 		}
+		StringBuilder code = state.acquireBuffer();
+		processElement(element, MarkdownWriter.raw(code), state);
+		result.append("`").append(normalizeTypographicQuotes(code)).append("`");
+		state.releaseBuffer(code);
 	}
 
 	/**
@@ -268,18 +442,19 @@ public final class HtmlToMarkdownConverter {
 	 */
 	private static void processEmphasis(
 			final Element element,
-			final StringBuilder result,
+			final MarkdownWriter result,
 			final ConversionState state,
 			final String delimiter) {
-		StringBuilder content = new StringBuilder();
-		processElement(element, content, state);
-		if (content.toString().isBlank()) {
-			if (content.length() > 0 && (result.length() == 0 || result.charAt(result.length() - 1) != ' ')) {
+		StringBuilder content = state.acquireBuffer();
+		processElement(element, MarkdownWriter.raw(content), state);
+		if (isBlank(content)) {
+			if (content.length() > 0 && (result.isEmpty() || result.getLastChar() != ' ')) {
 				result.append(' ');
 			}
 		} else {
 			result.append(delimiter).append(content).append(delimiter);
 		}
+		state.releaseBuffer(content);
 	}
 
 	/**
@@ -287,10 +462,10 @@ public final class HtmlToMarkdownConverter {
 	 */
 	private static void processHeading(
 			final Element element,
-			final StringBuilder result,
+			final MarkdownWriter result,
 			final ConversionState state,
 			final int level) {
-		ensureBlankLine(result);
+		result.ensureBlankLine();
 		result.append("#".repeat(level)).append(" ");
 
 		Element selfLink = null;
@@ -314,8 +489,8 @@ public final class HtmlToMarkdownConverter {
 	/**
 	 * Processes a paragraph element.
 	 */
-	private static void processParagraph(final Element element, final StringBuilder result, final ConversionState state) {
-		ensureBlankLine(result);
+	private static void processParagraph(final Element element, final MarkdownWriter result, final ConversionState state) {
+		result.ensureBlankLine();
 		processElement(element, result, state);
 		result.append("\n\n");
 	}
@@ -323,8 +498,8 @@ public final class HtmlToMarkdownConverter {
 	/**
 	 * Processes a preformatted/code block element.
 	 */
-	private static void processPreformatted(final Element element, final StringBuilder result) {
-		ensureBlankLine(result);
+	private static void processPreformatted(final Element element, final MarkdownWriter result) {
+		result.ensureBlankLine();
 
 		// Try to detect the language from class attributes
 		String language = "";
@@ -353,7 +528,7 @@ public final class HtmlToMarkdownConverter {
 		}
 
 		// Ensure the code block ends with a newline
-		if (result.length() > 0 && result.charAt(result.length() - 1) != '\n') {
+		if (!result.isEmpty() && result.getLastChar() != '\n') {
 			result.append("\n");
 		}
 		result.append("```\n\n");
@@ -362,7 +537,7 @@ public final class HtmlToMarkdownConverter {
 	/**
 	 * Processes a link element.
 	 */
-	private static void processLink(final Element element, final StringBuilder result, final ConversionState state) {
+	private static void processLink(final Element element, final MarkdownWriter result, final ConversionState state) {
 		String href = state.resolveHref(element.attr("href"));
 		String text = markdownVisibleText(element);
 
@@ -380,7 +555,7 @@ public final class HtmlToMarkdownConverter {
 	/**
 	 * Processes an image element.
 	 */
-	private static void processImage(final Element element, final StringBuilder result) {
+	private static void processImage(final Element element, final MarkdownWriter result) {
 		String src = element.attr("src");
 		String alt = element.attr("alt");
 
@@ -396,10 +571,10 @@ public final class HtmlToMarkdownConverter {
 	 */
 	private static void processList(
 			final Element element,
-			final StringBuilder result,
+			final MarkdownWriter result,
 			final ConversionState state,
 			final boolean ordered) {
-		ensureBlankLine(result);
+		result.ensureBlankLine();
 
 		int itemNumber = 1;
 		String indent = "  ".repeat(state.getListDepth());
@@ -408,7 +583,7 @@ public final class HtmlToMarkdownConverter {
 		listState.incrementListDepth();
 
 		for (Element child : element.children()) {
-			if ("li".equals(child.tagName().toLowerCase())) {
+			if ("li".equals(child.normalName())) {
 				result.append(indent);
 				if (ordered) {
 					result.append(itemNumber++).append(". ");
@@ -417,22 +592,23 @@ public final class HtmlToMarkdownConverter {
 				}
 
 				// Process list item content
-				StringBuilder itemContent = new StringBuilder();
-				processElement(child, itemContent, listState);
-				String content = itemContent.toString().trim();
+				StringBuilder itemContent = state.acquireBuffer();
+				processElement(child, MarkdownWriter.raw(itemContent), listState);
 
 				// Handle multi-line content in list items
-				String[] lines = content.split("\n");
-				for (int i = 0; i < lines.length; i++) {
-					if (i > 0) {
-						result.append(indent).append("  ");
-					}
-					result.append(lines[i]);
-					if (i < lines.length - 1) {
-						result.append("\n");
+				int end = trimmedEnd(itemContent);
+				int lineStart = trimmedStart(itemContent, end);
+				while (true) {
+					int lineEnd = lineEnd(itemContent, lineStart, end);
+					result.append(itemContent, lineStart, lineEnd);
+					if (lineEnd == end) {
+						break;
 					}
+					result.append("\n").append(indent).append("  ");
+					lineStart = lineEnd + 1;
 				}
 				result.append("\n");
+				state.releaseBuffer(itemContent);
 			}
 		}
 		result.append("\n");
@@ -443,13 +619,14 @@ public final class HtmlToMarkdownConverter {
 	 */
 	private static void processBlockquote(
 			final Element element,
-			final StringBuilder result,
+			final MarkdownWriter result,
 			final ConversionState state) {
-		ensureBlankLine(result);
+		result.ensureBlankLine();
 
-		StringBuilder quoteContent = new StringBuilder();
-		processElement(element, quoteContent, state);
-		appendBlockquote(quoteContent.toString(), result);
+		StringBuilder quoteContent = state.acquireBuffer();
+		processElement(element, MarkdownWriter.raw(quoteContent), state);
+		appendBlockquote(quoteContent, result);
+		state.releaseBuffer(quoteContent);
 	}
 
 	/**
@@ -457,24 +634,27 @@ public final class HtmlToMarkdownConverter {
 	 */
 	private static void processCallout(
 			final Element element,
-			final StringBuilder result,
+			final MarkdownWriter result,
 			final ConversionState state) {
-		ensureBlankLine(result);
+		result.ensureBlankLine();
 
-		Element calloutContent = element.clone();
-		Element title = directCalloutTitle(calloutContent);
+		Element title = directCalloutTitle(element);
 		String label = title == null ? "" : markdownVisibleText(title);
-		if (title != null) {
-			title.remove();
-		}
 		if (label.isBlank()) {
 			label = calloutLabelFromClass(element);
 		}
 
-		StringBuilder quoteContent = new StringBuilder();
-		quoteContent.append("**").append(label).append("**\n\n");
-		processElement(calloutContent, quoteContent, state);
-		appendBlockquote(quoteContent.toString(), result);
+		// The title is skipped rather than removed from a copy of the callout
+		StringBuilder quoteContent = state.acquireBuffer();
+		MarkdownWriter quoteWriter = MarkdownWriter.raw(quoteContent);
+		quoteWriter.append("**").append(label).append("**\n\n");
+		for (Node child : element.childNodes()) {
+			if (child != title) {
+				processNode(child, quoteWriter, state);
+			}
+		}
+		appendBlockquote(quoteContent, result);
+		state.releaseBuffer(quoteContent);
 	}
 
 	/**
@@ -490,135 +670,275 @@ public final class HtmlToMarkdownConverter {
 	}
 
 	/**
-	 * Appends content with Markdown blockquote prefixes.
+	 * Appends content with Markdown blockquote prefixes, line by line, without copying it.
 	 */
-	private static void appendBlockquote(final String content, final StringBuilder result) {
-		String[] lines = content.trim().split("\n", -1);
-		for (String line : lines) {
+	private static void appendBlockquote(final CharSequence content, final MarkdownWriter result) {
+		int end = trimmedEnd(content);
+		int lineStart = trimmedStart(content, end);
+		while (true) {
+			int lineEnd = lineEnd(content, lineStart, end);
 			result.append(">");
-			if (!line.isEmpty()) {
-				result.append(" ").append(line);
+			if (lineEnd > lineStart) {
+				result.append(" ").append(content, lineStart, lineEnd);
 			}
 			result.append("\n");
+			if (lineEnd == end) {
+				break;
+			}
+			lineStart = lineEnd + 1;
 		}
 		result.append("\n");
 	}
 
+	/**
+	 * Returns the index after the last non-whitespace character of the content (like
+	 * {@link String#trim()}).
+	 */
+	private static int trimmedEnd(final CharSequence content) {
+		int end = content.length();
+		while (end > 0 && content.charAt(end - 1) <= ' ') {
+			end--;
+		}
+		return end;
+	}
+
+	/**
+	 * Returns the index of the first non-whitespace character of the content (like
+	 * {@link String#trim()}), or the specified end if there's none.
+	 */
+	private static int trimmedStart(final CharSequence content, final int end) {
+		int start = 0;
+		while (start < end && content.charAt(start) <= ' ') {
+			start++;
+		}
+		return start;
+	}
+
+	/**
+	 * Returns the index of the line separator that ends the line starting at the specified
+	 * index, or the specified end if it's the last line.
+	 */
+	private static int lineEnd(final CharSequence content, final int lineStart, final int end) {
+		for (int i = lineStart; i < end; i++) {
+			if (content.charAt(i) == '\n') {
+				return i;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * Returns whether the content is empty or only contains whitespace (like
+	 * {@link String#isBlank()}).
+	 */
+	private static boolean isBlank(final CharSequence content) {
+		for (int i = 0; i < content.length(); i++) {
+			if (!Character.isWhitespace(content.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Processes an interactive tab heading as a linear Markdown heading.
 	 */
-	private static void processTabHeading(final Element element, final StringBuilder result) {
+	private static void processTabHeading(final Element element, final MarkdownWriter result) {
 		String heading = markdownVisibleText(element);
 		if (!heading.isEmpty()) {
-			ensureBlankLine(result);
+			result.ensureBlankLine();
 			result.append("#### ").append(heading).append("\n\n");
 		}
 	}
 
 	/**
 	 * Processes a table element.
+	 * <p>
+	 * Only the rows of the table itself are converted, i.e. the rows that are children of the
+	 * table or of its thead, tbody and tfoot sections: nested tables are converted within the
+	 * cell that contains them. The whole table is converted before it is written, so that all
+	 * the rows have the same number of cells, and the cells of each column are aligned.
+	 * </p>
 	 */
-	private static void processTable(final Element element, final StringBuilder result, final ConversionState state) {
-		ensureBlankLine(result);
-
-		// Find header row
-		Element thead = element.selectFirst("thead");
-		Element tbody = element.selectFirst("tbody");
+	private static void processTable(final Element element, final MarkdownWriter result, final ConversionState state) {
+		result.ensureBlankLine();
 
-		// Process header: look in thead first, otherwise first row in table
-		Element headerRow;
-		if (thead != null) {
-			headerRow = thead.selectFirst("tr");
-		} else {
-			// First row might be header
-			headerRow = element.selectFirst("tr");
+		// Rows of the header, of the body and of the footer, in this order
+		List<Element> headerRows = new ArrayList<>();
+		List<Element> rows = new ArrayList<>();
+		List<Element> footerRows = new ArrayList<>();
+		for (Element child : element.children()) {
+			switch (child.normalName()) {
+			case "tr":
+				rows.add(child);
+				break;
+			case "thead":
+				addTableRows(child, headerRows);
+				break;
+			case "tbody":
+				addTableRows(child, rows);
+				break;
+			case "tfoot":
+				addTableRows(child, footerRows);
+				break;
+			default:
+				break;
+			}
 		}
-
-		if (headerRow != null) {
-			processTableRow(headerRow, result, state, true);
+		headerRows.addAll(rows);
+		headerRows.addAll(footerRows);
+
+		// Convert the cells, and measure the columns
+		List<List<String>> cells = new ArrayList<>(headerRows.size());
+		int[] widths = new int[0];
+		for (Element row : headerRows) {
+			List<String> rowCells = convertTableRow(row, state);
+			cells.add(rowCells);
+			if (rowCells.size() > widths.length) {
+				int columns = widths.length;
+				widths = Arrays.copyOf(widths, rowCells.size());
+				Arrays.fill(widths, columns, widths.length, MIN_COLUMN_WIDTH);
+			}
+			for (int i = 0; i < rowCells.size(); i++) {
+				widths[i] = Math.max(widths[i], Math.min(MAX_ALIGNED_COLUMN_WIDTH, displayWidth(rowCells.get(i))));
+			}
 		}
 
-		// Process body rows
-		if (tbody != null) {
-			for (Element row : tbody.select("tr")) {
-				if (row != headerRow) {
-					processTableRow(row, result, state, false);
-				}
+		// Write the first row as header, followed by the separator and the other rows
+		if (widths.length > 0) {
+			StringBuilder markdown = state.acquireBuffer();
+			appendTableRow(cells.get(0), widths, markdown);
+			markdown.append('|');
+			for (int width : widths) {
+				markdown.append(' ');
+				appendRepeated('-', width, markdown);
+				markdown.append(" |");
 			}
-		} else {
-			boolean first = true;
-			for (Element row : element.select("tr")) {
-				if (first && row == headerRow) {
-					first = false;
-					continue;
-				}
-				processTableRow(row, result, state, false);
+			markdown.append('\n');
+			for (int i = 1; i < cells.size(); i++) {
+				appendTableRow(cells.get(i), widths, markdown);
 			}
+			result.append(markdown);
+			state.releaseBuffer(markdown);
 		}
 		result.append("\n");
 	}
 
 	/**
-	 * Processes a table row.
+	 * Adds the rows of a section of a table (thead, tbody or tfoot) to the specified list.
 	 */
-	private static void processTableRow(
-			final Element row,
-			final StringBuilder result,
-			final ConversionState state,
-			final boolean isHeader) {
-		result.append("|");
-		int cellCount = 0;
-
-		for (Element cell : row.select("th, td")) {
-			StringBuilder cellContent = new StringBuilder();
-			processElement(cell, cellContent, state);
-			String content = cellContent.toString().trim().replaceAll("\\s+", " ");
+	private static void addTableRows(final Element section, final List<Element> rows) {
+		for (Element child : section.children()) {
+			if ("tr".equals(child.normalName())) {
+				rows.add(child);
+			}
+		}
+	}
+
+	/**
+	 * Converts the cells of a table row, on a single line each. A cell spanning several columns
+	 * is followed by empty cells, so that the next cells stay in their column.
+	 */
+	private static List<String> convertTableRow(final Element row, final ConversionState state) {
+		List<String> cells = new ArrayList<>();
+		for (Element cell : row.children()) {
+			String name = cell.normalName();
+			if (!"td".equals(name) && !"th".equals(name)) {
+				continue;
+			}
+
+			StringBuilder cellContent = state.acquireBuffer();
+			processElement(cell, MarkdownWriter.raw(cellContent), state);
+			String content = collapseTableCell(cellContent);
+			state.releaseBuffer(cellContent);
 			content = normalizeTechnicalAssignments(content);
 			content = escapeTablePipes(content);
-			result.append(" ").append(content).append(" |");
-			cellCount++;
-		}
-		result.append("\n");
+			cells.add(content);
 
-		// Add separator after header row
-		if (isHeader && cellCount > 0) {
-			result.append("|");
-			for (int i = 0; i < cellCount; i++) {
-				result.append(" --- |");
+			for (int i = colspan(cell); i > 1; i--) {
+				cells.add("");
 			}
-			result.append("\n");
 		}
+		return cells;
 	}
 
 	/**
-	 * Ensures there's a blank line before the next content.
+	 * Writes a table row, with each cell padded to the width of its column, and missing cells
+	 * left empty.
 	 */
-	private static void ensureBlankLine(final StringBuilder result) {
-		if (result.length() == 0) {
-			return;
+	private static void appendTableRow(final List<String> cells, final int[] widths, final StringBuilder markdown) {
+		markdown.append('|');
+		for (int i = 0; i < widths.length; i++) {
+			String cell = i < cells.size() ? cells.get(i) : "";
+			markdown.append(' ').append(cell);
+			appendRepeated(' ', widths[i] - displayWidth(cell), markdown);
+			markdown.append(" |");
 		}
+		markdown.append('\n');
+	}
 
-		// Check if we already end with blank line(s)
-		int len = result.length();
-		if (len >= 2 && result.charAt(len - 1) == '\n' && result.charAt(len - 2) == '\n') {
-			return;
+	/**
+	 * Appends a character the specified number of times (nothing if the count is not positive).
+	 */
+	private static void appendRepeated(final char character, final int count, final StringBuilder markdown) {
+		for (int i = 0; i < count; i++) {
+			markdown.append(character);
 		}
+	}
 
-		// Check if we end with single newline
-		if (result.charAt(len - 1) == '\n') {
-			result.append("\n");
-			return;
+	/**
+	 * @return the number of characters (code points) displayed for the content of a cell
+	 */
+	private static int displayWidth(final String content) {
+		return content.codePointCount(0, content.length());
+	}
+
+	/**
+	 * @return the number of columns spanned by a table cell, as specified by its colspan attribute
+	 */
+	private static int colspan(final Element cell) {
+		String colspan = cell.attr("colspan");
+		if (colspan.isEmpty()) {
+			return 1;
 		}
+		try {
+			return Math.max(1, Math.min(MAX_COLSPAN, Integer.parseInt(colspan.trim())));
+		} catch (NumberFormatException e) {
+			return 1;
+		}
+	}
 
-		// No newline at end, add two
-		result.append("\n\n");
+	/**
+	 * Trims the converted content of a table cell and collapses its whitespace into single spaces,
+	 * so that it fits on the line of its row.
+	 */
+	private static String collapseTableCell(final CharSequence content) {
+		int start = 0;
+		int end = content.length();
+		while (start < end && content.charAt(start) <= ' ') {
+			start++;
+		}
+		while (end > start && content.charAt(end - 1) <= ' ') {
+			end--;
+		}
+
+		StringBuilder collapsed = new StringBuilder(end - start);
+		for (int i = start; i < end; i++) {
+			char character = content.charAt(i);
+			if (!isCollapsibleWhitespace(character)) {
+				collapsed.append(character);
+			} else if (!isCollapsibleWhitespace(content.charAt(i - 1))) {
+				collapsed.append(' ');
+			}
+		}
+		return collapsed.toString();
 	}
 
 	/**
 	 * Replaces typographic quotes with their machine-readable ASCII equivalents in technical
 	 * content.
 	 */
-	private static String normalizeTypographicQuotes(final String value) {
+	private static String normalizeTypographicQuotes(final CharSequence value) {
 		StringBuilder normalized = new StringBuilder(value.length());
 		for (int i = 0; i < value.length(); i++) {
 			char character = value.charAt(i);
@@ -648,6 +968,9 @@ public final class HtmlToMarkdownConverter {
 	 * {@code key=“value”}, preserving typographic quotes in surrounding prose.
 	 */
 	private static String normalizeTechnicalAssignments(final String content) {
+		if (content.indexOf('=') < 0) {
+			return content;
+		}
 		Matcher matcher = TECHNICAL_QUOTED_VALUE.matcher(content);
 		StringBuffer normalized = new StringBuffer(content.length());
 		while (matcher.find()) {
@@ -666,6 +989,9 @@ public final class HtmlToMarkdownConverter {
 	 * extended so literal backslashes and the pipe can both survive Markdown rendering.
 	 */
 	private static String escapeTablePipes(final String value) {
+		if (value.indexOf('|') < 0) {
+			return value;
+		}
 		StringBuilder escaped = new StringBuilder(value.length());
 		for (int i = 0; i < value.length(); i++) {
 			char character = value.charAt(i);
@@ -701,16 +1027,171 @@ public final class HtmlToMarkdownConverter {
 	}
 
 	/**
-	 * Returns text that is visible in the Markdown export.
+	 * Returns text that is visible in the Markdown export, i.e. the text of the element (like
+	 * {@link Element#text()}) without the print-only elements, scripts and styles, and with the
+	 * alternate text of the images.
+	 * <p>
+	 * The element is traversed as is, without copying it.
+	 * </p>
+	 */
+	static String markdownVisibleText(final Element element) {
+		if (isHiddenInMarkdown(element)) {
+			return "";
+		}
+		if ("img".equals(element.normalName())) {
+			return element.attr("alt").trim();
+		}
+		VisibleTextAccumulator accumulator = new VisibleTextAccumulator(element);
+		NodeTraversor.filter(accumulator, element);
+		return accumulator.toString().trim();
+	}
+
+	/**
+	 * @param element Element
+	 * @return whether the element and its content are left out of the Markdown visible text
+	 */
+	private static boolean isHiddenInMarkdown(final Element element) {
+		switch (element.normalName()) {
+		case "script":
+		case "style":
+		case "noscript":
+			return true;
+		default:
+			return (classFlags(element) & PRINT_ONLY_CLASS) != 0;
+		}
+	}
+
+	/**
+	 * Accumulates the text of an element like {@link Element#text()}, skipping the elements that
+	 * are hidden in Markdown, and replacing images with their alternate text.
 	 */
-	private static String markdownVisibleText(final Element element) {
-		Element visibleContent = element.clone();
-		visibleContent.select(".visible-print-inline, .sentry-print-tab-heading, script, style, noscript").remove();
-		for (Element image : visibleContent.select("img")) {
-			image.before(new TextNode(image.attr("alt")));
-			image.remove();
+	private static final class VisibleTextAccumulator implements NodeFilter {
+
+		/**
+		 * Maximum number of ancestors checked for a tag that preserves whitespace, as in
+		 * {@link Element#text()}
+		 */
+		private static final int PRESERVE_WHITESPACE_DEPTH = 6;
+
+		/**
+		 * Element whose text is accumulated
+		 */
+		private final Element root;
+
+		/**
+		 * Text accumulated
+		 */
+		private final StringBuilder text = new StringBuilder();
+
+		/**
+		 * @param root Element whose text is accumulated
+		 */
+		VisibleTextAccumulator(final Element root) {
+			this.root = root;
+		}
+
+		@Override
+		public FilterResult head(final Node node, final int depth) {
+			if (node instanceof TextNode) {
+				appendText(((TextNode) node).getWholeText(), node.parentNode(), node instanceof CDataNode);
+			} else if (node instanceof Element) {
+				Element element = (Element) node;
+				if (node != root && isHiddenInMarkdown(element)) {
+					return FilterResult.SKIP_ENTIRELY;
+				}
+				if ("img".equals(element.normalName())) {
+					appendText(element.attr("alt"), element.parentNode(), false);
+					return FilterResult.SKIP_ENTIRELY;
+				}
+				if (text.length() > 0 && (element.isBlock() || "br".equals(element.normalName())) && !lastCharIsSpace()) {
+					text.append(' ');
+				}
+			}
+			return FilterResult.CONTINUE;
+		}
+
+		@Override
+		public FilterResult tail(final Node node, final int depth) {
+			if (node != root && node instanceof Element && ((Element) node).isBlock() && !lastCharIsSpace()) {
+				// Images are followed by their alternate text, and hidden elements are ignored
+				Node next = node.nextSibling();
+				while (next instanceof Element && isHiddenInMarkdown((Element) next)) {
+					next = next.nextSibling();
+				}
+				if (next instanceof TextNode || next instanceof Element && "img".equals(((Element) next).normalName())) {
+					text.append(' ');
+				}
+			}
+			return FilterResult.CONTINUE;
+		}
+
+		/**
+		 * Appends text, whose whitespace is normalized unless it is preformatted
+		 *
+		 * @param value Text to append
+		 * @param parent Parent of the text
+		 * @param raw Whether the text is appended as is
+		 */
+		private void appendText(final String value, final Node parent, final boolean raw) {
+			if (raw || preservesWhitespace(parent)) {
+				text.append(value);
+			} else {
+				appendNormalizedWhitespace(value);
+			}
+		}
+
+		/**
+		 * Appends text with each sequence of whitespace (non-breaking spaces included) replaced
+		 * with a single space, without leading whitespace after a space, and without the
+		 * invisible characters (zero-width space and soft hyphen), as in {@link Element#text()}
+		 *
+		 * @param value Text to append
+		 */
+		private void appendNormalizedWhitespace(final String value) {
+			boolean lastWasWhite = lastCharIsSpace();
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if (c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r' || c == '\u00A0') {
+					if (!lastWasWhite) {
+						text.append(' ');
+						lastWasWhite = true;
+					}
+				} else if (c != '\u200B' && c != '\u00AD') {
+					text.append(c);
+					lastWasWhite = false;
+				}
+			}
+		}
+
+		/**
+		 * @param parent Parent of a text
+		 * @return whether the parent, or one of its ancestors up to the root, preserves whitespace
+		 */
+		private boolean preservesWhitespace(final Node parent) {
+			if (!(parent instanceof Element)) {
+				return false;
+			}
+			Element element = (Element) parent;
+			for (int i = 0; i < PRESERVE_WHITESPACE_DEPTH && element != null; i++) {
+				if (element.tag().preserveWhitespace()) {
+					return true;
+				}
+				element = element == root ? null : element.parent();
+			}
+			return false;
+		}
+
+		/**
+		 * @return whether the text accumulated ends with a space
+		 */
+		private boolean lastCharIsSpace() {
+			return text.length() > 0 && text.charAt(text.length() - 1) == ' ';
+		}
+
+		@Override
+		public String toString() {
+			return text.toString();
 		}
-		return visibleContent.text().trim();
 	}
 
 	/**
@@ -727,72 +1208,239 @@ public final class HtmlToMarkdownConverter {
 	}
 
 	/**
-	 * Tracks the current state during HTML to Markdown conversion.
+	 * Custom conversion of an HTML element to Markdown, registered with
+	 * {@link HtmlToMarkdownConverter#registerElementConverter(String, ElementConverter)}.
 	 */
-	private static class ConversionState {
+	@FunctionalInterface
+	public interface ElementConverter {
+
+		/**
+		 * Converts an HTML element to Markdown
+		 *
+		 * @param element Element to convert
+		 * @param output Where the Markdown is written
+		 */
+		void convert(Element element, Output output);
+	}
 
-		private boolean inPreformatted = false;
-		private int listDepth = 0;
-		private final Map<String, String> fragmentSlugs;
+	/**
+	 * Where an {@link ElementConverter} writes the Markdown of an element.
+	 */
+	public static final class Output {
+
+		/**
+		 * Where the Markdown is written
+		 */
+		private final MarkdownWriter writer;
+
+		/**
+		 * State of the conversion
+		 */
+		private final ConversionState state;
+
+		/**
+		 * @param writer Where the Markdown is written
+		 * @param state State of the conversion
+		 */
+		private Output(final MarkdownWriter writer, final ConversionState state) {
+			this.writer = writer;
+			this.state = state;
+		}
 
-		ConversionState(final Element root) {
-			fragmentSlugs = buildFragmentSlugs(root);
+		/**
+		 * Writes Markdown
+		 *
+		 * @param markdown Markdown to write
+		 * @return this output
+		 */
+		public Output append(final CharSequence markdown) {
+			writer.append(markdown);
+			return this;
 		}
 
-		ConversionState(final ConversionState other) {
-			this.inPreformatted = other.inPreformatted;
-			this.listDepth = other.listDepth;
-			this.fragmentSlugs = other.fragmentSlugs;
+		/**
+		 * Ensures there's a blank line before the next content, as before a block (unless
+		 * nothing has been written yet)
+		 *
+		 * @return this output
+		 */
+		public Output ensureBlankLine() {
+			writer.ensureBlankLine();
+			return this;
 		}
 
-		private static Map<String, String> buildFragmentSlugs(final Element root) {
-			Map<String, String> slugs = new HashMap<>();
-			Set<String> usedSlugs = new HashSet<>();
-			Map<String, List<String>> slugsByHeadingText = new HashMap<>();
+		/**
+		 * Converts the children of an element, as the converter would
+		 *
+		 * @param element Element whose children are converted
+		 * @return this output
+		 */
+		public Output appendContent(final Element element) {
+			processElement(element, writer, state);
+			return this;
+		}
+	}
 
-			for (Element heading : root.select("h1, h2, h3, h4, h5, h6, uib-tab-heading")) {
-				if (heading.closest("table, .visible-print-inline, .sentry-print-tab-heading") != null) {
-					continue;
-				}
+	/**
+	 * Built-in conversion of an HTML element to Markdown
+	 */
+	@FunctionalInterface
+	private interface TagHandler {
+
+		/**
+		 * @param element The HTML element to process
+		 * @param result Where the Markdown is written
+		 * @param state The current conversion state
+		 */
+		void process(Element element, MarkdownWriter result, ConversionState state);
+	}
 
-				String headingText = markdownVisibleText(heading);
-				String baseSlug = markdownHeadingSlug(headingText);
-				if (baseSlug.isEmpty()) {
-					continue;
-				}
-				String headingSlug = uniqueHeadingSlug(baseSlug, usedSlugs);
-				boolean isHtmlHeading = heading.tagName().matches("h[1-6]");
+	/**
+	 * Builds the map of the fragment identifiers of a document to the anchor slugs of its
+	 * Markdown headings, in a single traversal of the document.
+	 * <p>
+	 * The elements that exclude headings (tables and print-only elements) and the tables of
+	 * contents are counted as they are entered and left, instead of looking for them in the
+	 * ancestors of each heading and link. Links of the tables of contents are resolved once all
+	 * headings are known.
+	 * </p>
+	 */
+	private static final class FragmentSlugCollector implements NodeVisitor {
+
+		/**
+		 * Fragment identifier → anchor slug
+		 */
+		private final Map<String, String> slugs = new HashMap<>();
+
+		/**
+		 * Anchor slugs already used
+		 */
+		private final Set<String> usedSlugs = new HashSet<>();
+
+		/**
+		 * Heading text → anchor slugs of the headings with that text
+		 */
+		private final Map<String, List<String>> slugsByHeadingText = new HashMap<>();
+
+		/**
+		 * Fragment links within tables of contents, in document order
+		 */
+		private final List<Element> tocLinks = new ArrayList<>();
+
+		/**
+		 * Number of enclosing elements (or the current one) whose headings are ignored
+		 */
+		private int excludingDepth;
+
+		/**
+		 * Number of enclosing elements (or the current one) that are tables of contents
+		 */
+		private int tocDepth;
+
+		/**
+		 * @param root Root of the document, whose ancestors are taken into account
+		 */
+		FragmentSlugCollector(final Element root) {
+			for (Element ancestor = root.parent(); ancestor != null; ancestor = ancestor.parent()) {
+				enter(ancestor, 1);
+			}
+		}
 
-				if (isHtmlHeading && !heading.id().isEmpty()) {
-					slugs.put(heading.id(), headingSlug);
-				}
-				slugs.putIfAbsent(headingSlug, headingSlug);
-				slugsByHeadingText.computeIfAbsent(headingText, ignored -> new ArrayList<>()).add(headingSlug);
-
-				Element previousElement = heading.previousElementSibling();
-				if (isHtmlHeading
-						&& previousElement != null
-						&& "a".equals(previousElement.tagName())
-						&& !previousElement.id().isEmpty()
-						&& previousElement.text().isBlank()
-						&& !previousElement.hasAttr("href")) {
-					slugs.put(previousElement.id(), headingSlug);
+		@Override
+		public void head(final Node node, final int depth) {
+			if (!(node instanceof Element)) {
+				return;
+			}
+			Element element = (Element) node;
+			enter(element, 1);
+
+			switch (element.normalName()) {
+			case "h1":
+			case "h2":
+			case "h3":
+			case "h4":
+			case "h5":
+			case "h6":
+				addHeading(element, true);
+				break;
+			case "uib-tab-heading":
+				addHeading(element, false);
+				break;
+			case "a":
+				if (tocDepth > 0 && element.attr("href").startsWith("#")) {
+					tocLinks.add(element);
 				}
+				break;
+			default:
+				break;
 			}
+		}
 
-			for (Element link : root.select("a[href^=#]")) {
-				String target = link.attr("href").substring(1);
-				List<String> matchingSlugs = slugsByHeadingText.get(markdownVisibleText(link));
-				boolean isTocLink = link.closest("#toc, #right-toc, .toc, .toc-inline-container") != null;
-				if (isTocLink && !slugs.containsKey(target) && matchingSlugs != null && matchingSlugs.size() == 1) {
-					slugs.put(target, matchingSlugs.get(0));
-				}
+		@Override
+		public void tail(final Node node, final int depth) {
+			if (node instanceof Element) {
+				enter((Element) node, -1);
+			}
+		}
+
+		/**
+		 * Updates the context when entering or leaving an element
+		 *
+		 * @param element Element
+		 * @param increment 1 when entering the element, -1 when leaving it
+		 */
+		private void enter(final Element element, final int increment) {
+			if ("table".equals(element.normalName()) || (classFlags(element) & PRINT_ONLY_CLASS) != 0) {
+				excludingDepth += increment;
+			}
+			if ("toc".equals(element.id())
+					|| "right-toc".equals(element.id())
+					|| element.hasClass("toc")
+					|| element.hasClass("toc-inline-container")) {
+				tocDepth += increment;
 			}
+		}
 
-			return slugs;
+		/**
+		 * Maps the fragment identifiers of a heading to its anchor slug
+		 *
+		 * @param heading Heading
+		 * @param isHtmlHeading Whether the heading is an HTML heading (h1 to h6)
+		 */
+		private void addHeading(final Element heading, final boolean isHtmlHeading) {
+			if (excludingDepth > 0) {
+				return;
+			}
+
+			String headingText = markdownVisibleText(heading);
+			String baseSlug = markdownHeadingSlug(headingText);
+			if (baseSlug.isEmpty()) {
+				return;
+			}
+			String headingSlug = uniqueHeadingSlug(baseSlug);
+
+			if (isHtmlHeading && !heading.id().isEmpty()) {
+				slugs.put(heading.id(), headingSlug);
+			}
+			slugs.putIfAbsent(headingSlug, headingSlug);
+			slugsByHeadingText.computeIfAbsent(headingText, ignored -> new ArrayList<>()).add(headingSlug);
+
+			Element previousElement = heading.previousElementSibling();
+			if (isHtmlHeading
+					&& previousElement != null
+					&& "a".equals(previousElement.tagName())
+					&& !previousElement.id().isEmpty()
+					&& previousElement.text().isBlank()
+					&& !previousElement.hasAttr("href")) {
+				slugs.put(previousElement.id(), headingSlug);
+			}
 		}
 
-		private static String uniqueHeadingSlug(final String baseSlug, final Set<String> usedSlugs) {
+		/**
+		 * @param baseSlug Anchor slug of a heading
+		 * @return the anchor slug, with a numeric suffix if it's already used
+		 */
+		private String uniqueHeadingSlug(final String baseSlug) {
 			String candidate = baseSlug;
 			int suffix = 1;
 			while (!usedSlugs.add(candidate)) {
@@ -801,6 +1449,59 @@ public final class HtmlToMarkdownConverter {
 			return candidate;
 		}
 
+		/**
+		 * Maps the targets of the links of the tables of contents to the anchor slug of the
+		 * only heading with the same text, unless they are already mapped
+		 *
+		 * @return the map of the fragment identifiers to the anchor slugs
+		 */
+		Map<String, String> resolveTocLinks() {
+			for (Element link : tocLinks) {
+				String target = link.attr("href").substring(1);
+				if (!slugs.containsKey(target)) {
+					List<String> matchingSlugs = slugsByHeadingText.get(markdownVisibleText(link));
+					if (matchingSlugs != null && matchingSlugs.size() == 1) {
+						slugs.put(target, matchingSlugs.get(0));
+					}
+				}
+			}
+			return slugs;
+		}
+	}
+
+	/**
+	 * Tracks the current state during HTML to Markdown conversion.
+	 */
+	private static class ConversionState {
+
+		private boolean inPreformatted = false;
+		private int listDepth = 0;
+		private final Map<String, String> fragmentSlugs;
+
+		/**
+		 * Buffers of the nested constructs that have been converted, reused for the next ones
+		 * (a deeply nested construct would otherwise allocate and grow a new buffer at each level)
+		 */
+		private final Deque<StringBuilder> buffers;
+
+		ConversionState(final Element root) {
+			fragmentSlugs = buildFragmentSlugs(root);
+			buffers = new ArrayDeque<>();
+		}
+
+		ConversionState(final ConversionState other) {
+			this.inPreformatted = other.inPreformatted;
+			this.listDepth = other.listDepth;
+			this.fragmentSlugs = other.fragmentSlugs;
+			this.buffers = other.buffers;
+		}
+
+		private static Map<String, String> buildFragmentSlugs(final Element root) {
+			FragmentSlugCollector collector = new FragmentSlugCollector(root);
+			NodeTraversor.traverse(collector, root);
+			return collector.resolveTocLinks();
+		}
+
 		String resolveHref(final String href) {
 			if (!href.startsWith("#")) {
 				return href;
@@ -825,5 +1526,22 @@ public final class HtmlToMarkdownConverter {
 		void incrementListDepth() {
 			this.listDepth++;
 		}
+
+		/**
+		 * @return an empty buffer to convert a nested construct, to be released with
+		 *         {@link #releaseBuffer(StringBuilder)} once its content has been written
+		 */
+		StringBuilder acquireBuffer() {
+			StringBuilder buffer = buffers.pollLast();
+			return buffer == null ? new StringBuilder() : buffer;
+		}
+
+		/**
+		 * @param buffer Buffer acquired with {@link #acquireBuffer()}, that can be reused
+		 */
+		void releaseBuffer(final StringBuilder buffer) {
+			buffer.setLength(0);
+			buffers.addLast(buffer);
+		}
 	}
 }
@@ -22,10 +22,13 @@ package org.sentrysoftware.maven.skin;
 
 import java.text.Normalizer;
 import java.text.Normalizer.Form;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
@@ -37,14 +40,19 @@ import org.apache.velocity.tools.generic.ValueParser;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
 import org.jsoup.parser.Tag;
+import org.jsoup.select.Elements;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
 
 /**
  * An Apache Velocity tool that provides utility methods to manipulate HTML code using
  * <a href="http://jsoup.org/">jsoup</a> HTML5 parser.
  * <p>
  * The methods utilise <a href="http://jsoup.org/cookbook/extracting-data/selector-syntax">CSS
- * selectors</a> to refer to specific elements for manipulation.
+ * selectors</a> to refer to specific elements for manipulation. The selectors are parsed once,
+ * and cached for the next pages.
  * </p>
  *
  * @author Bertrand Martin (originally inspired by Andrius Velykis)
@@ -60,6 +68,56 @@ public class HtmlTool extends SafeConfig {
 			.unmodifiableList(
 					Arrays.asList("h1", "h2", "h3", "h4", "h5", "h6"));
 
+	/**
+	 * Flag of {@link #normalize(Element, int)}: moves the names of the anchors of the headings to
+	 * their IDs, like {@link #headingAnchorToId(Element)}
+	 */
+	public static final int HEADING_ANCHOR_TO_ID = 1;
+
+	/**
+	 * Flag of {@link #normalize(Element, int)}: adds IDs to the headings that have none, like
+	 * {@link #ensureHeadingIds(Element)}
+	 */
+	public static final int ENSURE_HEADING_IDS = 2;
+
+	/**
+	 * Flag of {@link #normalize(Element, int)}: removes the symbols not allowed in CSS selectors
+	 * from the IDs and the links to them, like {@link #fixIds(Element)}
+	 */
+	public static final int FIX_IDS = 4;
+
+	/**
+	 * Flag of {@link #normalize(Element, int)}: moves the rows of headings of the tables into
+	 * {@code &lt;thead&gt;} elements, like {@link #fixTableHeads(Element)}
+	 */
+	public static final int FIX_TABLE_HEADS = 8;
+
+	/**
+	 * Flag of {@link #normalize(Element, int)}: replaces protocol-relative links with HTTPS links,
+	 * like {@link #fixProtocolRelativeUrls(Element)}
+	 */
+	public static final int FIX_PROTOCOL_RELATIVE_URLS = 16;
+
+	/**
+	 * All the flags of {@link #normalize(Element, int)}
+	 */
+	public static final int NORMALIZE_ALL = HEADING_ANCHOR_TO_ID
+			| ENSURE_HEADING_IDS
+			| FIX_IDS
+			| FIX_TABLE_HEADS
+			| FIX_PROTOCOL_RELATIVE_URLS;
+
+	/**
+	 * Maximum number of parsed CSS selectors kept in {@link #SELECTORS}
+	 */
+	private static final int SELECTOR_CACHE_SIZE = 256;
+
+	/**
+	 * The CSS selectors parsed so far, shared by all the instances, as the same selectors are used
+	 * on every page
+	 */
+	private static final SelectorCache SELECTORS = new SelectorCache(SELECTOR_CACHE_SIZE);
+
 	private String outputEncoding = "UTF-8";
 
 	/**
@@ -110,7 +168,7 @@ public class HtmlTool extends SafeConfig {
 	 */
 	public Element setAttr(final Element body, final String selector, final String attributeKey, final String value) {
 
-		List<Element> elements = body.select(selector);
+		List<Element> elements = select(body, selector);
 
 		for (Element element : elements) {
 			element.attr(attributeKey, value);
@@ -120,6 +178,24 @@ public class HtmlTool extends SafeConfig {
 
 	}
 
+	/**
+	 * Finds the elements that match the specified CSS selector, parsed only once
+	 *
+	 * @param root Element to search from (included)
+	 * @param selector CSS selector
+	 * @return the matching elements
+	 */
+	private static Elements select(final Element root, final String selector) {
+		return root.select(SELECTORS.get(selector));
+	}
+
+	/**
+	 * @return the cache of the CSS selectors parsed by this tool
+	 */
+	static SelectorCache getSelectorCache() {
+		return SELECTORS;
+	}
+
 	/**
 	 * Parses HTML fragment
 	 *
@@ -152,7 +228,7 @@ public class HtmlTool extends SafeConfig {
 	 */
 	public List<String> getAttr(final Element body, final String selector, final String attributeKey) {
 
-		List<Element> elements = body.select(selector);
+		List<Element> elements = select(body, selector);
 		List<String> attrs = new ArrayList<String>();
 
 		for (Element element : elements) {
@@ -180,7 +256,7 @@ public class HtmlTool extends SafeConfig {
 	 */
 	public Element addClass(final Element body, final String selector, final List<String> classNames, final int amount) {
 
-		List<Element> elements = body.select(selector);
+		List<Element> elements = select(body, selector);
 		if (amount >= 0) {
 			// limit to the indicated amount
 			elements = elements.subList(0, Math.min(amount, elements.size()));
@@ -247,7 +323,7 @@ public class HtmlTool extends SafeConfig {
 	 */
 	public Element wrap(final Element body, final String selector, final String wrapHtml, final int amount) {
 
-		List<Element> elements = body.select(selector);
+		List<Element> elements = select(body, selector);
 		if (amount >= 0) {
 			// limit to the indicated amount
 			elements = elements.subList(0, Math.min(amount, elements.size()));
@@ -277,7 +353,7 @@ public class HtmlTool extends SafeConfig {
 	 */
 	public Element append(final Element body, final String selector, final String appendHtml, final int amount) {
 
-		List<Element> elements = body.select(selector);
+		List<Element> elements = select(body, selector);
 		if (amount >= 0) {
 			// limit to the indicated amount
 			elements = elements.subList(0, Math.min(amount, elements.size()));
@@ -307,7 +383,7 @@ public class HtmlTool extends SafeConfig {
 	 */
 	public Element prepend(final Element body, final String selector, final String prependHtml, final int amount) {
 
-		List<Element> elements = body.select(selector);
+		List<Element> elements = select(body, selector);
 		if (amount >= 0) {
 			// limit to the indicated amount
 			elements = elements.subList(0, Math.min(amount, elements.size()));
@@ -334,7 +410,7 @@ public class HtmlTool extends SafeConfig {
 	 */
 	public Element remove(final Element body, final String selector) {
 
-		List<Element> elements = body.select(selector);
+		List<Element> elements = select(body, selector);
 
 		for (Element element : elements) {
 			element.remove();
@@ -360,7 +436,7 @@ public class HtmlTool extends SafeConfig {
 	 */
 	public Element replace(final Element body, final String selector, final String replaceHtml, final int amount) {
 
-		List<Element> elements = body.select(selector);
+		List<Element> elements = select(body, selector);
 		if (amount >= 0) {
 			// limit to the indicated amount
 			elements = elements.subList(0, Math.min(amount, elements.size()));
@@ -387,7 +463,7 @@ public class HtmlTool extends SafeConfig {
 	 */
 	public List<String> text(final Element body, final String selector) {
 
-		List<Element> elements = body.select(selector);
+		List<Element> elements = select(body, selector);
 		List<String> texts = new ArrayList<String>();
 
 		for (Element element : elements) {
@@ -425,15 +501,12 @@ public class HtmlTool extends SafeConfig {
 		String nameA = "a[name]:not([href])";
 
 		// select all headings that have inner named anchor
-		List<Element> headingsInnerA = body
-				.select(
-						String
-								.join(
-										", ",
-										concat(headNoIds, ":has(" + nameA + ")", true)));
+		List<Element> headingsInnerA = select(
+				body,
+				String.join(", ", concat(headNoIds, ":has(" + nameA + ")", true)));
 
 		for (Element heading : headingsInnerA) {
-			List<Element> anchors = heading.select(nameA);
+			List<Element> anchors = select(heading, nameA);
 			// take first
 			if (!anchors.isEmpty()) {
 				anchorToId(heading, anchors.get(0));
@@ -441,12 +514,9 @@ public class HtmlTool extends SafeConfig {
 		}
 
 		// select all headings that have a preceding named anchor
-		List<Element> headingsPreA = body
-				.select(
-						String
-								.join(
-										", ",
-										concat(headNoIds, nameA + " + ", false)));
+		List<Element> headingsPreA = select(
+				body,
+				String.join(", ", concat(headNoIds, nameA + " + ", false)));
 
 		for (Element heading : headingsPreA) {
 			Element anchor = heading.previousElementSibling();
@@ -458,12 +528,9 @@ public class HtmlTool extends SafeConfig {
 		// select all headings that are followed by a named anchor
 		// no selector available for that, so first select the anchors
 		// then retrieve the headings
-		List<Element> anchorsPreH = body
-				.select(
-						String
-								.join(
-										", ",
-										concat(headNoIds, " + " + nameA, true)));
+		List<Element> anchorsPreH = select(
+				body,
+				String.join(", ", concat(headNoIds, " + " + nameA, true)));
 
 		for (Element anchor : anchorsPreH) {
 			Element heading = anchor.previousElementSibling();
@@ -538,38 +605,50 @@ public class HtmlTool extends SafeConfig {
 
 		// Find all existing IDs (to avoid generating duplicates)
 		Map<String, Integer> ids = new HashMap<String, Integer>();
-		List<Element> idElems = body.select("*[id]");
+		List<Element> idElems = select(body, "*[id]");
 		for (Element idElem : idElems) {
 			ids.put(idElem.id(), 0);
 		}
 
 		// select all headings that do not have an ID
-		List<Element> headingsNoId = body
-				.select("h1:not([id]), h2:not([id]), h3:not([id]), h4:not([id]), h5:not([id]), h6:not([id])");
+		List<Element> headingsNoId = select(
+				body,
+				"h1:not([id]), h2:not([id]), h3:not([id]), h4:not([id]), h5:not([id]), h6:not([id])");
 
 		for (Element heading : headingsNoId) {
+			heading.attr("id", headingId(heading, ids));
+		}
 
-			// Take the text content of the title
-			String headingText = heading.text();
+		return body;
 
-			// Create an ID out of it (trim all unwanted chars)
-			String headingSlug = slug(headingText);
-			if (headingSlug.length() > 50) {
-				headingSlug = headingSlug.substring(0, 50);
-			}
+	}
 
-			// If the ID already exists, add an increasing number to it
-			int slugNumber = ids.merge(headingSlug, 1, (oldValue, newValue) -> oldValue + 1);
+	/**
+	 * Creates the ID of a heading out of its text, unique among the specified IDs.
+	 *
+	 * @param heading Heading without ID
+	 * @param ids Number of uses of each existing ID, updated with the new ID
+	 * @return the ID of the heading
+	 */
+	private static String headingId(final Element heading, final Map<String, Integer> ids) {
 
-			// Set the ID attribute with slug_number
-			if (slugNumber > 1) {
-				headingSlug = headingSlug + "_" + slugNumber;
-			}
-			heading.attr("id", headingSlug);
+		// Take the text content of the title
+		String headingText = heading.text();
+
+		// Create an ID out of it (trim all unwanted chars)
+		String headingSlug = slug(headingText);
+		if (headingSlug.length() > 50) {
+			headingSlug = headingSlug.substring(0, 50);
 		}
 
-		return body;
+		// If the ID already exists, add an increasing number to it
+		int slugNumber = ids.merge(headingSlug, 1, (oldValue, newValue) -> oldValue + 1);
 
+		// Set the ID attribute with slug_number
+		if (slugNumber > 1) {
+			headingSlug = headingSlug + "_" + slugNumber;
+		}
+		return headingSlug;
 	}
 
 	/**
@@ -587,31 +666,48 @@ public class HtmlTool extends SafeConfig {
 	public Element fixIds(final Element body) {
 
 		// Find all IDs and remove unsupported characters
-		List<Element> idElems = body.select("*[id]");
+		List<Element> idElems = select(body, "*[id]");
 		for (Element idElem : idElems) {
-
-			String id = idElem.id();
-			String newId = slug(id);
-			if (!id.equals(newId)) {
-				idElem.attr("id", newId);
-			}
+			fixId(idElem);
 		}
 
 		// Then find all <a href="#..."> instances and update their values accordingly
-		List<Element> aElems = body.select("a[href^=#]");
+		List<Element> aElems = select(body, "a[href^=#]");
 		for (Element aElem : aElems) {
-			// fix all existing IDs - remove colon and other symbols which mess up jQuery
-			String href = aElem.attr("href");
-			String newHref = "#" + slug(href.substring(1));
-			if (!href.equals(newHref)) {
-				aElem.attr("href", newHref);
-			}
+			fixFragmentLink(aElem);
 		}
 
 		// Return result
 		return body;
 	}
 
+	/**
+	 * Removes the symbols not allowed in CSS selectors from the ID of an element.
+	 *
+	 * @param idElem Element with an ID
+	 */
+	private static void fixId(final Element idElem) {
+		String id = idElem.id();
+		String newId = slug(id);
+		if (!id.equals(newId)) {
+			idElem.attr("id", newId);
+		}
+	}
+
+	/**
+	 * Updates a link to an ID of the page, like the ID itself in {@link #fixId(Element)}.
+	 *
+	 * @param aElem Link whose {@code href} starts with "#"
+	 */
+	private static void fixFragmentLink(final Element aElem) {
+		// fix all existing IDs - remove colon and other symbols which mess up jQuery
+		String href = aElem.attr("href");
+		String newHref = "#" + slug(href.substring(1));
+		if (!href.equals(newHref)) {
+			aElem.attr("href", newHref);
+		}
+	}
+
 	/**
 	 * Fixes table heads: wraps rows with {@code &lt;th&gt;} (table heading) elements into {@code &lt;thead&gt;}
 	 * element if they are currently in {@code &lt;tbody&gt;}.
@@ -625,23 +721,105 @@ public class HtmlTool extends SafeConfig {
 	public Element fixTableHeads(final Element body) {
 
 		// select rows with <th> tags within <tbody>
-		List<Element> tableHeadRows = body.select("table > tbody > tr:has(th)");
+		List<Element> tableHeadRows = select(body, "table > tbody > tr:has(th)");
 
 		for (Element row : tableHeadRows) {
+			moveToTableHead(row);
+		}
+
+		return body;
+	}
+
+	/**
+	 * Moves a row of the {@code &lt;tbody&gt;} of a table into a new {@code &lt;thead&gt;} element,
+	 * at the beginning of the table.
+	 *
+	 * @param row Row of the body of a table
+	 */
+	private static void moveToTableHead(final Element row) {
+
+		// get the row's table
+		Element table = row.parent().parent();
 
-			// get the row's table
-			Element table = row.parent().parent();
+		// remove row from its original position
+		row.remove();
 
-			// remove row from its original position
-			row.remove();
+		// create table header element with the row
+		Element thead = new Element(Tag.valueOf("thead"), "");
+		thead.appendChild(row);
+		// add at the beginning of the table
+		table.prependChild(thead);
+	}
+
+	/**
+	 * Applies all the fixes of {@link #normalize(Element, int)} to the given HTML content.
+	 *
+	 * @param body
+	 *        HTML content to modify
+	 * @return HTML content with all the fixes applied
+	 */
+	public Element normalize(final Element body) {
+		return normalize(body, NORMALIZE_ALL);
+	}
 
-			// create table header element with the row
-			Element thead = new Element(Tag.valueOf("thead"), "");
-			thead.appendChild(row);
-			// add at the beginning of the table
-			table.prependChild(thead);
+	/**
+	 * Applies the specified fixes to the given HTML content, with a single traversal of the
+	 * document.
+	 * <p>
+	 * The result is the same as calling {@link #headingAnchorToId(Element)},
+	 * {@link #ensureHeadingIds(Element)}, {@link #fixIds(Element)}, {@link #fixTableHeads(Element)}
+	 * and {@link #fixProtocolRelativeUrls(Element)} in this order, for the methods whose flag is
+	 * set, but the elements to fix are found all at once instead of selecting them again for each
+	 * method.
+	 * </p>
+	 *
+	 * @param body
+	 *        HTML content to modify
+	 * @param flags
+	 *        Fixes to apply: a combination of {@link #HEADING_ANCHOR_TO_ID},
+	 *        {@link #ENSURE_HEADING_IDS}, {@link #FIX_IDS}, {@link #FIX_TABLE_HEADS} and
+	 *        {@link #FIX_PROTOCOL_RELATIVE_URLS}, or {@link #NORMALIZE_ALL}
+	 * @return HTML content with the fixes applied
+	 */
+	public Element normalize(final Element body, final int flags) {
+
+		DomNormalizer normalizer = new DomNormalizer(body);
+		NodeTraversor.traverse(normalizer, body);
+
+		if ((flags & HEADING_ANCHOR_TO_ID) != 0) {
+			normalizer.headingAnchorToId();
+		}
+
+		// In the unlikely case where anchors contained other elements, these elements have been
+		// removed too, and the elements found by the traversal are no longer accurate
+		if (normalizer.hasDetachedElements()) {
+			if ((flags & ENSURE_HEADING_IDS) != 0) {
+				ensureHeadingIds(body);
+			}
+			if ((flags & FIX_IDS) != 0) {
+				fixIds(body);
+			}
+			if ((flags & FIX_TABLE_HEADS) != 0) {
+				fixTableHeads(body);
+			}
+			if ((flags & FIX_PROTOCOL_RELATIVE_URLS) != 0) {
+				fixProtocolRelativeUrls(body);
+			}
+			return body;
 		}
 
+		if ((flags & ENSURE_HEADING_IDS) != 0) {
+			normalizer.ensureHeadingIds();
+		}
+		if ((flags & FIX_IDS) != 0) {
+			normalizer.fixIds();
+		}
+		if ((flags & FIX_TABLE_HEADS) != 0) {
+			normalizer.fixTableHeads();
+		}
+		if ((flags & FIX_PROTOCOL_RELATIVE_URLS) != 0) {
+			normalizer.fixProtocolRelativeUrls();
+		}
 		return body;
 	}
 
@@ -686,7 +864,7 @@ public class HtmlTool extends SafeConfig {
 
 		// Find all links with HREF that starts with //
 		// (i.e. protocol-relative)
-		List<Element> aElems = body.select("*[href^=//]");
+		List<Element> aElems = select(body, "*[href^=//]");
 
 		// Nothing? Exit immediately
 		if (aElems.isEmpty()) {
@@ -694,15 +872,319 @@ public class HtmlTool extends SafeConfig {
 		}
 
 		for (Element aElem : aElems) {
-
-			// Prepend "https:" in front of each protocol-relative link
-			String href = aElem.attr("href");
-			aElem.attr("href", "https:" + href);
-
+			fixProtocolRelativeUrl(aElem);
 		}
 
 		// Return result
 		return body;
 	}
 
+	/**
+	 * Prepends "https:" in front of a protocol-relative link.
+	 *
+	 * @param aElem Element whose {@code href} starts with "//"
+	 */
+	private static void fixProtocolRelativeUrl(final Element aElem) {
+		String href = aElem.attr("href");
+		aElem.attr("href", "https:" + href);
+	}
+
+	/**
+	 * Finds, in a single traversal, the elements fixed by {@link HtmlTool#normalize(Element, int)},
+	 * and then fixes them like the corresponding methods of {@link HtmlTool}.
+	 * <p>
+	 * The traversal doesn't modify the document. The fixes are then applied in the order of the
+	 * methods, taking into account the changes made by the previous fixes, so that the result is
+	 * the same as with the methods.
+	 * </p>
+	 */
+	private static final class DomNormalizer implements NodeVisitor {
+
+		/**
+		 * Root of the HTML content
+		 */
+		private final Element root;
+
+		/**
+		 * Headings, in document order
+		 */
+		private final List<Element> headings = new ArrayList<>();
+
+		/**
+		 * First named anchor within each heading without ID
+		 */
+		private final Map<Element, Element> innerAnchors = new IdentityHashMap<>();
+
+		/**
+		 * Enclosing headings without ID of the current node
+		 */
+		private final Deque<Element> openHeadings = new ArrayDeque<>();
+
+		/**
+		 * Named anchors ({@code a[name]:not([href])}), in document order
+		 */
+		private final List<Element> namedAnchors = new ArrayList<>();
+
+		/**
+		 * Elements with an ID, including the headings whose ID is set by the fixes
+		 */
+		private final List<Element> idElements = new ArrayList<>();
+
+		/**
+		 * Links to IDs of the page ({@code a[href^=#]}), in document order
+		 */
+		private final List<Element> fragmentLinks = new ArrayList<>();
+
+		/**
+		 * Elements with a protocol-relative link ({@code *[href^=//]}), in document order
+		 */
+		private final List<Element> protocolRelativeLinks = new ArrayList<>();
+
+		/**
+		 * Rows of the bodies of the tables ({@code table > tbody > tr}), in document order, or
+		 * null for the rows without {@code &lt;th&gt;}
+		 */
+		private final List<Element> tableHeadRows = new ArrayList<>();
+
+		/**
+		 * Index in {@link #tableHeadRows} and value of {@link #thCount} when each enclosing row of
+		 * a table body was entered
+		 */
+		private final Deque<int[]> openRows = new ArrayDeque<>();
+
+		/**
+		 * Number of {@code &lt;th&gt;} elements found so far
+		 */
+		private int thCount;
+
+		/**
+		 * Whether an anchor removed by {@link #headingAnchorToId()} contained other elements
+		 */
+		private boolean detachedElements;
+
+		/**
+		 * @param root Root of the HTML content
+		 */
+		DomNormalizer(final Element root) {
+			this.root = root;
+		}
+
+		@Override
+		public void head(final Node node, final int depth) {
+			if (!(node instanceof Element)) {
+				return;
+			}
+			Element element = (Element) node;
+			String name = element.normalName();
+
+			if (element.hasAttr("id")) {
+				idElements.add(element);
+			}
+			if (element.attr("href").startsWith("//")) {
+				protocolRelativeLinks.add(element);
+			}
+
+			if (isHeading(name)) {
+				headings.add(element);
+				if (!element.hasAttr("id")) {
+					openHeadings.push(element);
+				}
+			} else if ("a".equals(name)) {
+				if (isNamedAnchor(element)) {
+					namedAnchors.add(element);
+					for (Element heading : openHeadings) {
+						innerAnchors.putIfAbsent(heading, element);
+					}
+				}
+				if (element.attr("href").startsWith("#")) {
+					fragmentLinks.add(element);
+				}
+			} else if ("th".equals(name)) {
+				thCount++;
+			} else if (isTableBodyRow(element)) {
+				openRows.push(new int[] { tableHeadRows.size(), thCount });
+				tableHeadRows.add(element);
+			}
+		}
+
+		@Override
+		public void tail(final Node node, final int depth) {
+			if (!(node instanceof Element)) {
+				return;
+			}
+			Element element = (Element) node;
+			if (!openHeadings.isEmpty() && openHeadings.peek() == element) {
+				openHeadings.pop();
+			} else if (isTableBodyRow(element)) {
+				int[] row = openRows.pop();
+				if (thCount == row[1]) {
+					tableHeadRows.set(row[0], null);
+				}
+			}
+		}
+
+		/**
+		 * @return whether the row is a child of the {@code &lt;tbody&gt;} of a table
+		 */
+		private boolean isTableBodyRow(final Element element) {
+			if (element == root || !"tr".equals(element.normalName())) {
+				return false;
+			}
+			Element tbody = element.parent();
+			if (tbody == null || tbody == root || !"tbody".equals(tbody.normalName())) {
+				return false;
+			}
+			Element table = tbody.parent();
+			return table != null && "table".equals(table.normalName());
+		}
+
+		/**
+		 * Moves the names of the anchors of the headings to their IDs, like
+		 * {@link HtmlTool#headingAnchorToId(Element)}: anchors within the headings first, then
+		 * anchors before the headings, and anchors after the headings.
+		 */
+		void headingAnchorToId() {
+
+			for (Element heading : headings) {
+				Element anchor = innerAnchors.get(heading);
+				if (anchor != null && (anchor.parent() == null || detachedElements)) {
+					// Removed by an enclosing heading: look for the next one
+					anchor = heading.selectFirst(SELECTORS.get("a[name]:not([href])"));
+				}
+				if (anchor != null) {
+					moveAnchorToId(heading, anchor);
+				}
+			}
+
+			for (Element heading : headings) {
+				if (heading != root && !heading.hasAttr("id") && isPresent(heading)) {
+					Element anchor = heading.previousElementSibling();
+					if (anchor != null && isNamedAnchor(anchor)) {
+						moveAnchorToId(heading, anchor);
+					}
+				}
+			}
+
+			for (Element anchor : namedAnchors) {
+				if (anchor != root && isPresent(anchor)) {
+					Element heading = anchor.previousElementSibling();
+					if (heading != null && isHeading(heading.normalName()) && !heading.hasAttr("id")) {
+						moveAnchorToId(heading, anchor);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Moves the name of the anchor to the ID of the heading, like
+		 * {@link HtmlTool#anchorToId(Element, Element)}, keeping track of the new ID and of the
+		 * elements removed with the anchor.
+		 */
+		private void moveAnchorToId(final Element heading, final Element anchor) {
+			boolean hadId = heading.hasAttr("id");
+			boolean hasChildren = anchor.childrenSize() > 0;
+			anchorToId(heading, anchor);
+			if (!hadId && heading.hasAttr("id")) {
+				idElements.add(heading);
+			}
+			if (hasChildren && anchor.parent() == null) {
+				detachedElements = true;
+			}
+		}
+
+		/**
+		 * @return whether elements have been removed along with anchors, in which case the
+		 *         elements found by the traversal may no longer be in the document
+		 */
+		boolean hasDetachedElements() {
+			return detachedElements;
+		}
+
+		/**
+		 * Adds IDs to the headings that have none, like {@link HtmlTool#ensureHeadingIds(Element)}.
+		 */
+		void ensureHeadingIds() {
+			Map<String, Integer> ids = new HashMap<>();
+			for (Element idElement : idElements) {
+				if (isPresent(idElement)) {
+					ids.put(idElement.id(), 0);
+				}
+			}
+			for (Element heading : headings) {
+				if (!heading.hasAttr("id")) {
+					heading.attr("id", headingId(heading, ids));
+					idElements.add(heading);
+				}
+			}
+		}
+
+		/**
+		 * Fixes the IDs and the links to them, like {@link HtmlTool#fixIds(Element)}.
+		 */
+		void fixIds() {
+			for (Element idElement : idElements) {
+				if (isPresent(idElement)) {
+					fixId(idElement);
+				}
+			}
+			for (Element link : fragmentLinks) {
+				fixFragmentLink(link);
+			}
+		}
+
+		/**
+		 * Moves the rows of headings into {@code &lt;thead&gt;} elements, like
+		 * {@link HtmlTool#fixTableHeads(Element)}.
+		 */
+		void fixTableHeads() {
+			for (Element row : tableHeadRows) {
+				if (row != null) {
+					moveToTableHead(row);
+				}
+			}
+		}
+
+		/**
+		 * Replaces the protocol-relative links, like {@link HtmlTool#fixProtocolRelativeUrls(Element)}.
+		 */
+		void fixProtocolRelativeUrls() {
+			for (Element link : protocolRelativeLinks) {
+				fixProtocolRelativeUrl(link);
+			}
+		}
+
+		/**
+		 * @return whether the element is still in the HTML content (i.e. it is not a removed anchor,
+		 *         nor an element within a removed anchor)
+		 */
+		private boolean isPresent(final Element element) {
+			if (!detachedElements) {
+				return element == root || element.parent() != null;
+			}
+			Element ancestor = element;
+			while (ancestor != root) {
+				ancestor = ancestor.parent();
+				if (ancestor == null) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * @return whether the tag is a heading (h1-6)
+		 */
+		private static boolean isHeading(final String name) {
+			return HEADINGS.contains(name);
+		}
+
+		/**
+		 * @return whether the element is an anchor with a name and no link
+		 *         ({@code a[name]:not([href])})
+		 */
+		private static boolean isNamedAnchor(final Element element) {
+			return "a".equals(element.normalName()) && element.hasAttr("name") && !element.hasAttr("href");
+		}
+	}
+
 }
@@ -0,0 +1,182 @@
+package org.sentrysoftware.maven.skin;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Sentry Maven Skin Tools
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2017 - 2026 Sentry Software
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.slf4j.Logger;
+
+/**
+ * Directory of image files derived from source images (WEBP versions, thumbnails), identified by
+ * the hash of the content of the source image and of the parameters of the encoding, so that they
+ * can be reused across builds, even after a fresh checkout or a {@code mvn clean}.
+ * <p>
+ * Each derived file is stored as {@code <hash[0..2]>/<hash>.<extension>} in the directory, which
+ * can be shared by several builds (e.g. restored by the CI before the build): the files are
+ * written atomically, and never modified. Failing to store a file in the cache doesn't fail the
+ * build: the derived file will simply be encoded again in the next build.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ */
+final class ImageDerivativeCache {
+
+	/**
+	 * Size of the buffer used to hash the source images
+	 */
+	private static final int BUFFER_SIZE = 65536;
+
+	/**
+	 * Directory of the cache
+	 */
+	private final Path directory;
+
+	/**
+	 * Where the files that cannot be stored in the cache are reported
+	 */
+	private final Logger log;
+
+	/**
+	 * Creates a cache in the specified directory (created when the first file is stored)
+	 *
+	 * @param directory Directory of the cache
+	 * @param log Where the files that cannot be stored in the cache are reported
+	 */
+	ImageDerivativeCache(final Path directory, final Logger log) {
+		this.directory = directory.toAbsolutePath().normalize();
+		this.log = log;
+	}
+
+	/**
+	 * @return the directory of the cache
+	 */
+	Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Computes the key of a derived file in the cache.
+	 *
+	 * @param sourceFile Source image file
+	 * @param parameters Format and parameters of the encoding of the derived file (e.g.
+	 *        "thumbnail 1 jpg 100x0"), which must change whenever the derived file would change
+	 * @return the SHA-256 hash of the content of the source image and of the parameters
+	 * @throws IOException when the source image cannot be read
+	 */
+	static String key(final File sourceFile, final String parameters) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+		digest.update(parameters.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		try (InputStream input = Files.newInputStream(sourceFile.toPath())) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int count;
+			while ((count = input.read(buffer)) > 0) {
+				digest.update(buffer, 0, count);
+			}
+		}
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * @param key Key of the derived file, as computed by {@link #key(File, String)}
+	 * @param extension Extension of the derived file (e.g. "webp")
+	 * @return the path of the derived file in the cache
+	 */
+	Path getPath(final String key, final String extension) {
+		return directory.resolve(key.substring(0, 2)).resolve(key + "." + extension);
+	}
+
+	/**
+	 * Copies the cached derived file with the specified key to the destination, if it exists.
+	 *
+	 * @param key Key of the derived file, as computed by {@link #key(File, String)}
+	 * @param destination Where the derived file is needed
+	 * @return whether the derived file was found in the cache, and copied
+	 * @throws IOException when the destination cannot be written
+	 */
+	boolean restore(final String key, final File destination) throws IOException {
+		Path cachedPath = getPath(key, ImageTool.getExtension(destination));
+		if (!Files.isRegularFile(cachedPath)) {
+			return false;
+		}
+		Files.copy(cachedPath, destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		return true;
+	}
+
+	/**
+	 * Stores a copy of a derived file in the cache, with the specified key.
+	 * <p>
+	 * Nothing is stored if the derived file doesn't exist (e.g. no ImageIO writer for its format).
+	 * </p>
+	 *
+	 * @param key Key of the derived file, as computed by {@link #key(File, String)}
+	 * @param derivedFile Derived file to store
+	 * @return whether the file has been stored in the cache
+	 */
+	boolean store(final String key, final File derivedFile) {
+		if (!derivedFile.isFile()) {
+			return false;
+		}
+		Path cachedPath = getPath(key, ImageTool.getExtension(derivedFile));
+		try {
+			Path parent = cachedPath.getParent();
+			Files.createDirectories(parent);
+
+			// Copy to a temporary file first, so that other builds never see an incomplete file
+			Path tempPath = Files.createTempFile(parent, key, ".tmp");
+			try {
+				Files.copy(derivedFile.toPath(), tempPath, StandardCopyOption.REPLACE_EXISTING);
+				try {
+					Files.move(tempPath, cachedPath, StandardCopyOption.ATOMIC_MOVE);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(tempPath, cachedPath, StandardCopyOption.REPLACE_EXISTING);
+				}
+			} finally {
+				Files.deleteIfExists(tempPath);
+			}
+		} catch (IOException e) {
+			log.warn("ImageTool: Failed to store {} in the image cache at {}: {}", derivedFile, cachedPath, e.getMessage());
+			return false;
+		}
+		return true;
+	}
+
+}
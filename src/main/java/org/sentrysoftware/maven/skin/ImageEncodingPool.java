@@ -0,0 +1,165 @@
+package org.sentrysoftware.maven.skin;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Sentry Maven Skin Tools
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2017 - 2026 Sentry Software
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of background threads that encode the image files derived from the images of the site
+ * (WEBP versions, thumbnails), so that the images of a page are encoded in parallel.
+ * <p>
+ * Jobs are deduplicated per destination file: as long as a job is running or waiting to run,
+ * submitting another job for the same destination returns the same result.
+ * </p>
+ * <p>
+ * The threads are daemon threads: the jobs must be waited for with {@link #await(Collection)}
+ * before their files are needed, as they are not completed when the JVM exits.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ */
+final class ImageEncodingPool {
+
+	/**
+	 * Threads of the pool
+	 */
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * Jobs that are not completed yet, per normalized absolute path of their destination file
+	 */
+	private final Map<Path, Future<File>> jobs = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates a pool with the specified number of threads
+	 *
+	 * @param threadCount Number of threads that encode images in parallel
+	 * @param name Prefix of the names of the threads
+	 */
+	ImageEncodingPool(final int threadCount, final String name) {
+		AtomicInteger threadNumber = new AtomicInteger();
+		ThreadFactory threadFactory = runnable -> {
+			Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		executor = new ThreadPoolExecutor(
+				threadCount,
+				threadCount,
+				1,
+				TimeUnit.MINUTES,
+				new LinkedBlockingQueue<>(),
+				threadFactory);
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Submits a job that creates the specified destination file, unless a job for the same
+	 * destination is already running or waiting to run.
+	 *
+	 * @param destination File created by the job
+	 * @param job Creates the destination file, and returns it (or null if there is none)
+	 * @return the result of the job (or of the job submitted previously for the same destination),
+	 *         to be waited for with {@link #await(Collection)}
+	 */
+	Future<File> submit(final File destination, final Callable<File> job) {
+		Path key = destination.toPath().toAbsolutePath().normalize();
+		FutureTask<File> task = new FutureTask<File>(() -> {
+			try {
+				return job.call();
+			} catch (IOException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IOException("Failed to create " + key, e);
+			}
+		}) {
+			@Override
+			protected void done() {
+				// Later jobs for the same destination will run again
+				jobs.remove(key, this);
+			}
+		};
+		Future<File> previous = jobs.putIfAbsent(key, task);
+		if (previous != null) {
+			return previous;
+		}
+		executor.execute(task);
+		return task;
+	}
+
+	/**
+	 * @return the number of jobs that are running or waiting to run
+	 */
+	int getPendingCount() {
+		return jobs.size();
+	}
+
+	/**
+	 * Waits for the specified jobs to complete.
+	 *
+	 * @param pendingJobs Results of the jobs, as returned by {@link #submit(File, Callable)}
+	 *        (the same job may be listed several times)
+	 * @throws IOException when a job failed (the failures of the other jobs are suppressed
+	 *         exceptions), after all the jobs have completed
+	 */
+	static void await(final Collection<Future<File>> pendingJobs) throws IOException {
+		IOException firstError = null;
+		for (Future<File> job : new LinkedHashSet<>(pendingJobs)) {
+			try {
+				job.get();
+			} catch (ExecutionException e) {
+				// The failure of a job may be reported to several threads: wrap it in a new exception
+				Throwable cause = e.getCause();
+				IOException error = new IOException(cause.getMessage(), cause);
+				if (firstError == null) {
+					firstError = error;
+				} else {
+					firstError.addSuppressed(error);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the images to be encoded");
+			}
+		}
+
+		if (firstError != null) {
+			throw firstError;
+		}
+	}
+
+}
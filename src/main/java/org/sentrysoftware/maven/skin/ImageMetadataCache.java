@@ -0,0 +1,237 @@
+package org.sentrysoftware.maven.skin;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Sentry Maven Skin Tools
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2017 - 2026 Sentry Software
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache of what is known about the image files of a site, so that an image referenced by many
+ * pages is probed only once per build: its real path, its dimensions, and the files derived from
+ * it (WEBP version, thumbnails).
+ * <p>
+ * The images are identified by their absolute path, and the cached metadata is valid as long as
+ * the time of last modification and the size of the file don't change, which is checked each time
+ * the metadata is retrieved.
+ * </p>
+ * <p>
+ * The cache holds the metadata of at most the specified number of images: when it is full, an
+ * arbitrary image is evicted to make room for the new one.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ */
+final class ImageMetadataCache {
+
+	/**
+	 * Metadata of the images, per absolute and normalized path
+	 */
+	private final ConcurrentMap<Path, ImageMetadata> images = new ConcurrentHashMap<>();
+
+	/**
+	 * Maximum number of images in the cache
+	 */
+	private final int maximumSize;
+
+	/**
+	 * Creates an empty cache
+	 *
+	 * @param maximumSize Maximum number of images in the cache
+	 */
+	ImageMetadataCache(final int maximumSize) {
+		this.maximumSize = maximumSize;
+	}
+
+	/**
+	 * Returns the metadata of the specified image file, from the cache if the file hasn't changed
+	 * since it was cached.
+	 *
+	 * @param path Path to the image file
+	 * @return the metadata of the image, or null if the file doesn't exist or is not a regular file
+	 */
+	ImageMetadata get(final Path path) {
+		Path key = path.toAbsolutePath().normalize();
+
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(key, BasicFileAttributes.class);
+		} catch (IOException e) {
+			images.remove(key);
+			return null;
+		}
+		if (!attributes.isRegularFile()) {
+			images.remove(key);
+			return null;
+		}
+
+		long lastModified = attributes.lastModifiedTime().toMillis();
+		long size = attributes.size();
+		ImageMetadata metadata = images.get(key);
+		if (metadata != null && metadata.lastModified == lastModified && metadata.size == size) {
+			return metadata;
+		}
+
+		// Make room for the new image
+		metadata = new ImageMetadata(key, lastModified, size);
+		Iterator<Path> iterator = images.keySet().iterator();
+		while (images.size() >= maximumSize && iterator.hasNext()) {
+			iterator.next();
+			iterator.remove();
+		}
+		images.put(key, metadata);
+		return metadata;
+	}
+
+	/**
+	 * @return the number of images currently in the cache
+	 */
+	int size() {
+		return images.size();
+	}
+
+	/**
+	 * Removes all the images from the cache
+	 */
+	void clear() {
+		images.clear();
+	}
+
+	/**
+	 * Creates a file derived from an image file
+	 */
+	@FunctionalInterface
+	interface DerivedFileFactory {
+
+		/**
+		 * @param sourceFile Image file
+		 * @return the derived file, or null if there is none for this image
+		 * @throws IOException when the image cannot be read, or the derived file cannot be written
+		 */
+		File create(File sourceFile) throws IOException;
+	}
+
+	/**
+	 * What is known about a version of an image file. The information is retrieved the first time
+	 * it is requested.
+	 */
+	static final class ImageMetadata {
+
+		/**
+		 * Absolute and normalized path to the image file
+		 */
+		private final Path path;
+
+		/**
+		 * Time of last modification of the image file, in milliseconds since EPOCH
+		 */
+		private final long lastModified;
+
+		/**
+		 * Size of the image file, in bytes
+		 */
+		private final long size;
+
+		/**
+		 * Real path to the image file (with the actual case of its name), once retrieved
+		 */
+		private Path realPath;
+
+		/**
+		 * Dimensions of the image (empty if its format is not supported), once read
+		 */
+		private Optional<Dimension> dimensions;
+
+		/**
+		 * Files derived from the image (empty if there is none), per kind of derived file
+		 */
+		private final Map<String, Optional<File>> derivedFiles = new ConcurrentHashMap<>();
+
+		/**
+		 * @param path Absolute and normalized path to the image file
+		 * @param lastModified Time of last modification of the image file
+		 * @param size Size of the image file
+		 */
+		private ImageMetadata(final Path path, final long lastModified, final long size) {
+			this.path = path;
+			this.lastModified = lastModified;
+			this.size = size;
+		}
+
+		/**
+		 * @return the absolute and normalized path to the image file
+		 */
+		Path getPath() {
+			return path;
+		}
+
+		/**
+		 * @return the real path to the image file, with the actual case of its name
+		 * @throws IOException when the real path cannot be resolved
+		 */
+		synchronized Path getRealPath() throws IOException {
+			if (realPath == null) {
+				realPath = path.toRealPath();
+			}
+			return realPath;
+		}
+
+		/**
+		 * @return the dimensions of the image, or null if its format is not supported
+		 * @throws IOException when the image cannot be read
+		 */
+		synchronized Dimension getDimensions() throws IOException {
+			if (dimensions == null) {
+				dimensions = Optional.ofNullable(ImageTool.readImageSize(path.toFile()));
+			}
+			return dimensions.map(Dimension::new).orElse(null);
+		}
+
+		/**
+		 * Returns the specified kind of file derived from the image, which is created only if it
+		 * hasn't been created yet for this version of the image, or if it has been deleted since.
+		 *
+		 * @param kind Kind of derived file, including the options of its creation
+		 *        (e.g. "thumbnail 100x0")
+		 * @param factory Creates the derived file
+		 * @return the derived file, or null if there is none for this image
+		 * @throws IOException when the derived file cannot be created
+		 */
+		File getDerivedFile(final String kind, final DerivedFileFactory factory) throws IOException {
+			Optional<File> derivedFile = derivedFiles.get(kind);
+			if (derivedFile == null || derivedFile.isPresent() && !derivedFile.get().isFile()) {
+				derivedFile = Optional.ofNullable(factory.create(path.toFile()));
+				derivedFiles.put(kind, derivedFile);
+			}
+			return derivedFile.orElse(null);
+		}
+	}
+
+}
@@ -20,25 +20,35 @@ package org.sentrysoftware.maven.skin;
  * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
  */
 
-import java.awt.Image;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import javax.imageio.IIOException;
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
 import javax.imageio.ImageWriteParam;
 import javax.imageio.ImageWriter;
 import javax.imageio.spi.IIORegistry;
 import javax.imageio.stream.FileImageOutputStream;
+import javax.imageio.stream.ImageInputStream;
 
 import org.apache.velocity.tools.config.DefaultKey;
+import org.apache.velocity.tools.generic.SafeConfig;
+import org.apache.velocity.tools.generic.ValueParser;
 import org.jsoup.nodes.Element;
 
 import com.luciad.imageio.webp.WebPImageReaderSpi;
@@ -47,9 +57,20 @@ import com.luciad.imageio.webp.WebPWriteParam;
 
 /**
  * Set of tools for handling images
+ * <p>
+ * The WEBP versions and thumbnails of the images can be kept in a persistent cache directory,
+ * specified with the {@code derivativeCacheDirectory} tool property in <code>tools.xml</code>,
+ * so that they are not encoded again in later builds, even after a {@code mvn clean} or on a
+ * CI runner that restores this directory (see {@link ImageDerivativeCache}).
+ * </p>
+ * <p>
+ * The WEBP versions and thumbnails of the images of a page are encoded in parallel by a pool of
+ * background threads, and written before the page is returned. An image referenced by several
+ * pages rendered at the same time is encoded once.
+ * </p>
  */
 @DefaultKey("imageTool")
-public class ImageTool {
+public class ImageTool extends SafeConfig {
 
 	static {
 		// First, register the WEBP IOImage Writer and Reader
@@ -70,6 +91,46 @@ public class ImageTool {
 	 */
 	private static final Pattern ABSOLUTE_URL_PATTERN = Pattern.compile("^(?:[a-z]+:)?//", Pattern.CASE_INSENSITIVE);
 
+	/**
+	 * Maximum number of images whose metadata is kept in {@link #IMAGES}
+	 */
+	private static final int IMAGE_CACHE_SIZE = 10000;
+
+	/**
+	 * Metadata of the images of the site, shared by all the pages that reference them
+	 */
+	private static final ImageMetadataCache IMAGES = new ImageMetadataCache(IMAGE_CACHE_SIZE);
+
+	/**
+	 * Name of the tool property that specifies the persistent cache directory of the WEBP
+	 * versions and thumbnails of the images
+	 */
+	static final String DERIVATIVE_CACHE_DIRECTORY_KEY = "derivativeCacheDirectory";
+
+	/**
+	 * Version of the encoding of the thumbnails, part of their key in the persistent cache: to be
+	 * incremented whenever createThumbnail() produces different files
+	 */
+	static final int THUMBNAIL_ENCODING_VERSION = 2;
+
+	/**
+	 * Version of the encoding of the WEBP images, part of their key in the persistent cache: to be
+	 * incremented whenever saveImageFileAsWebp() produces different files
+	 */
+	static final int WEBP_ENCODING_VERSION = 1;
+
+	/**
+	 * Pool of threads that encode the WEBP versions and thumbnails of the images
+	 */
+	private static final ImageEncodingPool ENCODING_POOL = new ImageEncodingPool(
+			Runtime.getRuntime().availableProcessors(),
+			"ImageTool-encoder");
+
+	/**
+	 * Persistent cache of the WEBP versions and thumbnails of the images (null if disabled)
+	 */
+	private ImageDerivativeCache derivativeCache;
+
 	/**
 	 * Create a new instance
 	 */
@@ -77,6 +138,64 @@ public class ImageTool {
 		/* Do nothing */
 	}
 
+	/**
+	 * Configures the tool with the properties specified in <code>tools.xml</code>.
+	 * <p>
+	 * {@code derivativeCacheDirectory} enables the persistent cache of the WEBP versions and
+	 * thumbnails of the images in the specified directory (relative to the current directory),
+	 * e.g. <code>&lt;tool key="imageTool" class="org.sentrysoftware.maven.skin.ImageTool"
+	 * derivativeCacheDirectory=".image-cache" /&gt;</code>.
+	 * </p>
+	 *
+	 * @param values the tool properties
+	 * @see SafeConfig#configure(ValueParser)
+	 */
+	@Override
+	protected void configure(final ValueParser values) {
+		String directory = values.getString(DERIVATIVE_CACHE_DIRECTORY_KEY);
+		if (directory == null || directory.trim().isEmpty()) {
+			derivativeCache = null;
+			return;
+		}
+		derivativeCache = new ImageDerivativeCache(Paths.get(directory.trim()), getLog());
+	}
+
+	/**
+	 * @return the persistent cache of the WEBP versions and thumbnails of the images, or null if
+	 *         disabled
+	 */
+	ImageDerivativeCache getDerivativeCache() {
+		return derivativeCache;
+	}
+
+	/**
+	 * Encodes a derived image file in the background, unless it is already being encoded.
+	 *
+	 * @param destination File created by the job
+	 * @param job Creates the destination file
+	 * @param pendingJobs Where the result of the job is added, to be waited for with
+	 *        {@link ImageEncodingPool#await(java.util.Collection)}
+	 * @return the destination file, which may not exist yet
+	 */
+	private static File submitEncoding(final File destination, final Callable<File> job, final List<Future<File>> pendingJobs) {
+		pendingJobs.add(ENCODING_POOL.submit(destination, job));
+		return destination;
+	}
+
+	/**
+	 * @return the cache of the metadata of the images processed by this tool
+	 */
+	static ImageMetadataCache getImageCache() {
+		return IMAGES;
+	}
+
+	/**
+	 * @return the pool of threads that encode the WEBP versions and thumbnails of the images
+	 */
+	static ImageEncodingPool getEncodingPool() {
+		return ENCODING_POOL;
+	}
+
 	/**
 	 * Returns whether specified path is absolute or not.
 	 * <ul>
@@ -123,6 +242,9 @@ public class ImageTool {
 			throw new IOException("Couldn't get the parent path of " + currentDocument);
 		}
 
+		// Real path of the parent directory, retrieved with the first image
+		Path parentRealPath = null;
+
 		// Select all images
 		List<Element> elements = body.select("img");
 
@@ -142,7 +264,6 @@ public class ImageTool {
 
 			// Calculate the path to the actual picture file
 			Path sourcePath = documentPath.resolveSibling(imageSrc);
-			File sourceFile = sourcePath.toFile();
 
 			// Skip external URLs
 			if (!sourcePath.toAbsolutePath().startsWith(basedirPath)) {
@@ -151,7 +272,12 @@ public class ImageTool {
 
 			// Recalculate the relative link and see whether the original matches
 			// the recalculated one. If not, it means there is a problem in the case.
-			Path recalculatedPath = parentPath.toRealPath().relativize(sourcePath.toRealPath());
+			if (parentRealPath == null) {
+				parentRealPath = parentPath.toRealPath();
+			}
+			ImageMetadataCache.ImageMetadata image = IMAGES.get(sourcePath);
+			Path sourceRealPath = image == null ? sourcePath.toRealPath() : image.getRealPath();
+			Path recalculatedPath = parentRealPath.relativize(sourceRealPath);
 			String sourcePathSlashString = sourcePath.toString().replace('\\', '/');
 			String recalculatedPathSlashString = recalculatedPath.toString().replace('\\', '/');
 			if (!recalculatedPathSlashString.endsWith(sourcePathSlashString)
@@ -163,7 +289,7 @@ public class ImageTool {
 			}
 
 			// Sanity check
-			if (!sourceFile.isFile()) {
+			if (image == null) {
 				errorList.add("Referenced image " + imageSrc + " in " + currentDocument + " doesn't exist");
 			}
 
@@ -210,6 +336,106 @@ public class ImageTool {
 		return name;
 	}
 
+	/**
+	 * Returns the width and height of the specified image file, read from its header by the
+	 * {@link ImageReader} of its format, without decoding its pixels.
+	 *
+	 * @param sourceFile Image file
+	 * @return the dimensions of the image, or null if its format is not supported (like
+	 *         {@link ImageIO#read(File)})
+	 * @throws IOException when the file cannot be read
+	 */
+	protected static Dimension readImageSize(final File sourceFile) throws IOException {
+		try (ImageInputStream input = ImageIO.createImageInputStream(sourceFile)) {
+			if (input == null) {
+				throw new IIOException("Can't create an ImageInputStream for " + sourceFile);
+			}
+
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+			if (!readers.hasNext()) {
+				return null;
+			}
+
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(input, true, true);
+				return new Dimension(reader.getWidth(0), reader.getHeight(0));
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * @param sourceFile File instance of the source image
+	 * @param thumbnailMark Suffix to be appended to the source file name to build the thumbnail file
+	 * @return File instance of the thumbnail image created by {@link #createThumbnail(File, String, int, int)}
+	 */
+	protected static File getThumbnailFile(final File sourceFile, final String thumbnailMark) {
+		return new File(sourceFile.getParent(), getNameWithoutExtension(sourceFile) + thumbnailMark + ".jpg");
+	}
+
+	/**
+	 * Calculates the dimensions of the thumbnail of an image.
+	 *
+	 * @param sourceSize Dimensions of the source image
+	 * @param maxWidth Maximum width of the thumbnail, 0 if no maximum width
+	 * @param maxHeight Maximum height of the thumbnail, 0 if no maximum height
+	 * @return the dimensions of the thumbnail created by {@link #createThumbnail(File, String, int, int)}
+	 */
+	protected static Dimension getThumbnailSize(final Dimension sourceSize, final int maxWidth, final int maxHeight) {
+		int targetWidth = sourceSize.width;
+		int targetHeight = sourceSize.height;
+
+		if (maxWidth > 0 && targetWidth > maxWidth) {
+			targetHeight = targetHeight * maxWidth / targetWidth;
+			targetWidth = maxWidth;
+		}
+		if (maxHeight > 0 && targetHeight > maxHeight) {
+			targetWidth = targetWidth * maxHeight / targetHeight;
+			targetHeight = maxHeight;
+		}
+
+		return new Dimension(targetWidth, targetHeight);
+	}
+
+	/**
+	 * Scales the specified image down to the specified dimensions, as an RGB image.
+	 * <p>
+	 * The image is halved with bilinear interpolation until it is less than twice as large as
+	 * the target, then scaled to the target, so that no pixel is skipped at any step (as with the
+	 * much slower {@code Image.getScaledInstance(..., SCALE_SMOOTH)}), while each step is done by
+	 * the optimized loops of Java2D.
+	 * </p>
+	 *
+	 * @param sourceImage Image to scale down
+	 * @param targetWidth Width of the resulting image (not larger than the source image)
+	 * @param targetHeight Height of the resulting image (not larger than the source image)
+	 * @return the scaled image, of type {@link BufferedImage#TYPE_INT_RGB}
+	 */
+	protected static BufferedImage downscale(final BufferedImage sourceImage, final int targetWidth, final int targetHeight) {
+		BufferedImage image = sourceImage;
+		int width = image.getWidth();
+		int height = image.getHeight();
+		do {
+			width = width / 2 > targetWidth ? width / 2 : targetWidth;
+			height = height / 2 > targetHeight ? height / 2 : targetHeight;
+
+			BufferedImage step = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			Graphics2D graphics = step.createGraphics();
+			try {
+				graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+				graphics.drawImage(image, 0, 0, width, height, null);
+			} finally {
+				graphics.dispose();
+			}
+			image = step;
+		} while (width != targetWidth || height != targetHeight);
+
+		return image;
+	}
+
 	/**
 	 * Create a thumbnail image file from the specified image file.
 	 * <p>
@@ -227,6 +453,29 @@ public class ImageTool {
 			final int maxWidth,
 			final int maxHeight)
 			throws IOException {
+		return createThumbnail(sourceFile, thumbnailMark, maxWidth, maxHeight, null);
+	}
+
+	/**
+	 * Create a thumbnail image file from the specified image file, unless it is found in the
+	 * specified persistent cache.
+	 * <p>
+	 *
+	 * @param sourceFile File instance of the source image
+	 * @param thumbnailMark Suffix to be appended to the source file name to build the thumbnail file
+	 * @param maxWidth Maximum width of the thumbnail, 0 if no maximum width
+	 * @param maxHeight Maximum height of the thumbnail, 0 if no maximum height
+	 * @param cache Persistent cache of the thumbnails (null if none)
+	 * @return File instance of the thumbail image
+	 * @throws IOException when cannot read the source image, or write the thumbnail file
+	 */
+	protected static File createThumbnail(
+			final File sourceFile,
+			final String thumbnailMark,
+			final int maxWidth,
+			final int maxHeight,
+			final ImageDerivativeCache cache)
+			throws IOException {
 
 		// Sanity check
 		if (!sourceFile.isFile()) {
@@ -234,42 +483,56 @@ public class ImageTool {
 		}
 
 		// Destination
-		File destination = new File(sourceFile.getParent(), getNameWithoutExtension(sourceFile) + thumbnailMark + ".jpg");
+		File destination = getThumbnailFile(sourceFile, thumbnailMark);
 
 		// Do we need to do anything? (if destination is newer than source, we skip)
 		if (Helper.getLastModifiedTime(sourceFile) < Helper.getLastModifiedTime(destination)) {
 			return destination;
 		}
 
+		// Has it been created by a previous build?
+		String imageType = getExtension(sourceFile).toLowerCase();
+		String cacheKey = null;
+		if (cache != null) {
+			cacheKey = ImageDerivativeCache
+					.key(sourceFile, "thumbnail " + THUMBNAIL_ENCODING_VERSION + " " + imageType + " " + maxWidth + "x" + maxHeight);
+			if (cache.restore(cacheKey, destination)) {
+				return destination;
+			}
+		}
+
 		// Read the specified image
 		BufferedImage sourceImage = ImageIO.read(sourceFile);
-		String imageType = getExtension(sourceFile).toLowerCase();
 
 		// Calculate the dimensions of the resulting thumbnail
-		int targetWidth = sourceImage.getWidth();
-		int targetHeight = sourceImage.getHeight();
-
-		if (maxWidth > 0 && targetWidth > maxWidth) {
-			targetHeight = targetHeight * maxWidth / targetWidth;
-			targetWidth = maxWidth;
-		}
-		if (maxHeight > 0 && targetHeight > maxHeight) {
-			targetWidth = targetWidth * maxHeight / targetHeight;
-			targetHeight = maxHeight;
-		}
+		Dimension targetSize = getThumbnailSize(
+				new Dimension(sourceImage.getWidth(), sourceImage.getHeight()),
+				maxWidth,
+				maxHeight);
 
 		// Rescale
-		Image resultingImage = sourceImage.getScaledInstance(targetWidth, targetHeight, Image.SCALE_SMOOTH);
-		BufferedImage outputImage = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB);
-		outputImage.getGraphics().drawImage(resultingImage, 0, 0, null);
+		BufferedImage outputImage = downscale(sourceImage, targetSize.width, targetSize.height);
 
 		// Write the thumbnail file
 		ImageIO.write(outputImage, imageType, destination);
 
+		// Keep it for the next builds
+		if (cache != null) {
+			cache.store(cacheKey, destination);
+		}
+
 		return destination;
 
 	}
 
+	/**
+	 * @param sourceFile image file to convert to WEBP
+	 * @return File instance of the WEBP image created by {@link #saveImageFileAsWebp(File)}
+	 */
+	protected static File getWebpFile(final File sourceFile) {
+		return new File(sourceFile.getParent(), getNameWithoutExtension(sourceFile) + ".webp");
+	}
+
 	/**
 	 * Saves the specified image file as a WEBP image.
 	 * <p>
@@ -279,6 +542,21 @@ public class ImageTool {
 	 * @throws IOException when cannot read the image file
 	 */
 	protected static File saveImageFileAsWebp(final File sourceFile) throws IOException {
+		return saveImageFileAsWebp(sourceFile, null);
+	}
+
+	/**
+	 * Saves the specified image file as a WEBP image, unless it is found in the specified
+	 * persistent cache.
+	 * <p>
+	 *
+	 * @param sourceFile image file to convert to WEBP
+	 * @param cache Persistent cache of the WEBP images (null if none)
+	 * @return a File instance of the converted image, or null if the file was already a WEBP
+	 * @throws IOException when cannot read the image file
+	 */
+	protected static File saveImageFileAsWebp(final File sourceFile, final ImageDerivativeCache cache)
+			throws IOException {
 
 		// Sanity check
 		if (!sourceFile.isFile()) {
@@ -286,25 +564,35 @@ public class ImageTool {
 		}
 
 		// Output file
-		String webpImagePath = getNameWithoutExtension(sourceFile) + ".webp";
-		File webpFile = new File(sourceFile.getParent(), webpImagePath);
+		File webpFile = getWebpFile(sourceFile);
 
 		// Do we need to do anything? (if destination is newer than source, we skip)
 		if (Helper.getLastModifiedTime(sourceFile) < Helper.getLastModifiedTime(webpFile)) {
 			return webpFile;
 		}
 
-		// Read the specified image
-		BufferedImage sourceImage = ImageIO.read(sourceFile);
-		if (sourceImage == null) {
-			return null;
-		}
-
 		// Image type (skip if webp)
 		String imageType = getExtension(sourceFile).toLowerCase();
 		if ("webp".equals(imageType)) {
 			return null;
 		}
+		boolean lossy = "jpeg".equals(imageType) || "jpg".equals(imageType);
+
+		// Has it been converted by a previous build?
+		String cacheKey = null;
+		if (cache != null) {
+			cacheKey = ImageDerivativeCache
+					.key(sourceFile, "webp " + WEBP_ENCODING_VERSION + (lossy ? " lossy" : " lossless"));
+			if (cache.restore(cacheKey, webpFile)) {
+				return webpFile;
+			}
+		}
+
+		// Read the specified image
+		BufferedImage sourceImage = ImageIO.read(sourceFile);
+		if (sourceImage == null) {
+			return null;
+		}
 
 		// Obtain a WebP ImageWriter instance
 		ImageWriter writer = ImageIO.getImageWritersBySuffix("webp").next();
@@ -312,17 +600,25 @@ public class ImageTool {
 		// Configure encoding parameters: LOSSY for jpeg and jpg, LOSSLESS otherwise
 		WebPWriteParam writeParam = new WebPWriteParam(writer.getLocale());
 		writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-		if ("jpeg".equals(imageType) || "jpg".equals(imageType)) {
+		if (lossy) {
 			writeParam.setCompressionType(writeParam.getCompressionTypes()[WebPWriteParam.LOSSY_COMPRESSION]);
 		} else {
 			writeParam.setCompressionType(writeParam.getCompressionTypes()[WebPWriteParam.LOSSLESS_COMPRESSION]);
 		}
 
-		// Configure the output on the ImageWriter
-		writer.setOutput(new FileImageOutputStream(webpFile));
+		// Configure the output on the ImageWriter, and write the WEBP image
+		// (the file must be complete before it is stored in the cache)
+		try (FileImageOutputStream output = new FileImageOutputStream(webpFile)) {
+			writer.setOutput(output);
+			writer.write(null, new IIOImage(sourceImage, null, null), writeParam);
+		} finally {
+			writer.dispose();
+		}
 
-		// Write the WEBP image
-		writer.write(null, new IIOImage(sourceImage, null, null), writeParam);
+		// Keep it for the next builds
+		if (cache != null) {
+			cache.store(cacheKey, webpFile);
+		}
 
 		// Return the file
 		return webpFile;
@@ -363,6 +659,9 @@ public class ImageTool {
 		// Select all images
 		List<Element> elements = body.select(selector);
 
+		// WEBP images being encoded for this page
+		List<Future<File>> pendingJobs = new ArrayList<>();
+
 		// For each image
 		for (Element element : elements) {
 
@@ -387,16 +686,25 @@ public class ImageTool {
 			}
 
 			// Sanity check
-			if (!sourceFile.isFile()) {
+			ImageMetadataCache.ImageMetadata image = IMAGES.get(sourcePath);
+			if (image == null) {
 				throw new IOException(sourceFile.getAbsolutePath() + " (referenced as " + imageSrc + ") does not exist");
 			}
 
-			// Save as webp
-			File webpFile = saveImageFileAsWebp(sourceFile);
-			if (webpFile == null) {
+			// Skip WEBP images, and the images that cannot be read
+			if ("webp".equalsIgnoreCase(getExtension(sourceFile)) || image.getDimensions() == null) {
 				continue;
 			}
 
+			// Save as webp in the background (once per build)
+			File webpFile = image
+					.getDerivedFile(
+							"webp",
+							file -> submitEncoding(
+									getWebpFile(file),
+									() -> saveImageFileAsWebp(file, derivativeCache),
+									pendingJobs));
+
 			// Calculate the src path of the webp image
 			String webpSrc = parentPath.relativize(webpFile.toPath()).toString().replace('\\', '/');
 
@@ -410,6 +718,9 @@ public class ImageTool {
 
 		}
 
+		// The page must not be published before its images
+		ImageEncodingPool.await(pendingJobs);
+
 		return body;
 
 	}
@@ -474,27 +785,28 @@ public class ImageTool {
 			}
 
 			// Sanity check
-			if (!sourceFile.isFile()) {
+			ImageMetadataCache.ImageMetadata image = IMAGES.get(sourcePath);
+			if (image == null) {
 				throw new IOException(sourceFile.getAbsolutePath() + " (referenced as " + imageSrc + ") does not exist");
 			}
 
-			// Read the image
-			BufferedImage sourceImage = ImageIO.read(sourceFile);
-			if (sourceImage == null) {
+			// Read the size of the image (not the image itself)
+			Dimension sourceSize = image.getDimensions();
+			if (sourceSize == null) {
 				continue;
 			}
 
 			// Now set the width and height attributes (and CSS)
 			element
-					.attr("width", String.valueOf(sourceImage.getWidth()))
-					.attr("height", String.valueOf(sourceImage.getHeight()))
+					.attr("width", String.valueOf(sourceSize.width))
+					.attr("height", String.valueOf(sourceSize.height))
 					.attr(
 							"style",
 							String
 									.format(
 											"width: %dpx; height: %dpx;%s",
-											sourceImage.getWidth(),
-											sourceImage.getHeight(),
+											sourceSize.width,
+											sourceSize.height,
 											element.attr("style")));
 
 		}
@@ -503,6 +815,49 @@ public class ImageTool {
 
 	}
 
+	/**
+	 * Returns the metadata of the image of the site referenced by the specified element.
+	 *
+	 * @param element Element with the path to the image in its SRC attribute
+	 * @param basedirPath Absolute path to the root directory of the site
+	 * @param documentPath Path to the document that contains the element
+	 * @return the metadata of the image, or null if the element doesn't reference an image of
+	 *         the site (no SRC attribute, absolute or external URL)
+	 * @throws IOException when the image doesn't exist
+	 */
+	private static ImageMetadataCache.ImageMetadata getImage(
+			final Element element,
+			final Path basedirPath,
+			final Path documentPath)
+			throws IOException {
+
+		// Get the SRC attribute (the path)
+		String imageSrc = element.attr("src");
+		if (imageSrc.isEmpty()) {
+			return null;
+		}
+
+		// Skip absolute URLs
+		if (isAbsoluteUrl(imageSrc)) {
+			return null;
+		}
+
+		// Calculate the path to the actual picture file
+		Path sourcePath = documentPath.resolveSibling(imageSrc);
+
+		// Skip external URLs
+		if (!sourcePath.toAbsolutePath().startsWith(basedirPath)) {
+			return null;
+		}
+
+		// Sanity check
+		ImageMetadataCache.ImageMetadata image = IMAGES.get(sourcePath);
+		if (image == null) {
+			throw new IOException(sourcePath.toFile().getAbsolutePath() + " (referenced as " + imageSrc + ") does not exist");
+		}
+		return image;
+	}
+
 	/**
 	 * For all images in the document, create the corresponding thumbnail, and wrap
 	 * the picture elements with the specified template.
@@ -556,51 +911,56 @@ public class ImageTool {
 		// Select all images
 		List<Element> elements = body.select(selector);
 
-		// For each image
+		// Create the thumbnails of the page in parallel, in the background (once per build)
+		List<Future<File>> pendingJobs = new ArrayList<>();
 		for (Element element : elements) {
-
-			// Get the SRC attribute (the path)
-			String imageSrc = element.attr("src");
-			if (imageSrc.isEmpty()) {
+			ImageMetadataCache.ImageMetadata image = getImage(element, basedirPath, documentPath);
+			if (image == null) {
 				continue;
 			}
-
-			// Skip absolute URLs
-			if (isAbsoluteUrl(imageSrc)) {
-				continue;
+			if (image.getDimensions() == null) {
+				throw new IOException(image.getPath() + " (referenced as " + element.attr("src") + ") is not a supported image");
 			}
+			image
+					.getDerivedFile(
+							"thumbnail " + maxWidth + "x" + maxHeight,
+							file -> submitEncoding(
+									getThumbnailFile(file, "-thumbnail"),
+									() -> createThumbnail(file, "-thumbnail", maxWidth, maxHeight, derivativeCache),
+									pendingJobs));
+		}
 
-			// Get the ALT attribute (the description)
-			String imageAlt = element.attr("alt");
+		// The page must not be published before its thumbnails
+		ImageEncodingPool.await(pendingJobs);
 
-			// Calculate the path to the actual picture file
-			Path sourcePath = documentPath.resolveSibling(imageSrc);
-			File sourceFile = sourcePath.toFile();
+		// For each image
+		for (Element element : elements) {
 
-			// Skip external URLs
-			if (!sourcePath.toAbsolutePath().startsWith(basedirPath)) {
+			ImageMetadataCache.ImageMetadata image = getImage(element, basedirPath, documentPath);
+			if (image == null) {
 				continue;
 			}
 
-			// Sanity check
-			if (!sourceFile.isFile()) {
-				throw new IOException(sourceFile.getAbsolutePath() + " (referenced as " + imageSrc + ") does not exist");
-			}
+			// Get the ALT attribute (the description)
+			String imageAlt = element.attr("alt");
 
 			// Image size
-			BufferedImage sourceImage = ImageIO.read(sourceFile);
-			int sourceWidth = sourceImage.getWidth();
-			int sourceHeight = sourceImage.getHeight();
-
-			// Create the thumbnail
-			File thumbnailFile = createThumbnail(sourceFile, "-thumbnail", maxWidth, maxHeight);
-
-			// Read the thumbnail and get its size
-			BufferedImage thumbnailImage = ImageIO.read(thumbnailFile);
-			int thumbnailWidth = thumbnailImage.getWidth();
-			int thumbnailHeight = thumbnailImage.getHeight();
+			Dimension sourceSize = image.getDimensions();
+			int sourceWidth = sourceSize.width;
+			int sourceHeight = sourceSize.height;
+
+			// Read the actual size of the thumbnail, which may have been created with other
+			// maximum dimensions by another page
+			File thumbnailFile = getThumbnailFile(image.getPath().toFile(), "-thumbnail");
+			ImageMetadataCache.ImageMetadata thumbnail = IMAGES.get(thumbnailFile.toPath());
+			Dimension thumbnailSize = thumbnail == null ? null : thumbnail.getDimensions();
+			if (thumbnailSize == null) {
+				throw new IOException("Couldn't read the thumbnail of " + image.getPath() + " (" + thumbnailFile + ")");
+			}
+			int thumbnailWidth = thumbnailSize.width;
+			int thumbnailHeight = thumbnailSize.height;
 
-			// Calculate the src path of the webp image
+			// Calculate the src path of the thumbnail
 			String thumbnailSrc = parentPath.relativize(thumbnailFile.toPath()).toString().replace('\\', '/');
 
 			// Replace macros in the wrap template
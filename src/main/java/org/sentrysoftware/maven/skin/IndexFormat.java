@@ -0,0 +1,157 @@
+package org.sentrysoftware.maven.skin;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Sentry Maven Skin Tools
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2017 - 2026 Sentry Software
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * How an elasticlunr.js index is written to disk by the Java engine.
+ * <p>
+ * By default, the index is a single JSON file that is loaded in the browser with
+ * {@code elasticlunr.Index.load(indexJson)}. For large sites, the index can be split into
+ * several files, so that the browser downloads only what is needed for the current search:
+ * </p>
+ * <ul>
+ * <li><b>sharded</b>: the inverted index of each field is split by the first character of the
+ * terms. The main index file keeps only the roots of the inverted indexes, and lists the shard
+ * files in its {@code "shards"} property (first character &rarr; file name). Each shard file
+ * is a JSON object with the subtree of that character for each field, to be attached with
+ * {@code index.index[field].root[character] = shard[field]}</li>
+ * <li><b>external documents</b>: the documents are written to a separate file, listed in the
+ * {@code "documents"} property of the main index file (document reference &rarr; document),
+ * and the main index file is written as with {@code saveDocument(false)}</li>
+ * <li><b>gzip</b>: a gzip-compressed sibling (<code>.gz</code>) is written next to each file,
+ * to be served pre-compressed by the web server</li>
+ * </ul>
+ * <p>
+ * All these files are read back when the index is updated.
+ * </p>
+ */
+final class IndexFormat {
+
+	/**
+	 * Single JSON file, with the documents, and no compressed sibling
+	 */
+	static final IndexFormat DEFAULT = new IndexFormat(false, false, false);
+
+	/**
+	 * Extension of the compressed siblings
+	 */
+	static final String GZIP_EXTENSION = ".gz";
+
+	private final boolean sharded;
+	private final boolean externalDocuments;
+	private final boolean gzip;
+
+	/**
+	 * @param sharded Whether the inverted indexes are split by first character of the terms
+	 * @param externalDocuments Whether the documents are written to a separate file
+	 * @param gzip Whether gzip-compressed siblings are written
+	 */
+	IndexFormat(final boolean sharded, final boolean externalDocuments, final boolean gzip) {
+		this.sharded = sharded;
+		this.externalDocuments = externalDocuments;
+		this.gzip = gzip;
+	}
+
+	/**
+	 * @return whether the inverted indexes are split by first character of the terms
+	 */
+	boolean isSharded() {
+		return sharded;
+	}
+
+	/**
+	 * @return whether the documents are written to a separate file
+	 */
+	boolean isExternalDocuments() {
+		return externalDocuments;
+	}
+
+	/**
+	 * @return whether gzip-compressed siblings are written
+	 */
+	boolean isGzip() {
+		return gzip;
+	}
+
+	/**
+	 * @return whether this is the default format (a single JSON file)
+	 */
+	boolean isDefault() {
+		return !sharded && !externalDocuments && !gzip;
+	}
+
+	/**
+	 * @param indexPath Path to the main index file
+	 * @return the name of the main index file, without its <code>.json</code> extension
+	 */
+	private static String getBaseName(final Path indexPath) {
+		String fileName = indexPath.getFileName().toString();
+		if (fileName.toLowerCase(Locale.ROOT).endsWith(".json")) {
+			return fileName.substring(0, fileName.length() - ".json".length());
+		}
+		return fileName;
+	}
+
+	/**
+	 * @param indexPath Path to the main index file
+	 * @return the name of the file with the documents (e.g. <code>index.docs.json</code>)
+	 */
+	static String getDocumentsFileName(final Path indexPath) {
+		return getBaseName(indexPath) + ".docs.json";
+	}
+
+	/**
+	 * @param indexPath Path to the main index file
+	 * @param firstCharacter First character of the terms in the shard
+	 * @return the name of the shard file (e.g. <code>index-0061.json</code> for "a")
+	 */
+	static String getShardFileName(final Path indexPath, final char firstCharacter) {
+		return String.format("%s-%04x.json", getBaseName(indexPath), (int) firstCharacter);
+	}
+
+	/**
+	 * Writes the gzip-compressed sibling of the specified file
+	 *
+	 * @param file File to compress
+	 * @throws IOException when the file cannot be read or the compressed file cannot be written
+	 */
+	static void writeGzipSibling(final Path file) throws IOException {
+		Path gzipFile = file.resolveSibling(file.getFileName().toString() + GZIP_EXTENSION);
+		try (InputStream in = Files.newInputStream(file);
+				OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzipFile))) {
+			in.transferTo(out);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "IndexFormat [sharded=" + sharded + ", externalDocuments=" + externalDocuments + ", gzip=" + gzip + "]";
+	}
+
+}
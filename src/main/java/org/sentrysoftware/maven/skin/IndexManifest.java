@@ -0,0 +1,355 @@
+package org.sentrysoftware.maven.skin;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Sentry Maven Skin Tools
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2017 - 2026 Sentry Software
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sidecar file of an elasticlunr.js index file, with the hash of the content of each indexed
+ * document, so that documents that haven't changed since the previous build are not indexed
+ * again.
+ * <p>
+ * The manifest is stored next to the index file, with the {@value #EXTENSION} extension. Each
+ * line contains the SHA-256 hash of a document (title, keywords and body), a space, and the ID
+ * of the document.
+ * </p>
+ * <p>
+ * The first line of the manifest can record the settings the index file has been written with
+ * (e.g. its engine and format), after {@value #SETTINGS_PREFIX}: a manifest written with other
+ * settings is ignored, so that all the documents are indexed again with the new settings.
+ * </p>
+ * <p>
+ * The manifest also keeps track of the documents that have been seen during the current build,
+ * so that the documents that no longer exist can be removed from the index.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ */
+final class IndexManifest {
+
+	/**
+	 * Extension appended to the name of the index file to get the name of the manifest file
+	 */
+	static final String EXTENSION = ".manifest";
+
+	/**
+	 * Prefix of the line with the settings the index file has been written with
+	 */
+	static final String SETTINGS_PREFIX = "# ";
+
+	/**
+	 * Hash of each document, per document ID
+	 */
+	private final Map<String, String> hashes = new ConcurrentHashMap<>();
+
+	/**
+	 * IDs of the documents seen during this build
+	 */
+	private final Set<String> seenIds = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Settings the index file is written with, or null if they are not recorded
+	 */
+	private final String settings;
+
+	/**
+	 * Whether the manifest file has been read or written, i.e. whether it starts with the
+	 * settings of this manifest and lists documents that are in the index file
+	 */
+	private volatile boolean stored;
+
+	/**
+	 * Whether the manifest file has a single line per document (guarded by this)
+	 */
+	private boolean compact;
+
+	/**
+	 * Creates an empty manifest, without settings
+	 */
+	IndexManifest() {
+		this(null);
+	}
+
+	/**
+	 * Creates an empty manifest
+	 *
+	 * @param settings Settings the index file is written with (on a single line), or null if
+	 *        they are not recorded
+	 */
+	IndexManifest(final String settings) {
+		this.settings = settings;
+	}
+
+	/**
+	 * @param indexPath Path to the index file
+	 * @return the path to the manifest of the specified index file
+	 */
+	static Path getManifestPath(final Path indexPath) {
+		return indexPath.resolveSibling(indexPath.getFileName().toString() + EXTENSION);
+	}
+
+	/**
+	 * Loads the manifest of the specified index file.
+	 * <p>
+	 * If the index file doesn't exist, the manifest is ignored, as none of the documents it
+	 * lists are actually indexed.
+	 * </p>
+	 *
+	 * @param indexPath Path to the index file
+	 * @return the manifest, empty if there is none
+	 * @throws IOException when the manifest file cannot be read
+	 */
+	static IndexManifest load(final Path indexPath) throws IOException {
+		return load(indexPath, null);
+	}
+
+	/**
+	 * Loads the manifest of the specified index file, if it has been written with the specified
+	 * settings.
+	 * <p>
+	 * If the index file doesn't exist, or has been written with other settings, the manifest is
+	 * ignored, as none of the documents it lists are actually indexed as expected.
+	 * </p>
+	 *
+	 * @param indexPath Path to the index file
+	 * @param settings Settings the index file is written with (on a single line), or null if
+	 *        they are not recorded
+	 * @return the manifest, empty if there is none
+	 * @throws IOException when the manifest file cannot be read
+	 */
+	static IndexManifest load(final Path indexPath, final String settings) throws IOException {
+		if (!Files.exists(indexPath)) {
+			return new IndexManifest(settings);
+		}
+		return loadIgnoringIndex(indexPath, settings);
+	}
+
+	/**
+	 * Loads the manifest of the specified index file, if it has been written with the specified
+	 * settings, whether the index file exists or not (when the caller checks by itself that the
+	 * documents listed in the manifest are still there).
+	 *
+	 * @param indexPath Path to the index file
+	 * @param settings Settings the index file is written with (on a single line), or null if
+	 *        they are not recorded
+	 * @return the manifest, empty if there is none
+	 * @throws IOException when the manifest file cannot be read
+	 */
+	static IndexManifest loadIgnoringIndex(final Path indexPath, final String settings) throws IOException {
+		IndexManifest manifest = new IndexManifest(settings);
+		Path manifestPath = getManifestPath(indexPath);
+		if (!Files.exists(manifestPath)) {
+			return manifest;
+		}
+		int lineCount = 0;
+		try (BufferedReader reader = Files.newBufferedReader(manifestPath, StandardCharsets.UTF_8)) {
+			String line = reader.readLine();
+			if (settings != null) {
+				if (!(SETTINGS_PREFIX + settings).equals(line)) {
+					return manifest;
+				}
+				line = reader.readLine();
+			}
+			for (; line != null; line = reader.readLine()) {
+				if (line.startsWith(SETTINGS_PREFIX)) {
+					continue;
+				}
+				int space = line.indexOf(' ');
+				if (space > 0) {
+					manifest.hashes.put(line.substring(space + 1), line.substring(0, space));
+					lineCount++;
+				}
+			}
+		}
+		manifest.stored = true;
+		manifest.compact = lineCount == manifest.hashes.size();
+		return manifest;
+	}
+
+	/**
+	 * Computes the hash of the indexed content of a document
+	 *
+	 * @param title Title of the document
+	 * @param keywords Keywords of the document
+	 * @param body Content of the document
+	 * @return the hexadecimal SHA-256 hash of the document
+	 */
+	static String hash(final String title, final String keywords, final String body) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+		for (String part : new String[] { title, keywords, body }) {
+			// Distinguish null from empty strings, and separate the parts
+			digest.update(part == null ? (byte) 1 : (byte) 0);
+			if (part != null) {
+				digest.update(part.getBytes(StandardCharsets.UTF_8));
+			}
+			digest.update((byte) 0);
+		}
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * @return the settings the index file is written with, or null if they are not recorded
+	 */
+	String getSettings() {
+		return settings;
+	}
+
+	/**
+	 * @return whether the manifest has been read from or written to the manifest file, and
+	 *         therefore describes the content of an index file that exists (or existed)
+	 */
+	boolean isStored() {
+		return stored;
+	}
+
+	/**
+	 * Marks the specified document as seen during this build and records its hash
+	 *
+	 * @param id ID of the document
+	 * @param hash Hash of the document, as computed by {@link #hash(String, String, String)}
+	 * @return whether the document has changed (or is new) and must be indexed
+	 */
+	boolean update(final String id, final String hash) {
+		if (id == null || id.indexOf('\n') >= 0 || id.indexOf('\r') >= 0) {
+			// Cannot be stored in the manifest
+			return true;
+		}
+		seenIds.add(id);
+		return !hash.equals(hashes.put(id, hash));
+	}
+
+	/**
+	 * Forgets the hash of the specified document, so that it is considered as changed next time
+	 * (when it could not be processed)
+	 *
+	 * @param id ID of the document
+	 */
+	void forget(final String id) {
+		if (id != null) {
+			hashes.remove(id);
+		}
+	}
+
+	/**
+	 * Forgets the documents that haven't been seen during this build
+	 *
+	 * @return the IDs of the documents that must be removed from the index
+	 */
+	List<String> removeUnseen() {
+		List<String> unseenIds = new ArrayList<>();
+		for (String id : hashes.keySet()) {
+			if (!seenIds.contains(id)) {
+				unseenIds.add(id);
+			}
+		}
+		for (String id : unseenIds) {
+			hashes.remove(id);
+		}
+		return unseenIds;
+	}
+
+	/**
+	 * Writes the manifest of the specified index file, with its settings and the documents
+	 * sorted by ID
+	 *
+	 * @param indexPath Path to the index file
+	 * @throws IOException when the manifest file cannot be written
+	 */
+	synchronized void write(final Path indexPath) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(getManifestPath(indexPath), StandardCharsets.UTF_8)) {
+			if (settings != null) {
+				writer.write(SETTINGS_PREFIX);
+				writer.write(settings);
+				writer.newLine();
+			}
+			for (Map.Entry<String, String> entry : new TreeMap<>(hashes).entrySet()) {
+				writer.write(entry.getValue());
+				writer.write(' ');
+				writer.write(entry.getKey());
+				writer.newLine();
+			}
+		}
+		stored = true;
+		compact = true;
+	}
+
+	/**
+	 * Appends the current hash of the specified document to the manifest file of the specified
+	 * index file, instead of writing the whole manifest again: when the manifest is loaded, the
+	 * last line of a document prevails.
+	 * <p>
+	 * The whole manifest is written if the manifest file hasn't been read or written yet, or if
+	 * it already had several lines for some documents when it was read, so that the manifest
+	 * file doesn't keep growing from one build to the next.
+	 * </p>
+	 *
+	 * @param indexPath Path to the index file
+	 * @param id ID of the document
+	 * @throws IOException when the manifest file cannot be written
+	 */
+	synchronized void append(final Path indexPath, final String id) throws IOException {
+		if (!stored || !compact) {
+			write(indexPath);
+			return;
+		}
+		String hash = id == null ? null : hashes.get(id);
+		if (hash == null) {
+			return;
+		}
+		try (BufferedWriter writer = Files
+				.newBufferedWriter(
+						getManifestPath(indexPath),
+						StandardCharsets.UTF_8,
+						StandardOpenOption.CREATE,
+						StandardOpenOption.APPEND)) {
+			writer.write(hash);
+			writer.write(' ');
+			writer.write(id);
+			writer.newLine();
+		}
+	}
+
+}
@@ -26,20 +26,44 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.script.ScriptException;
 
 import org.apache.velocity.tools.config.DefaultKey;
 import org.apache.velocity.tools.generic.SafeConfig;
-import org.graalvm.polyglot.Context;
+import org.apache.velocity.tools.generic.ValueParser;
 import org.graalvm.polyglot.PolyglotException;
-import org.graalvm.polyglot.Value;
 
 /**
  * indexTool is a reference-able in a Velocity template.
  * <p>
  * It creates the elasticlunr index of the specified HTML content.
  * </p>
+ * <p>
+ * Documents can be indexed in 2 ways:
+ * </p>
+ * <ul>
+ * <li>{@link #buildElasticLunrIndex(String, String, String, String, String)} updates the index
+ * file on disk immediately, for each document</li>
+ * <li>{@link #addToElasticLunrIndex(String, String, String, String, String)} accumulates the
+ * documents in an index kept in memory, which is written only once with {@link #flush()}, or
+ * automatically when the JVM shuts down (without removing the documents that no longer exist)</li>
+ * </ul>
+ * <p>
+ * The index is built by a pure Java implementation of elasticlunr.js 0.9.5 by default
+ * ({@code engine="java"}). The original elasticlunr.js library, executed with GraalVM
+ * Javascript, can be used instead with the {@code engine="javascript"} tool property in
+ * <code>tools.xml</code>. Both produce the same index files.
+ * </p>
  */
 @DefaultKey("indexTool")
 public class IndexTool extends SafeConfig {
@@ -50,47 +74,164 @@ public class IndexTool extends SafeConfig {
 	static final Charset UTF8_CHARSET = StandardCharsets.UTF_8;
 
 	/**
-	 * Static initialization exception
+	 * Name of the tool property that selects the indexing engine
 	 */
-	private static Throwable lastError;
+	static final String ENGINE_KEY = "engine";
 
 	/**
-	 * Javascript function that adds a document to the specified elasticlunr index.
-	 * This function is referenced to through GraalVM Javascript engine
+	 * Pure Java indexing engine (default)
 	 */
-	private static final Value ADD_DOCUMENT_FUNCTION;
-	static {
-		// Build a Graal context for Javascript (with no warnings!)
-		final Context graalContext = Context
-				.newBuilder("js")
-				.allowAllAccess(true)
-				.option("engine.WarnInterpreterOnly", "false")
-				.build();
+	static final String ENGINE_JAVA = "java";
 
-		Value tempFunction;
-		try {
-			// Load elasticlunr (http://elasticlunr.com/)
-			graalContext.eval("js", Helper.readResourceAsString("/elasticlunr.min.js"));
+	/**
+	 * Indexing engine that runs elasticlunr.js with GraalVM Javascript
+	 */
+	static final String ENGINE_JAVASCRIPT = "javascript";
 
-			// Load our own JS script and retrieve the pointer to our indexing function
-			tempFunction = graalContext.eval("js", Helper.readResourceAsString("/build-index.js"));
+	/**
+	 * Name of the tool property that splits the index by first character of the terms
+	 */
+	static final String SHARDED_KEY = "sharded";
 
-		} catch (IOException | PolyglotException e) {
-			/* Can't do much about it here */
-			tempFunction = null;
-			lastError = e;
-		}
-		ADD_DOCUMENT_FUNCTION = tempFunction;
+	/**
+	 * Name of the tool property that selects where the documents are stored
+	 */
+	static final String DOCUMENT_STORE_KEY = "documentStore";
 
-	}
+	/**
+	 * Documents stored in the index file (default)
+	 */
+	static final String DOCUMENT_STORE_EMBEDDED = "embedded";
+
+	/**
+	 * Documents stored in a separate file
+	 */
+	static final String DOCUMENT_STORE_EXTERNAL = "external";
+
+	/**
+	 * Name of the tool property that enables the gzip-compressed siblings of the index files
+	 */
+	static final String GZIP_KEY = "gzip";
+
+	/**
+	 * Number of partial indexes used to build an index in parallel with the Java engine
+	 */
+	private static final int SHARD_COUNT = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Indexes that have been built in memory with addToElasticLunrIndex() and are not written to
+	 * disk yet, per normalized absolute path of the index file (guarded by itself).
+	 */
+	private static final Map<Path, PendingIndex> PENDING_INDEXES = new LinkedHashMap<>();
+
+	/**
+	 * Locks that make sure each index file is read and written by one thread at a time, per
+	 * normalized absolute path of the index file
+	 */
+	private static final ConcurrentMap<Path, Object> PATH_LOCKS = new ConcurrentHashMap<>();
+
+	/**
+	 * Manifests of the index files, with the hash of the documents indexed in previous builds and
+	 * the documents seen during this build, per normalized absolute path of the index file
+	 */
+	private static final ConcurrentMap<Path, IndexManifest> MANIFESTS = new ConcurrentHashMap<>();
+
+	/**
+	 * Whether the shutdown hook that flushes the pending indexes has been registered (guarded by
+	 * PENDING_INDEXES)
+	 */
+	private static boolean shutdownHookRegistered;
+
+	/**
+	 * Indexing engine: {@link #ENGINE_JAVA} or {@link #ENGINE_JAVASCRIPT}
+	 */
+	private String engine = ENGINE_JAVA;
+
+	/**
+	 * How the index files are written
+	 */
+	private IndexFormat format = IndexFormat.DEFAULT;
 
 	/**
 	 * Creates a new instance
 	 */
 	public IndexTool() {
-		if (lastError != null) {
-			getLog().error("IndexTool: Could not load the indexing Javascript code", lastError);
+		/* Nothing to do */
+	}
+
+	/**
+	 * Configures the tool with the properties specified in <code>tools.xml</code>.
+	 * <p>
+	 * {@code engine} selects the indexing engine: {@code java} (default) or {@code javascript}.
+	 * </p>
+	 * <p>
+	 * With the Java engine, the index files can be written for large sites (see
+	 * {@link IndexFormat}):
+	 * </p>
+	 * <ul>
+	 * <li>{@code sharded="true"} splits the inverted indexes by first character of the terms</li>
+	 * <li>{@code documentStore="external"} writes the documents to a separate file
+	 * ({@code embedded} by default)</li>
+	 * <li>{@code gzip="true"} writes a gzip-compressed sibling of each file</li>
+	 * </ul>
+	 *
+	 * @param values the tool properties
+	 * @see SafeConfig#configure(ValueParser)
+	 */
+	@Override
+	protected void configure(final ValueParser values) {
+		String engineValue = values.getString(ENGINE_KEY);
+		if (engineValue != null && !engineValue.trim().isEmpty()) {
+			engineValue = engineValue.trim().toLowerCase(Locale.ROOT);
+			if (ENGINE_JAVA.equals(engineValue) || ENGINE_JAVASCRIPT.equals(engineValue)) {
+				engine = engineValue;
+			} else {
+				getLog().warn("IndexTool: Unknown engine \"{}\", using \"{}\"", engineValue, engine);
+			}
+		}
+
+		String documentStoreValue = values.getString(DOCUMENT_STORE_KEY, DOCUMENT_STORE_EMBEDDED).trim();
+		if (!DOCUMENT_STORE_EMBEDDED.equalsIgnoreCase(documentStoreValue)
+				&& !DOCUMENT_STORE_EXTERNAL.equalsIgnoreCase(documentStoreValue)) {
+			getLog()
+					.warn(
+							"IndexTool: Unknown document store \"{}\", using \"{}\"",
+							documentStoreValue,
+							DOCUMENT_STORE_EMBEDDED);
+		}
+		IndexFormat newFormat = new IndexFormat(
+				values.getBoolean(SHARDED_KEY, format.isSharded()),
+				DOCUMENT_STORE_EXTERNAL.equalsIgnoreCase(documentStoreValue),
+				values.getBoolean(GZIP_KEY, format.isGzip()));
+
+		if (ENGINE_JAVASCRIPT.equals(engine) && !newFormat.isDefault()) {
+			getLog().warn("IndexTool: {} is supported only by the Java engine, ignored", newFormat);
+			newFormat = IndexFormat.DEFAULT;
 		}
+		format = newFormat;
+	}
+
+	/**
+	 * @return how the index files are written
+	 */
+	IndexFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * @return the time it took to initialize the GraalVM Javascript engine in milliseconds, or -1
+	 *         if the Javascript engine hasn't been used (yet)
+	 */
+	public long getJavascriptInitTime() {
+		return JavascriptIndex.getInitTimeMillis();
+	}
+
+	/**
+	 * @return the indexing engine that will be used: {@link #ENGINE_JAVA} or
+	 *         {@link #ENGINE_JAVASCRIPT}
+	 */
+	String getEngine() {
+		return engine;
 	}
 
 	/**
@@ -109,6 +250,17 @@ public class IndexTool extends SafeConfig {
 	 * <p>
 	 * This uses http://elasticlunrjs.com version 0.9.5.
 	 * </p>
+	 * <p>
+	 * If the index is also being accumulated in memory with
+	 * {@link #addToElasticLunrIndex(String, String, String, String, String)}, the documents kept in
+	 * memory are written together with the specified document, and the in-memory index is
+	 * released.
+	 * </p>
+	 * <p>
+	 * Documents whose title, keywords and body haven't changed since the index file was written
+	 * are skipped (see {@link IndexManifest}). The hash of the document is appended to the
+	 * manifest, which is written again as a whole only by {@link #flush()}.
+	 * </p>
 	 *
 	 * @param indexPathString Path to the JSON-serialized elasticlunr.js index
 	 * @param id ID of the document to add/update (typically it's URL)
@@ -129,38 +281,357 @@ public class IndexTool extends SafeConfig {
 			ScriptException,
 			NoSuchMethodException {
 
-		if (ADD_DOCUMENT_FUNCTION == null) {
-			getLog().debug("IndexTool: Will not index anything as elasticlunr.js couldn't be loaded");
-			return;
-		}
+		Path indexPath = normalizeIndexPath(indexPathString);
 
-		// Make sure the index is updated only once at a time
-		synchronized (ADD_DOCUMENT_FUNCTION) {
+		// Make sure the index file is updated only once at a time
+		synchronized (getPathLock(indexPath)) {
 
-			// Read the index file, if any
-			String indexJson;
-			Path indexPath = Paths.get(indexPathString);
-			if (indexPath.toFile().exists()) {
-				indexJson = new String(Files.readAllBytes(indexPath), UTF8_CHARSET);
-			} else {
-				indexJson = "";
+			// Skip documents that are already indexed with the same content
+			IndexManifest manifest = getManifest(indexPath);
+			if (!manifest.update(id, IndexManifest.hash(title, keywords, body))) {
+				getLog().debug("IndexTool: {} is unchanged in the index in {}", id, indexPathString);
+				return;
+			}
+
+			// Include the documents accumulated in memory for this index file, if any,
+			// otherwise read the index file, if any
+			SearchIndex index = takePendingIndex(indexPath);
+			if (index == null) {
+				index = loadIndex(indexPath);
 			}
 
-			// Call our Javascript function
 			getLog().debug("IndexTool: Adding {} to the index in {}", id, indexPathString);
-			String result = ADD_DOCUMENT_FUNCTION.execute(indexJson, id, title, keywords, body).asString();
+			index.updateDocument(id, title, keywords, body);
 
 			// Write the result
 			try {
-				Files.write(indexPath, result.getBytes(UTF8_CHARSET));
+				index.write(indexPath, format);
+				manifest.append(indexPath, id);
 			} catch (IOException e) {
-				getLog()
-						.warn(
-								"IndexTool: Couldn't write index to " + indexPath.toString() + " (" + e.getClass().getSimpleName()
-										+ ": " + e.getMessage() + ")");
+				warnWriteError(indexPath, e);
+				MANIFESTS.remove(indexPath);
 			}
 
 		}
 	}
 
+	/**
+	 * Adds or updates the specified document in the elasticlunr.js index kept in memory for the
+	 * specified index file.
+	 * <p>
+	 * Unlike {@link #buildElasticLunrIndex(String, String, String, String, String)}, the index
+	 * file is not read and rewritten for each document. It is written only once with
+	 * {@link #flush()}. Pending indexes are also written automatically when the JVM shuts down,
+	 * but only {@link #flush()} removes the documents that no longer exist.
+	 * </p>
+	 * <p>
+	 * Several index files can be built at the same time: one index is kept in memory for each
+	 * index path. With the Java engine, documents are added to partial indexes that can be
+	 * updated by several threads in parallel, and that are merged with the existing index file
+	 * when flushed.
+	 * </p>
+	 * <p>
+	 * Documents whose title, keywords and body haven't changed since the index file was written
+	 * are skipped, and documents that haven't been added since the previous flush() are removed from
+	 * the index file when flushed (see {@link IndexManifest}).
+	 * </p>
+	 *
+	 * @param indexPathString Path to the JSON-serialized elasticlunr.js index
+	 * @param id ID of the document to add/update (typically it's URL)
+	 * @param title Title of the document
+	 * @param keywords Keywords of the document (separated with any non alphabetical characters)
+	 * @param body Content of the document to be added to the index
+	 * @throws IOException when cannot read the existing index file
+	 */
+	public void addToElasticLunrIndex(
+			final String indexPathString,
+			final String id,
+			final String title,
+			final String keywords,
+			final String body)
+			throws IOException {
+
+		Path indexPath = normalizeIndexPath(indexPathString);
+
+		// Skip documents that are already indexed with the same content
+		if (!getManifest(indexPath).update(id, IndexManifest.hash(title, keywords, body))) {
+			getLog().debug("IndexTool: {} is unchanged in the index in {}", id, indexPathString);
+			return;
+		}
+
+		getLog().debug("IndexTool: Adding {} to the in-memory index for {}", id, indexPathString);
+
+		// If the pending index is flushed in the meantime, add the document to a new one
+		while (!getPendingIndex(indexPath).updateDocument(id, title, keywords, body)) {
+			getLog().debug("IndexTool: Index {} has been flushed concurrently, retrying", indexPathString);
+		}
+	}
+
+	/**
+	 * Writes all the elasticlunr.js indexes accumulated in memory with
+	 * {@link #addToElasticLunrIndex(String, String, String, String, String)} to their
+	 * respective files.
+	 * <p>
+	 * The in-memory indexes are released once written. Adding more documents afterwards will
+	 * start a new in-memory index, which will be merged with the file that has just been written,
+	 * for the next build.
+	 * </p>
+	 * <p>
+	 * Documents that have been indexed in a previous build but not since the previous flush() are
+	 * removed from the index files, as the corresponding pages no longer exist. This must
+	 * therefore be called only once all the pages of the site have been indexed.
+	 * </p>
+	 * <p>
+	 * The manifests are then released, so that the next build in the same JVM starts from the
+	 * manifest files, with no document seen yet.
+	 * </p>
+	 *
+	 * @throws IOException when one of the index files cannot be written
+	 *         (the other index files are written anyway)
+	 */
+	public void flush() throws IOException {
+		flush(true);
+	}
+
+	/**
+	 * Writes the pending indexes, and removes the documents that haven't been indexed during
+	 * this build if specified (which ends the build).
+	 *
+	 * @param removeUnseen Whether the documents that haven't been indexed since the previous flush
+	 *        are removed from all the index files with a manifest
+	 * @throws IOException when one of the index files cannot be written
+	 *         (the other index files are written anyway)
+	 */
+	void flush(final boolean removeUnseen) throws IOException {
+
+		Set<Path> indexPaths = new LinkedHashSet<>();
+		synchronized (PENDING_INDEXES) {
+			indexPaths.addAll(PENDING_INDEXES.keySet());
+		}
+		if (removeUnseen) {
+			indexPaths.addAll(MANIFESTS.keySet());
+		}
+
+		IOException firstError = null;
+		for (Path indexPath : indexPaths) {
+			synchronized (getPathLock(indexPath)) {
+				IndexManifest manifest = MANIFESTS.get(indexPath);
+				try {
+					SearchIndex index = takePendingIndex(indexPath);
+
+					// Remove the documents that haven't been indexed during this build
+					List<String> removedIds = manifest == null || !removeUnseen
+							? Collections.emptyList()
+							: manifest.removeUnseen();
+					if (!removedIds.isEmpty()) {
+						getLog().debug("IndexTool: Removing {} from the index in {}", removedIds, indexPath);
+						if (index == null) {
+							index = loadIndex(indexPath);
+						}
+						for (String removedId : removedIds) {
+							index.removeDocument(removedId);
+						}
+					}
+
+					if (index != null) {
+						index.write(indexPath, format);
+					}
+
+					// Also compacts the lines appended by buildElasticLunrIndex()
+					if (manifest != null && (index != null || removeUnseen && manifest.isStored())) {
+						manifest.write(indexPath);
+					}
+
+					// The next build starts from the manifest file
+					if (removeUnseen) {
+						MANIFESTS.remove(indexPath);
+					}
+				} catch (IOException e) {
+					warnWriteError(indexPath, e);
+					MANIFESTS.remove(indexPath);
+					if (firstError == null) {
+						firstError = e;
+					}
+				}
+			}
+		}
+
+		if (firstError != null) {
+			throw firstError;
+		}
+	}
+
+	/**
+	 * Writes the pending indexes and logs errors instead of throwing them (for the shutdown hook).
+	 * <p>
+	 * Documents are not removed from the index files, as the JVM may shut down before all the
+	 * pages have been indexed (failed build, or {@code site:run} with only some pages browsed).
+	 * </p>
+	 */
+	private void flushQuietly() {
+		try {
+			flush(false);
+		} catch (IOException | PolyglotException e) {
+			getLog().error("IndexTool: Could not write the pending indexes", e);
+		}
+	}
+
+	/**
+	 * Returns the in-memory index for the specified index file, and creates it if needed
+	 *
+	 * @param indexPath Normalized path to the index file
+	 * @return the pending index
+	 * @throws IOException when the index file cannot be read (Javascript engine)
+	 */
+	private PendingIndex getPendingIndex(final Path indexPath) throws IOException {
+		synchronized (PENDING_INDEXES) {
+			PendingIndex pending = PENDING_INDEXES.get(indexPath);
+			if (pending == null) {
+				if (useJavascript()) {
+					pending = PendingIndex.single(JavascriptIndex.load(indexPath));
+				} else {
+					pending = PendingIndex.sharded(SHARD_COUNT);
+				}
+				PENDING_INDEXES.put(indexPath, pending);
+			}
+
+			// Make sure pending indexes are written eventually
+			if (!shutdownHookRegistered) {
+				Runtime.getRuntime().addShutdownHook(new Thread(this::flushQuietly, "IndexTool-flush"));
+				shutdownHookRegistered = true;
+			}
+			return pending;
+		}
+	}
+
+	/**
+	 * Returns the manifest of the specified index file, with the documents indexed during this
+	 * build, and loads it if needed.
+	 * <p>
+	 * The manifest is loaded again if the index file has been written with other settings, or
+	 * if it has been deleted since it was written (e.g. {@code mvn clean} in a JVM that is reused
+	 * for several builds), so that all the documents are indexed again.
+	 * </p>
+	 *
+	 * @param indexPath Normalized path to the index file
+	 * @return the manifest
+	 * @throws IOException when the manifest file cannot be read
+	 */
+	private IndexManifest getManifest(final Path indexPath) throws IOException {
+		String settings = getManifestSettings();
+		IndexManifest manifest = MANIFESTS.get(indexPath);
+		if (isManifestValid(manifest, indexPath, settings)) {
+			return manifest;
+		}
+		synchronized (getPathLock(indexPath)) {
+			manifest = MANIFESTS.get(indexPath);
+			if (!isManifestValid(manifest, indexPath, settings)) {
+				manifest = IndexManifest.load(indexPath, settings);
+				MANIFESTS.put(indexPath, manifest);
+			}
+		}
+		return manifest;
+	}
+
+	/**
+	 * @param manifest Manifest kept in memory for the specified index file, or null
+	 * @param indexPath Normalized path to the index file
+	 * @param settings Settings the index file must be written with
+	 * @return whether the manifest can be used as is
+	 */
+	private static boolean isManifestValid(final IndexManifest manifest, final Path indexPath, final String settings) {
+		return manifest != null
+				&& settings.equals(manifest.getSettings())
+				&& (!manifest.isStored() || Files.exists(indexPath));
+	}
+
+	/**
+	 * @return the engine and format the index files are written with, as recorded in their
+	 *         manifest, so that the documents are indexed again when they change
+	 */
+	String getManifestSettings() {
+		return "engine=" + (useJavascript() ? ENGINE_JAVASCRIPT : ENGINE_JAVA) + " " + format;
+	}
+
+	/**
+	 * Removes the in-memory index of the specified index file, if any, and returns its complete
+	 * content (merged with the content of the index file). Must be called while holding the lock
+	 * of the index path.
+	 *
+	 * @param indexPath Normalized path to the index file
+	 * @return the complete index, or null if there is no pending index for this file
+	 * @throws IOException when the index file cannot be read
+	 */
+	private static SearchIndex takePendingIndex(final Path indexPath) throws IOException {
+		PendingIndex pending;
+		synchronized (PENDING_INDEXES) {
+			pending = PENDING_INDEXES.remove(indexPath);
+		}
+		return pending == null ? null : pending.close(indexPath);
+	}
+
+	/**
+	 * @param indexPath Normalized path to the index file
+	 * @return the object to synchronize on to read or write the specified index file
+	 */
+	private static Object getPathLock(final Path indexPath) {
+		return PATH_LOCKS.computeIfAbsent(indexPath, k -> new Object());
+	}
+
+	/**
+	 * @param indexPathString Path to the index file, as specified by the caller
+	 * @return the normalized absolute path, so that the same file is always mapped to the same index
+	 */
+	private static Path normalizeIndexPath(final String indexPathString) {
+		return Paths.get(indexPathString).toAbsolutePath().normalize();
+	}
+
+	/**
+	 * Loads the specified index file with the configured engine
+	 *
+	 * @param indexPath Path to the index file
+	 * @return the live index, empty if the index file doesn't exist
+	 * @throws IOException when the index file cannot be read
+	 */
+	private SearchIndex loadIndex(final Path indexPath) throws IOException {
+		if (useJavascript()) {
+			return JavascriptIndex.load(indexPath);
+		}
+		return ElasticLunrIndex.load(indexPath);
+	}
+
+	/**
+	 * Whether the Javascript engine must be used. Falls back to the Java engine if the
+	 * Javascript engine was requested but elasticlunr.js couldn't be loaded.
+	 *
+	 * @return true to use the Javascript engine, false for the Java engine
+	 */
+	private boolean useJavascript() {
+		if (!ENGINE_JAVASCRIPT.equals(engine)) {
+			return false;
+		}
+		if (JavascriptIndex.isAvailable()) {
+			getLog().debug("IndexTool: Javascript engine initialized in {} ms", JavascriptIndex.getInitTimeMillis());
+			return true;
+		}
+		getLog()
+				.error(
+						"IndexTool: Could not load the indexing Javascript code, using the Java engine",
+						JavascriptIndex.getLoadError());
+		return false;
+	}
+
+	/**
+	 * Logs a warning about an index file that couldn't be written
+	 *
+	 * @param indexPath Path to the index file
+	 * @param e The error
+	 */
+	private void warnWriteError(final Path indexPath, final IOException e) {
+		getLog()
+				.warn(
+						"IndexTool: Couldn't write index to " + indexPath.toString() + " (" + e.getClass().getSimpleName()
+								+ ": " + e.getMessage() + ")");
+	}
+
 }
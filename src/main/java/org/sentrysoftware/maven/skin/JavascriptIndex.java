@@ -0,0 +1,251 @@
+package org.sentrysoftware.maven.skin;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Sentry Maven Skin Tools
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2017 - 2026 Sentry Software
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+
+/**
+ * {@link SearchIndex} backed by a live index of the original elasticlunr.js library, executed
+ * with GraalVM Javascript through the functions of build-index.js.
+ * <p>
+ * The Javascript runtime is initialized lazily, the first time an index is loaded: sites that
+ * use the Java engine never pay for it. All Javascript contexts share the same polyglot
+ * {@link Engine} and the same cached {@link Source} objects, so that a new context reuses the
+ * code that has already been parsed and compiled.
+ * </p>
+ * <p>
+ * All the indexes live in the same Javascript context, which is single-threaded: calls are
+ * synchronized on the context's build-index.js functions, so this class is thread-safe.
+ * </p>
+ */
+final class JavascriptIndex implements SearchIndex {
+
+	/**
+	 * Time it took to initialize the Javascript runtime, in milliseconds (-1 until initialized)
+	 */
+	private static volatile long initTimeMillis = -1;
+
+	private final Value functions;
+	private final Value index;
+
+	/**
+	 * @param functions Object exposing the functions of build-index.js
+	 * @param index Live elasticlunr.Index object
+	 */
+	private JavascriptIndex(final Value functions, final Value index) {
+		this.functions = functions;
+		this.index = index;
+	}
+
+	/**
+	 * Loads the specified index file in a live elasticlunr.js index
+	 *
+	 * @param indexPath Path to the index file
+	 * @return the live index, empty if the index file doesn't exist
+	 * @throws IOException when the index file cannot be read, or elasticlunr.js couldn't be loaded
+	 */
+	static JavascriptIndex load(final Path indexPath) throws IOException {
+		Value functions = JavascriptRuntime.INDEX_FUNCTIONS;
+		if (functions == null) {
+			throw new IOException("elasticlunr.js couldn't be loaded", JavascriptRuntime.LOAD_ERROR);
+		}
+		String indexJson;
+		if (Files.exists(indexPath)) {
+			indexJson = new String(Files.readAllBytes(indexPath), IndexTool.UTF8_CHARSET);
+		} else {
+			indexJson = "";
+		}
+		synchronized (functions) {
+			return new JavascriptIndex(functions, functions.invokeMember("loadIndex", indexJson));
+		}
+	}
+
+	/**
+	 * Initializes the Javascript runtime, if not done already
+	 *
+	 * @return whether elasticlunr.js is available
+	 */
+	static boolean isAvailable() {
+		return JavascriptRuntime.INDEX_FUNCTIONS != null;
+	}
+
+	/**
+	 * @return the error that prevented elasticlunr.js from being loaded, or null
+	 */
+	static Throwable getLoadError() {
+		return JavascriptRuntime.LOAD_ERROR;
+	}
+
+	/**
+	 * @return the time it took to initialize the Javascript runtime in milliseconds, or -1 if it
+	 *         hasn't been initialized
+	 */
+	static long getInitTimeMillis() {
+		return initTimeMillis;
+	}
+
+	/**
+	 * Creates a new Javascript context on the shared polyglot engine, with elasticlunr.js loaded.
+	 * The caller is responsible for closing the context.
+	 *
+	 * @return the new context
+	 * @throws PolyglotException when elasticlunr.js cannot be evaluated
+	 * @throws IllegalStateException when elasticlunr.js cannot be read
+	 */
+	static Context newContext() {
+		if (JavascriptRuntime.ELASTICLUNR_SOURCE == null) {
+			throw new IllegalStateException("elasticlunr.js couldn't be loaded", JavascriptRuntime.LOAD_ERROR);
+		}
+		Context context = Context.newBuilder("js").engine(JavascriptRuntime.ENGINE).allowAllAccess(true).build();
+		context.eval(JavascriptRuntime.ELASTICLUNR_SOURCE);
+		return context;
+	}
+
+	/**
+	 * Evaluates build-index.js in the specified context
+	 *
+	 * @param context Context created with {@link #newContext()}
+	 * @return the object exposing the loadIndex(), updateDocument() and serializeIndex()
+	 *         functions of build-index.js
+	 */
+	static Value getIndexFunctions(final Context context) {
+		return context.eval(JavascriptRuntime.BUILD_INDEX_SOURCE);
+	}
+
+	@Override
+	public void updateDocument(final String id, final String title, final String keywords, final String body) {
+		synchronized (functions) {
+			functions.invokeMember("updateDocument", index, id, title, keywords, body);
+		}
+	}
+
+	@Override
+	public void removeDocument(final String id) {
+		synchronized (functions) {
+			functions.invokeMember("removeDocument", index, id);
+		}
+	}
+
+	/**
+	 * Writes the JSON-serialized index to the specified file. Only {@link IndexFormat#DEFAULT}
+	 * is supported.
+	 */
+	@Override
+	public void write(final Path indexPath, final IndexFormat format) throws IOException {
+		if (!format.isDefault()) {
+			throw new IllegalArgumentException(format + " is not supported by the Javascript engine");
+		}
+		String result;
+		synchronized (functions) {
+			result = functions.invokeMember("serializeIndex", index).asString();
+		}
+		Files.write(indexPath, result.getBytes(IndexTool.UTF8_CHARSET));
+	}
+
+	/**
+	 * Javascript runtime, initialized by the JVM only when first accessed (holder idiom)
+	 */
+	private static final class JavascriptRuntime {
+
+		/**
+		 * Polyglot engine shared by all Javascript contexts (with no warnings!)
+		 */
+		static final Engine ENGINE = Engine.newBuilder().option("engine.WarnInterpreterOnly", "false").build();
+
+		/**
+		 * elasticlunr.js (http://elasticlunr.com/)
+		 */
+		static final Source ELASTICLUNR_SOURCE;
+
+		/**
+		 * Our own build-index.js
+		 */
+		static final Source BUILD_INDEX_SOURCE;
+
+		/**
+		 * Functions of build-index.js in the context used by IndexTool, or null if they couldn't
+		 * be loaded
+		 */
+		static final Value INDEX_FUNCTIONS;
+
+		/**
+		 * Initialization error, if any
+		 */
+		static final Throwable LOAD_ERROR;
+
+		static {
+			long start = System.nanoTime();
+
+			Source elasticLunrSource = null;
+			Source buildIndexSource = null;
+			Value functions = null;
+			Throwable error = null;
+			try {
+				elasticLunrSource = loadSource("/elasticlunr.min.js");
+				buildIndexSource = loadSource("/build-index.js");
+			} catch (IOException e) {
+				error = e;
+			}
+			ELASTICLUNR_SOURCE = elasticLunrSource;
+			BUILD_INDEX_SOURCE = buildIndexSource;
+
+			if (error == null) {
+				try {
+					functions = getIndexFunctions(newContext());
+				} catch (PolyglotException e) {
+					error = e;
+				}
+			}
+			INDEX_FUNCTIONS = functions;
+			LOAD_ERROR = error;
+
+			initTimeMillis = (System.nanoTime() - start) / 1_000_000;
+		}
+
+		/**
+		 * Prevents instantiation
+		 */
+		private JavascriptRuntime() {
+			/* Nothing to do */
+		}
+
+		/**
+		 * @param resourcePath Path to the Javascript resource
+		 * @return a cached Source with the content of the specified resource
+		 * @throws IOException when the resource cannot be read
+		 */
+		private static Source loadSource(final String resourcePath) throws IOException {
+			return Source
+					.newBuilder("js", Helper.readResourceAsString(resourcePath), resourcePath.substring(1))
+					.cached(true)
+					.build();
+		}
+	}
+
+}
@@ -0,0 +1,138 @@
+package org.sentrysoftware.maven.skin;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Sentry Maven Skin Tools
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2017 - 2026 Sentry Software
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer that converts the line separators of the text written through it to
+ * System.lineSeparator(), as it is written, with the same result as
+ * {@link Helper#toSystemLineSeparators(CharSequence)} on the whole text: "\n", "\r\n" and "\r"
+ * are all converted, and the last line is terminated when the writer is closed.
+ */
+final class LineSeparatorWriter extends FilterWriter {
+
+	/**
+	 * Line separator to write
+	 */
+	private final String lineSeparator;
+
+	/**
+	 * Whether the last character written is "\r" (so that a following "\n" is dropped)
+	 */
+	private boolean afterCarriageReturn;
+
+	/**
+	 * Whether characters have been written since the last line separator
+	 */
+	private boolean inLine;
+
+	/**
+	 * Creates a writer that writes System.lineSeparator()
+	 *
+	 * @param out Where the text is written
+	 */
+	LineSeparatorWriter(final Writer out) {
+		this(out, System.lineSeparator());
+	}
+
+	/**
+	 * Creates a writer
+	 *
+	 * @param out Where the text is written
+	 * @param lineSeparator Line separator to write
+	 */
+	LineSeparatorWriter(final Writer out, final String lineSeparator) {
+		super(out);
+		this.lineSeparator = lineSeparator;
+	}
+
+	@Override
+	public void write(final int c) throws IOException {
+		if (c == '\n') {
+			if (!afterCarriageReturn) {
+				out.write(lineSeparator);
+			}
+			inLine = false;
+		} else if (c == '\r') {
+			out.write(lineSeparator);
+			inLine = false;
+		} else {
+			out.write(c);
+			inLine = true;
+		}
+		afterCarriageReturn = c == '\r';
+	}
+
+	@Override
+	public void write(final char[] cbuf, final int off, final int len) throws IOException {
+		// Write the characters between line breaks in a single call
+		int start = off;
+		int end = off + len;
+		for (int i = off; i < end; i++) {
+			char c = cbuf[i];
+			if (c == '\n' || c == '\r') {
+				out.write(cbuf, start, i - start);
+				write(c);
+				start = i + 1;
+			} else {
+				afterCarriageReturn = false;
+				inLine = true;
+			}
+		}
+		out.write(cbuf, start, end - start);
+	}
+
+	@Override
+	public void write(final String str, final int off, final int len) throws IOException {
+		int start = off;
+		int end = off + len;
+		for (int i = off; i < end; i++) {
+			char c = str.charAt(i);
+			if (c == '\n' || c == '\r') {
+				out.write(str, start, i - start);
+				write(c);
+				start = i + 1;
+			} else {
+				afterCarriageReturn = false;
+				inLine = true;
+			}
+		}
+		out.write(str, start, end - start);
+	}
+
+	/**
+	 * Terminates the last line, if it isn't, and closes the underlying writer
+	 *
+	 * @throws IOException when the underlying writer cannot be written or closed
+	 */
+	@Override
+	public void close() throws IOException {
+		if (inLine) {
+			out.write(lineSeparator);
+			inLine = false;
+		}
+		super.close();
+	}
+
+}
@@ -0,0 +1,272 @@
+package org.sentrysoftware.maven.skin;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Sentry Maven Skin Tools
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2017 - 2026 Sentry Software
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only temporary file that collects the Markdown of the pages of a site while they are
+ * converted, so that they can be concatenated later (in llms-full.txt) without reading the
+ * .html.md files again.
+ * <p>
+ * Each page is transferred from its Markdown file, and its position in the file is recorded in
+ * memory, per path of its Markdown file relative to the root of the site. If a page is appended
+ * again, its latest version is used, and the previous one is wasted until the file is compacted.
+ * </p>
+ * <p>
+ * The temporary file is deleted when the spool is closed, or when the JVM exits.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ */
+final class MarkdownSpool {
+
+	/**
+	 * Temporary file (guarded by this)
+	 */
+	private Path file;
+
+	/**
+	 * Channel used to append to the temporary file, and to transfer its content (guarded by this)
+	 */
+	private FileChannel channel;
+
+	/**
+	 * Position and length of each page in the temporary file, per path of its Markdown file
+	 * (guarded by this), in the order they were first appended
+	 */
+	private final Map<String, long[]> pages = new LinkedHashMap<>();
+
+	/**
+	 * Number of bytes of the temporary file used by previous versions of the pages (guarded by
+	 * this)
+	 */
+	private long wastedBytes;
+
+	/**
+	 * Whether pages have been appended since the last call to takeModified() (guarded by this)
+	 */
+	private boolean modified;
+
+	/**
+	 * Creates a spool backed by a new temporary file
+	 *
+	 * @throws IOException when the temporary file cannot be created
+	 */
+	MarkdownSpool() throws IOException {
+		file = createTempFile();
+		channel = open(file);
+	}
+
+	/**
+	 * @return a new temporary file, deleted when the JVM exits
+	 * @throws IOException when the temporary file cannot be created
+	 */
+	private static Path createTempFile() throws IOException {
+		Path tempFile = Files.createTempFile("llms-full-", ".md");
+		tempFile.toFile().deleteOnExit();
+		return tempFile;
+	}
+
+	/**
+	 * @param tempFile Temporary file
+	 * @return a channel to read and write the temporary file, which deletes it when closed
+	 * @throws IOException when the temporary file cannot be opened
+	 */
+	private static FileChannel open(final Path tempFile) throws IOException {
+		return FileChannel.open(
+				tempFile,
+				StandardOpenOption.READ,
+				StandardOpenOption.WRITE,
+				StandardOpenOption.DELETE_ON_CLOSE);
+	}
+
+	/**
+	 * Appends the Markdown of a page from a file, without copying it through the heap
+	 *
+	 * @param path Path of the Markdown file of the page, relative to the root of the site, with
+	 *        forward slashes (e.g. "subdir/page.html.md")
+	 * @param source File with the Markdown content of the page (in UTF-8)
+	 * @param offset Number of bytes to skip at the beginning of the file
+	 * @throws IOException when the file cannot be read, or the temporary file cannot be written
+	 */
+	synchronized void append(final String path, final Path source, final long offset) throws IOException {
+		long position = channel.size();
+		long length;
+		try (FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ)) {
+			length = Math.max(0, sourceChannel.size() - offset);
+			sourceChannel.position(offset);
+			long transferred = 0;
+			while (transferred < length) {
+				long count = channel.transferFrom(sourceChannel, position + transferred, length - transferred);
+				if (count <= 0) {
+					throw new IOException("Unexpected end of " + source);
+				}
+				transferred += count;
+			}
+		}
+		record(path, position, length);
+	}
+
+	/**
+	 * Records the position of the latest version of a page in the temporary file
+	 *
+	 * @param path Path of the Markdown file of the page
+	 * @param position Position of the page in the temporary file
+	 * @param length Length of the page in the temporary file
+	 */
+	private void record(final String path, final long position, final long length) {
+		// Keep the first position in the map (and thus the order), but point to the latest version
+		long[] extent = pages.get(path);
+		if (extent == null) {
+			pages.put(path, new long[] { position, length });
+		} else {
+			wastedBytes += extent[1];
+			extent[0] = position;
+			extent[1] = length;
+		}
+		modified = true;
+	}
+
+	/**
+	 * @return the paths of the pages, in the order they were first appended
+	 */
+	synchronized List<String> getPaths() {
+		return new ArrayList<>(pages.keySet());
+	}
+
+	/**
+	 * Finds the page that a link of llms.txt points to, which is either the path of its Markdown
+	 * file relative to the root of the site, or an absolute URL that ends with this path.
+	 *
+	 * @param link Link to a Markdown file
+	 * @return the path of the page, or null if there is no such page in this spool
+	 */
+	synchronized String resolve(final String link) {
+		if (pages.containsKey(link)) {
+			return link;
+		}
+
+		// Try the suffixes of the link, longest first
+		int slash = link.indexOf('/');
+		while (slash >= 0) {
+			String suffix = link.substring(slash + 1);
+			if (pages.containsKey(suffix)) {
+				return suffix;
+			}
+			slash = link.indexOf('/', slash + 1);
+		}
+		return null;
+	}
+
+	/**
+	 * Transfers the Markdown of the specified page to the specified channel, without copying it
+	 * through the heap
+	 *
+	 * @param path Path of the Markdown file of the page, as returned by getPaths() or resolve()
+	 * @param target Channel to write to
+	 * @return whether the page exists in this spool
+	 * @throws IOException when the page cannot be transferred
+	 */
+	synchronized boolean transferTo(final String path, final WritableByteChannel target) throws IOException {
+		long[] extent = pages.get(path);
+		if (extent == null) {
+			return false;
+		}
+		long position = extent[0];
+		long end = extent[0] + extent[1];
+		while (position < end) {
+			position += channel.transferTo(position, end - position, target);
+		}
+		return true;
+	}
+
+	/**
+	 * @return whether pages have been appended since the previous call of this method
+	 */
+	synchronized boolean takeModified() {
+		boolean result = modified;
+		modified = false;
+		return result;
+	}
+
+	/**
+	 * Copies the latest version of each page to a new temporary file, if the previous versions
+	 * of the pages take at least half of the current one, so that the temporary file doesn't keep
+	 * growing when the same pages are converted over and over (e.g. with {@code site:run}).
+	 *
+	 * @return whether the temporary file has been compacted
+	 * @throws IOException when the new temporary file cannot be written (the current one is then
+	 *         kept)
+	 */
+	synchronized boolean compact() throws IOException {
+		if (wastedBytes == 0 || wastedBytes * 2 < channel.size()) {
+			return false;
+		}
+
+		Path newFile = createTempFile();
+		FileChannel newChannel = open(newFile);
+		try {
+			for (long[] extent : pages.values()) {
+				long transferred = 0;
+				while (transferred < extent[1]) {
+					transferred += channel.transferTo(extent[0] + transferred, extent[1] - transferred, newChannel);
+				}
+			}
+		} catch (IOException e) {
+			newChannel.close();
+			throw e;
+		}
+
+		// The pages are now one after the other, in the same order
+		long newPosition = 0;
+		for (long[] extent : pages.values()) {
+			extent[0] = newPosition;
+			newPosition += extent[1];
+		}
+		channel.close();
+		Files.deleteIfExists(file);
+		file = newFile;
+		channel = newChannel;
+		wastedBytes = 0;
+		return true;
+	}
+
+	/**
+	 * Closes and deletes the temporary file
+	 *
+	 * @throws IOException when the temporary file cannot be closed
+	 */
+	synchronized void close() throws IOException {
+		channel.close();
+		Files.deleteIfExists(file);
+	}
+
+}
@@ -0,0 +1,257 @@
+package org.sentrysoftware.maven.skin;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Sentry Maven Skin Tools
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2017 - 2026 Sentry Software
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Output of {@link HtmlToMarkdownConverter}, which writes the Markdown to an {@link Appendable}
+ * as it is produced, while remembering the last characters written, so that the converter can
+ * decide how to separate blocks without looking back at the whole document.
+ * <p>
+ * A trimming writer drops the leading and trailing whitespace of the whole output (like
+ * {@link String#trim()}): trailing whitespace is held back until more content is written.
+ * </p>
+ * <p>
+ * Errors of the underlying Appendable are thrown as {@link UncheckedIOException}.
+ * </p>
+ */
+final class MarkdownWriter {
+
+	/**
+	 * Where the Markdown is written
+	 */
+	private final Appendable out;
+
+	/**
+	 * Whether leading and trailing whitespace is dropped
+	 */
+	private final boolean trim;
+
+	/**
+	 * Whitespace that has been written after the last non-whitespace character, and that is
+	 * held back (when trimming)
+	 */
+	private final StringBuilder pendingWhitespace = new StringBuilder();
+
+	/**
+	 * Whether a non-whitespace character has been written
+	 */
+	private boolean started;
+
+	/**
+	 * Whether nothing has been written at all
+	 */
+	private boolean empty = true;
+
+	/**
+	 * Last character written
+	 */
+	private char lastChar;
+
+	/**
+	 * Character written before the last one
+	 */
+	private char previousChar;
+
+	/**
+	 * Creates a writer
+	 *
+	 * @param out Where the Markdown is written
+	 * @param trim Whether leading and trailing whitespace is dropped
+	 */
+	private MarkdownWriter(final Appendable out, final boolean trim) {
+		this.out = out;
+		this.trim = trim;
+	}
+
+	/**
+	 * @param out Where the Markdown is written
+	 * @return a writer that drops the leading and trailing whitespace of the whole output
+	 */
+	static MarkdownWriter trimming(final Appendable out) {
+		return new MarkdownWriter(out, true);
+	}
+
+	/**
+	 * @param out Where the Markdown is written
+	 * @return a writer that writes everything as is
+	 */
+	static MarkdownWriter raw(final Appendable out) {
+		return new MarkdownWriter(out, false);
+	}
+
+	/**
+	 * Writes a character
+	 *
+	 * @param c Character to write
+	 * @return this writer
+	 */
+	MarkdownWriter append(final char c) {
+		previousChar = lastChar;
+		lastChar = c;
+		empty = false;
+		try {
+			if (!trim) {
+				out.append(c);
+			} else if (c <= ' ') {
+				// Leading whitespace is dropped, trailing whitespace is held back
+				if (started) {
+					pendingWhitespace.append(c);
+				}
+			} else {
+				if (pendingWhitespace.length() > 0) {
+					out.append(pendingWhitespace);
+					pendingWhitespace.setLength(0);
+				}
+				started = true;
+				out.append(c);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return this;
+	}
+
+	/**
+	 * Writes characters
+	 *
+	 * @param text Characters to write
+	 * @return this writer
+	 */
+	MarkdownWriter append(final CharSequence text) {
+		return append(text, 0, text.length());
+	}
+
+	/**
+	 * Writes a range of characters
+	 *
+	 * @param text Characters to write
+	 * @param start Index of the first character to write
+	 * @param end Index after the last character to write
+	 * @return this writer
+	 */
+	MarkdownWriter append(final CharSequence text, final int start, final int end) {
+		if (end <= start) {
+			return this;
+		}
+		try {
+			if (!trim) {
+				write(text, start, end);
+			} else {
+				// Leading whitespace is dropped, trailing whitespace is held back
+				int to = end;
+				while (to > start && text.charAt(to - 1) <= ' ') {
+					to--;
+				}
+				if (to > start) {
+					int from = start;
+					if (!started) {
+						while (text.charAt(from) <= ' ') {
+							from++;
+						}
+						started = true;
+					}
+					if (pendingWhitespace.length() > 0) {
+						out.append(pendingWhitespace);
+						pendingWhitespace.setLength(0);
+					}
+					write(text, from, to);
+				}
+				if (started) {
+					pendingWhitespace.append(text, to, end);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		previousChar = end - start > 1 ? text.charAt(end - 2) : lastChar;
+		lastChar = text.charAt(end - 1);
+		empty = false;
+		return this;
+	}
+
+	/**
+	 * Writes a range of characters to the Appendable
+	 *
+	 * @param text Characters to write
+	 * @param start Index of the first character to write
+	 * @param end Index after the last character to write
+	 * @throws IOException when the characters cannot be written
+	 */
+	private void write(final CharSequence text, final int start, final int end) throws IOException {
+		// StringBuilder.append(CharSequence, int, int) copies the characters one by one, while
+		// a whole sequence is copied at once
+		if (start == 0 && end == text.length()) {
+			out.append(text);
+		} else {
+			out.append(text.subSequence(start, end));
+		}
+	}
+
+	/**
+	 * Writes a number
+	 *
+	 * @param number Number to write
+	 * @return this writer
+	 */
+	MarkdownWriter append(final int number) {
+		return append(Integer.toString(number));
+	}
+
+	/**
+	 * @return whether nothing has been written (whitespace included)
+	 */
+	boolean isEmpty() {
+		return empty;
+	}
+
+	/**
+	 * @return the last character written (whitespace included), or 0 if nothing has been written
+	 */
+	char getLastChar() {
+		return lastChar;
+	}
+
+	/**
+	 * Ensures there's a blank line before the next content (unless nothing has been written yet).
+	 */
+	void ensureBlankLine() {
+		if (empty) {
+			return;
+		}
+
+		// Check if we already end with blank line(s)
+		if (lastChar == '\n' && previousChar == '\n') {
+			return;
+		}
+
+		// Check if we end with single newline
+		if (lastChar == '\n') {
+			append('\n');
+			return;
+		}
+
+		// No newline at end, add two
+		append("\n\n");
+	}
+
+}
@@ -0,0 +1,155 @@
+package org.sentrysoftware.maven.skin;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Sentry Maven Skin Tools
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2017 - 2026 Sentry Software
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Search index accumulated in memory by
+ * {@link IndexTool#addToElasticLunrIndex(String, String, String, String, String)} until it is
+ * written to disk.
+ * <p>
+ * With the Java engine, documents are spread across several partial indexes (shards) by
+ * document ID, each with its own lock, so that pages rendered in parallel are indexed in
+ * parallel. The same document always goes to the same shard, so the shards never contain the
+ * same document. They are merged with the existing index file only when the pending index is
+ * closed.
+ * </p>
+ * <p>
+ * With the Javascript engine, there is a single index, loaded from the index file when the
+ * pending index is created, as the Javascript context cannot be used by several threads anyway.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ */
+final class PendingIndex {
+
+	/**
+	 * Partial indexes that will be merged into the index file (Java engine), or null
+	 */
+	private final ElasticLunrIndex[] shards;
+
+	/**
+	 * Complete index (Javascript engine), or null
+	 */
+	private final SearchIndex index;
+
+	/**
+	 * Updates hold the read lock (they run concurrently), close() holds the write lock
+	 */
+	private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+
+	/**
+	 * Whether this pending index has been closed, and won't accept any more documents
+	 */
+	private boolean closed;
+
+	/**
+	 * @param shards Partial indexes
+	 * @param index Complete index
+	 */
+	private PendingIndex(final ElasticLunrIndex[] shards, final SearchIndex index) {
+		this.shards = shards;
+		this.index = index;
+	}
+
+	/**
+	 * Creates a pending index made of empty partial indexes, that will be merged with the index
+	 * file when closed
+	 *
+	 * @param shardCount Number of partial indexes (typically the number of processors)
+	 * @return a new pending index
+	 */
+	static PendingIndex sharded(final int shardCount) {
+		ElasticLunrIndex[] newShards = new ElasticLunrIndex[Math.max(1, shardCount)];
+		for (int i = 0; i < newShards.length; i++) {
+			newShards[i] = ElasticLunrIndex.create();
+		}
+		return new PendingIndex(newShards, null);
+	}
+
+	/**
+	 * Creates a pending index that accumulates the documents in the specified complete index
+	 *
+	 * @param index Index loaded from the index file
+	 * @return a new pending index
+	 */
+	static PendingIndex single(final SearchIndex index) {
+		return new PendingIndex(null, index);
+	}
+
+	/**
+	 * Adds or updates the specified document
+	 *
+	 * @param id ID of the document to add/update
+	 * @param title Title of the document
+	 * @param keywords Keywords of the document
+	 * @param body Content of the document
+	 * @return false if this pending index has been closed in the meantime, in which case the
+	 *         document has not been added
+	 */
+	boolean updateDocument(final String id, final String title, final String keywords, final String body) {
+		closeLock.readLock().lock();
+		try {
+			if (closed) {
+				return false;
+			}
+			SearchIndex target = shards == null ? index : shards[Math.floorMod(Objects.hashCode(id), shards.length)];
+			synchronized (target) {
+				target.updateDocument(id, title, keywords, body);
+			}
+			return true;
+		} finally {
+			closeLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Closes this pending index (no more documents can be added) and returns the complete
+	 * index, with the partial indexes merged into the content of the specified index file
+	 *
+	 * @param indexPath Path to the index file
+	 * @return the complete index, ready to be written
+	 * @throws IOException when the index file cannot be read
+	 */
+	SearchIndex close(final Path indexPath) throws IOException {
+		closeLock.writeLock().lock();
+		try {
+			closed = true;
+			if (shards == null) {
+				return index;
+			}
+			ElasticLunrIndex mergedIndex = ElasticLunrIndex.load(indexPath);
+			for (ElasticLunrIndex shard : shards) {
+				mergedIndex.merge(shard);
+			}
+			return mergedIndex;
+		} finally {
+			closeLock.writeLock().unlock();
+		}
+	}
+
+}
@@ -0,0 +1,67 @@
+package org.sentrysoftware.maven.skin;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Sentry Maven Skin Tools
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2017 - 2026 Sentry Software
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A search index that is being built in memory by {@link IndexTool}, before being written
+ * to disk as a JSON-serialized elasticlunr.js index.
+ * <p>
+ * Implementations are not thread-safe, unless stated otherwise.
+ * </p>
+ */
+interface SearchIndex {
+
+	/**
+	 * Adds the specified document to the index, or replaces it if a document with the same ID
+	 * is already indexed
+	 *
+	 * @param id ID of the document to add/update (typically it's URL)
+	 * @param title Title of the document
+	 * @param keywords Keywords of the document
+	 * @param body Content of the document
+	 */
+	void updateDocument(String id, String title, String keywords, String body);
+
+	/**
+	 * Removes the specified document from the index, if present
+	 *
+	 * @param id ID of the document to remove
+	 */
+	void removeDocument(String id);
+
+	/**
+	 * Writes the JSON-serialized index to the specified file, which can then be loaded in the
+	 * browser with {@code elasticlunr.Index.load(indexJson)}.
+	 * <p>
+	 * When the index has been loaded from the same file, the external documents, shard files and
+	 * compressed siblings that the file no longer lists are deleted.
+	 * </p>
+	 *
+	 * @param indexPath Path to the index file
+	 * @param format How the index is written (single file, sharded, etc.)
+	 * @throws IOException when the file cannot be written
+	 */
+	void write(Path indexPath, IndexFormat format) throws IOException;
+
+}
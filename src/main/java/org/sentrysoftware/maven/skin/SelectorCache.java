@@ -0,0 +1,135 @@
+package org.sentrysoftware.maven.skin;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Sentry Maven Skin Tools
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2017 - 2026 Sentry Software
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jsoup.helper.Validate;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+
+/**
+ * Cache of the CSS selectors parsed by jsoup, so that the selectors used on each page of a site
+ * are parsed only once.
+ * <p>
+ * The cache holds at most the specified number of selectors: when it is full, an arbitrary
+ * selector is evicted to make room for the new one. The numbers of hits and misses are counted,
+ * to check that the selectors used by the templates actually fit in the cache.
+ * </p>
+ * <p>
+ * This class is thread-safe. The parsed {@link Evaluator}s hold no state of their own, and can be
+ * shared between threads.
+ * </p>
+ */
+final class SelectorCache {
+
+	/**
+	 * Parsed selectors, per CSS selector string
+	 */
+	private final ConcurrentMap<String, Evaluator> evaluators = new ConcurrentHashMap<>();
+
+	/**
+	 * Maximum number of selectors in the cache
+	 */
+	private final int maximumSize;
+
+	/**
+	 * Number of selectors found in the cache
+	 */
+	private final LongAdder hits = new LongAdder();
+
+	/**
+	 * Number of selectors parsed because they weren't in the cache
+	 */
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * Creates an empty cache
+	 *
+	 * @param maximumSize Maximum number of selectors in the cache
+	 */
+	SelectorCache(final int maximumSize) {
+		this.maximumSize = maximumSize;
+	}
+
+	/**
+	 * Returns the parsed version of the specified CSS selector, from the cache if possible.
+	 *
+	 * @param selector CSS selector
+	 * @return the evaluator that matches the elements of the selector
+	 * @throws org.jsoup.select.Selector.SelectorParseException when the selector is invalid
+	 * @throws IllegalArgumentException when the selector is null or empty
+	 */
+	Evaluator get(final String selector) {
+		Validate.notEmpty(selector);
+		Evaluator evaluator = evaluators.get(selector);
+		if (evaluator != null) {
+			hits.increment();
+			return evaluator;
+		}
+
+		misses.increment();
+		evaluator = QueryParser.parse(selector);
+
+		// Make room for the new selector
+		Iterator<String> iterator = evaluators.keySet().iterator();
+		while (evaluators.size() >= maximumSize && iterator.hasNext()) {
+			iterator.next();
+			iterator.remove();
+		}
+		evaluators.put(selector, evaluator);
+		return evaluator;
+	}
+
+	/**
+	 * @return the number of selectors currently in the cache
+	 */
+	int size() {
+		return evaluators.size();
+	}
+
+	/**
+	 * @return the number of selectors found in the cache
+	 */
+	long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return the number of selectors parsed because they weren't in the cache
+	 */
+	long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * Removes all the selectors from the cache, and resets the counters
+	 */
+	void clear() {
+		evaluators.clear();
+		hits.reset();
+		misses.reset();
+	}
+
+}
@@ -18,40 +18,56 @@
  * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
  */
 /**
- * addDocumentToElasticLunr
+ * Functions to create, update and serialize elasticlunr indexes
  **/
-(function(indexJson, id, title, keywords, body) {
+(function() {
 
-	var idx;
+	// Creates a new empty index, or loads the specified JSON-serialized index
+	function loadIndex(indexJson) {
 
-	// New or existing index?
-	if (indexJson == null || indexJson == "") {
+		// New or existing index?
+		if (indexJson == null || indexJson == "") {
 
-		// Create a new index
-		idx = elasticlunr(function () {
-		    this.addField("title");
-		    this.addField("body");
-		    this.addField("keywords");
-		    this.setRef("id");
-		    this.saveDocument(true);
-		});
+			// Create a new index
+			return elasticlunr(function () {
+			    this.addField("title");
+			    this.addField("body");
+			    this.addField("keywords");
+			    this.setRef("id");
+			    this.saveDocument(true);
+			});
 
-	} else {
+		}
 
 		// Load the specified index
-		indexJsonObj = JSON.parse(indexJson);
-		idx = elasticlunr.Index.load(indexJsonObj);
+		return elasticlunr.Index.load(JSON.parse(indexJson));
+	}
+
+	// Adds (or replaces) the specified document in the index
+	function updateDocument(idx, id, title, keywords, body) {
+		idx.updateDoc({
+			id: id,
+			title: title,
+			keywords: keywords,
+			body: body
+		});
 	}
 
-	// Add the specified document
-	idx.updateDoc({
-		id: id,
-		title: title,
-		keywords: keywords,
-		body: body
-	});
+	// Removes the specified document from the index, if present
+	function removeDocument(idx, id) {
+		idx.removeDocByRef(id);
+	}
+
+	// Returns the JSON-serialized index
+	function serializeIndex(idx) {
+		return JSON.stringify(idx);
+	}
 
-	// Return the JSON-serialized index
-	return JSON.stringify(idx);
+	return {
+		loadIndex: loadIndex,
+		updateDocument: updateDocument,
+		removeDocument: removeDocument,
+		serializeIndex: serializeIndex
+	};
 
-})
+})()
@@ -22,9 +22,19 @@ package org.sentrysoftware.maven.skin;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
@@ -317,6 +327,8 @@ class AIIndexToolTest {
 						"A great project for doing things",
 						"Documentation");
 
+		aiIndexTool.flush();
+
 		assertTrue(Files.exists(llmsTxtPath), "llms.txt should be created");
 
 		String content = Files.readString(llmsTxtPath);
@@ -351,6 +363,8 @@ class AIIndexToolTest {
 						"Project description",
 						"Documentation");
 
+		aiIndexTool.flush();
+
 		String content = Files.readString(llmsTxtPath);
 		assertTrue(content.contains("- [Page 1](docs/page1.html.md)"));
 		assertTrue(content.contains("- [Page 2](docs/page2.html.md)"));
@@ -381,6 +395,8 @@ class AIIndexToolTest {
 						"Project description",
 						"API");
 
+		aiIndexTool.flush();
+
 		String content = Files.readString(llmsTxtPath);
 		assertTrue(content.contains("## Documentation"));
 		assertTrue(content.contains("## API"));
@@ -413,6 +429,8 @@ class AIIndexToolTest {
 						"Project description",
 						"Documentation");
 
+		aiIndexTool.flush();
+
 		String content = Files.readString(llmsTxtPath);
 		assertTrue(content.contains("- [New Title](docs/page.html.md)"));
 		assertFalse(content.contains("Old Title"));
@@ -434,6 +452,8 @@ class AIIndexToolTest {
 						"Project description",
 						null);
 
+		aiIndexTool.flush();
+
 		String content = Files.readString(llmsTxtPath);
 		assertTrue(content.contains("## Other"));
 		assertTrue(content.contains("- [Miscellaneous Page](misc/page.html.md)"));
@@ -453,6 +473,8 @@ class AIIndexToolTest {
 						"Project description",
 						"");
 
+		aiIndexTool.flush();
+
 		String content = Files.readString(llmsTxtPath);
 		assertTrue(content.contains("## Other"));
 		assertTrue(content.contains("- [Miscellaneous Page](misc/page.html.md)"));
@@ -480,6 +502,8 @@ class AIIndexToolTest {
 						null, // Don't override description
 						"New Section");
 
+		aiIndexTool.flush();
+
 		String content = Files.readString(llmsTxtPath);
 		// Existing content should be preserved
 		assertTrue(content.contains("# Existing Project"));
@@ -492,7 +516,7 @@ class AIIndexToolTest {
 	}
 
 	@Test
-	void testUpdateLlmsTxtHandlesNullDocPath() {
+	void testUpdateLlmsTxtHandlesNullDocPath() throws Exception {
 		// Test with null docPath - should do nothing
 		Path llmsTxtPath = tempDir.resolve("llms.txt");
 
@@ -505,11 +529,13 @@ class AIIndexToolTest {
 						"Description",
 						"Section");
 
+		aiIndexTool.flush();
+
 		assertFalse(Files.exists(llmsTxtPath), "Should not create file with null docPath");
 	}
 
 	@Test
-	void testUpdateLlmsTxtHandlesEmptyDocPath() {
+	void testUpdateLlmsTxtHandlesEmptyDocPath() throws Exception {
 		// Test with empty docPath - should do nothing
 		Path llmsTxtPath = tempDir.resolve("llms.txt");
 
@@ -522,11 +548,13 @@ class AIIndexToolTest {
 						"Description",
 						"Section");
 
+		aiIndexTool.flush();
+
 		assertFalse(Files.exists(llmsTxtPath), "Should not create file with empty docPath");
 	}
 
 	@Test
-	void testUpdateLlmsTxtHandlesNullLlmsTxtPath() {
+	void testUpdateLlmsTxtHandlesNullLlmsTxtPath() throws Exception {
 		// Test with null llmsTxtPath - should do nothing (no exception)
 		aiIndexTool
 				.updateLlmsTxt(
@@ -536,6 +564,7 @@ class AIIndexToolTest {
 						"Project",
 						"Description",
 						"Section");
+		aiIndexTool.flush();
 		// No exception means success
 	}
 
@@ -553,6 +582,8 @@ class AIIndexToolTest {
 						"Description",
 						"Section");
 
+		aiIndexTool.flush();
+
 		String content = Files.readString(llmsTxtPath);
 		assertTrue(content.contains("- [docs/my-page.html](docs/my-page.html.md)"));
 	}
@@ -572,6 +603,8 @@ class AIIndexToolTest {
 						"Documentation",
 						"https://example.com/myproject");
 
+		aiIndexTool.flush();
+
 		String content = Files.readString(llmsTxtPath);
 		assertTrue(content.contains("# My Project"));
 		assertTrue(content.contains("## Documentation"));
@@ -593,10 +626,446 @@ class AIIndexToolTest {
 						"API",
 						"https://example.com/myproject/");
 
+		aiIndexTool.flush();
+
 		String content = Files.readString(llmsTxtPath);
 		assertTrue(content.contains("- [API Reference](https://example.com/myproject/api/reference.html.md)"));
 	}
 
+	@Test
+	void testUpdateLlmsTxtIsWrittenImmediately() throws Exception {
+		// By default, each update is written to llms.txt without waiting for flush()
+		Path llmsTxtPath = tempDir.resolve("llms.txt");
+		assertFalse(aiIndexTool.isDeferredWrites());
+
+		aiIndexTool.updateLlmsTxt(llmsTxtPath.toString(), "page1.html", "Page 1", "My Project", null, "Docs");
+		assertEquals("# My Project\n\n\n## Docs\n\n- [Page 1](page1.html.md)\n", Files.readString(llmsTxtPath));
+
+		aiIndexTool.updateLlmsTxt(llmsTxtPath.toString(), "page1.html", "New title", null, null, "Docs");
+		aiIndexTool.updateLlmsTxt(llmsTxtPath.toString(), "page2.html", "Page 2", null, null, "Docs");
+		assertEquals(
+				"# My Project\n\n\n## Docs\n\n- [New title](page1.html.md)\n- [Page 2](page2.html.md)\n",
+				Files.readString(llmsTxtPath));
+	}
+
+	@Test
+	void testUpdateLlmsTxtIsWrittenOnFlush() throws Exception {
+		// Test that llms.txt is written only once, when flushed
+		Path llmsTxtPath = tempDir.resolve("llms.txt");
+		aiIndexTool.configure(Collections.singletonMap(AIIndexTool.DEFERRED_WRITES_KEY, "true"));
+		assertTrue(aiIndexTool.isDeferredWrites());
+
+		for (int i = 0; i < 1000; i++) {
+			aiIndexTool
+					.updateLlmsTxt(
+							llmsTxtPath.toString(),
+							"docs/page" + (i % 500) + ".html",
+							"Page " + i,
+							"My Project",
+							"Project description",
+							"Section " + (i % 5));
+		}
+		assertFalse(Files.exists(llmsTxtPath), "llms.txt must not be written before flush()");
+
+		aiIndexTool.flush();
+
+		String content = Files.readString(llmsTxtPath);
+		assertEquals(500, content.split("\n- \\[").length - 1, "Each page must be listed once");
+		assertTrue(content.contains("- [Page 999](docs/page499.html.md)"));
+		assertFalse(content.contains("- [Page 499]"), "Titles must be updated");
+
+		// Further updates are written with the next flush
+		aiIndexTool
+				.updateLlmsTxt(
+						llmsTxtPath.toString(),
+						"docs/new.html",
+						"New Page",
+						null,
+						null,
+						"Section 0");
+		aiIndexTool.flush();
+		content = Files.readString(llmsTxtPath);
+		assertTrue(content.contains("- [New Page](docs/new.html.md)"));
+		assertTrue(content.contains("- [Page 999](docs/page499.html.md)"));
+	}
+
+	@Test
+	void testUpdateLlmsTxtConcurrently() throws Exception {
+		// Many threads update the same llms.txt files and flush them at the same time
+		Path llmsTxtPath = tempDir.resolve("llms.txt");
+		Path otherLlmsTxtPath = tempDir.resolve("other/llms.txt");
+		int threadCount = 16;
+		int updateCount = 200;
+
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		try {
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < threadCount; t++) {
+				int thread = t;
+				futures.add(executor.submit(() -> {
+					start.await();
+					for (int i = 0; i < updateCount; i++) {
+						aiIndexTool
+								.updateLlmsTxt(
+										(i % 2 == 0 ? llmsTxtPath : otherLlmsTxtPath).toString(),
+										"docs/page-" + thread + "-" + i + ".html",
+										"Page " + thread + "-" + i,
+										"My Project",
+										"Project description",
+										"Section " + (i % 3));
+						if (i % 50 == 0) {
+							aiIndexTool.flush();
+						}
+					}
+					return null;
+				}));
+			}
+			start.countDown();
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		aiIndexTool.flush();
+
+		// No entry must be lost
+		String content = Files.readString(llmsTxtPath);
+		String otherContent = Files.readString(otherLlmsTxtPath);
+		assertEquals(threadCount * updateCount / 2, content.split("\n- \\[").length - 1);
+		assertEquals(threadCount * updateCount / 2, otherContent.split("\n- \\[").length - 1);
+		for (int t = 0; t < threadCount; t++) {
+			for (int i = 0; i < updateCount; i++) {
+				String entry = "- [Page " + t + "-" + i + "](docs/page-" + t + "-" + i + ".html.md)";
+				assertTrue((i % 2 == 0 ? content : otherContent).contains(entry), entry);
+			}
+		}
+		assertTrue(content.startsWith("# My Project\n\n> Project description\n"));
+	}
+
+	@Test
+	void testUpdateLlmsTxtIsWrittenAgainAfterFailure() throws Exception {
+		// Updates that cannot be written are kept for the next flush
+		Path llmsTxtPath = tempDir.resolve("llms.txt");
+		aiIndexTool.configure(Collections.singletonMap(AIIndexTool.DEFERRED_WRITES_KEY, "true"));
+
+		// A directory in place of the llms.txt file
+		Files.createDirectories(llmsTxtPath);
+		aiIndexTool.updateLlmsTxt(llmsTxtPath.toString(), "page1.html", "Page 1", "My Project", null, "Docs");
+		assertThrows(IOException.class, () -> aiIndexTool.flush());
+
+		Files.delete(llmsTxtPath);
+		aiIndexTool.updateLlmsTxt(llmsTxtPath.toString(), "page2.html", "Page 2", null, null, "Docs");
+		aiIndexTool.flush();
+		assertEquals(
+				"# My Project\n\n\n## Docs\n\n- [Page 1](page1.html.md)\n- [Page 2](page2.html.md)\n",
+				Files.readString(llmsTxtPath));
+
+		// Same with immediate writes: the failed update is written with the next one
+		aiIndexTool.configure(Collections.singletonMap(AIIndexTool.DEFERRED_WRITES_KEY, "false"));
+		Path otherLlmsTxtPath = tempDir.resolve("other/llms.txt");
+		Files.createDirectories(otherLlmsTxtPath);
+		aiIndexTool.updateLlmsTxt(otherLlmsTxtPath.toString(), "page1.html", "Page 1", "Other", null, "Docs");
+		Files.delete(otherLlmsTxtPath);
+		aiIndexTool.updateLlmsTxt(otherLlmsTxtPath.toString(), "page2.html", "Page 2", null, null, "Docs");
+		assertEquals(
+				"# Other\n\n\n## Docs\n\n- [Page 1](page1.html.md)\n- [Page 2](page2.html.md)\n",
+				Files.readString(otherLlmsTxtPath));
+	}
+
+	@Test
+	void testUpdateLlmsTxtMergesExternalChanges() throws Exception {
+		// Entries written by another process between 2 flushes must be preserved
+		Path llmsTxtPath = tempDir.resolve("llms.txt");
+
+		aiIndexTool.updateLlmsTxt(llmsTxtPath.toString(), "page1.html", "Page 1", "My Project", null, "Docs");
+		aiIndexTool.flush();
+
+		Files.writeString(
+				llmsTxtPath,
+				Files.readString(llmsTxtPath) + "- [External](external.html.md)\n\n## Module\n\n- [Module](module.html.md)\n");
+
+		aiIndexTool.updateLlmsTxt(llmsTxtPath.toString(), "page2.html", "Page 2", null, null, "Docs");
+		aiIndexTool.updateLlmsTxt(llmsTxtPath.toString(), "external.html", "External page", null, null, "Docs");
+		aiIndexTool.flush();
+
+		String expected = "# My Project\n\n"
+				+ "\n## Docs\n\n"
+				+ "- [Page 1](page1.html.md)\n"
+				+ "- [External page](external.html.md)\n"
+				+ "- [Page 2](page2.html.md)\n"
+				+ "\n## Module\n\n"
+				+ "- [Module](module.html.md)\n";
+		assertEquals(expected, Files.readString(llmsTxtPath));
+	}
+
+	@Test
+	void testLlmsFullTxt() throws Exception {
+		// The Markdown of the pages is concatenated in the order of llms.txt
+		aiIndexTool.configure(Collections.singletonMap(AIIndexTool.DEFERRED_WRITES_KEY, "true"));
+		String outputDirectory = tempDir.toString();
+		Path llmsTxtPath = tempDir.resolve(AIIndexTool.LLMS_TXT);
+		Path llmsFullTxtPath = tempDir.resolve(AIIndexTool.LLMS_FULL_TXT);
+		String[][] pages = {
+				{ "index.html", "Home", "Docs" },
+				{ "guide/install.html", "Installation", "Guides" },
+				{ "guide/usage.html", "Usage", "Guides" },
+				{ "about.html", "About", "Docs" } };
+
+		for (String[] page : pages) {
+			Document doc = Jsoup.parse("<html><head></head><body><h1>" + page[1] + "</h1><p>Content of " + page[0] + "</p></body></html>");
+			aiIndexTool.convertToMarkdown(outputDirectory, page[0], doc.head(), doc.body(), null, null);
+			aiIndexTool
+					.updateLlmsTxt(
+							llmsTxtPath.toString(),
+							page[0],
+							page[1],
+							"My Project",
+							"Project description",
+							page[2],
+							"https://example.com/");
+		}
+
+		// A page that is not listed in llms.txt
+		Document unlisted = Jsoup.parse("<html><head></head><body><p>Unlisted</p></body></html>");
+		aiIndexTool.convertToMarkdown(outputDirectory, "unlisted.html", unlisted.head(), unlisted.body(), null, null);
+
+		assertFalse(Files.exists(llmsFullTxtPath), "llms-full.txt must not be written before flush()");
+		aiIndexTool.flush();
+
+		String content = Files.readString(llmsFullTxtPath);
+		assertTrue(content.startsWith("# My Project\n\n> Project description\n\n## Docs\n\nSource: https://example.com/index.html.md\n\n"));
+		int home = content.indexOf("Content of index.html");
+		int about = content.indexOf("Content of about.html");
+		int guides = content.indexOf("## Guides");
+		int install = content.indexOf("Content of guide/install.html");
+		int usage = content.indexOf("Content of guide/usage.html");
+		int other = content.indexOf("## Other\n\nSource: unlisted.html.md\n\n");
+		int unlistedContent = content.indexOf("Unlisted");
+		assertTrue(0 < home && home < about && about < guides && guides < install && install < usage && usage < other
+				&& other < unlistedContent, content);
+
+		// Updated pages are written with the next flush
+		Document updated = Jsoup.parse("<html><head></head><body><p>Updated home</p></body></html>");
+		aiIndexTool.convertToMarkdown(outputDirectory, "index.html", updated.head(), updated.body(), null, null);
+		aiIndexTool.flush();
+		content = Files.readString(llmsFullTxtPath);
+		assertTrue(content.contains("Updated home"));
+		assertFalse(content.contains("Content of index.html"));
+		assertTrue(content.indexOf("Updated home") < content.indexOf("Content of about.html"));
+	}
+
+	@Test
+	void testLlmsFullTxtRequiresDeferredWrites() throws Exception {
+		// Without deferredWrites, the pages are only converted to their own Markdown file
+		Document doc = Jsoup.parse("<html><head></head><body><p>Content</p></body></html>");
+		aiIndexTool.convertToMarkdown(tempDir.toString(), "index.html", doc.head(), doc.body(), null, null);
+		aiIndexTool.flush();
+		assertTrue(Files.readString(tempDir.resolve("index.html.md")).contains("Content"));
+		assertFalse(Files.exists(tempDir.resolve(AIIndexTool.LLMS_FULL_TXT)));
+
+		// Unchanged page with a deleted Markdown file
+		Files.delete(tempDir.resolve("index.html.md"));
+		aiIndexTool.convertToMarkdown(tempDir.toString(), "index.html", doc.head(), doc.body(), null, null);
+		assertTrue(Files.readString(tempDir.resolve("index.html.md")).contains("Content"));
+	}
+
+	@Test
+	void testConvertSiteToMarkdown() throws Exception {
+		String link = "<link rel=\"alternate\" type=\"text/markdown\" href=\"page.html.md\">";
+		Files.createDirectories(tempDir.resolve("guide"));
+		Files.createDirectories(tempDir.resolve("apidocs"));
+		Files
+				.writeString(
+						tempDir.resolve("index.html"),
+						"<html><head><title>Home</title>" + link
+								+ "</head><body><nav>Menu</nav><main><p>Welcome home</p></main></body></html>");
+		Files
+				.writeString(
+						tempDir.resolve("guide/install.html"),
+						"<html><head><title>Installation</title>" + link
+								+ "</head><body><main><p>Install it</p></main></body></html>");
+		Files
+				.writeString(
+						tempDir.resolve("guide/untitled.html"),
+						"<html><head>" + link + "</head><body><p>No main element</p></body></html>");
+		Files
+				.writeString(
+						tempDir.resolve("apidocs/index.html"),
+						"<html><head><title>Javadoc</title></head><body><p>API</p></body></html>");
+
+		// An llms.txt file with a page already listed in its own section
+		Path llmsTxtPath = tempDir.resolve(AIIndexTool.LLMS_TXT);
+		Files
+				.writeString(
+						llmsTxtPath,
+						"# Old name\n\n## Guides\n\n- [Old title](https://example.com/guide/install.html.md)\n");
+
+		assertEquals(
+				3,
+				aiIndexTool
+						.convertSiteToMarkdown(
+								tempDir.toString(),
+								"main",
+								null,
+								"My Project",
+								"Project description",
+								"https://example.com"));
+
+		String home = Files.readString(tempDir.resolve("index.html.md"));
+		assertTrue(home.contains("canonical_url: https://example.com/index.html"), home);
+		assertTrue(home.contains("Welcome home"));
+		assertFalse(home.contains("Menu"), "Only the selected content must be converted");
+		assertTrue(Files.readString(tempDir.resolve("guide/untitled.html.md")).contains("No main element"));
+		assertFalse(Files.exists(tempDir.resolve("apidocs/index.html.md")), "Pages without Markdown link must be ignored");
+
+		String llmsTxt = Files.readString(llmsTxtPath);
+		assertTrue(llmsTxt.startsWith("# My Project"), llmsTxt);
+		assertTrue(llmsTxt.contains("## Guides\n\n- [Installation](https://example.com/guide/install.html.md)"), llmsTxt);
+		assertFalse(llmsTxt.contains("Old title"), llmsTxt);
+		assertTrue(llmsTxt.contains("- [Home](https://example.com/index.html.md)"), llmsTxt);
+		assertTrue(llmsTxt.contains("- [guide/untitled.html](https://example.com/guide/untitled.html.md)"), llmsTxt);
+		assertFalse(llmsTxt.contains("apidocs"), llmsTxt);
+
+		String llmsFullTxt = Files.readString(tempDir.resolve(AIIndexTool.LLMS_FULL_TXT));
+		assertTrue(llmsFullTxt.contains("Welcome home"));
+		assertTrue(llmsFullTxt.contains("Install it"));
+		assertTrue(llmsFullTxt.contains("No main element"));
+	}
+
+	@Test
+	void testConvertToMarkdownAfterConverterChange() throws Exception {
+		// Pages recorded by a previous version of the converter must be converted again
+		Path mdPath = tempDir.resolve("page.html.md");
+		Path llmsFullTxtPath = tempDir.resolve(AIIndexTool.LLMS_FULL_TXT);
+		Document doc = Jsoup.parse("<html><head></head><body><p>Original</p></body></html>");
+		Files.writeString(mdPath, "Old Markdown");
+		Files.writeString(llmsFullTxtPath, "Old Markdown");
+		IndexManifest oldManifest = new IndexManifest();
+		oldManifest.update("page.html.md", IndexManifest.hash("", null, doc.body().outerHtml()));
+		oldManifest.write(llmsFullTxtPath);
+
+		aiIndexTool.convertToMarkdown(tempDir.toString(), "page.html", doc.head(), doc.body(), null, null);
+		assertTrue(Files.readString(mdPath).contains("Original"));
+	}
+
+	@Test
+	void testConvertToMarkdownRecordsPagesWithoutFlush() throws Exception {
+		Path manifestPath = IndexManifest.getManifestPath(tempDir.resolve(AIIndexTool.LLMS_FULL_TXT));
+		Document doc = Jsoup.parse("<html><head></head><body><p>Original</p></body></html>");
+
+		// Default mode: the converted pages are recorded as they are converted
+		aiIndexTool.convertToMarkdown(tempDir.toString(), "page.html", doc.head(), doc.body(), null, null);
+		assertTrue(Files.readString(manifestPath).contains(" page.html.md"));
+		assertFalse(Files.exists(tempDir.resolve(AIIndexTool.LLMS_FULL_TXT)));
+
+		// Deferred writes: same thing, before flush()
+		AIIndexTool deferredTool = new AIIndexTool();
+		deferredTool.configure(Collections.singletonMap(AIIndexTool.DEFERRED_WRITES_KEY, "true"));
+		deferredTool.convertToMarkdown(tempDir.toString(), "other.html", doc.head(), doc.body(), null, null);
+		assertTrue(Files.readString(manifestPath).contains(" other.html.md"));
+
+		// The next build skips these pages
+		IndexManifest nextManifest = IndexManifest.loadIgnoringIndex(tempDir.resolve(AIIndexTool.LLMS_FULL_TXT), null);
+		assertFalse(
+				nextManifest
+						.update(
+								"page.html.md",
+								IndexManifest.hash("", AIIndexTool.getMarkdownConversionKey(false), doc.body().outerHtml())));
+		deferredTool.flush();
+	}
+
+	@Test
+	void testConvertToMarkdownWithCustomConverters() throws Exception {
+		Path mdPath = tempDir.resolve("page.html.md");
+		Document doc = Jsoup.parse("<html><head></head><body><p>Press <kbd>Ctrl</kbd></p></body></html>");
+		aiIndexTool.convertToMarkdown(tempDir.toString(), "page.html", doc.head(), doc.body(), null, null);
+		assertTrue(Files.readString(mdPath).contains("Press Ctrl"));
+
+		// Unchanged pages are converted again while custom converters are registered
+		HtmlToMarkdownConverter.registerElementConverter("kbd", (element, output) -> output.append("`").appendContent(element).append("`"));
+		try {
+			aiIndexTool.convertToMarkdown(tempDir.toString(), "page.html", doc.head(), doc.body(), null, null);
+			assertTrue(Files.readString(mdPath).contains("Press `Ctrl`"));
+
+			HtmlToMarkdownConverter.registerElementConverter("kbd", (element, output) -> output.append("**").appendContent(element).append("**"));
+			aiIndexTool.convertToMarkdown(tempDir.toString(), "page.html", doc.head(), doc.body(), null, null);
+			assertTrue(Files.readString(mdPath).contains("Press **Ctrl**"));
+		} finally {
+			HtmlToMarkdownConverter.unregisterElementConverter("kbd");
+		}
+
+		// And once they are removed
+		aiIndexTool.convertToMarkdown(tempDir.toString(), "page.html", doc.head(), doc.body(), null, null);
+		assertTrue(Files.readString(mdPath).contains("Press Ctrl"));
+	}
+
+	@Test
+	void testConvertToMarkdownSkipsUnchangedPages() throws Exception {
+		aiIndexTool.configure(Collections.singletonMap(AIIndexTool.DEFERRED_WRITES_KEY, "true"));
+		String outputDirectory = tempDir.toString();
+		Path mdPath = tempDir.resolve("page.html.md");
+		Document doc = Jsoup.parse("<html><head><meta name=\"author\" content=\"Me\"></head><body><p>Original</p></body></html>");
+
+		aiIndexTool.convertToMarkdown(outputDirectory, "page.html", doc.head(), doc.body(), null, null);
+		aiIndexTool.flush();
+		assertTrue(Files.exists(IndexManifest.getManifestPath(tempDir.resolve(AIIndexTool.LLMS_FULL_TXT))));
+
+		// Same page: neither converted nor written again (the existing Markdown is reused)
+		String tampered = Files.readString(mdPath).replace("Original", "Tampered");
+		Files.writeString(mdPath, tampered);
+		FileTime oldTime = FileTime.fromMillis(1000000000000L);
+		Files.setLastModifiedTime(mdPath, oldTime);
+		assertEquals(
+				"<link rel=\"alternate\" type=\"text/markdown\" href=\"page.html.md\">",
+				aiIndexTool.convertToMarkdown(outputDirectory, "page.html", doc.head(), doc.body(), null, null));
+		assertEquals(oldTime, Files.getLastModifiedTime(mdPath));
+		aiIndexTool.flush();
+		assertTrue(Files.readString(tempDir.resolve(AIIndexTool.LLMS_FULL_TXT)).contains("Tampered"));
+
+		// Modified page
+		Document modified = Jsoup.parse("<html><head><meta name=\"author\" content=\"Me\"></head><body><p>Modified</p></body></html>");
+		aiIndexTool.convertToMarkdown(outputDirectory, "page.html", modified.head(), modified.body(), null, null);
+		assertTrue(Files.readString(mdPath).contains("Modified"));
+		assertNotEquals(oldTime, Files.getLastModifiedTime(mdPath));
+
+		// Modified metadata
+		Files.setLastModifiedTime(mdPath, oldTime);
+		Document newAuthor = Jsoup.parse("<html><head><meta name=\"author\" content=\"You\"></head><body><p>Modified</p></body></html>");
+		aiIndexTool.convertToMarkdown(outputDirectory, "page.html", newAuthor.head(), newAuthor.body(), null, null);
+		assertTrue(Files.readString(mdPath).contains("author: You"));
+
+		// Different HTML, same Markdown: the file is not written again
+		Files.setLastModifiedTime(mdPath, oldTime);
+		Document sameMarkdown = Jsoup.parse("<html><head><meta name=\"author\" content=\"You\"></head><body><p>Modified </p></body></html>");
+		aiIndexTool.convertToMarkdown(outputDirectory, "page.html", sameMarkdown.head(), sameMarkdown.body(), null, null);
+		assertEquals(oldTime, Files.getLastModifiedTime(mdPath));
+		try (Stream<Path> files = Files.list(tempDir)) {
+			assertTrue(files.noneMatch(file -> file.toString().endsWith(".tmp")), "Temporary files must be deleted");
+		}
+
+		// Deleted Markdown file
+		Files.delete(mdPath);
+		aiIndexTool.convertToMarkdown(outputDirectory, "page.html", newAuthor.head(), newAuthor.body(), null, null);
+		assertTrue(Files.readString(mdPath).contains("Modified"));
+	}
+
+	@Test
+	void testPutEntry() {
+		AIIndexTool.LlmsTxtContent content = aiIndexTool
+				.parseLlmsTxt("# Project\n\n## Docs\n\n- [One](one.html.md)\n- [Two](two.html.md)\n");
+
+		content.putEntry("Docs", "Two (updated)", "two.html.md");
+		content.putEntry("Docs", "Three", "three.html.md");
+		content.putEntry("API", "One", "one.html.md");
+
+		assertEquals(3, content.getSections().get("Docs").size());
+		assertEquals("Two (updated)", content.getSections().get("Docs").get(1).getTitle());
+		assertEquals("three.html.md", content.getSections().get("Docs").get(2).getPath());
+		assertEquals(1, content.getSections().get("API").size(), "Paths are unique per section only");
+	}
+
 	@Test
 	void testParseLlmsTxt() {
 		// Test parsing of llms.txt content
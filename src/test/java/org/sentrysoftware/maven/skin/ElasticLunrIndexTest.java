@@ -0,0 +1,264 @@
+package org.sentrysoftware.maven.skin;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Sentry Maven Skin Tools
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2017 - 2026 Sentry Software
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Value;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ElasticLunrIndexTest {
+
+	@Test
+	void testTokenize() {
+		assertEquals(Arrays.asList("hello", "world", "foo"), ElasticLunrPipeline.tokenize("  Hello-World \t foo\n"));
+		assertEquals(Arrays.asList("", "a", "b", ""), ElasticLunrPipeline.tokenize("-a - b-"));
+		assertEquals(Collections.emptyList(), ElasticLunrPipeline.tokenize((String) null));
+	}
+
+	@Test
+	void testStem() {
+		assertEquals("run", ElasticLunrPipeline.stem("running"));
+		assertEquals("caress", ElasticLunrPipeline.stem("caresses"));
+		assertEquals("poni", ElasticLunrPipeline.stem("ponies"));
+		assertEquals("relat", ElasticLunrPipeline.stem("relational"));
+		assertEquals("gener", ElasticLunrPipeline.stem("generalizations"));
+		assertEquals("is", ElasticLunrPipeline.stem("is"));
+	}
+
+	@Test
+	void testPipeline() {
+		ElasticLunrPipeline pipeline = new ElasticLunrPipeline(ElasticLunrPipeline.DEFAULT_PIPELINE);
+		assertEquals(
+				Arrays.asList("agent", "monitor"),
+				pipeline.run(Arrays.asList("the", "(agents,", "", "monitoring...")));
+		assertThrows(
+				IllegalArgumentException.class,
+				() -> new ElasticLunrPipeline(Collections.singletonList("unknown")));
+	}
+
+	@Test
+	void testFormatNumber() {
+		assertEquals("1", ElasticLunrIndex.formatNumber(1.0));
+		assertEquals("0", ElasticLunrIndex.formatNumber(-0.0));
+		assertEquals("1.4142135623730951", ElasticLunrIndex.formatNumber(Math.sqrt(2)));
+		assertEquals("0.1", ElasticLunrIndex.formatNumber(0.1));
+		assertEquals("1e+21", ElasticLunrIndex.formatNumber(1e21));
+		assertEquals("1e-7", ElasticLunrIndex.formatNumber(1e-7));
+		assertEquals("0.000001", ElasticLunrIndex.formatNumber(1e-6));
+	}
+
+	@Test
+	void testWriteString() throws IOException {
+		StringBuilder json = new StringBuilder();
+		ElasticLunrIndex.writeString("a\"b\\c\n\u0001\ud800é", json);
+		assertEquals("\"a\\\"b\\\\c\\n\\u0001\\ud800é\"", json.toString());
+	}
+
+	@Test
+	void testLoadAndUpdate(@TempDir final Path tempDir) throws IOException {
+
+		Path indexPath = tempDir.resolve("index.json");
+
+		// A missing index file means a new index
+		ElasticLunrIndex index = ElasticLunrIndex.load(indexPath);
+		index.updateDocument("agent.html", "Agent", "testagent", "The agent monitors dragons");
+		index.updateDocument("fake.html", "Fake", "fake", "This is a fake test.");
+		index.write(indexPath, IndexFormat.DEFAULT);
+		assertEquals(2, index.getLength());
+
+		// Reloading and serializing again must give the exact same index
+		String json = new String(Files.readAllBytes(indexPath), IndexTool.UTF8_CHARSET);
+		ElasticLunrIndex reloaded = ElasticLunrIndex.load(indexPath);
+		assertEquals(json, reloaded.toJson());
+
+		// Updating a document removes its previous tokens
+		reloaded.updateDocument("agent.html", "Agent", "testagent", "The agent monitors");
+		String updated = reloaded.toJson();
+		assertEquals(2, reloaded.getLength());
+		assertFalse(updated.contains("dragon"), "Existing entries must be overwritten with new ones");
+		assertTrue(updated.contains("{\"id\":\"fake.html\",\"title\":\"Fake\",\"keywords\":\"fake\""));
+
+		assertThrows(IOException.class, () -> ElasticLunrIndex.load("{\"version\":\"0.9.5\"}"));
+	}
+
+	@Test
+	void testWriteFormats(@TempDir final Path tempDir) throws IOException {
+
+		ElasticLunrIndex index = ElasticLunrIndex.create();
+		index.updateDocument("agent.html", "Agent", "testagent", "The agent monitors 10 hosts");
+		index.updateDocument("fake.html", "Fake", "fake", "This is a fake test.");
+		String expected = index.toJson();
+
+		// Sharded index, with external documents, and compressed siblings
+		Path indexPath = tempDir.resolve("index.json");
+		index.write(indexPath, new IndexFormat(true, true, true));
+
+		String mainJson = new String(Files.readAllBytes(indexPath), IndexTool.UTF8_CHARSET);
+		assertTrue(mainJson.contains("\"docs\":{\"agent.html\":null,\"fake.html\":null}"), "Documents must be external");
+		assertTrue(mainJson.contains("\"save\":false"));
+		assertTrue(mainJson.contains("\"documents\":\"index.docs.json\""));
+		assertTrue(mainJson.contains("\"shards\":{\"1\":\"index-0031.json\","), "Shards must be listed");
+		assertFalse(mainJson.contains("monitor"), "Terms must be in the shards");
+		assertTrue(mainJson.length() < expected.length() / 2);
+
+		String agentShard = new String(Files.readAllBytes(tempDir.resolve("index-0061.json")), IndexTool.UTF8_CHARSET);
+		assertTrue(agentShard.startsWith("{\"title\":{\"docs\":{},\"df\":0,\"g\":{"), agentShard);
+		String documents = new String(Files.readAllBytes(tempDir.resolve("index.docs.json")), IndexTool.UTF8_CHARSET);
+		assertTrue(documents.startsWith("{\"agent.html\":{\"id\":\"agent.html\",\"title\":\"Agent\""));
+
+		for (String fileName : new String[] { "index.json", "index.docs.json", "index-0061.json" }) {
+			try (InputStream in = new GZIPInputStream(Files.newInputStream(tempDir.resolve(fileName + ".gz")))) {
+				assertArrayEquals(Files.readAllBytes(tempDir.resolve(fileName)), in.readAllBytes());
+			}
+		}
+
+		// All the files are loaded back (only the order of the first characters may differ)
+		ElasticLunrIndex reloaded = ElasticLunrIndex.load(indexPath);
+		assertEquals(expected.length(), reloaded.toJson().length());
+		Path otherIndexPath = tempDir.resolve("other.json");
+		reloaded.write(otherIndexPath, new IndexFormat(true, true, false));
+		assertEquals(
+				mainJson.replace("\"index.docs.json", "\"other.docs.json").replace("\"index-", "\"other-"),
+				new String(Files.readAllBytes(otherIndexPath), IndexTool.UTF8_CHARSET));
+		assertEquals(documents, new String(Files.readAllBytes(tempDir.resolve("other.docs.json")), IndexTool.UTF8_CHARSET));
+		assertEquals(agentShard, new String(Files.readAllBytes(tempDir.resolve("other-0061.json")), IndexTool.UTF8_CHARSET));
+
+		// And the index can be written in the default format again
+		reloaded.updateDocument("fake.html", "Fake", "fake", "Updated fake test.");
+		reloaded.write(indexPath, IndexFormat.DEFAULT);
+		assertFalse(
+				new String(Files.readAllBytes(indexPath), IndexTool.UTF8_CHARSET).contains("\"shards\""),
+				"Default format must be a single file");
+	}
+
+	@Test
+	void testWriteDeletesStaleFiles(@TempDir final Path tempDir) throws IOException {
+		Path indexPath = tempDir.resolve("index.json");
+		ElasticLunrIndex index = ElasticLunrIndex.create();
+		index.updateDocument("agent.html", "Agent", "testagent", "The agent monitors 10 hosts");
+		index.updateDocument("fake.html", "Fake", "fake", "This is a fake test.");
+		index.write(indexPath, new IndexFormat(true, true, true));
+		assertTrue(Files.exists(tempDir.resolve("index-0061.json.gz")));
+		assertTrue(Files.exists(tempDir.resolve("index-0066.json")));
+
+		// Other files next to the index are left alone
+		Files.writeString(tempDir.resolve("index-cafe.json"), "{}");
+
+		// No shards, no compressed siblings
+		ElasticLunrIndex reloaded = ElasticLunrIndex.load(indexPath);
+		reloaded.removeDocument("fake.html");
+		reloaded.write(indexPath, new IndexFormat(false, true, false));
+		assertTrue(Files.exists(tempDir.resolve("index.docs.json")));
+		assertFalse(Files.exists(tempDir.resolve("index-0061.json")), "Shards no longer listed must be deleted");
+		assertFalse(Files.exists(tempDir.resolve("index-0066.json.gz")), "Shards no longer listed must be deleted");
+		assertFalse(Files.exists(tempDir.resolve("index.docs.json.gz")), "Compressed siblings must be deleted");
+		assertFalse(Files.exists(tempDir.resolve("index.json.gz")), "Compressed siblings must be deleted");
+
+		// Single file
+		ElasticLunrIndex.load(indexPath).write(indexPath, IndexFormat.DEFAULT);
+		try (Stream<Path> files = Files.list(tempDir)) {
+			assertEquals(
+					Arrays.asList("index-cafe.json", "index.json"),
+					files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList()));
+		}
+		assertEquals(1, ElasticLunrIndex.load(indexPath).getLength());
+	}
+
+	@Test
+	void testMerge() throws IOException {
+
+		// Reference: all the documents added to the same index, one after the other
+		ElasticLunrIndex sequential = ElasticLunrIndex.create();
+		sequential.updateDocument("agent.html", "Agent", "testagent", "The agent monitors dragons");
+		sequential.updateDocument("fake.html", "Fake", "fake", "This is a fake test.");
+		sequential.updateDocument("agent.html", "Agent", "testagent", "The agent monitors 10 hosts");
+		sequential.updateDocument("new.html", "New", "new", "A brand new page, with 10 agents");
+
+		// Same documents, in an existing index and a partial index
+		ElasticLunrIndex base = ElasticLunrIndex.create();
+		base.updateDocument("agent.html", "Agent", "testagent", "The agent monitors dragons");
+		base.updateDocument("fake.html", "Fake", "fake", "This is a fake test.");
+		ElasticLunrIndex partial = ElasticLunrIndex.create();
+		partial.updateDocument("agent.html", "Agent", "testagent", "The agent monitors 10 hosts");
+		partial.updateDocument("new.html", "New", "new", "A brand new page, with 10 agents");
+
+		base.merge(partial);
+		assertEquals(3, base.getLength());
+		assertEquals(sequential.toJson(), base.toJson());
+	}
+
+	@Test
+	void testConformanceWithJavascript() throws IOException {
+
+		// Documents to index, with a few edge cases for the tokenizer and the JSON serialization
+		HtmlTool htmlTool = new HtmlTool();
+		String[][] documents = {
+				{ "agent.html", "Agent", "testagent", textOf(htmlTool, "/studio-agent.html") },
+				{ "concepts.html", "General Concepts", "concepts", textOf(htmlTool, "/studio-general-concepts.html") },
+				{ "test.html", "Test", "test", textOf(htmlTool, "/test.html") },
+				{ "edge.html", "Édge \"cases\"", "a-b c", "Ünïcødé 123 4.5 ---  tabs\tand lines\u0001 ---x--" },
+				{ "agent.html", "Agent", "testagent", "Updated agent page, the agents are running" } };
+
+		// Reference index built with elasticlunr.js itself
+		String expected;
+		try (Context graalContext = JavascriptIndex.newContext()) {
+			Value functions = JavascriptIndex.getIndexFunctions(graalContext);
+			Value jsIndex = functions.invokeMember("loadIndex", "");
+			for (String[] document : documents) {
+				functions.invokeMember("updateDocument", jsIndex, document[0], document[1], document[2], document[3]);
+			}
+			expected = functions.invokeMember("serializeIndex", jsIndex).asString();
+		}
+
+		ElasticLunrIndex index = ElasticLunrIndex.create();
+		for (String[] document : documents) {
+			index.updateDocument(document[0], document[1], document[2], document[3]);
+		}
+		assertEquals(expected, index.toJson());
+
+		// And an index loaded from elasticlunr.js output must be serialized identically
+		assertEquals(expected, ElasticLunrIndex.load(expected).toJson());
+	}
+
+	/**
+	 * @param htmlTool HtmlTool instance
+	 * @param resource Path to the HTML resource
+	 * @return the text of the body of the specified HTML resource
+	 * @throws IOException when the resource cannot be read
+	 */
+	private static String textOf(final HtmlTool htmlTool, final String resource) throws IOException {
+		return htmlTool.text(htmlTool.parseContent(HtmlToolTest.getResourceAsString(resource)), "body").get(0);
+	}
+
+}
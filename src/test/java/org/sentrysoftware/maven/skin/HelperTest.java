@@ -56,4 +56,12 @@ class HelperTest {
 
 	}
 
+	@Test
+	void testToSystemLineSeparators() {
+		String sep = System.lineSeparator();
+		assertEquals("", Helper.toSystemLineSeparators(""));
+		assertEquals("a" + sep, Helper.toSystemLineSeparators("a"));
+		assertEquals("a" + sep + sep + "b" + sep, Helper.toSystemLineSeparators("a\n\r\nb\n"));
+	}
+
 }
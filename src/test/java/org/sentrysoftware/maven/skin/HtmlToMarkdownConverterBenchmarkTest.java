@@ -0,0 +1,209 @@
+package org.sentrysoftware.maven.skin;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Sentry Maven Skin Tools
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2017 - 2026 Sentry Software
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Benchmarks of {@link HtmlToMarkdownConverter}, which only run with {@code -Dbenchmark=true},
+ * e.g. {@code mvn test -Dtest=HtmlToMarkdownConverterBenchmarkTest -Dbenchmark=true}.
+ * <p>
+ * The results are logged at the INFO level.
+ * </p>
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class HtmlToMarkdownConverterBenchmarkTest {
+
+	/**
+	 * Where the results are reported
+	 */
+	private static final Logger LOG = LoggerFactory.getLogger(HtmlToMarkdownConverterBenchmarkTest.class);
+
+	/**
+	 * Minimum duration of the warm-up and of the measurement of each benchmark, in nanoseconds
+	 */
+	private static final long DURATION = 2_000_000_000L;
+
+	@Test
+	void benchmarkNestedConstructs() {
+		// Lists, blockquotes and callouts nested at increasing depth, with the same content at
+		// each level: the content of each level is copied into all the enclosing levels, so the
+		// time per level grows with the depth
+		for (int depth : new int[] { 1, 4, 8, 16, 32 }) {
+			Element body = Jsoup.parseBodyFragment(nestedDocument(depth)).body();
+			double time = measure(() -> HtmlToMarkdownConverter.convert(body));
+			LOG.info(String.format("Nested constructs, depth %2d: %9.3f ms, %7.3f ms per level", depth, time, time / depth));
+		}
+	}
+
+	@Test
+	void benchmarkTestPages() {
+		for (String page : new String[] { "/test.html", "/studio-agent.html", "/studio-general-concepts.html" }) {
+			Element body = Jsoup.parse(HtmlToolTest.getResourceAsString(page)).body();
+			double time = measure(() -> HtmlToMarkdownConverter.convert(body));
+			LOG.info(String.format("Page %s: %.3f ms", page, time));
+		}
+	}
+
+	@Test
+	void benchmarkWhitespaceCollapsing() {
+		// Text nodes of an indented HTML source: words, single spaces, and indentation
+		List<String> texts = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			texts.add("\n        Paragraph " + i + " of a documentation page, with ");
+			texts.add("inline");
+			texts.add(" ");
+			texts.add(" elements and a line that is wrapped\n        in the source.\n    ");
+		}
+
+		double regex = measure(() -> {
+			StringBuilder out = new StringBuilder();
+			MarkdownWriter writer = MarkdownWriter.raw(out);
+			for (String text : texts) {
+				String collapsed = text.replaceAll("\\s+", " ");
+				if (!writer.isEmpty() && (writer.getLastChar() == '\n' || writer.getLastChar() == ' ') && collapsed.startsWith(" ")) {
+					collapsed = collapsed.stripLeading();
+				}
+				writer.append(collapsed);
+			}
+			return out.toString();
+		});
+		double collapsing = measure(() -> {
+			StringBuilder out = new StringBuilder();
+			MarkdownWriter writer = MarkdownWriter.raw(out);
+			for (String text : texts) {
+				HtmlToMarkdownConverter.appendCollapsingWhitespace(text, writer);
+			}
+			return out.toString();
+		});
+		LOG.info(String.format("Whitespace collapsing of %d text nodes: regex %.3f ms, without regex %.3f ms", texts.size(), regex, collapsing));
+	}
+
+	@Test
+	void benchmarkLargeTables() {
+		// Generated reference tables, like the tables of the metrics of a connector
+		for (int rows : new int[] { 100, 1000, 10000 }) {
+			Element body = Jsoup.parseBodyFragment(tableDocument(rows)).body();
+			double time = measure(() -> HtmlToMarkdownConverter.convert(body));
+			LOG.info(String.format("Table of %5d rows: %9.3f ms", rows, time));
+		}
+	}
+
+	/**
+	 * Builds a documentation page with a table of reference
+	 *
+	 * @param rows Number of rows of the body of the table
+	 * @return the HTML page
+	 */
+	static String tableDocument(final int rows) {
+		StringBuilder html = new StringBuilder("<table><thead><tr><th>Name</th><th>Type</th><th>Unit</th>")
+				.append("<th>Description</th></tr></thead><tbody>");
+		for (int i = 0; i < rows; i++) {
+			html
+					.append("<tr><td><code>hw.metric.")
+					.append(i)
+					.append("</code></td><td>Gauge</td><td>{")
+					.append(i % 7 == 0 ? "W" : "1")
+					.append("}</td><td>Value of the <b>metric</b> number ")
+					.append(i)
+					.append(", with <code>key=“value”</code> | details</td></tr>");
+		}
+		return html.append("</tbody></table>").toString();
+	}
+
+	/**
+	 * Builds a documentation page with nested lists, blockquotes and callouts
+	 *
+	 * @param depth Number of nested levels
+	 * @return the HTML page
+	 */
+	static String nestedDocument(final int depth) {
+		StringBuilder html = new StringBuilder();
+		for (int level = 0; level < depth; level++) {
+			switch (level % 3) {
+			case 0:
+				html.append("<ul><li>");
+				break;
+			case 1:
+				html.append("<blockquote>");
+				break;
+			default:
+				html.append("<div class=\"callout callout-note\"><div class=\"callout-title\">Note</div>");
+				break;
+			}
+			for (int i = 0; i < 20; i++) {
+				html
+						.append("<p>Paragraph ")
+						.append(i)
+						.append(" with <b>bold</b>, <em>emphasis</em> and <code>key=“value”</code>, ")
+						.append("and a <a href=\"page.html\">link</a>.</p>");
+			}
+			html.append("<ol><li>First</li><li>Second</li></ol>");
+		}
+		for (int level = depth - 1; level >= 0; level--) {
+			switch (level % 3) {
+			case 0:
+				html.append("</li><li>Next item</li></ul>");
+				break;
+			case 1:
+				html.append("</blockquote>");
+				break;
+			default:
+				html.append("</div>");
+				break;
+			}
+		}
+		return html.toString();
+	}
+
+	/**
+	 * Measures the average duration of the specified operation, after warming up
+	 *
+	 * @param operation Operation to measure
+	 * @return the average duration of the operation, in milliseconds
+	 */
+	static double measure(final Supplier<String> operation) {
+		long start = System.nanoTime();
+		while (System.nanoTime() - start < DURATION) {
+			assertFalse(operation.get().isEmpty());
+		}
+		int count = 0;
+		start = System.nanoTime();
+		long elapsed;
+		do {
+			assertFalse(operation.get().isEmpty());
+			count++;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < DURATION);
+		return elapsed / 1_000_000.0 / count;
+	}
+
+}
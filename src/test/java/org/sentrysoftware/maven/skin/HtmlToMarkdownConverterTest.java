@@ -22,9 +22,17 @@ package org.sentrysoftware.maven.skin;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import org.jsoup.Jsoup;
 import org.jsoup.nodes.Element;
+import org.jsoup.nodes.TextNode;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -155,8 +163,37 @@ class HtmlToMarkdownConverterTest {
 				"<tbody><tr><td>Cell 1</td><td>Cell 2</td></tr></tbody></table>";
 		String result = HtmlToMarkdownConverter.convert(html);
 		assertTrue(result.contains("| Header 1 | Header 2 |"));
-		assertTrue(result.contains("| --- | --- |"));
-		assertTrue(result.contains("| Cell 1 | Cell 2 |"));
+		assertTrue(result.contains("| -------- | -------- |"));
+		assertTrue(result.contains("| Cell 1   | Cell 2   |"));
+	}
+
+	@Test
+	void testTableSectionsAndNestedTables() {
+		String html = "<table><caption>Ignored</caption>" +
+				"<tfoot><tr><td>Total</td><td colspan='2'>3</td></tr></tfoot>" +
+				"<thead><tr><th>Name</th><th>Value</th><th>Unit</th></tr></thead>" +
+				"<tbody><tr><td>a</td><td>1</td></tr></tbody>" +
+				"<tbody><tr><td>b</td><td><table><tr><td>x</td><td>y</td></tr></table></td><td>W</td></tr></tbody>" +
+				"<tr><td>a much longer name than the others</td><td>2</td><td>W</td></tr>" +
+				"</table>";
+
+		assertEquals(
+				"| Name                               | Value                         | Unit |\n" +
+						"| ---------------------------------- | ----------------------------- | ---- |\n" +
+						"| a                                  | 1                             |      |\n" +
+						"| b                                  | \\| x \\| y \\| \\| --- \\| --- \\| | W    |\n" +
+						"| a much longer name than the others | 2                             | W    |\n" +
+						"| Total                              | 3                             |      |",
+				HtmlToMarkdownConverter.convert(html));
+
+		// Cells wider than the limit are not padded to their width
+		String wide = "x".repeat(100);
+		assertEquals(
+				"| Name" + " ".repeat(36) + " |\n" +
+						"| " + "-".repeat(40) + " |\n" +
+						"| " + wide + " |\n" +
+						"| short" + " ".repeat(35) + " |",
+				HtmlToMarkdownConverter.convert("<table><tr><th>Name</th></tr><tr><td>" + wide + "</td></tr><tr><td>short</td></tr></table>"));
 	}
 
 	@Test
@@ -251,7 +288,7 @@ class HtmlToMarkdownConverterTest {
 				"</uib-tab></uib-tabset>";
 
 		assertEquals(
-				"#### Input\n\n| col |\n| --- |\n| value |",
+				"#### Input\n\n| col   |\n| ----- |\n| value |",
 				HtmlToMarkdownConverter.convert(html));
 	}
 
@@ -334,6 +371,24 @@ class HtmlToMarkdownConverterTest {
 		assertFalse(result.contains("#overview-9"));
 	}
 
+	@Test
+	void testFragmentSlugsTrackEnclosingContext() {
+		String html = "<div class='toc'><ul><li><a href='#intro-anchor'>Intro</a></li></ul></div>" +
+				"<p><a href='#usage-anchor'>Usage</a></p>" +
+				"<table><tr><td><table><tr><td><h2>Intro</h2></td></tr></table><h2>Usage</h2></td></tr></table>" +
+				"<h2>Intro</h2>" +
+				"<div class='visible-print-inline'><h2>Usage</h2></div>" +
+				"<h2>Usage</h2>" +
+				"<a class='toc' href='#usage-link'>Usage</a>";
+
+		String result = HtmlToMarkdownConverter.convert(html);
+
+		// Headings after nested tables and print-only elements are mapped again
+		assertTrue(result.contains("[Intro](#intro)"));
+		assertTrue(result.contains("[Usage](#usage-anchor)"), "Links outside tables of contents are kept");
+		assertTrue(result.contains("[Usage](#usage)"), "A link can be a table of contents by itself");
+	}
+
 	@Test
 	void testIssue117TextFallbackDoesNotRewriteOrdinaryLinks() {
 		String html = "<p><a href='#custom-anchor'>Overview</a></p>" +
@@ -364,10 +419,10 @@ class HtmlToMarkdownConverterTest {
 		String result = HtmlToMarkdownConverter.convert(html);
 
 		assertEquals(
-				"| Entity | Backslash |\n" +
-						"| --- | --- |\n" +
-						"| Model\\|Size | 2\\|11 |\n" +
-						"| ST4000NM\\|4000 | value |",
+				"| Entity         | Backslash |\n" +
+						"| -------------- | --------- |\n" +
+						"| Model\\|Size    | 2\\|11     |\n" +
+						"| ST4000NM\\|4000 | value     |",
 				result);
 	}
 
@@ -391,7 +446,7 @@ class HtmlToMarkdownConverterTest {
 
 		assertTrue(result.contains("Domain=\"CONTOSO\",Name=\"jsmith\""));
 		assertTrue(result.contains("She said \u201chello\u201d."));
-		assertTrue(result.contains("| key=\"value\" |"));
+		assertTrue(result.contains("| key=\"value\"             |"));
 		assertTrue(result.contains("Equation x = \u201cunknown\u201d."));
 		assertTrue(result.contains("Use `foo`, called \u201cbar\u201d."));
 		assertTrue(result.contains("Path \\server, called \u201cbaz\u201d."));
@@ -417,4 +472,119 @@ class HtmlToMarkdownConverterTest {
 		assertFalse(result.contains("[1]"));
 		assertFalse(result.contains("[2]"));
 	}
+
+	@Test
+	void testConvertToAppendable() throws IOException {
+		Element body = Jsoup
+				.parseBodyFragment(
+						"  <h1>Title</h1><p>Text with <b>bold</b></p><ul><li>One</li><li>Two</li></ul>"
+								+ "<blockquote><p>Quote</p></blockquote><p>  </p>\n\n")
+				.body();
+
+		StringWriter writer = new StringWriter();
+		HtmlToMarkdownConverter.convert(body, writer);
+		assertEquals(HtmlToMarkdownConverter.convert(body), writer.toString());
+		assertEquals("# Title\n\nText with **bold**\n\n- One\n- Two\n\n> Quote", writer.toString());
+
+		// Nothing is written for null elements
+		StringBuilder empty = new StringBuilder();
+		HtmlToMarkdownConverter.convert((Element) null, empty);
+		assertEquals("", empty.toString());
+	}
+
+	@Test
+	void testConvertToAppendableError() {
+		IOException error = new IOException("disk full");
+		Writer failingWriter = new Writer() {
+			@Override
+			public void write(final char[] cbuf, final int off, final int len) throws IOException {
+				throw error;
+			}
+
+			@Override
+			public void flush() {
+				// Nothing to flush
+			}
+
+			@Override
+			public void close() {
+				// Nothing to close
+			}
+		};
+		Element body = Jsoup.parseBodyFragment("<p>Text</p>").body();
+		assertSame(error, assertThrows(IOException.class, () -> HtmlToMarkdownConverter.convert(body, failingWriter)));
+	}
+
+	@Test
+	void testAppendCollapsingWhitespace() {
+		String[] texts = {
+			"",
+			" ",
+			"word",
+			"two words",
+			"  leading and trailing \t",
+			"tabs\tand\r\nnew\n\nlines",
+			"\u000Bvertical\u000Btab\fform feed",
+			" \u2003 em space and\u00a0no-break space",
+			"\u2003not collapsed"
+		};
+		for (String previous : new String[] { "", "x", " ", "\n" }) {
+			for (String text : texts) {
+				StringBuilder expected = new StringBuilder(previous);
+				String collapsed = text.replaceAll("\\s+", " ");
+				if (!previous.isEmpty() && (previous.endsWith("\n") || previous.endsWith(" ")) && collapsed.startsWith(" ")) {
+					collapsed = collapsed.stripLeading();
+				}
+				expected.append(collapsed);
+
+				StringBuilder actual = new StringBuilder();
+				MarkdownWriter writer = MarkdownWriter.raw(actual).append(previous);
+				HtmlToMarkdownConverter.appendCollapsingWhitespace(text, writer);
+				assertEquals(expected.toString(), actual.toString(), "After \"" + previous + "\": \"" + text + "\"");
+			}
+		}
+	}
+
+	@Test
+	void testMarkdownVisibleTextWithoutCopy() {
+		String[] fragments = {
+			"<a href=\"#a\">Plain   <b>link</b>\n text</a>",
+			"<a href=\"#a\">Text<span class=\"visible-print-inline\"> [1]</span> after</a>",
+			"<h2>Tab<span class=\"sentry-print-tab-heading\">Print</span><script>x()</script><style>p{}</style></h2>",
+			"<a href=\"#a\"><img src=\"i.png\" alt=\" Icon \">Label<img src=\"j.png\"></a>",
+			"<a href=\"#a\"><div>Block</div><span class=\"visible-print-inline\">x</span>text<div>Other</div><img alt=\"alt\"></a>",
+			"<a href=\"#a\"><p>One</p><noscript>n</noscript><p>Two</p>Three<br>Four</a>",
+			"<pre><a href=\"#a\">Pre  formatted\n  link</a></pre>",
+			"<a href=\"#a\"><pre>  kept\n  as is </pre> text</a>"
+		};
+		for (String fragment : fragments) {
+			Element body = Jsoup.parseBodyFragment(fragment).body();
+			for (Element element : body.select("a, h2")) {
+				Element copy = element.clone();
+				copy.select(".visible-print-inline, .sentry-print-tab-heading, script, style, noscript").remove();
+				for (Element image : copy.select("img")) {
+					image.before(new TextNode(image.attr("alt")));
+					image.remove();
+				}
+				assertEquals(copy.text().trim(), HtmlToMarkdownConverter.markdownVisibleText(element), fragment);
+			}
+		}
+	}
+
+	@Test
+	void testRegisterElementConverter() {
+		String html = "<p>Press <kbd>Ctrl</kbd></p><hr><p>Done</p><kbd class='visible-print-inline'>Print</kbd>";
+		assertEquals("Press Ctrl\n\n---\n\nDone", HtmlToMarkdownConverter.convert(html));
+
+		HtmlToMarkdownConverter.registerElementConverter("KBD", (element, output) -> output.append("`").appendContent(element).append("`"));
+		HtmlToMarkdownConverter.registerElementConverter("hr", (element, output) -> output.ensureBlankLine().append("***\n\n"));
+		try {
+			assertEquals("Press `Ctrl`\n\n***\n\nDone", HtmlToMarkdownConverter.convert(html));
+		} finally {
+			HtmlToMarkdownConverter.unregisterElementConverter("kbd");
+			HtmlToMarkdownConverter.unregisterElementConverter("hr");
+		}
+
+		assertEquals("Press Ctrl\n\n---\n\nDone", HtmlToMarkdownConverter.convert(html));
+	}
 }
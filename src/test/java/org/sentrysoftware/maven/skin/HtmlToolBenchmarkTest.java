@@ -0,0 +1,91 @@
+package org.sentrysoftware.maven.skin;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Sentry Maven Skin Tools
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2017 - 2026 Sentry Software
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import static org.sentrysoftware.maven.skin.HtmlToMarkdownConverterBenchmarkTest.measure;
+
+import org.jsoup.nodes.Element;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Benchmarks of {@link HtmlTool}, which only run with {@code -Dbenchmark=true}, e.g.
+ * {@code mvn test -Dtest=HtmlToolBenchmarkTest -Dbenchmark=true}.
+ * <p>
+ * The results are logged at the INFO level.
+ * </p>
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class HtmlToolBenchmarkTest {
+
+	/**
+	 * Where the results are reported
+	 */
+	private static final Logger LOG = LoggerFactory.getLogger(HtmlToolBenchmarkTest.class);
+
+	private static final HtmlTool HTML_TOOL = new HtmlTool();
+
+	@Test
+	void benchmarkNormalize() {
+		SelectorCache selectors = HtmlTool.getSelectorCache();
+		for (String page : new String[] { "/test.html", "/studio-agent.html", "/studio-general-concepts.html" }) {
+			Element body = HTML_TOOL.parseContent(HtmlToolTest.getResourceAsString(page));
+
+			// Each select is a traversal of the document (or of a heading)
+			long selects = selectors.getHitCount() + selectors.getMissCount();
+			fixSequentially(body.clone());
+			long sequentialTraversals = selectors.getHitCount() + selectors.getMissCount() - selects;
+			selects = selectors.getHitCount() + selectors.getMissCount();
+			HTML_TOOL.normalize(body.clone());
+			long normalizeTraversals = 1 + selectors.getHitCount() + selectors.getMissCount() - selects;
+
+			double sequential = measure(() -> fixSequentially(body.clone()).tagName());
+			double normalize = measure(() -> HTML_TOOL.normalize(body.clone()).tagName());
+			LOG
+					.info(
+							String
+									.format(
+											"Page %s: %d traversals, %.3f ms with the separate methods; %d traversals, %.3f ms with normalize()",
+											page,
+											sequentialTraversals,
+											sequential,
+											normalizeTraversals,
+											normalize));
+		}
+	}
+
+	/**
+	 * Applies the fixes of {@link HtmlTool#normalize(Element)} with the separate methods
+	 *
+	 * @param body HTML content to modify
+	 * @return the modified HTML content
+	 */
+	private static Element fixSequentially(final Element body) {
+		HTML_TOOL.headingAnchorToId(body);
+		HTML_TOOL.ensureHeadingIds(body);
+		HTML_TOOL.fixIds(body);
+		HTML_TOOL.fixTableHeads(body);
+		return HTML_TOOL.fixProtocolRelativeUrls(body);
+	}
+
+}
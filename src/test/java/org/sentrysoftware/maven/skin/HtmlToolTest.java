@@ -25,10 +25,13 @@ import static org.junit.jupiter.api.Assertions.*;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
 
+import org.jsoup.Jsoup;
 import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
 
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -70,6 +73,18 @@ class HtmlToolTest {
 		assertTrue(result.contains("<ul>Test</ul></div>"));
 	}
 
+	@Test
+	void testSelectorsParsedOnce() {
+		SelectorCache cache = HtmlTool.getSelectorCache();
+		HTML_TOOL.setAttr(HTML_ELEMENT.clone(), "div.selector-cache-test", "title", "1");
+		long hits = cache.getHitCount();
+		long misses = cache.getMissCount();
+		Element result = HTML_TOOL.setAttr(HTML_TOOL.parseContent("<div class='selector-cache-test'></div>"), "div.selector-cache-test", "title", "2");
+		assertEquals("2", result.selectFirst("div").attr("title"));
+		assertTrue(cache.getHitCount() > hits);
+		assertEquals(misses, cache.getMissCount());
+	}
+
 	@Test
 	void testPrepend() {
 		String result = trimWhites(HTML_TOOL.prepend(HTML_ELEMENT.clone(), "div.my-class", "<ol>Test</ol>", 1));
@@ -163,6 +178,77 @@ class HtmlToolTest {
 		assertEquals("<table><thead><tr><th>head</th></tr></thead><tbody><tr><td>body</td></tr></tbody></table>", result);
 	}
 
+	@Test
+	void testNormalize() {
+		List<Element> documents = new ArrayList<>();
+		documents.add(HTML_ELEMENT);
+		documents.add(AGENT_HTML_ELEMENT);
+		documents.add(GENERAL_HTML_ELEMENT);
+		documents
+				.add(
+						HTML_TOOL
+								.parseContent(
+										"<h1><a name=\"inner\">Inner</a> heading</h1>" +
+												"<a name=\"before\"></a><h2>Before</h2>" +
+												"<h3>After</h3><a name=\"after\"></a><a name=\"not-after\"></a>" +
+												"<h2 id=\"has:id\">Has ID</h2><a name=\"ignored\"></a>" +
+												"<h4><a name=\"\">Empty</a><a name=\"second\">Second</a></h4>" +
+												"<h5>Anchor with ID</h5><a name=\"named\" id=\"anchor:id\"></a>" +
+												"<h2>Same</h2><h2>Same</h2><div id=\"same\"></div><h3>Same</h3><h6 id=\"\">Empty ID</h6>" +
+												"<h2>A very long heading that is truncated to fifty characters - after a dash</h2>" +
+												"<div id=\"a:b.c\"></div><a href=\"#a:b.c\">Link</a><a href=\"#\">Top</a>" +
+												"<table><tbody><tr><th>H1</th></tr><tr><td>V</td></tr><tr><th>H2</th></tr></tbody></table>" +
+												"<table><tbody><tr><td><table><tbody><tr><th>Nested</th></tr></tbody></table></td></tr></tbody></table>" +
+												"<table><tr><th>No tbody</th></tr></table>" +
+												"<a href=\"//example.com/\">Link</a><img href=\"//example.com/img\"><a href=\"https://example.com/\">Link</a>"));
+
+		// Nesting that the HTML parser wouldn't allow, but that templates could produce
+		Element nested = Jsoup
+				.parse(
+						"<div><h1><a name=\"wrap\"><h2>Inner <a name=\"deep\"></a></h2><span id=\"gone:id\"></span></a></h1>" +
+								"<h3><h4><a name=\"shared\"></a></h4><a name=\"next\"></a></h3>" +
+								"<a href=\"//example.com/\"></a></div>",
+						"",
+						Parser.xmlParser())
+				.child(0);
+		documents.add(nested);
+		documents.add(HTML_TOOL.parseContent("<h1>Root heading <a name=\"root\"></a></h1>").child(0));
+
+		for (Element document : documents) {
+			for (int flags = 0; flags <= HtmlTool.NORMALIZE_ALL; flags++) {
+				Element expected = document.clone();
+				if ((flags & HtmlTool.HEADING_ANCHOR_TO_ID) != 0) {
+					HTML_TOOL.headingAnchorToId(expected);
+				}
+				if ((flags & HtmlTool.ENSURE_HEADING_IDS) != 0) {
+					HTML_TOOL.ensureHeadingIds(expected);
+				}
+				if ((flags & HtmlTool.FIX_IDS) != 0) {
+					HTML_TOOL.fixIds(expected);
+				}
+				if ((flags & HtmlTool.FIX_TABLE_HEADS) != 0) {
+					HTML_TOOL.fixTableHeads(expected);
+				}
+				if ((flags & HtmlTool.FIX_PROTOCOL_RELATIVE_URLS) != 0) {
+					HTML_TOOL.fixProtocolRelativeUrls(expected);
+				}
+
+				Element actual = document.clone();
+				assertSame(actual, HTML_TOOL.normalize(actual, flags));
+				assertEquals(expected.outerHtml(), actual.outerHtml(), "flags " + flags);
+			}
+		}
+
+		// The fixes are actually applied
+		String result = trimWhites(HTML_TOOL.normalize(documents.get(3).clone()));
+		assertTrue(result.contains("<h1id=\"inner\">heading</h1>"), result);
+		assertTrue(result.contains("<h2id=\"before\">Before</h2><h3id=\"after\">After</h3><aname=\"not-after\"></a>"), result);
+		assertTrue(result.contains("<h3id=\"same-2\">Same</h3>"), result);
+		assertTrue(result.contains("<divid=\"a-b-c\"></div><ahref=\"#a-b-c\">Link</a>"), result);
+		assertTrue(result.contains("<table><thead><tr><th>H2</th></tr></thead><thead><tr><th>H1</th></tr></thead>"), result);
+		assertTrue(result.contains("<ahref=\"https://example.com/\">Link</a><imghref=\"https://example.com/img\">"), result);
+	}
+
 	@Test
 	void testRemove() {
 		String result = trimWhites(HTML_TOOL.remove(AGENT_HTML_ELEMENT.clone(), "ul#toc"));
@@ -0,0 +1,116 @@
+package org.sentrysoftware.maven.skin;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Sentry Maven Skin Tools
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2017 - 2026 Sentry Software
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.LoggerFactory;
+
+class ImageDerivativeCacheTest {
+
+	@Test
+	void testKey(@TempDir final Path tempDir) throws Exception {
+		File image = tempDir.resolve("image.png").toFile();
+		ImageIO.write(new BufferedImage(30, 20, BufferedImage.TYPE_INT_RGB), "png", image);
+		File copy = tempDir.resolve("copy.png").toFile();
+		Files.copy(image.toPath(), copy.toPath());
+
+		String key = ImageDerivativeCache.key(image, "thumbnail 1 png 10x0");
+		assertTrue(key.matches("[0-9a-f]{64}"));
+
+		// Same content and parameters, same key, wherever the file is
+		assertEquals(key, ImageDerivativeCache.key(copy, "thumbnail 1 png 10x0"));
+
+		// Different parameters
+		assertNotEquals(key, ImageDerivativeCache.key(image, "thumbnail 1 png 20x0"));
+
+		// Different content
+		ImageIO.write(new BufferedImage(31, 20, BufferedImage.TYPE_INT_RGB), "png", copy);
+		assertNotEquals(key, ImageDerivativeCache.key(copy, "thumbnail 1 png 10x0"));
+	}
+
+	@Test
+	void testStoreAndRestore(@TempDir final Path tempDir) throws Exception {
+		ImageDerivativeCache cache = new ImageDerivativeCache(tempDir.resolve("cache"), LoggerFactory.getLogger(getClass()));
+		File derived = tempDir.resolve("derived.webp").toFile();
+		String key = "0123456789abcdef";
+
+		// Nothing to restore, nothing to store
+		assertFalse(cache.restore(key, derived));
+		assertFalse(derived.exists());
+		assertFalse(cache.store(key, derived));
+
+		// Stored under <key[0..2]>/<key>.<extension>
+		Files.writeString(derived.toPath(), "derived");
+		assertTrue(cache.store(key, derived));
+		Path cachedPath = tempDir.resolve("cache/01/0123456789abcdef.webp");
+		assertEquals(cachedPath, cache.getPath(key, "webp"));
+		assertEquals("derived", Files.readString(cachedPath));
+		try (Stream<Path> files = Files.list(cachedPath.getParent())) {
+			assertEquals(1, files.count());
+		}
+
+		// Restored
+		Files.delete(derived.toPath());
+		assertTrue(cache.restore(key, derived));
+		assertEquals("derived", Files.readString(derived.toPath()));
+
+		// The cache directory cannot be created: not stored, but no error
+		Path notADirectory = tempDir.resolve("file");
+		Files.writeString(notADirectory, "");
+		assertFalse(new ImageDerivativeCache(notADirectory, LoggerFactory.getLogger(getClass())).store(key, derived));
+	}
+
+	@Test
+	void testCreateThumbnail(@TempDir final Path tempDir) throws Exception {
+		ImageDerivativeCache cache = new ImageDerivativeCache(tempDir.resolve("cache"), LoggerFactory.getLogger(getClass()));
+		File image = tempDir.resolve("image.png").toFile();
+		ImageIO.write(new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB), "png", image);
+
+		// First build: encoded, and stored in the cache
+		File thumbnail = ImageTool.createThumbnail(image, "-thumbnail", 30, 0, cache);
+		assertEquals(30, ImageIO.read(thumbnail).getWidth());
+		Path cachedPath = cache.getPath(ImageDerivativeCache.key(image, "thumbnail " + ImageTool.THUMBNAIL_ENCODING_VERSION + " png 30x0"), "jpg");
+		assertArrayEquals(Files.readAllBytes(thumbnail.toPath()), Files.readAllBytes(cachedPath));
+
+		// After a clean build, restored from the cache instead of being encoded again
+		Files.delete(thumbnail.toPath());
+		Files.writeString(cachedPath, "cached");
+		assertEquals(thumbnail, ImageTool.createThumbnail(image, "-thumbnail", 30, 0, cache));
+		assertEquals("cached", Files.readString(thumbnail.toPath()));
+		assertTrue(thumbnail.lastModified() >= image.lastModified());
+
+		// Other parameters
+		Files.delete(thumbnail.toPath());
+		assertEquals(20, ImageIO.read(ImageTool.createThumbnail(image, "-thumbnail", 0, 20, cache)).getHeight());
+	}
+
+}
@@ -0,0 +1,113 @@
+package org.sentrysoftware.maven.skin;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Sentry Maven Skin Tools
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2017 - 2026 Sentry Software
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ImageEncodingPoolTest {
+
+	@Test
+	void testSubmit(@TempDir final Path tempDir) throws Exception {
+		ImageEncodingPool pool = new ImageEncodingPool(2, "test");
+		File destination = tempDir.resolve("image.webp").toFile();
+		AtomicInteger runs = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+
+		// Same destination: encoded only once
+		Future<File> job = pool.submit(destination, () -> {
+			runs.incrementAndGet();
+			release.await();
+			Files.writeString(destination.toPath(), "webp");
+			return destination;
+		});
+		assertSame(job, pool.submit(new File(tempDir.toFile(), "sub/../image.webp"), () -> {
+			runs.incrementAndGet();
+			return destination;
+		}));
+		Future<File> other = pool.submit(tempDir.resolve("other.webp").toFile(), () -> null);
+		assertNotSame(job, other);
+
+		release.countDown();
+		ImageEncodingPool.await(Arrays.asList(job, job, other));
+		assertEquals(1, runs.get());
+		assertTrue(job.isDone());
+		assertEquals("webp", Files.readString(destination.toPath()));
+
+		// Once completed, a new job can be submitted for the same destination
+		Future<File> again;
+		do {
+			again = pool.submit(destination, () -> {
+				runs.incrementAndGet();
+				return destination;
+			});
+		} while (again == job);
+		ImageEncodingPool.await(Collections.singletonList(again));
+		assertEquals(2, runs.get());
+	}
+
+	@Test
+	void testAwaitErrors(@TempDir final Path tempDir) throws Exception {
+		ImageEncodingPool pool = new ImageEncodingPool(2, "test");
+		AtomicInteger completed = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		List<Future<File>> jobs = new ArrayList<>();
+		jobs.add(pool.submit(tempDir.resolve("1.webp").toFile(), () -> {
+			release.await();
+			throw new IOException("Cannot read 1.png");
+		}));
+		jobs.add(pool.submit(tempDir.resolve("2.webp").toFile(), () -> {
+			throw new IllegalArgumentException("Corrupted 2.png");
+		}));
+		jobs.add(pool.submit(tempDir.resolve("3.webp").toFile(), () -> {
+			completed.incrementAndGet();
+			return null;
+		}));
+		release.countDown();
+
+		// All the jobs complete, and the first error is thrown with the others
+		IOException e = assertThrows(IOException.class, () -> ImageEncodingPool.await(jobs));
+		assertEquals(1, completed.get());
+		assertEquals("Cannot read 1.png", e.getMessage());
+		assertEquals(1, e.getSuppressed().length);
+		assertTrue(e.getSuppressed()[0].getMessage().contains("2.webp"), e.getSuppressed()[0].getMessage());
+		assertEquals("Corrupted 2.png", e.getSuppressed()[0].getCause().getCause().getMessage());
+
+		// The same failure reported again
+		IOException again = assertThrows(IOException.class, () -> ImageEncodingPool.await(jobs.subList(0, 1)));
+		assertEquals(0, again.getSuppressed().length);
+	}
+
+}
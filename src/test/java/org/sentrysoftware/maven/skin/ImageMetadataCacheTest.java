@@ -0,0 +1,135 @@
+package org.sentrysoftware.maven.skin;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Sentry Maven Skin Tools
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2017 - 2026 Sentry Software
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ImageMetadataCacheTest {
+
+	@Test
+	void testGet(@TempDir final Path tempDir) throws Exception {
+		ImageMetadataCache cache = new ImageMetadataCache(10);
+		Path imagePath = tempDir.resolve("image.png");
+		ImageIO.write(new BufferedImage(30, 20, BufferedImage.TYPE_INT_RGB), "png", imagePath.toFile());
+
+		// Missing files and directories
+		assertNull(cache.get(tempDir.resolve("missing.png")));
+		assertNull(cache.get(tempDir));
+
+		// Same metadata as long as the file doesn't change
+		ImageMetadataCache.ImageMetadata metadata = cache.get(imagePath);
+		assertNotNull(metadata);
+		assertSame(metadata, cache.get(tempDir.resolve("sub/../image.png")));
+		assertEquals(imagePath.toRealPath(), metadata.getRealPath());
+		assertEquals(new Dimension(30, 20), metadata.getDimensions());
+		assertEquals(1, cache.size());
+
+		// A new version of the file
+		ImageIO.write(new BufferedImage(60, 40, BufferedImage.TYPE_INT_RGB), "png", imagePath.toFile());
+		Files.setLastModifiedTime(imagePath, FileTime.fromMillis(System.currentTimeMillis() + 10000));
+		ImageMetadataCache.ImageMetadata newMetadata = cache.get(imagePath);
+		assertNotSame(metadata, newMetadata);
+		assertEquals(new Dimension(60, 40), newMetadata.getDimensions());
+		assertEquals(1, cache.size());
+
+		// Not an image
+		Path textPath = tempDir.resolve("text.png");
+		Files.writeString(textPath, "Not an image");
+		assertNull(cache.get(textPath).getDimensions());
+
+		// Removed files
+		Files.delete(imagePath);
+		assertNull(cache.get(imagePath));
+		assertEquals(1, cache.size());
+
+		cache.clear();
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	void testGetDerivedFile(@TempDir final Path tempDir) throws Exception {
+		ImageMetadataCache cache = new ImageMetadataCache(10);
+		Path imagePath = tempDir.resolve("image.png");
+		Files.writeString(imagePath, "Image");
+		Path derivedPath = tempDir.resolve("image.webp");
+		AtomicInteger creations = new AtomicInteger();
+		ImageMetadataCache.DerivedFileFactory factory = source -> {
+			creations.incrementAndGet();
+			Files.writeString(derivedPath, "Derived");
+			return derivedPath.toFile();
+		};
+
+		// Created once
+		ImageMetadataCache.ImageMetadata metadata = cache.get(imagePath);
+		File derivedFile = metadata.getDerivedFile("webp", factory);
+		assertEquals(derivedPath.toFile(), derivedFile);
+		assertEquals(derivedFile, cache.get(imagePath).getDerivedFile("webp", factory));
+		assertEquals(1, creations.get());
+
+		// Created again if deleted, or with other options
+		Files.delete(derivedPath);
+		assertEquals(derivedFile, metadata.getDerivedFile("webp", factory));
+		assertEquals(2, creations.get());
+		metadata.getDerivedFile("thumbnail 100x0", factory);
+		assertEquals(3, creations.get());
+
+		// No derived file
+		AtomicInteger noFileCreations = new AtomicInteger();
+		assertNull(metadata.getDerivedFile("none", source -> {
+			noFileCreations.incrementAndGet();
+			return null;
+		}));
+		assertNull(metadata.getDerivedFile("none", source -> {
+			noFileCreations.incrementAndGet();
+			return null;
+		}));
+		assertEquals(1, noFileCreations.get());
+	}
+
+	@Test
+	void testMaximumSize(@TempDir final Path tempDir) throws Exception {
+		ImageMetadataCache cache = new ImageMetadataCache(3);
+		for (int i = 0; i < 10; i++) {
+			Path imagePath = tempDir.resolve("image" + i + ".png");
+			Files.writeString(imagePath, "Image " + i);
+			assertNotNull(cache.get(imagePath));
+			assertTrue(cache.size() <= 3);
+		}
+
+		// The latest image is always kept
+		Path latest = tempDir.resolve("image9.png");
+		assertSame(cache.get(latest), cache.get(latest));
+	}
+
+}
@@ -0,0 +1,247 @@
+package org.sentrysoftware.maven.skin;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Sentry Maven Skin Tools
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2017 - 2026 Sentry Software
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import static org.sentrysoftware.maven.skin.HtmlToMarkdownConverterBenchmarkTest.measure;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.imageio.ImageIO;
+
+import org.jsoup.Jsoup;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Benchmarks of {@link ImageTool}, which only run with {@code -Dbenchmark=true}, e.g.
+ * {@code mvn test -Dtest=ImageToolBenchmarkTest -Dbenchmark=true}.
+ * <p>
+ * The results are logged at the INFO level.
+ * </p>
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ImageToolBenchmarkTest {
+
+	/**
+	 * Where the results are reported
+	 */
+	private static final Logger LOG = LoggerFactory.getLogger(ImageToolBenchmarkTest.class);
+
+	@Test
+	void benchmarkExplicitImageSize(@TempDir final Path tempDir) throws IOException {
+
+		// Pages that reference the same test images
+		StringBuilder html = new StringBuilder();
+		for (String imageTestName : new String[] { "eiffel.jpg", "api.gif", "homer.png" }) {
+			Files.copy(ImageToolBenchmarkTest.class.getResourceAsStream("/" + imageTestName), tempDir.resolve(imageTestName));
+			html.append("<img src=\"").append(imageTestName).append("\">");
+		}
+		ImageTool imageTool = new ImageTool();
+		ImageMetadataCache images = ImageTool.getImageCache();
+
+		double probed = measure(() -> {
+			images.clear();
+			return explicitImageSize(imageTool, html.toString(), tempDir);
+		});
+		double cached = measure(() -> explicitImageSize(imageTool, html.toString(), tempDir));
+		LOG.info(String.format("Page with 3 images: %.3f ms when probing the images, %.3f ms with the cache", probed, cached));
+	}
+
+	/**
+	 * Sets the size of the images of the specified HTML page
+	 *
+	 * @param imageTool Tool to benchmark
+	 * @param html Page that references images in the specified directory
+	 * @param directory Root directory of the site
+	 * @return the updated page
+	 */
+	private static String explicitImageSize(final ImageTool imageTool, final String html, final Path directory) {
+		try {
+			return imageTool.explicitImageSize(Jsoup.parseBodyFragment(html).body(), "img", directory.toString(), "index.html").html();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Test
+	void benchmarkConvertImagesToThumbnails(@TempDir final Path tempDir) throws IOException {
+
+		// A page with 16 screenshots in full HD
+		StringBuilder html = new StringBuilder();
+		for (int i = 0; i < 16; i++) {
+			BufferedImage screenshot = new BufferedImage(1920, 1080, BufferedImage.TYPE_INT_RGB);
+			for (int y = 0; y < screenshot.getHeight(); y++) {
+				for (int x = 0; x < screenshot.getWidth(); x++) {
+					screenshot.setRGB(x, y, (x / 32 * 0x10101 + y / 32 * 0x30201 + i) & 0xffffff);
+				}
+			}
+			ImageIO.write(screenshot, "png", tempDir.resolve("screenshot" + i + ".png").toFile());
+			html.append("<img src=\"screenshot").append(i).append(".png\">");
+		}
+		ImageTool imageTool = new ImageTool();
+
+		double sequential = measure(() -> {
+			try {
+				StringBuilder thumbnails = new StringBuilder();
+				for (int i = 0; i < 16; i++) {
+					File thumbnail = ImageTool.createThumbnail(tempDir.resolve("screenshot" + i + ".png").toFile(), "-thumbnail", 200, 0);
+					thumbnails.append(thumbnail.getName());
+					Files.delete(thumbnail.toPath());
+				}
+				return thumbnails.toString();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		double pooled = measure(() -> {
+			try {
+				String result = imageTool
+						.convertImagesToThumbnails(
+								Jsoup.parseBodyFragment(html.toString()).body(),
+								"img",
+								tempDir.toString(),
+								"index.html",
+								200,
+								0,
+								"<a href=\"%thumbSrc%\"></a>")
+						.html();
+				for (int i = 0; i < 16; i++) {
+					Files.delete(tempDir.resolve("screenshot" + i + "-thumbnail.jpg"));
+				}
+				return result;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		LOG
+				.info(
+						String
+								.format(
+										"Page with 16 screenshots: %.3f ms one thumbnail after another, %.3f ms in the encoding pool (%d processors)",
+										sequential,
+										pooled,
+										Runtime.getRuntime().availableProcessors()));
+	}
+
+	@Test
+	void benchmarkDownscale(@TempDir final Path tempDir) throws IOException {
+
+		// A screenshot in 4K, stored as PNG
+		BufferedImage screenshot = new BufferedImage(3840, 2160, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < screenshot.getHeight(); y++) {
+			for (int x = 0; x < screenshot.getWidth(); x++) {
+				screenshot.setRGB(x, y, (x / 64 * 0x10101 + y / 64 * 0x30201 + (x + y) % 2 * 0x7f7f7f) & 0xffffff);
+			}
+		}
+		File pngFile = tempDir.resolve("screenshot.png").toFile();
+		ImageIO.write(screenshot, "png", pngFile);
+		BufferedImage sourceImage = ImageIO.read(pngFile);
+
+		double legacy = measure(() -> String.valueOf(scaleSmooth(sourceImage, 400, 225).getWidth()));
+		double progressive = measure(() -> String.valueOf(ImageTool.downscale(sourceImage, 400, 225).getWidth()));
+
+		// Mean difference of the color components between the 2 thumbnails
+		BufferedImage expected = scaleSmooth(sourceImage, 400, 225);
+		BufferedImage actual = ImageTool.downscale(sourceImage, 400, 225);
+		long difference = 0;
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				int e = expected.getRGB(x, y);
+				int a = actual.getRGB(x, y);
+				for (int shift = 0; shift < 24; shift += 8) {
+					difference += Math.abs((e >> shift & 0xff) - (a >> shift & 0xff));
+				}
+			}
+		}
+		LOG
+				.info(
+						String
+								.format(
+										"4K PNG to 400x225: %.3f ms with getScaledInstance(), %.3f ms with downscale() (mean difference: %.2f/255)",
+										legacy,
+										progressive,
+										difference / (400.0 * 225 * 3)));
+	}
+
+	/**
+	 * Scales an image like createThumbnail() did before downscale()
+	 *
+	 * @param sourceImage Image to scale
+	 * @param width Width of the resulting image
+	 * @param height Height of the resulting image
+	 * @return the scaled image
+	 */
+	private static BufferedImage scaleSmooth(final BufferedImage sourceImage, final int width, final int height) {
+		Image resultingImage = sourceImage.getScaledInstance(width, height, Image.SCALE_SMOOTH);
+		BufferedImage outputImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		outputImage.getGraphics().drawImage(resultingImage, 0, 0, null);
+		return outputImage;
+	}
+
+	@Test
+	void benchmarkReadImageSize(@TempDir final Path tempDir) throws IOException {
+
+		// The test images, and a screenshot in 4K
+		for (String imageTestName : new String[] { "eiffel.jpg", "api.gif", "homer.png", "beatles.webp" }) {
+			Files.copy(ImageToolBenchmarkTest.class.getResourceAsStream("/" + imageTestName), tempDir.resolve(imageTestName));
+		}
+		BufferedImage screenshot = new BufferedImage(3840, 2160, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < screenshot.getHeight(); y++) {
+			for (int x = 0; x < screenshot.getWidth(); x++) {
+				screenshot.setRGB(x, y, (x / 64 * 0x10101 + y / 64 * 0x30201) & 0xffffff);
+			}
+		}
+		ImageIO.write(screenshot, "png", tempDir.resolve("screenshot.png").toFile());
+
+		for (String imageName : new String[] { "eiffel.jpg", "api.gif", "homer.png", "beatles.webp", "screenshot.png" }) {
+			File imageFile = tempDir.resolve(imageName).toFile();
+			if (ImageTool.readImageSize(imageFile) == null) {
+				LOG.info("Image {}: format not supported", imageName);
+				continue;
+			}
+			double decode = measure(() -> {
+				try {
+					return String.valueOf(ImageIO.read(imageFile).getWidth());
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			double header = measure(() -> {
+				try {
+					return String.valueOf(ImageTool.readImageSize(imageFile).width);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			LOG.info(String.format("Image %s: %.3f ms with ImageIO.read(), %.3f ms with readImageSize()", imageName, decode, header));
+		}
+	}
+
+}
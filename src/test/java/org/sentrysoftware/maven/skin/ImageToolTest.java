@@ -22,17 +22,23 @@ package org.sentrysoftware.maven.skin;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import javax.imageio.ImageIO;
 
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 class ImageToolTest {
 
@@ -67,6 +73,163 @@ class ImageToolTest {
 				"File with no name (.ext) must return empty string");
 	}
 
+	@Test
+	void testReadImageSize(@TempDir final Path tempDir) throws Exception {
+
+		List<String> imageTestList = Arrays.asList("eiffel.jpg", "api.gif", "homer.png", "beatles.webp");
+
+		for (String imageTestName : imageTestList) {
+			Path imagePath = tempDir.resolve(imageTestName);
+			Files.copy(ImageToolTest.class.getResourceAsStream("/" + imageTestName), imagePath);
+
+			// Same size as the decoded image
+			BufferedImage image = ImageIO.read(imagePath.toFile());
+			Dimension expected = image == null ? null : new Dimension(image.getWidth(), image.getHeight());
+			assertEquals(expected, ImageTool.readImageSize(imagePath.toFile()), imageTestName);
+		}
+
+		// Not an image
+		Path textPath = tempDir.resolve("image.png");
+		Files.writeString(textPath, "Not an image");
+		assertNull(ImageTool.readImageSize(textPath.toFile()));
+
+		assertThrows(IOException.class, () -> ImageTool.readImageSize(tempDir.resolve("missing.png").toFile()));
+	}
+
+	@Test
+	void testExplicitImageSize(@TempDir final Path tempDir) throws Exception {
+		Files.createDirectories(tempDir.resolve("images"));
+		Files.copy(ImageToolTest.class.getResourceAsStream("/homer.png"), tempDir.resolve("images/homer.png"));
+		BufferedImage image = ImageIO.read(tempDir.resolve("images/homer.png").toFile());
+
+		Element body = Jsoup
+				.parseBodyFragment(
+						"<img src=\"images/homer.png\" style=\"border: 0;\">" +
+								"<img src=\"images/homer.png\" width=\"10\">" +
+								"<img src=\"https://example.com/image.png\">")
+				.body();
+		new ImageTool().explicitImageSize(body, "img", tempDir.toString(), "index.html");
+
+		Element first = body.child(0);
+		assertEquals(String.valueOf(image.getWidth()), first.attr("width"));
+		assertEquals(String.valueOf(image.getHeight()), first.attr("height"));
+		assertEquals(
+				"width: " + image.getWidth() + "px; height: " + image.getHeight() + "px;border: 0;",
+				first.attr("style"));
+		assertFalse(body.child(1).hasAttr("height"), "Images with a size must be left alone");
+		assertFalse(body.child(2).hasAttr("width"), "External images must be left alone");
+	}
+
+	@Test
+	void testCheckImageLinks(@TempDir final Path tempDir) throws Exception {
+		Files.createDirectories(tempDir.resolve("images"));
+		Files.copy(ImageToolTest.class.getResourceAsStream("/homer.png"), tempDir.resolve("images/homer.png"));
+		ImageTool imageTool = new ImageTool();
+
+		// Same image from pages in different directories
+		Element body = Jsoup.parseBodyFragment("<img src=\"images/homer.png\"><img src=\"//example.com/image.png\">").body();
+		assertSame(body, imageTool.checkImageLinks(body, tempDir.toString(), "index.html"));
+		Files.createDirectories(tempDir.resolve("sub"));
+		body = Jsoup.parseBodyFragment("<img src=\"../images/homer.png\">").body();
+		assertSame(body, imageTool.checkImageLinks(body, tempDir.toString(), "sub/page.html"));
+
+		// Missing image
+		Element missing = Jsoup.parseBodyFragment("<img src=\"images/homer.png\"><img src=\"images/\">").body();
+		IOException e = assertThrows(IOException.class, () -> imageTool.checkImageLinks(missing, tempDir.toString(), "index.html"));
+		assertTrue(e.getMessage().contains("Referenced image images/ in index.html doesn't exist"), e.getMessage());
+	}
+
+	@Test
+	void testConvertImagesToThumbnails(@TempDir final Path tempDir) throws Exception {
+		Files.createDirectories(tempDir.resolve("images"));
+		for (String imageTestName : new String[] { "eiffel.jpg", "homer.png" }) {
+			Files.copy(ImageToolTest.class.getResourceAsStream("/" + imageTestName), tempDir.resolve("images/" + imageTestName));
+		}
+		ImageTool imageTool = new ImageTool();
+
+		// The thumbnails are written before the page is returned
+		Element body = Jsoup.parseBodyFragment("<img src=\"images/eiffel.jpg\"><img src=\"images/homer.png\">").body();
+		imageTool
+				.convertImagesToThumbnails(
+						body,
+						"img",
+						tempDir.toString(),
+						"index.html",
+						MAX_SIZE,
+						0,
+						"<a href=\"%thumbSrc%\" data-size=\"%thumbWidth%x%thumbHeight%\"></a>");
+
+		// With the actual size of the thumbnails
+		for (Element link : body.select("a")) {
+			BufferedImage thumbnail = ImageIO.read(tempDir.resolve(link.attr("href")).toFile());
+			assertEquals(thumbnail.getWidth() + "x" + thumbnail.getHeight(), link.attr("data-size"));
+			assertEquals(MAX_SIZE, thumbnail.getWidth());
+		}
+		assertEquals(2, body.select("a").size());
+
+		// Same thumbnail file with other maximum dimensions: its actual size is used
+		Element other = Jsoup.parseBodyFragment("<img src=\"../images/homer.png\">").body();
+		imageTool
+				.convertImagesToThumbnails(
+						other,
+						"img",
+						tempDir.toString(),
+						"sub/page.html",
+						MAX_SIZE / 2,
+						0,
+						"<a href=\"%thumbSrc%\" data-size=\"%thumbWidth%x%thumbHeight%\"></a>");
+		Element link = other.selectFirst("a");
+		assertEquals("../images/homer-thumbnail.jpg", link.attr("href"));
+		BufferedImage thumbnail = ImageIO.read(tempDir.resolve("images/homer-thumbnail.jpg").toFile());
+		assertEquals(thumbnail.getWidth() + "x" + thumbnail.getHeight(), link.attr("data-size"));
+
+		// Unsupported image
+		Files.writeString(tempDir.resolve("images/text.png"), "Not an image");
+		Element unsupported = Jsoup.parseBodyFragment("<img src=\"images/text.png\">").body();
+		assertThrows(
+				IOException.class,
+				() -> imageTool.convertImagesToThumbnails(unsupported, "img", tempDir.toString(), "index.html", MAX_SIZE, 0, "<a></a>"));
+	}
+
+	@Test
+	void testDownscale() {
+
+		// Thin white lines on black (1 column in 5) must become dark gray, not black or white
+		// (a single bilinear step would only sample some of the columns)
+		BufferedImage lines = new BufferedImage(1000, 600, BufferedImage.TYPE_BYTE_GRAY);
+		for (int y = 0; y < lines.getHeight(); y++) {
+			for (int x = 0; x < lines.getWidth(); x++) {
+				lines.setRGB(x, y, x % 5 == 0 ? 0xffffff : 0);
+			}
+		}
+		BufferedImage thumbnail = ImageTool.downscale(lines, 100, 60);
+		assertEquals(BufferedImage.TYPE_INT_RGB, thumbnail.getType());
+		assertEquals(100, thumbnail.getWidth());
+		assertEquals(60, thumbnail.getHeight());
+		for (int y = 0; y < thumbnail.getHeight(); y++) {
+			for (int x = 0; x < thumbnail.getWidth(); x++) {
+				int blue = thumbnail.getRGB(x, y) & 0xff;
+				assertTrue(blue > 30 && blue < 75, "Pixel " + x + "," + y + " must be dark gray: " + blue);
+			}
+		}
+
+		// Same size: converted to RGB only, transparent pixels are black
+		BufferedImage transparent = new BufferedImage(30, 20, BufferedImage.TYPE_INT_ARGB);
+		transparent.setRGB(1, 1, 0xff123456);
+		BufferedImage copy = ImageTool.downscale(transparent, 30, 20);
+		assertEquals(0x123456, copy.getRGB(1, 1) & 0xffffff);
+		assertEquals(0, copy.getRGB(0, 0) & 0xffffff);
+	}
+
+	@Test
+	void testGetThumbnailSize() {
+		assertEquals(new Dimension(100, 50), ImageTool.getThumbnailSize(new Dimension(400, 200), 100, 0));
+		assertEquals(new Dimension(200, 100), ImageTool.getThumbnailSize(new Dimension(400, 200), 0, 100));
+		assertEquals(new Dimension(100, 50), ImageTool.getThumbnailSize(new Dimension(400, 200), 100, 100));
+		assertEquals(new Dimension(400, 200), ImageTool.getThumbnailSize(new Dimension(400, 200), 0, 0));
+		assertEquals(new Dimension(40, 20), ImageTool.getThumbnailSize(new Dimension(40, 20), 100, 100));
+	}
+
 	@Test
 	void testCreateThumbnailMaxHeight() throws Exception {
 
@@ -171,6 +334,18 @@ class ImageToolTest {
 
 	}
 
+	@Test
+	void testConfigure(@TempDir final Path tempDir) {
+		ImageTool imageTool = new ImageTool();
+		assertNull(imageTool.getDerivativeCache());
+
+		imageTool.configure(Collections.singletonMap(ImageTool.DERIVATIVE_CACHE_DIRECTORY_KEY, tempDir.toString()));
+		assertEquals(tempDir.toAbsolutePath(), imageTool.getDerivativeCache().getDirectory());
+
+		imageTool.configure(Collections.singletonMap(ImageTool.DERIVATIVE_CACHE_DIRECTORY_KEY, " "));
+		assertNull(imageTool.getDerivativeCache());
+	}
+
 	@Test
 	void testIsAbsoluteUrl() {
 		assertTrue(ImageTool.isAbsoluteUrl("http://test"));
@@ -0,0 +1,121 @@
+package org.sentrysoftware.maven.skin;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Sentry Maven Skin Tools
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2017 - 2026 Sentry Software
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class IndexManifestTest {
+
+	@Test
+	void testHash() {
+		String hash = IndexManifest.hash("Title", "keywords", "Body");
+		assertEquals(64, hash.length());
+		assertEquals(hash, IndexManifest.hash("Title", "keywords", "Body"));
+		assertNotEquals(hash, IndexManifest.hash("Title", "keywords", "Body!"));
+		assertNotEquals(IndexManifest.hash("ab", "", "c"), IndexManifest.hash("a", "b", "c"));
+		assertNotEquals(IndexManifest.hash(null, "", ""), IndexManifest.hash("", "", ""));
+	}
+
+	@Test
+	void testLoadUpdateWrite(@TempDir final Path tempDir) throws Exception {
+
+		Path indexPath = tempDir.resolve("index.json");
+		String hash1 = IndexManifest.hash("One", "one", "First page");
+		String hash2 = IndexManifest.hash("Two", "two", "Second page");
+
+		// Nothing to load yet
+		IndexManifest manifest = IndexManifest.load(indexPath);
+		assertTrue(manifest.update("one.html", hash1), "New documents must be indexed");
+		assertTrue(manifest.update("two with spaces.html", hash2), "New documents must be indexed");
+		assertFalse(manifest.update("one.html", hash1), "Unchanged documents must be skipped");
+		assertTrue(manifest.update("line\nbreak.html", hash1), "IDs that cannot be stored are always indexed");
+
+		// The manifest is ignored if there is no index file
+		manifest.write(indexPath);
+		assertTrue(IndexManifest.load(indexPath).update("one.html", hash1));
+
+		// Next build
+		Files.write(indexPath, "{}".getBytes("UTF-8"));
+		IndexManifest nextManifest = IndexManifest.load(indexPath);
+		assertFalse(nextManifest.update("two with spaces.html", hash2), "Unchanged documents must be skipped");
+		assertTrue(nextManifest.update("one.html", hash2), "Modified documents must be indexed");
+		assertEquals(Collections.emptyList(), nextManifest.removeUnseen());
+
+		IndexManifest lastManifest = IndexManifest.load(indexPath);
+		assertFalse(lastManifest.update("one.html", hash1));
+		assertEquals(Collections.singletonList("two with spaces.html"), lastManifest.removeUnseen());
+	}
+
+	@Test
+	void testSettings(@TempDir final Path tempDir) throws Exception {
+
+		Path indexPath = tempDir.resolve("index.json");
+		Files.write(indexPath, "{}".getBytes("UTF-8"));
+		String hash = IndexManifest.hash("One", "one", "First page");
+
+		IndexManifest manifest = IndexManifest.load(indexPath, "engine=java");
+		assertEquals("engine=java", manifest.getSettings());
+		assertTrue(manifest.update("one.html", hash));
+		manifest.write(indexPath);
+
+		// Same settings
+		assertFalse(IndexManifest.load(indexPath, "engine=java").update("one.html", hash));
+
+		// Other settings, or none recorded: the documents must be indexed again
+		assertTrue(IndexManifest.load(indexPath, "engine=javascript").update("one.html", hash));
+		new IndexManifest().write(indexPath);
+		assertTrue(IndexManifest.load(indexPath, "engine=java").update("one.html", hash));
+	}
+
+	@Test
+	void testAppend(@TempDir final Path tempDir) throws Exception {
+
+		Path indexPath = tempDir.resolve("index.json");
+		Files.write(indexPath, "{}".getBytes("UTF-8"));
+		String hash1 = IndexManifest.hash("One", "one", "First page");
+		String hash2 = IndexManifest.hash("One", "one", "First page, modified");
+
+		// The whole manifest is written first, with its settings
+		IndexManifest manifest = IndexManifest.load(indexPath, "engine=java");
+		assertFalse(manifest.isStored());
+		manifest.update("one.html", hash1);
+		manifest.append(indexPath, "one.html");
+		assertTrue(manifest.isStored());
+
+		// Then the modified documents are appended, and the last line prevails
+		manifest.update("one.html", hash2);
+		manifest.append(indexPath, "one.html");
+		assertEquals(3, Files.readAllLines(IndexManifest.getManifestPath(indexPath)).size());
+		assertFalse(IndexManifest.load(indexPath, "engine=java").update("one.html", hash2));
+
+		// Writing the whole manifest compacts it
+		manifest.write(indexPath);
+		assertEquals(2, Files.readAllLines(IndexManifest.getManifestPath(indexPath)).size());
+	}
+
+}
@@ -24,9 +24,19 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 class IndexToolTest {
 
@@ -62,8 +72,233 @@ class IndexToolTest {
 
 		assertFalse(indexContent.contains("dragon"), "Existing entries must be overwritten with new ones");
 
-		// Delete the temporary file
+		// Delete the temporary files
 		Files.delete(indexPath);
+		Files.delete(IndexManifest.getManifestPath(indexPath));
+	}
+
+	@Test
+	void testAddToElasticLunrIndex() throws Exception {
+
+		// Two indexes, stored in temporary files that don't exist yet
+		Path indexPath = Files.createTempFile("test-deferred-indexing", ".json");
+		Path otherIndexPath = Files.createTempFile("test-deferred-indexing-other", ".json");
+		Files.delete(indexPath);
+		Files.delete(otherIndexPath);
+
+		IndexTool indexTool = new IndexTool();
+
+		// Add documents to both indexes, and update one of them
+		indexTool.addToElasticLunrIndex(indexPath.toString(), "agent.html", "Agent", "testagent", "Agent dragon");
+		indexTool.addToElasticLunrIndex(indexPath.toString(), "agent.html", "Agent", "testagent", "Agent");
+		indexTool.addToElasticLunrIndex(indexPath.toString(), "fake.html", "Fake", "fake", "This is a fake test.");
+		indexTool.addToElasticLunrIndex(otherIndexPath.toString(), "other.html", "Other", "other", "Other index.");
+
+		// Nothing must be written until flush
+		assertFalse(Files.exists(indexPath), "Index must not be written before flush()");
+		assertFalse(Files.exists(otherIndexPath), "Index must not be written before flush()");
+
+		indexTool.flush();
+
+		String indexContent = new String(Files.readAllBytes(indexPath), "UTF-8");
+		assertTrue(indexContent.contains("{\"id\":\"agent.html\",\"title\":\"Agent\",\"keywords\":\"testagent\""));
+		assertTrue(indexContent.contains("{\"id\":\"fake.html\",\"title\":\"Fake\",\"keywords\":\"fake\""));
+		assertFalse(indexContent.contains("dragon"), "Existing entries must be overwritten with new ones");
+		assertFalse(indexContent.contains("other.html"), "Each index path must have its own index");
+
+		String otherIndexContent = new String(Files.readAllBytes(otherIndexPath), "UTF-8");
+		assertTrue(otherIndexContent.contains("{\"id\":\"other.html\",\"title\":\"Other\",\"keywords\":\"other\""));
+
+		// Adding after a flush (next build) must start from the index that has been written
+		indexTool.addToElasticLunrIndex(indexPath.toString(), "fake.html", "Fake", "fake", "This is a fake test.");
+		indexTool.addToElasticLunrIndex(indexPath.toString(), "new.html", "New", "new", "New page.");
+		indexTool.flush();
+		indexContent = new String(Files.readAllBytes(indexPath), "UTF-8");
+		assertTrue(indexContent.contains("\"id\":\"fake.html\""), "Flushed documents must be kept");
+		assertTrue(indexContent.contains("\"id\":\"new.html\""), "New documents must be added");
+		assertFalse(indexContent.contains("agent.html"), "Documents of the previous build only must be removed");
+
+		Files.delete(indexPath);
+		Files.delete(otherIndexPath);
+		Files.delete(IndexManifest.getManifestPath(indexPath));
+		Files.delete(IndexManifest.getManifestPath(otherIndexPath));
+	}
+
+	@Test
+	void testParallelAddToElasticLunrIndex() throws Exception {
+
+		Path indexPath = Files.createTempFile("test-parallel-indexing", ".json");
+		Files.delete(indexPath);
+
+		IndexTool indexTool = new IndexTool();
+
+		// 8 threads add the same 100 documents, while the index is being written (without ending the build)
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < 8; t++) {
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < 100; i++) {
+						indexTool
+								.addToElasticLunrIndex(
+										indexPath.toString(),
+										"page" + i + ".html",
+										"Page " + i,
+										"page",
+										"Content of page number " + i);
+						if (i % 25 == 0) {
+							indexTool.flush(false);
+						}
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		indexTool.flush();
+
+		ElasticLunrIndex index = ElasticLunrIndex.load(indexPath);
+		assertEquals(100, index.getLength(), "Each document must be indexed once");
+
+		// Same as indexing the documents sequentially
+		ElasticLunrIndex expected = ElasticLunrIndex.create();
+		for (int i = 0; i < 100; i++) {
+			expected.updateDocument("page" + i + ".html", "Page " + i, "page", "Content of page number " + i);
+		}
+		assertEquals(expected.toJson().length(), index.toJson().length());
+
+		Files.delete(indexPath);
+		Files.delete(IndexManifest.getManifestPath(indexPath));
+	}
+
+	@Test
+	void testIncrementalIndexing(@TempDir final Path tempDir) throws Exception {
+
+		// Index and manifest of a previous build, with 2 documents
+		Path indexPath = tempDir.resolve("index.json");
+		ElasticLunrIndex previousIndex = ElasticLunrIndex.create();
+		IndexManifest previousManifest = new IndexManifest(new IndexTool().getManifestSettings());
+		previousIndex.updateDocument("kept.html", "Kept", "kept", "Unchanged page");
+		previousManifest.update("kept.html", IndexManifest.hash("Kept", "kept", "Unchanged page"));
+		previousIndex.updateDocument("removed.html", "Removed", "removed", "Deleted page");
+		previousManifest.update("removed.html", IndexManifest.hash("Removed", "removed", "Deleted page"));
+		previousIndex.write(indexPath, IndexFormat.DEFAULT);
+		previousManifest.write(indexPath);
+
+		IndexTool indexTool = new IndexTool();
+
+		// Unchanged documents don't even rewrite the index file
+		Files.setLastModifiedTime(indexPath, FileTime.fromMillis(0));
+		indexTool.buildElasticLunrIndex(indexPath.toString(), "kept.html", "Kept", "kept", "Unchanged page");
+		assertEquals(0, Files.getLastModifiedTime(indexPath).toMillis(), "Unchanged documents must be skipped");
+
+		// New documents are added, and documents that haven't been seen are removed on flush
+		indexTool.addToElasticLunrIndex(indexPath.toString(), "new.html", "New", "new", "New page");
+		indexTool.flush();
+
+		String indexContent = new String(Files.readAllBytes(indexPath), "UTF-8");
+		assertTrue(indexContent.contains("\"id\":\"kept.html\""), "Unchanged documents must be kept");
+		assertTrue(indexContent.contains("\"id\":\"new.html\""), "New documents must be added");
+		assertFalse(indexContent.contains("removed.html"), "Documents that no longer exist must be removed");
+
+		String manifestContent = new String(Files.readAllBytes(IndexManifest.getManifestPath(indexPath)), "UTF-8");
+		assertTrue(manifestContent.contains(" new.html"));
+		assertFalse(manifestContent.contains("removed.html"));
+	}
+
+	@Test
+	void testSuccessiveBuilds(@TempDir final Path tempDir) throws Exception {
+
+		Path indexPath = tempDir.resolve("index.json");
+		IndexTool indexTool = new IndexTool();
+
+		// First build
+		indexTool.addToElasticLunrIndex(indexPath.toString(), "kept.html", "Kept", "kept", "Unchanged page");
+		indexTool.addToElasticLunrIndex(indexPath.toString(), "removed.html", "Removed", "removed", "Deleted page");
+		indexTool.flush();
+		assertEquals(2, ElasticLunrIndex.load(indexPath).getLength());
+
+		// mvn clean, and second build in the same JVM: the index must be written again
+		Files.delete(indexPath);
+		indexTool.addToElasticLunrIndex(indexPath.toString(), "kept.html", "Kept", "kept", "Unchanged page");
+		indexTool.addToElasticLunrIndex(indexPath.toString(), "removed.html", "Removed", "removed", "Deleted page");
+		indexTool.flush();
+		assertTrue(Files.exists(indexPath), "The index must be written again when it has been deleted");
+		assertEquals(2, ElasticLunrIndex.load(indexPath).getLength());
+
+		// Third build, without the deleted page: the documents seen in the previous builds don't count
+		indexTool.addToElasticLunrIndex(indexPath.toString(), "kept.html", "Kept", "kept", "Unchanged page");
+		indexTool.flush();
+		String indexContent = new String(Files.readAllBytes(indexPath), "UTF-8");
+		assertTrue(indexContent.contains("\"id\":\"kept.html\""), "Unchanged documents must be kept");
+		assertFalse(indexContent.contains("removed.html"), "Documents that no longer exist must be removed");
+	}
+
+	@Test
+	void testJavascriptEngine() throws Exception {
+
+		Path indexPath = Files.createTempFile("test-javascript-indexing", ".json");
+
+		IndexTool indexTool = new IndexTool();
+		indexTool.configure(Collections.singletonMap(IndexTool.ENGINE_KEY, "JavaScript"));
+		assertEquals(IndexTool.ENGINE_JAVASCRIPT, indexTool.getEngine());
+
+		indexTool.buildElasticLunrIndex(indexPath.toString(), "agent.html", "Agent", "testagent", "Agent dragon");
+		indexTool.buildElasticLunrIndex(indexPath.toString(), "agent.html", "Agent", "testagent", "Agent");
+		assertTrue(indexTool.getJavascriptInitTime() >= 0, "Javascript engine must be initialized when used");
+
+		String indexContent = new String(Files.readAllBytes(indexPath), "UTF-8");
+		assertTrue(indexContent.contains("{\"id\":\"agent.html\",\"title\":\"Agent\",\"keywords\":\"testagent\""));
+		assertFalse(indexContent.contains("dragon"), "Existing entries must be overwritten with new ones");
+
+		// Unknown engines are ignored
+		indexTool.configure(Collections.singletonMap(IndexTool.ENGINE_KEY, "unknown"));
+		assertEquals(IndexTool.ENGINE_JAVASCRIPT, indexTool.getEngine());
+
+		Files.delete(indexPath);
+		Files.delete(IndexManifest.getManifestPath(indexPath));
+	}
+
+	@Test
+	void testConfigureFormat(@TempDir final Path tempDir) throws Exception {
+
+		IndexTool indexTool = new IndexTool();
+		assertTrue(indexTool.getFormat().isDefault());
+
+		Map<String, Object> properties = new HashMap<>();
+		properties.put(IndexTool.SHARDED_KEY, "true");
+		properties.put(IndexTool.DOCUMENT_STORE_KEY, "external");
+		properties.put(IndexTool.GZIP_KEY, "true");
+		indexTool.configure(properties);
+		assertTrue(indexTool.getFormat().isSharded());
+		assertTrue(indexTool.getFormat().isExternalDocuments());
+		assertTrue(indexTool.getFormat().isGzip());
+
+		// The index files are written in this format, and updated
+		Path indexPath = tempDir.resolve("index.json");
+		indexTool.buildElasticLunrIndex(indexPath.toString(), "agent.html", "Agent", "testagent", "Agent");
+		indexTool.buildElasticLunrIndex(indexPath.toString(), "fake.html", "Fake", "fake", "This is a fake test.");
+		assertTrue(Files.exists(tempDir.resolve("index.docs.json")));
+		assertTrue(Files.exists(tempDir.resolve("index.json.gz")));
+		assertEquals(2, ElasticLunrIndex.load(indexPath).getLength());
+
+		// Unchanged documents are indexed again when the format changes
+		indexTool.configure(Collections.singletonMap(IndexTool.DOCUMENT_STORE_KEY, "embedded"));
+		indexTool.buildElasticLunrIndex(indexPath.toString(), "agent.html", "Agent", "testagent", "Agent");
+		String indexContent = new String(Files.readAllBytes(indexPath), "UTF-8");
+		assertTrue(indexContent.contains("\"id\":\"fake.html\""), "Documents must be embedded again");
+		assertTrue(
+				new String(Files.readAllBytes(IndexManifest.getManifestPath(indexPath)), "UTF-8")
+						.startsWith(IndexManifest.SETTINGS_PREFIX + indexTool.getManifestSettings()));
+
+		// Not supported by the Javascript engine
+		properties.put(IndexTool.ENGINE_KEY, IndexTool.ENGINE_JAVASCRIPT);
+		indexTool.configure(properties);
+		assertTrue(indexTool.getFormat().isDefault());
 	}
 
 }
@@ -0,0 +1,66 @@
+package org.sentrysoftware.maven.skin;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Sentry Maven Skin Tools
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2017 - 2026 Sentry Software
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.Test;
+
+class LineSeparatorWriterTest {
+
+	@Test
+	void testWrite() throws IOException {
+		StringWriter out = new StringWriter();
+		try (LineSeparatorWriter writer = new LineSeparatorWriter(out, "\r\n")) {
+			writer.write("a\nb\r\nc\rd");
+			writer.write('\r');
+			writer.write("\ne".toCharArray(), 0, 2);
+			writer.append('\n').append("\n\nf");
+		}
+		assertEquals("a\r\nb\r\nc\r\nd\r\ne\r\n\r\n\r\nf\r\n", out.toString(), "The last line must be terminated");
+
+		out = new StringWriter();
+		try (LineSeparatorWriter writer = new LineSeparatorWriter(out, "\n")) {
+			writer.write("xa\r\nb\n", 1, 4);
+		}
+		assertEquals("a\nb\n", out.toString());
+
+		out = new StringWriter();
+		new LineSeparatorWriter(out).close();
+		assertEquals("", out.toString());
+	}
+
+	@Test
+	void testSameAsToSystemLineSeparators() throws IOException {
+		for (String text : new String[] { "", "a", "a\n", "a\r\n\r\nb", "\r\r\n\n", "a\n\n" }) {
+			StringWriter out = new StringWriter();
+			try (LineSeparatorWriter writer = new LineSeparatorWriter(out)) {
+				for (char c : text.toCharArray()) {
+					writer.write(c);
+				}
+			}
+			assertEquals(Helper.toSystemLineSeparators(text), out.toString(), text);
+		}
+	}
+
+}
@@ -0,0 +1,142 @@
+package org.sentrysoftware.maven.skin;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Sentry Maven Skin Tools
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2017 - 2026 Sentry Software
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MarkdownSpoolTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void testAppendAndTransfer() throws Exception {
+		MarkdownSpool spool = new MarkdownSpool();
+		try {
+			assertFalse(spool.takeModified());
+
+			spool.append("index.html.md", write("index.html.md", "# Home\n"), 0);
+			spool.append("sub/page.html.md", write("page.html.md", "# Page é\n"), 0);
+			spool.append("index.html.md", write("index.html.md", "# Home, again\n"), 0);
+			assertTrue(spool.takeModified());
+			assertFalse(spool.takeModified());
+
+			// First order, latest version
+			assertEquals(Arrays.asList("index.html.md", "sub/page.html.md"), spool.getPaths());
+			assertEquals("# Home, again\n", transfer(spool, "index.html.md"));
+			assertEquals("# Page é\n", transfer(spool, "sub/page.html.md"));
+			assertNull(transfer(spool, "missing.html.md"));
+		} finally {
+			spool.close();
+		}
+	}
+
+	@Test
+	void testAppendFile() throws Exception {
+		Path file = tempDir.resolve("page.html.md");
+		Files.write(file, "---\ntitle: é\n---\n\n# Page é\n".getBytes(StandardCharsets.UTF_8));
+		MarkdownSpool spool = new MarkdownSpool();
+		try {
+			spool.append("index.html.md", write("index.html.md", "# Home\n"), 0);
+			spool.append("page.html.md", file, "---\ntitle: é\n---\n\n".getBytes(StandardCharsets.UTF_8).length);
+			assertTrue(spool.takeModified());
+			assertEquals("# Page é\n", transfer(spool, "page.html.md"));
+			assertEquals("# Home\n", transfer(spool, "index.html.md"));
+
+			spool.append("index.html.md", file, Files.size(file));
+			assertEquals("", transfer(spool, "index.html.md"));
+		} finally {
+			spool.close();
+		}
+	}
+
+	@Test
+	void testResolve() throws Exception {
+		MarkdownSpool spool = new MarkdownSpool();
+		try {
+			spool.append("page.html.md", write("page.html.md", "Root"), 0);
+			spool.append("sub/page.html.md", write("sub.html.md", "Sub"), 0);
+
+			assertEquals("page.html.md", spool.resolve("page.html.md"));
+			assertEquals("sub/page.html.md", spool.resolve("sub/page.html.md"));
+			assertEquals("sub/page.html.md", spool.resolve("https://example.com/docs/sub/page.html.md"));
+			assertEquals("page.html.md", spool.resolve("https://example.com/docs/page.html.md"));
+			assertNull(spool.resolve("other.html.md"));
+			assertNull(spool.resolve("https://example.com/other.html.md"));
+		} finally {
+			spool.close();
+		}
+	}
+
+	@Test
+	void testCompact() throws Exception {
+		MarkdownSpool spool = new MarkdownSpool();
+		try {
+			spool.append("index.html.md", write("index.html.md", "# Home\n"), 0);
+			spool.append("page.html.md", write("page.html.md", "# Page\n"), 0);
+			assertFalse(spool.compact(), "Nothing to compact");
+
+			// Previous versions take less than half of the file
+			spool.append("index.html.md", write("index.html.md", "# Home 2\n"), 0);
+			assertFalse(spool.compact(), "Not worth compacting yet");
+
+			// Previous versions take half of the file
+			spool.append("index.html.md", write("index.html.md", "# Home 3\n"), 0);
+			assertTrue(spool.compact());
+			assertFalse(spool.compact(), "Already compacted");
+
+			assertEquals(Arrays.asList("index.html.md", "page.html.md"), spool.getPaths());
+			assertEquals("# Home 3\n", transfer(spool, "index.html.md"));
+			assertEquals("# Page\n", transfer(spool, "page.html.md"));
+
+			// Still appendable
+			spool.append("page.html.md", write("page.html.md", "# Page 2\n"), 0);
+			assertEquals("# Home 3\n", transfer(spool, "index.html.md"));
+			assertEquals("# Page 2\n", transfer(spool, "page.html.md"));
+		} finally {
+			spool.close();
+		}
+	}
+
+	private Path write(final String name, final String markdown) throws Exception {
+		Path file = tempDir.resolve(name);
+		Files.write(file, markdown.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	private static String transfer(final MarkdownSpool spool, final String path) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		if (!spool.transferTo(path, Channels.newChannel(out))) {
+			return null;
+		}
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,90 @@
+package org.sentrysoftware.maven.skin;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Sentry Maven Skin Tools
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2017 - 2026 Sentry Software
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class MarkdownWriterTest {
+
+	@Test
+	void testTrimming() {
+		StringBuilder out = new StringBuilder();
+		MarkdownWriter writer = MarkdownWriter.trimming(out);
+		assertTrue(writer.isEmpty());
+
+		writer.append(" \n").append("text").append(" \n\n");
+		assertFalse(writer.isEmpty());
+		assertEquals('\n', writer.getLastChar());
+		assertEquals("text", out.toString(), "Trailing whitespace must be held back");
+
+		writer.append('x').append(1).append("  ");
+		assertEquals("text \n\nx1", out.toString());
+		assertEquals(' ', writer.getLastChar());
+	}
+
+	@Test
+	void testAppendRange() {
+		StringBuilder out = new StringBuilder();
+		MarkdownWriter writer = MarkdownWriter.trimming(out);
+		writer.append(new StringBuilder(" \n a b \n"), 0, 7).append("xcx", 1, 2);
+		assertEquals("a b c", out.toString(), "Trailing whitespace of the range must be held back");
+		assertEquals('c', writer.getLastChar());
+
+		writer.append("abc", 1, 1);
+		assertEquals('c', writer.getLastChar(), "Empty ranges are ignored");
+
+		out.setLength(0);
+		writer = MarkdownWriter.raw(out);
+		writer.append(new StringBuilder("a\nb c"), 2, 5).ensureBlankLine();
+		assertEquals("b c\n\n", out.toString());
+	}
+
+	@Test
+	void testRaw() {
+		StringBuilder out = new StringBuilder();
+		MarkdownWriter writer = MarkdownWriter.raw(out);
+		writer.append(" a ").append('\n');
+		assertEquals(" a \n", out.toString());
+		assertEquals('\n', writer.getLastChar());
+	}
+
+	@Test
+	void testEnsureBlankLine() {
+		StringBuilder out = new StringBuilder();
+		MarkdownWriter writer = MarkdownWriter.raw(out);
+		writer.ensureBlankLine();
+		assertEquals("", out.toString(), "No blank line at the beginning");
+
+		writer.append("a").ensureBlankLine();
+		assertEquals("a\n\n", out.toString());
+		writer.ensureBlankLine();
+		assertEquals("a\n\n", out.toString());
+
+		writer.append("b\n").ensureBlankLine();
+		assertEquals("a\n\nb\n\n", out.toString());
+
+		MarkdownWriter newLineOnly = MarkdownWriter.raw(new StringBuilder());
+		newLineOnly.append('\n').ensureBlankLine();
+		assertEquals('\n', newLineOnly.getLastChar());
+	}
+
+}
@@ -0,0 +1,78 @@
+package org.sentrysoftware.maven.skin;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * Sentry Maven Skin Tools
+ * ჻჻჻჻჻჻
+ * Copyright (C) 2017 - 2026 Sentry Software
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Evaluator;
+import org.junit.jupiter.api.Test;
+
+class SelectorCacheTest {
+
+	@Test
+	void testGet() {
+		SelectorCache cache = new SelectorCache(10);
+		Evaluator evaluator = cache.get("div.note > p");
+		assertSame(evaluator, cache.get("div.note > p"));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.size());
+
+		// Same elements as the selector string
+		Element body = Jsoup.parseBodyFragment("<div class='note'><p>One</p><div><p>Two</p></div></div><p>Three</p>").body();
+		assertEquals(body.select("div.note > p"), body.select(evaluator));
+
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getHitCount());
+		assertEquals(0, cache.getMissCount());
+		assertNotSame(evaluator, cache.get("div.note > p"));
+	}
+
+	@Test
+	void testMaximumSize() {
+		SelectorCache cache = new SelectorCache(3);
+		for (int i = 0; i < 10; i++) {
+			cache.get("#id" + i);
+			assertTrue(cache.size() <= 3);
+		}
+		assertEquals(10, cache.getMissCount());
+
+		// The latest selector is always kept
+		cache.get("#id9");
+		assertEquals(1, cache.getHitCount());
+	}
+
+	@Test
+	void testInvalidSelectors() {
+		// Same errors as with the selector string
+		SelectorCache cache = new SelectorCache(10);
+		Element body = Jsoup.parseBodyFragment("<p>Text</p>").body();
+		for (String selector : new String[] { "div[", "", null }) {
+			Class<? extends Throwable> expected = assertThrows(RuntimeException.class, () -> body.select(selector)).getClass();
+			assertThrows(expected, () -> cache.get(selector));
+		}
+		assertEquals(0, cache.size());
+	}
+
+}